@@ -26,6 +26,7 @@ import com.otaliastudios.cameraview.size.Size;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -137,6 +138,11 @@ public class MockCameraEngine extends CameraBaseEngine {
         mPictureFormat = pictureFormat;
     }
 
+    @Override
+    public void setPictureZeroShutterLag(boolean enable) {
+        mPictureZeroShutterLag = enable;
+    }
+
     @Override
     public void setHasFrameProcessors(boolean hasFrameProcessors) {
         mHasFrameProcessors = hasFrameProcessors;
@@ -158,6 +164,11 @@ public class MockCameraEngine extends CameraBaseEngine {
 
     }
 
+    @Override
+    protected void onTakePictureBurst(@NonNull PictureResult.Stub[] stubs, @NonNull File directory) {
+
+    }
+
     @Override
     protected void onTakePictureSnapshot(@NonNull PictureResult.Stub stub, @NonNull AspectRatio outputRatio, boolean doMetering) {
 
@@ -0,0 +1,130 @@
+package com.otaliastudios.cameraview.engine.orchestrator;
+
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.otaliastudios.cameraview.BaseTest;
+import com.otaliastudios.cameraview.internal.WorkerHandler;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class CameraOrchestratorTest extends BaseTest {
+
+    private final static long TIMEOUT = 2000;
+
+    private CameraOrchestrator orchestrator;
+    private List<String> executed;
+    private CountDownLatch blocked;
+    private CountDownLatch unblock;
+
+    @Before
+    public void setUp() {
+        final WorkerHandler worker = WorkerHandler.get("CameraOrchestratorTest");
+        orchestrator = new CameraOrchestrator(new CameraOrchestrator.Callback() {
+            @NonNull
+            @Override
+            public WorkerHandler getJobWorker(@NonNull String job) {
+                return worker;
+            }
+
+            @Override
+            public void handleJobException(@NonNull String job, @NonNull Exception exception) { }
+        });
+        executed = new CopyOnWriteArrayList<>();
+        blocked = new CountDownLatch(1);
+        unblock = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        orchestrator.reset();
+    }
+
+    @NonNull
+    private Runnable record(@NonNull final String value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(value);
+            }
+        };
+    }
+
+    // Keeps the worker busy until unblock is released, so that later jobs stay pending.
+    @NonNull
+    private Runnable block(@NonNull final String value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                blocked.countDown();
+                try {
+                    unblock.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ignore) { }
+                executed.add(value);
+            }
+        };
+    }
+
+    @Test
+    public void testCoalesced_keepsPosition() throws Exception {
+        orchestrator.schedule("block", false, block("block"));
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        orchestrator.scheduleCoalesced("zoom", false, record("zoom 2"));
+        orchestrator.schedule("picture", false, record("picture"));
+        Task<Void> task = orchestrator.scheduleCoalesced("zoom", false, record("zoom 3"));
+        unblock.countDown();
+        Tasks.await(orchestrator.schedule("end", false, record("end")),
+                TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(task.isSuccessful());
+        // The zoom is applied before the picture, as requested, but with the latest value.
+        assertEquals(Arrays.asList("block", "zoom 3", "picture", "end"), executed);
+    }
+
+    @Test
+    public void testCoalesced_inheritsSource() throws Exception {
+        orchestrator.schedule("block", false, block("block"));
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Task<Void> first = orchestrator.scheduleCoalesced("zoom", false, record("zoom 1"));
+        Task<Void> second = orchestrator.scheduleCoalesced("zoom", false, record("zoom 2"));
+        Task<Void> third = orchestrator.scheduleCoalesced("zoom", false, record("zoom 3"));
+        assertSame(first, second);
+        assertSame(first, third);
+        unblock.countDown();
+        Tasks.await(first, TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(first.isSuccessful());
+        assertEquals(Arrays.asList("block", "zoom 3"), executed);
+    }
+
+    @Test
+    public void testCoalesced_doesNotReplaceExecuting() throws Exception {
+        Task<Void> first = orchestrator.scheduleCoalesced("zoom", false, block("zoom 1"));
+        assertTrue(blocked.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Task<Void> second = orchestrator.scheduleCoalesced("zoom", false, record("zoom 2"));
+        assertNotSame(first, second);
+        unblock.countDown();
+        Tasks.await(second, TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(first.isSuccessful());
+        assertEquals(Arrays.asList("zoom 1", "zoom 2"), executed);
+    }
+}
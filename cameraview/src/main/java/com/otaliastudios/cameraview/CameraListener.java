@@ -1,10 +1,13 @@
 package com.otaliastudios.cameraview;
 
 import android.graphics.PointF;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 
+import java.io.File;
+
 /**
  * The base class for receiving updates from a {@link CameraView} instance.
  * You can add and remove listeners using {@link CameraView#addCameraListener(CameraListener)}
@@ -57,6 +60,30 @@ public abstract class CameraListener {
     @UiThread
     public void onPictureTaken(@NonNull PictureResult result) { }
 
+    /**
+     * Notifies that one of the pictures of a burst started with
+     * {@link CameraView#takePictureBurst(int, File)} or
+     * {@link CameraView#takePictureSnapshotBurst(int, File)} was saved to file.
+     * Pictures are not necessarily notified in order.
+     *
+     * @param result captured picture
+     * @param file the file where it was saved
+     * @param index the picture index in the burst
+     */
+    @UiThread
+    public void onBurstPictureTaken(@NonNull PictureResult result,
+                                    @NonNull File file,
+                                    int index) { }
+
+    /**
+     * Notifies that a burst has ended. The count can be smaller than the requested one,
+     * if some pictures could not be taken or saved.
+     *
+     * @param count the number of pictures that were saved
+     */
+    @UiThread
+    public void onBurstCompleted(int count) { }
+
 
     /**
      * Notifies that a video capture has just ended.
@@ -161,6 +188,22 @@ public abstract class CameraListener {
 
     }
 
+    /**
+     * Notifies about the audio levels of the current video recording, about 20 times
+     * per second. This can be used to show a VU meter while recording, without opening
+     * another {@link android.media.AudioRecord}.
+     *
+     * This is only called for {@link CameraView#takeVideoSnapshot(java.io.File)} recordings
+     * with audio enabled.
+     *
+     * @param rms the RMS level of the last audio chunk, from 0 to 1
+     * @param peak the peak level of the last audio chunk, from 0 to 1
+     */
+    @UiThread
+    public void onVideoRecordingAudioLevel(float rms, float peak) {
+
+    }
+
     /**
      * Notifies that the picture capture has started. Can be used to update the UI for visual
      * confirmation or sound effects.
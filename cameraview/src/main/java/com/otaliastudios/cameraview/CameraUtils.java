@@ -11,8 +11,13 @@ import android.os.Handler;
 
 import com.otaliastudios.cameraview.controls.Facing;
 import com.otaliastudios.cameraview.engine.mappers.Camera1Mapper;
+import com.otaliastudios.cameraview.internal.CameraOptionsCache;
+import com.otaliastudios.cameraview.internal.EncoderSelectionCache;
 import com.otaliastudios.cameraview.internal.ExifHelper;
-import com.otaliastudios.cameraview.internal.WorkerHandler;
+import com.otaliastudios.cameraview.internal.ExifOrientation;
+import com.otaliastudios.cameraview.internal.FileHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
+import com.otaliastudios.cameraview.internal.ThumbnailHelper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -20,11 +25,9 @@ import androidx.annotation.WorkerThread;
 import androidx.exifinterface.media.ExifInterface;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 
 /**
@@ -72,6 +75,64 @@ public class CameraUtils {
     }
 
 
+    /**
+     * Persists the encoders that were found to work for video recording in the app cache
+     * directory, so that future processes can skip the encoder checks that happen before
+     * a recording starts. Encoders are cached in memory anyway: this only helps the first
+     * recording after the app starts.
+     *
+     * The cache is discarded when the OS build changes, or when a recording fails.
+     * Since this reads a small file, it is better to call it from a background thread.
+     *
+     * @param context a valid context
+     */
+    @WorkerThread
+    public static void enableEncoderCache(@NonNull Context context) {
+        File file = new File(context.getCacheDir(), "cameraview_encoders");
+        EncoderSelectionCache.get().setDiskStore(file);
+    }
+
+    /**
+     * Persists the camera options and the available stream sizes of each camera in the
+     * app cache directory, so that future processes can skip computing them when the
+     * camera is opened. They are cached in memory anyway: this only helps the first
+     * open after the app starts.
+     *
+     * The cache is discarded when the OS build changes, and single entries are discarded
+     * when the camera reports different capabilities.
+     * Since this reads a small file, it is better to call it from a background thread.
+     *
+     * @param context a valid context
+     */
+    @WorkerThread
+    public static void enableCameraOptionsCache(@NonNull Context context) {
+        File file = new File(context.getCacheDir(), "cameraview_options");
+        CameraOptionsCache.get().setDiskStore(file);
+    }
+
+
+    /**
+     * Sets the max number of threads used for picture processing, that is, JPEG compression,
+     * EXIF handling, and the asynchronous utilities in this class like
+     * {@link #writeToFile(byte[], File, FileCallback)} and
+     * {@link #decodeBitmap(byte[], BitmapCallback)}. This is shared by all
+     * {@link CameraView} instances. Defaults to 2.
+     *
+     * @param executors thread count
+     */
+    public static void setPictureProcessingExecutors(int executors) {
+        PictureExecutor.get().setParallelism(executors);
+    }
+
+    /**
+     * Returns the max number of threads used for picture processing.
+     * @see #setPictureProcessingExecutors(int)
+     * @return thread count
+     */
+    public static int getPictureProcessingExecutors() {
+        return PictureExecutor.get().getParallelism();
+    }
+
     /**
      * Simply writes the given data to the given file. It is done synchronously. If you are
      * running on the UI thread, please use {@link #writeToFile(byte[], File, FileCallback)}
@@ -115,7 +176,7 @@ public class CameraUtils {
                                    @NonNull final File file,
                                    @NonNull final FileCallback callback) {
         final Handler ui = new Handler();
-        WorkerHandler.execute(new Runnable() {
+        PictureExecutor.get().execute(new Runnable() {
             @Override
             public void run() {
                 final File result = writeToFile(data, file);
@@ -129,6 +190,42 @@ public class CameraUtils {
         });
     }
 
+    /**
+     * Copies a picture file into another file in a background thread, returning on the
+     * original thread once copying is done. If some error is encountered, the
+     * {@link FileCallback} will return null instead of the destination file.
+     *
+     * @param source the source file
+     * @param file the file to write into
+     * @param callback a callback
+     */
+    static void copyFile(@NonNull final File source,
+                         @NonNull final File file,
+                         @NonNull final FileCallback callback) {
+        final Handler ui = new Handler();
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                File result = null;
+                try {
+                    if (!source.getCanonicalPath().equals(file.getCanonicalPath())) {
+                        FileHelper.copy(source, file, false);
+                    }
+                    result = file;
+                } catch (IOException e) {
+                    LOG.e("copyFile:", "could not copy file.", e);
+                }
+                final File finalResult = result;
+                ui.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onFileReady(finalResult);
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Decodes an input byte array and outputs a Bitmap that is ready to be displayed.
      * The difference with {@link android.graphics.BitmapFactory#decodeByteArray(byte[], int, int)}
@@ -210,7 +307,7 @@ public class CameraUtils {
                              final int rotation,
                              @NonNull final BitmapCallback callback) {
         final Handler ui = new Handler();
-        WorkerHandler.execute(new Runnable() {
+        PictureExecutor.get().execute(new Runnable() {
             @Override
             public void run() {
                 final Bitmap bitmap = decodeBitmap(source, maxWidth, maxHeight, options, rotation);
@@ -224,6 +321,68 @@ public class CameraUtils {
         });
     }
 
+    // The file is read on the background thread: decoding needs the whole image anyway.
+    static void decodeBitmap(@NonNull final File source,
+                             final int maxWidth,
+                             final int maxHeight,
+                             @NonNull final BitmapFactory.Options options,
+                             final int rotation,
+                             @NonNull final BitmapCallback callback) {
+        final Handler ui = new Handler();
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = null;
+                try {
+                    byte[] data = FileHelper.read(source);
+                    bitmap = decodeBitmap(data, maxWidth, maxHeight, options, rotation);
+                } catch (IOException e) {
+                    LOG.e("decodeBitmap:", "could not read file.", e);
+                }
+                final Bitmap finalBitmap = bitmap;
+                ui.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBitmapReady(finalBitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    // The embedded EXIF thumbnail is tried first, then a scaled decode.
+    // The bitmap is not rotated: Thumbnail applies the rotation when drawing.
+    static void decodeThumbnail(@NonNull final ThumbnailHelper.Source source,
+                                final int maxWidth,
+                                final int maxHeight,
+                                final int rotation,
+                                @NonNull final ThumbnailCallback callback) {
+        final Handler ui = new Handler();
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                Thumbnail thumbnail = null;
+                Bitmap bitmap = ThumbnailHelper.decodeEmbedded(source,
+                        maxWidth, maxHeight, rotation);
+                if (bitmap != null) {
+                    thumbnail = new Thumbnail(bitmap, rotation, true);
+                } else {
+                    bitmap = ThumbnailHelper.decodeScaled(source, maxWidth, maxHeight, rotation);
+                    if (bitmap != null) thumbnail = new Thumbnail(bitmap, rotation, false);
+                }
+                LOG.i("decodeThumbnail:", "decoded.", "embedded:",
+                        thumbnail != null && thumbnail.isEmbedded());
+                final Thumbnail finalThumbnail = thumbnail;
+                ui.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onThumbnailReady(finalThumbnail);
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Decodes an input byte array and outputs a Bitmap that is ready to be displayed.
      * The difference with {@link android.graphics.BitmapFactory#decodeByteArray(byte[], int, int)}
@@ -268,7 +427,6 @@ public class CameraUtils {
 
     // Null means we got OOM
     // Ignores flipping, but it should be super rare.
-    @SuppressWarnings("TryFinallyCanBeTryWithResources")
     @Nullable
     private static Bitmap decodeBitmap(@NonNull byte[] source,
                                        int maxWidth,
@@ -280,30 +438,14 @@ public class CameraUtils {
         int orientation;
         boolean flip;
         if (rotation == -1) {
-            InputStream stream = null;
-            try {
-                // http://sylvana.net/jpegcrop/exif_orientation.html
-                stream = new ByteArrayInputStream(source);
-                ExifInterface exif = new ExifInterface(stream);
-                int exifOrientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                        ExifInterface.ORIENTATION_NORMAL);
-                orientation = ExifHelper.getOrientation(exifOrientation);
-                flip = exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL ||
-                        exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL ||
-                        exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE ||
-                        exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
-                LOG.i("decodeBitmap:", "got orientation from EXIF.", orientation);
-            } catch (IOException e) {
-                LOG.e("decodeBitmap:", "could not get orientation from EXIF.", e);
-                orientation = 0;
-                flip = false;
-            } finally {
-                if (stream != null) {
-                    try {
-                        stream.close();
-                    } catch (Exception ignored) { }
-                }
-            }
+            // http://sylvana.net/jpegcrop/exif_orientation.html
+            int exifOrientation = ExifOrientation.read(source);
+            orientation = ExifHelper.getOrientation(exifOrientation);
+            flip = exifOrientation == ExifInterface.ORIENTATION_FLIP_HORIZONTAL ||
+                    exifOrientation == ExifInterface.ORIENTATION_FLIP_VERTICAL ||
+                    exifOrientation == ExifInterface.ORIENTATION_TRANSPOSE ||
+                    exifOrientation == ExifInterface.ORIENTATION_TRANSVERSE;
+            LOG.i("decodeBitmap:", "got orientation from EXIF.", orientation);
         } else {
             orientation = rotation;
             flip = false;
@@ -32,6 +32,7 @@ import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.OnLifecycleEvent;
 
+import com.otaliastudios.cameraview.audio.AudioProcessor;
 import com.otaliastudios.cameraview.controls.Audio;
 import com.otaliastudios.cameraview.controls.AudioCodec;
 import com.otaliastudios.cameraview.controls.Control;
@@ -69,6 +70,7 @@ import com.otaliastudios.cameraview.gesture.TapGestureFinder;
 import com.otaliastudios.cameraview.internal.GridLinesLayout;
 import com.otaliastudios.cameraview.internal.CropHelper;
 import com.otaliastudios.cameraview.internal.OrientationHelper;
+import com.otaliastudios.cameraview.internal.StartupTracer;
 import com.otaliastudios.cameraview.markers.AutoFocusMarker;
 import com.otaliastudios.cameraview.markers.AutoFocusTrigger;
 import com.otaliastudios.cameraview.markers.MarkerLayout;
@@ -120,9 +122,12 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
     final static boolean DEFAULT_USE_DEVICE_ORIENTATION = true;
     final static boolean DEFAULT_PICTURE_METERING = true;
     final static boolean DEFAULT_PICTURE_SNAPSHOT_METERING = false;
+    final static boolean DEFAULT_PICTURE_FILE_SYNC = false;
+    final static boolean DEFAULT_PICTURE_ZERO_SHUTTER_LAG = false;
     final static boolean DEFAULT_REQUEST_PERMISSIONS = true;
     final static int DEFAULT_FRAME_PROCESSING_POOL_SIZE = 2;
     final static int DEFAULT_FRAME_PROCESSING_EXECUTORS = 1;
+    final static int DEFAULT_VIDEO_SNAPSHOT_PROXY_RESOLUTION = 480;
 
     // Self managed parameters
     private boolean mPlaySounds;
@@ -147,6 +152,10 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
     private AutoFocusMarker mAutoFocusMarker;
     @VisibleForTesting List<CameraListener> mListeners = new CopyOnWriteArrayList<>();
     @VisibleForTesting List<FrameProcessor> mFrameProcessors = new CopyOnWriteArrayList<>();
+    @VisibleForTesting List<AudioProcessor> mAudioProcessors = new CopyOnWriteArrayList<>();
+    @VisibleForTesting List<CaptureTraceListener> mTraceListeners = new CopyOnWriteArrayList<>();
+    @VisibleForTesting List<StartupTraceListener> mStartupTraceListeners
+            = new CopyOnWriteArrayList<>();
     private Lifecycle mLifecycle;
 
     // Gestures
@@ -206,6 +215,19 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         int videoMaxDuration = a.getInteger(R.styleable.CameraView_cameraVideoMaxDuration,
                 0);
         int videoBitRate = a.getInteger(R.styleable.CameraView_cameraVideoBitRate, 0);
+        int videoMinBitRate = a.getInteger(R.styleable.CameraView_cameraVideoMinBitRate, 0);
+        int videoMaxBitRate = a.getInteger(R.styleable.CameraView_cameraVideoMaxBitRate, 0);
+        boolean videoSnapshotWarmUp = a.getBoolean(
+                R.styleable.CameraView_cameraVideoSnapshotWarmUp, false);
+        long videoSnapshotTimeLapseInterval = (long) a.getInteger(
+                R.styleable.CameraView_cameraVideoSnapshotTimeLapseInterval, 0);
+        int videoSnapshotTimeLapseFrameRate = a.getInteger(
+                R.styleable.CameraView_cameraVideoSnapshotTimeLapseFrameRate, 0);
+        int videoSnapshotProxyResolution = a.getInteger(
+                R.styleable.CameraView_cameraVideoSnapshotProxyResolution,
+                DEFAULT_VIDEO_SNAPSHOT_PROXY_RESOLUTION);
+        int videoSnapshotProxyBitRate = a.getInteger(
+                R.styleable.CameraView_cameraVideoSnapshotProxyBitRate, 0);
         int audioBitRate = a.getInteger(R.styleable.CameraView_cameraAudioBitRate, 0);
         float videoFrameRate = a.getFloat(R.styleable.CameraView_cameraPreviewFrameRate, 0);
         boolean videoFrameRateExact = a.getBoolean(R.styleable.CameraView_cameraPreviewFrameRateExact, false);
@@ -217,6 +239,11 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         boolean pictureSnapshotMetering = a.getBoolean(
                 R.styleable.CameraView_cameraPictureSnapshotMetering,
                 DEFAULT_PICTURE_SNAPSHOT_METERING);
+        boolean pictureFileSync = a.getBoolean(R.styleable.CameraView_cameraPictureFileSync,
+                DEFAULT_PICTURE_FILE_SYNC);
+        boolean pictureZeroShutterLag = a.getBoolean(
+                R.styleable.CameraView_cameraPictureZeroShutterLag,
+                DEFAULT_PICTURE_ZERO_SHUTTER_LAG);
         int snapshotMaxWidth = a.getInteger(R.styleable.CameraView_cameraSnapshotMaxWidth, 0);
         int snapshotMaxHeight = a.getInteger(R.styleable.CameraView_cameraSnapshotMaxHeight, 0);
         int frameMaxWidth = a.getInteger(R.styleable.CameraView_cameraFrameProcessingMaxWidth, 0);
@@ -277,12 +304,21 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         setPictureSize(sizeSelectors.getPictureSizeSelector());
         setPictureMetering(pictureMetering);
         setPictureSnapshotMetering(pictureSnapshotMetering);
+        setPictureFileSync(pictureFileSync);
+        setPictureZeroShutterLag(pictureZeroShutterLag);
         setPictureFormat(controls.getPictureFormat());
         setVideoSize(sizeSelectors.getVideoSizeSelector());
         setVideoCodec(controls.getVideoCodec());
         setVideoMaxSize(videoMaxSize);
         setVideoMaxDuration(videoMaxDuration);
         setVideoBitRate(videoBitRate);
+        setVideoMinBitRate(videoMinBitRate);
+        setVideoMaxBitRate(videoMaxBitRate);
+        setVideoSnapshotWarmUp(videoSnapshotWarmUp);
+        setVideoSnapshotTimeLapseInterval(videoSnapshotTimeLapseInterval);
+        setVideoSnapshotTimeLapseFrameRate(videoSnapshotTimeLapseFrameRate);
+        setVideoSnapshotProxyResolution(videoSnapshotProxyResolution);
+        setVideoSnapshotProxyBitRate(videoSnapshotProxyBitRate);
         setAutoFocusResetDelay(autoFocusResetDelay);
         setPreviewFrameRateExact(videoFrameRateExact);
         setPreviewFrameRate(videoFrameRate);
@@ -882,7 +918,10 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
     public void destroy() {
         if (mInEditor) return;
         clearCameraListeners();
+        clearCaptureTraceListeners();
+        clearStartupTraceListeners();
         clearFrameProcessors();
+        clearAudioProcessors();
         mCameraEngine.destroy(true);
         if (mCameraPreview != null) mCameraPreview.onDestroy();
     }
@@ -1038,11 +1077,20 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         setAudioCodec(oldEngine.getAudioCodec());
         setPictureSize(oldEngine.getPictureSizeSelector());
         setPictureFormat(oldEngine.getPictureFormat());
+        setPictureFileSync(oldEngine.getPictureFileSync());
+        setPictureZeroShutterLag(oldEngine.getPictureZeroShutterLag());
         setVideoSize(oldEngine.getVideoSizeSelector());
         setVideoCodec(oldEngine.getVideoCodec());
         setVideoMaxSize(oldEngine.getVideoMaxSize());
         setVideoMaxDuration(oldEngine.getVideoMaxDuration());
         setVideoBitRate(oldEngine.getVideoBitRate());
+        setVideoMinBitRate(oldEngine.getVideoMinBitRate());
+        setVideoMaxBitRate(oldEngine.getVideoMaxBitRate());
+        setVideoSnapshotWarmUp(oldEngine.getVideoSnapshotWarmUp());
+        setVideoSnapshotTimeLapseInterval(oldEngine.getVideoSnapshotTimeLapseInterval());
+        setVideoSnapshotTimeLapseFrameRate(oldEngine.getVideoSnapshotTimeLapseFrameRate());
+        setVideoSnapshotProxyResolution(oldEngine.getVideoSnapshotProxyResolution());
+        setVideoSnapshotProxyBitRate(oldEngine.getVideoSnapshotProxyBitRate());
         setAutoFocusResetDelay(oldEngine.getAutoFocusResetDelay());
         setPreviewFrameRate(oldEngine.getPreviewFrameRate());
         setPreviewFrameRateExact(oldEngine.getPreviewFrameRateExact());
@@ -1508,6 +1556,56 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         return mCameraEngine.getPictureMetering();
     }
 
+    /**
+     * Whether pictures taken with {@link #takePicture(File)} should be synced to the storage
+     * device before the result is dispatched. This guarantees that the file survives a
+     * crash or power loss right after {@link CameraListener#onPictureTaken(PictureResult)},
+     * but adds some latency. Defaults to false.
+     *
+     * @param sync true to sync
+     */
+    public void setPictureFileSync(boolean sync) {
+        mCameraEngine.setPictureFileSync(sync);
+    }
+
+    /**
+     * Whether pictures taken with {@link #takePicture(File)} are synced to the storage
+     * device before the result is dispatched.
+     *
+     * @see #setPictureFileSync(boolean)
+     * @return true if sync is enabled
+     */
+    public boolean getPictureFileSync() {
+        return mCameraEngine.getPictureFileSync();
+    }
+
+    /**
+     * Whether pictures taken with {@link #takePicture()} or {@link #takePicture(File)} should
+     * use zero shutter lag. When enabled, the camera keeps a few recent full resolution frames
+     * in memory, and takes the picture from the best one instead of starting a new capture.
+     * The picture is available almost immediately, but no metering sequence is run and
+     * pictures are encoded by the library instead of the camera hardware.
+     *
+     * This is a CAMERA2 only API, that only works with {@link PictureFormat#JPEG}, in devices
+     * whose hardware level is FULL or better. When not supported, it has no effect.
+     * Defaults to false.
+     *
+     * @param enable true to enable
+     */
+    public void setPictureZeroShutterLag(boolean enable) {
+        mCameraEngine.setPictureZeroShutterLag(enable);
+    }
+
+    /**
+     * Whether pictures should use zero shutter lag.
+     *
+     * @see #setPictureZeroShutterLag(boolean)
+     * @return true if zero shutter lag is enabled
+     */
+    public boolean getPictureZeroShutterLag() {
+        return mCameraEngine.getPictureZeroShutterLag();
+    }
+
     /**
      * Whether the engine should perform a metering sequence before taking pictures requested
      * with {@link #takePictureSnapshot()}. A metering sequence includes adjusting focus,
@@ -1590,6 +1688,159 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         return mCameraEngine.getVideoBitRate();
     }
 
+    /**
+     * Sets the min bit rate in bits per second for video snapshots. When this is greater
+     * than 0, the encoder bit rate is adapted during {@link #takeVideoSnapshot(File)}
+     * to avoid dropping frames when the device can't keep up, for instance under thermal load.
+     * The bit rate will stay between this value and {@link #setVideoMaxBitRate(int)}.
+     *
+     * This requires API 19 and has no effect on {@link #takeVideo(File)}.
+     *
+     * @param bitRate desired min bit rate, or 0 to disable adaptive bit rate
+     */
+    public void setVideoMinBitRate(int bitRate) {
+        mCameraEngine.setVideoMinBitRate(bitRate);
+    }
+
+    /**
+     * Returns the current video min bit rate.
+     * @return current min bit rate
+     */
+    @SuppressWarnings("unused")
+    public int getVideoMinBitRate() {
+        return mCameraEngine.getVideoMinBitRate();
+    }
+
+    /**
+     * Sets the max bit rate in bits per second for video snapshots, when adaptive bit rate
+     * is enabled through {@link #setVideoMinBitRate(int)}. If this is 0, the max bit rate
+     * will be the initial bit rate.
+     *
+     * @param bitRate desired max bit rate
+     */
+    public void setVideoMaxBitRate(int bitRate) {
+        mCameraEngine.setVideoMaxBitRate(bitRate);
+    }
+
+    /**
+     * Returns the current video max bit rate.
+     * @return current max bit rate
+     */
+    @SuppressWarnings("unused")
+    public int getVideoMaxBitRate() {
+        return mCameraEngine.getVideoMaxBitRate();
+    }
+
+    /**
+     * Whether the encoders used by {@link #takeVideoSnapshot(File)} should be prepared
+     * in advance, to reduce the time it takes for the recording to actually start.
+     * When enabled, the encoders that were used by the last video snapshot are created
+     * and configured again when the camera opens and as soon as a video snapshot ends.
+     *
+     * This holds some hardware resources while the camera is open, so it's disabled
+     * by default. The first video snapshot of the process is not affected. See
+     * {@link VideoResult#getTimeToFirstFrame()} to measure the difference.
+     *
+     * @param warmUp whether to warm up encoders
+     */
+    public void setVideoSnapshotWarmUp(boolean warmUp) {
+        mCameraEngine.setVideoSnapshotWarmUp(warmUp);
+    }
+
+    /**
+     * Returns whether video snapshot encoders are prepared in advance.
+     * @see #setVideoSnapshotWarmUp(boolean)
+     * @return whether warm up is enabled
+     */
+    public boolean getVideoSnapshotWarmUp() {
+        return mCameraEngine.getVideoSnapshotWarmUp();
+    }
+
+    /**
+     * Records video snapshots as time-lapses, capturing one frame every given interval.
+     * Other preview frames are skipped before reaching the encoder, so long time-lapses
+     * are cheap. Frames are then played at the rate set by
+     * {@link #setVideoSnapshotTimeLapseFrameRate(int)}, and audio is not recorded.
+     *
+     * Note that {@link #setVideoMaxDuration(int)} refers to the output video duration
+     * in this case. This has no effect on {@link #takeVideo(File)}.
+     *
+     * @param intervalMillis the capture interval, or 0 to disable time-lapse
+     */
+    public void setVideoSnapshotTimeLapseInterval(long intervalMillis) {
+        mCameraEngine.setVideoSnapshotTimeLapseInterval(intervalMillis);
+    }
+
+    /**
+     * Returns the current time-lapse capture interval.
+     * @see #setVideoSnapshotTimeLapseInterval(long)
+     * @return the interval in milliseconds
+     */
+    public long getVideoSnapshotTimeLapseInterval() {
+        return mCameraEngine.getVideoSnapshotTimeLapseInterval();
+    }
+
+    /**
+     * Sets the playback frame rate of time-lapse video snapshots. If this is 0,
+     * the preview frame rate is used, as for regular video snapshots.
+     * @see #setVideoSnapshotTimeLapseInterval(long)
+     *
+     * @param frameRate the output frame rate
+     */
+    public void setVideoSnapshotTimeLapseFrameRate(int frameRate) {
+        mCameraEngine.setVideoSnapshotTimeLapseFrameRate(frameRate);
+    }
+
+    /**
+     * Returns the current time-lapse playback frame rate.
+     * @see #setVideoSnapshotTimeLapseFrameRate(int)
+     * @return the output frame rate
+     */
+    public int getVideoSnapshotTimeLapseFrameRate() {
+        return mCameraEngine.getVideoSnapshotTimeLapseFrameRate();
+    }
+
+    /**
+     * Sets the resolution of the low resolution copy recorded by
+     * {@link #takeVideoSnapshot(File, File)}, as the size of its shorter side.
+     * For example, 480 means 480p. Defaults to 480. The aspect ratio is the same
+     * as the main video.
+     *
+     * @param resolution the proxy resolution
+     */
+    public void setVideoSnapshotProxyResolution(int resolution) {
+        mCameraEngine.setVideoSnapshotProxyResolution(resolution);
+    }
+
+    /**
+     * Returns the current proxy resolution.
+     * @see #setVideoSnapshotProxyResolution(int)
+     * @return the proxy resolution
+     */
+    public int getVideoSnapshotProxyResolution() {
+        return mCameraEngine.getVideoSnapshotProxyResolution();
+    }
+
+    /**
+     * Sets the bit rate in bits per second of the low resolution copy recorded by
+     * {@link #takeVideoSnapshot(File, File)}. If this is 0, the bit rate is estimated
+     * from the proxy size.
+     *
+     * @param bitRate the proxy bit rate
+     */
+    public void setVideoSnapshotProxyBitRate(int bitRate) {
+        mCameraEngine.setVideoSnapshotProxyBitRate(bitRate);
+    }
+
+    /**
+     * Returns the current proxy bit rate.
+     * @see #setVideoSnapshotProxyBitRate(int)
+     * @return the proxy bit rate
+     */
+    public int getVideoSnapshotProxyBitRate() {
+        return mCameraEngine.getVideoSnapshotProxyBitRate();
+    }
+
     /**
      * A flag to control the behavior when calling {@link #setPreviewFrameRate(float)}.
      *
@@ -1716,6 +1967,98 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         mListeners.clear();
     }
 
+    /**
+     * Adds a {@link CaptureTraceListener} that will receive the timing of every
+     * picture and video taken by this view. Tracing is always enabled and has
+     * negligible overhead, so this can be used in production.
+     *
+     * @param listener a listener
+     * @see PictureResult#getTrace()
+     * @see VideoResult#getTrace()
+     */
+    public void addCaptureTraceListener(@NonNull CaptureTraceListener listener) {
+        mTraceListeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link CaptureTraceListener} that was previously registered.
+     *
+     * @param listener a listener
+     */
+    public void removeCaptureTraceListener(@NonNull CaptureTraceListener listener) {
+        mTraceListeners.remove(listener);
+    }
+
+    /**
+     * Clears the list of {@link CaptureTraceListener}s.
+     */
+    public void clearCaptureTraceListeners() {
+        mTraceListeners.clear();
+    }
+
+    /**
+     * Adds a {@link StartupTraceListener} that will receive the timing of every
+     * camera startup, from {@link #open()} to the moment the preview is running.
+     *
+     * @param listener a listener
+     */
+    public void addStartupTraceListener(@NonNull StartupTraceListener listener) {
+        mStartupTraceListeners.add(listener);
+    }
+
+    /**
+     * Removes a {@link StartupTraceListener} that was previously registered.
+     *
+     * @param listener a listener
+     */
+    public void removeStartupTraceListener(@NonNull StartupTraceListener listener) {
+        mStartupTraceListeners.remove(listener);
+    }
+
+    /**
+     * Clears the list of {@link StartupTraceListener}s.
+     */
+    public void clearStartupTraceListeners() {
+        mStartupTraceListeners.clear();
+    }
+
+    /**
+     * Returns the duration of the last camera startup in milliseconds, from {@link #open()}
+     * to the moment the preview is running. This is the same as
+     * {@link StartupTrace#getTotalDuration()}, but can be read at any time.
+     * Returns -1 if the camera was never started.
+     *
+     * @return the last startup duration
+     * @see #addStartupTraceListener(StartupTraceListener)
+     */
+    public long getColdStartDuration() {
+        return mCameraEngine.getColdStartDuration();
+    }
+
+    /**
+     * Returns the number of times the camera parameters were committed to the device.
+     * With {@link Engine#CAMERA2}, changes that come in bursts, like zoom during a pinch
+     * gesture, are merged so that they are committed at most once per frame.
+     * Compare this with {@link #getRepeatingRequestChangeCount()} to see how many commits
+     * were saved. Returns 0 for engines that do not merge changes.
+     *
+     * @return the number of commits
+     */
+    public int getRepeatingRequestCommitCount() {
+        return mCameraEngine.getRepeatingRequestCommitCount();
+    }
+
+    /**
+     * Returns the number of control changes, like zoom or exposure correction, that
+     * asked the camera to commit its parameters. See {@link #getRepeatingRequestCommitCount()}.
+     * Returns 0 for engines that do not merge changes.
+     *
+     * @return the number of changes
+     */
+    public int getRepeatingRequestChangeCount() {
+        return mCameraEngine.getRepeatingRequestChangeCount();
+    }
+
     /**
      * Asks the camera to capture an image of the current scene.
      * This will trigger {@link CameraListener#onPictureTaken(PictureResult)} if a listener
@@ -1728,6 +2071,27 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         mCameraEngine.takePicture(stub);
     }
 
+    /**
+     * Asks the camera to capture an image of the current scene, and to write it straight to
+     * the given file. The picture data is never copied into a Java array when the engine
+     * can avoid it, which saves memory for large pictures.
+     * This will trigger {@link CameraListener#onPictureTaken(PictureResult)} if a listener
+     * was registered, once the file is written. The result holds no data: use
+     * {@link PictureResult#getFile()}.
+     *
+     * This is the recommended way to capture {@link PictureFormat#DNG} pictures: the RAW
+     * image is streamed to the file, instead of being compressed into memory first.
+     *
+     * @param file a file where the picture will be written
+     * @see #takePicture()
+     * @see #setPictureFileSync(boolean)
+     */
+    public void takePicture(@NonNull File file) {
+        PictureResult.Stub stub = new PictureResult.Stub();
+        stub.file = file;
+        mCameraEngine.takePicture(stub);
+    }
+
     /**
      * Asks the camera to capture a snapshot of the current preview.
      * This eventually triggers {@link CameraListener#onPictureTaken(PictureResult)} if a listener
@@ -1743,6 +2107,83 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
         mCameraEngine.takePictureSnapshot(stub);
     }
 
+    /**
+     * Asks the camera to capture a burst of the given number of images, as fast as possible.
+     * Pictures are saved in the given directory, and each one will trigger
+     * {@link CameraListener#onBurstPictureTaken(PictureResult, File, int)} as soon as it is
+     * written. When the burst is over, {@link CameraListener#onBurstCompleted(int)} is called.
+     *
+     * Bursts do not run the metering sequence (see {@link #setPictureMetering(boolean)}).
+     * With {@link PictureFormat#DNG}, pictures are streamed to file without being held in
+     * memory, so {@link PictureResult#getFile()} should be used instead of
+     * {@link PictureResult#getData()}.
+     *
+     * @param count the number of pictures
+     * @param directory the output directory
+     * @see #takePictureSnapshotBurst(int, File)
+     */
+    public void takePictureBurst(int count, @NonNull File directory) {
+        mCameraEngine.takePictureBurst(createPictureStubs(count), directory);
+    }
+
+    /**
+     * Asks the camera to capture a burst of snapshots of consecutive preview frames.
+     * Pictures are saved in the given directory, and each one will trigger
+     * {@link CameraListener#onBurstPictureTaken(PictureResult, File, int)} as soon as it is
+     * written. When the burst is over, {@link CameraListener#onBurstCompleted(int)} is called.
+     *
+     * This is only supported with {@link Preview#GL_SURFACE}.
+     *
+     * @param count the number of pictures
+     * @param directory the output directory
+     * @see #takePictureBurst(int, File)
+     */
+    public void takePictureSnapshotBurst(int count, @NonNull File directory) {
+        mCameraEngine.takePictureSnapshotBurst(createPictureStubs(count), directory);
+    }
+
+    /**
+     * Asks the camera to capture a low-light snapshot, by merging the given number of
+     * consecutive frames of the frame processing stream. Frames are aligned to compensate
+     * for hand shake, and averaged to reduce noise, while moving objects are rejected.
+     * This eventually triggers {@link CameraListener#onPictureTaken(PictureResult)} if a
+     * listener was registered.
+     *
+     * The output size is that of the frame processing stream, see
+     * {@link #setFrameProcessingMaxWidth(int)} and {@link #setFrameProcessingMaxHeight(int)}.
+     * With {@link Engine#CAMERA2}, the frame processing stream is only active while a
+     * {@link FrameProcessor} is registered: otherwise, the capture fails. If frames do not
+     * arrive in time or the preview is stopped, the capture fails as well, and
+     * {@link CameraListener#onCameraError(CameraException)} is called.
+     *
+     * Throws an exception if API level is below 21.
+     *
+     * @param frames the number of frames to merge, typically 4 to 8
+     * @see #takePictureSnapshot()
+     */
+    public void takeMergedPictureSnapshot(int frames) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            throw new IllegalStateException("takeMergedPictureSnapshot requires API 21.");
+        }
+        if (frames < 1) {
+            throw new IllegalArgumentException("Frame count should be at least 1.");
+        }
+        PictureResult.Stub stub = new PictureResult.Stub();
+        mCameraEngine.takeMergedPictureSnapshot(stub, frames);
+    }
+
+    @NonNull
+    private PictureResult.Stub[] createPictureStubs(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Burst count should be at least 1.");
+        }
+        PictureResult.Stub[] stubs = new PictureResult.Stub[count];
+        for (int i = 0; i < count; i++) {
+            stubs[i] = new PictureResult.Stub();
+        }
+        return stubs;
+    }
+
     /**
      * Starts recording a video. Video will be written to the given file,
      * so callers should ensure they have appropriate permissions to write to the file.
@@ -1791,7 +2232,29 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
      * @param file a file where the video will be saved
      */
     public void takeVideoSnapshot(@NonNull File file) {
+        takeVideoSnapshot(file, null);
+    }
+
+    /**
+     * Starts recording a fast, low quality video snapshot, together with a low resolution
+     * copy of the same video (a proxy), which is written to the second file.
+     * The proxy size and bit rate are controlled by {@link #setVideoSnapshotProxyResolution(int)}
+     * and {@link #setVideoSnapshotProxyBitRate(int)}.
+     *
+     * Both files share the same frames and audio track, and the camera texture is only
+     * drawn once per frame, so this is cheaper than encoding the proxy afterwards.
+     * The proxy file is available through {@link VideoResult#getProxyFile()}.
+     *
+     * Throws an exception if API level is below 18, or if the preview being used is not
+     * {@link Preview#GL_SURFACE}.
+     *
+     * @param file a file where the video will be saved
+     * @param proxyFile a file where the low resolution copy will be saved, or null
+     */
+    public void takeVideoSnapshot(@NonNull File file, @Nullable File proxyFile) {
         VideoResult.Stub stub = new VideoResult.Stub();
+        stub.audioProcessors = new ArrayList<>(mAudioProcessors);
+        stub.proxyFile = proxyFile;
         mCameraEngine.takeVideoSnapshot(stub, file);
         mUiHandler.post(new Runnable() {
             @Override
@@ -2278,10 +2741,47 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
             mUiHandler.post(new Runnable() {
                 @Override
                 public void run() {
+                    stub.tracer.end(CaptureTrace.STAGE_DISPATCH);
                     PictureResult result = new PictureResult(stub);
                     for (CameraListener listener : mListeners) {
                         listener.onPictureTaken(result);
                     }
+                    for (CaptureTraceListener listener : mTraceListeners) {
+                        listener.onCaptureTrace(result.getTrace());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void dispatchOnBurstPictureTaken(@NonNull final PictureResult.Stub stub,
+                                                @NonNull final File file,
+                                                final int index) {
+            LOG.i("dispatchOnBurstPictureTaken", "index:", index, stub);
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    stub.tracer.end(CaptureTrace.STAGE_DISPATCH);
+                    PictureResult result = new PictureResult(stub);
+                    for (CameraListener listener : mListeners) {
+                        listener.onBurstPictureTaken(result, file, index);
+                    }
+                    for (CaptureTraceListener listener : mTraceListeners) {
+                        listener.onCaptureTrace(result.getTrace());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void dispatchOnBurstCompleted(final int count) {
+            LOG.i("dispatchOnBurstCompleted", "count:", count);
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraListener listener : mListeners) {
+                        listener.onBurstCompleted(count);
+                    }
                 }
             });
         }
@@ -2292,10 +2792,14 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
             mUiHandler.post(new Runnable() {
                 @Override
                 public void run() {
+                    stub.tracer.end(CaptureTrace.STAGE_DISPATCH);
                     VideoResult result = new VideoResult(stub);
                     for (CameraListener listener : mListeners) {
                         listener.onVideoTaken(result);
                     }
+                    for (CaptureTraceListener listener : mTraceListeners) {
+                        listener.onCaptureTrace(result.getTrace());
+                    }
                 }
             });
         }
@@ -2476,6 +2980,34 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
                 }
             });
         }
+
+        @Override
+        public void dispatchOnVideoRecordingAudioLevel(final float rms, final float peak) {
+            // Called very often, so no logging, and nothing to do if nobody listens.
+            if (mListeners.isEmpty()) return;
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (CameraListener listener : mListeners) {
+                        listener.onVideoRecordingAudioLevel(rms, peak);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void dispatchOnStartupTrace(@NonNull final StartupTracer tracer) {
+            mUiHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    StartupTrace trace = new StartupTrace(tracer);
+                    LOG.i("dispatchOnStartupTrace", trace);
+                    for (StartupTraceListener listener : mStartupTraceListeners) {
+                        listener.onStartupTrace(trace);
+                    }
+                }
+            });
+        }
     }
 
     //endregion
@@ -2653,6 +3185,41 @@ public class CameraView extends FrameLayout implements LifecycleObserver {
 
     //endregion
 
+    //region Audio Processing
+
+    /**
+     * Adds an {@link AudioProcessor} that will modify the audio samples recorded during
+     * {@link #takeVideoSnapshot(File)}, before they are encoded. Processors are applied
+     * in the order they were added. Changes take effect from the next video snapshot.
+     *
+     * @param processor an audio processor
+     */
+    public void addAudioProcessor(@Nullable AudioProcessor processor) {
+        if (processor != null) {
+            mAudioProcessors.add(processor);
+        }
+    }
+
+    /**
+     * Remove an {@link AudioProcessor} that was previously registered.
+     *
+     * @param processor an audio processor
+     */
+    public void removeAudioProcessor(@Nullable AudioProcessor processor) {
+        if (processor != null) {
+            mAudioProcessors.remove(processor);
+        }
+    }
+
+    /**
+     * Clears the list of {@link AudioProcessor} that have been registered.
+     */
+    public void clearAudioProcessors() {
+        mAudioProcessors.clear();
+    }
+
+    //endregion
+
     //region Overlays
 
     @Override
@@ -0,0 +1,224 @@
+package com.otaliastudios.cameraview;
+
+import com.otaliastudios.cameraview.internal.CaptureTracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The timing of a single picture or video capture, split into stages (spans).
+ * It can be used to find out where the time goes, for example whether slow pictures
+ * on a specific device come from metering, the capture itself or the JPEG encoding.
+ *
+ * Traces are available through {@link PictureResult#getTrace()}, {@link VideoResult#getTrace()}
+ * and {@link CaptureTraceListener}. Not all stages are present in all traces: for example,
+ * {@link #STAGE_METERING} is only there when metering was run, and {@link #STAGE_ENCODING}
+ * is missing when the camera itself outputs JPEG.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CaptureTrace {
+
+    /**
+     * From the capture request to the moment it is executed by the engine.
+     */
+    public final static String STAGE_QUEUE = "queue";
+
+    /**
+     * Metering before the capture, for example focus, exposure and flash.
+     */
+    public final static String STAGE_METERING = "metering";
+
+    /**
+     * From the capture start to the moment the image data is available.
+     */
+    public final static String STAGE_CAPTURE = "capture";
+
+    /**
+     * Encoding the image data, for example to JPEG or DNG.
+     */
+    public final static String STAGE_ENCODING = "encoding";
+
+    /**
+     * Reading or writing the EXIF metadata.
+     */
+    public final static String STAGE_EXIF = "exif";
+
+    /**
+     * Writing the picture to file.
+     */
+    public final static String STAGE_WRITING = "writing";
+
+    /**
+     * Videos only: from the recorder start to the moment the recording actually begins.
+     */
+    public final static String STAGE_STARTING = "starting";
+
+    /**
+     * Videos only: the recording itself.
+     */
+    public final static String STAGE_RECORDING = "recording";
+
+    /**
+     * Videos only: from the end of the recording to the moment the file is complete.
+     */
+    public final static String STAGE_FINALIZING = "finalizing";
+
+    /**
+     * From the moment the result is ready to the moment it reaches the UI thread.
+     */
+    public final static String STAGE_DISPATCH = "dispatch";
+
+    /**
+     * A stage of the capture.
+     */
+    public static class Span {
+
+        private final String name;
+        private final long startNanos;
+        private final long endNanos;
+
+        private Span(@NonNull String name, long startNanos, long endNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+
+        /**
+         * Returns the stage name, for example {@link #STAGE_CAPTURE}.
+         * @return the name
+         */
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the start time, in the {@link System#nanoTime()} time base.
+         * @return the start time
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * Returns the end time, in the {@link System#nanoTime()} time base,
+         * or -1 if the stage did not end, for example because of an error.
+         * @return the end time or -1
+         */
+        public long getEndNanos() {
+            return endNanos;
+        }
+
+        /**
+         * Returns the stage duration in milliseconds, or -1 if the stage did not end.
+         * @return the duration
+         */
+        public long getDuration() {
+            if (endNanos < 0) return -1;
+            return (endNanos - startNanos) / 1000000L;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name + ":" + getDuration() + "ms";
+        }
+    }
+
+    private final boolean isVideo;
+    private final boolean isSnapshot;
+    private final List<Span> spans;
+
+    CaptureTrace(@NonNull CaptureTracer tracer, boolean isVideo, boolean isSnapshot) {
+        this.isVideo = isVideo;
+        this.isSnapshot = isSnapshot;
+        int count = tracer.getCount();
+        List<Span> spans = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            spans.add(new Span(tracer.getName(i),
+                    tracer.getStartNanos(i),
+                    tracer.getEndNanos(i)));
+        }
+        this.spans = Collections.unmodifiableList(spans);
+    }
+
+    /**
+     * Returns whether this is the trace of a video.
+     * @return true if video, false if picture
+     */
+    public boolean isVideo() {
+        return isVideo;
+    }
+
+    /**
+     * Returns whether this is the trace of a snapshot.
+     * @return whether this is a snapshot
+     */
+    public boolean isSnapshot() {
+        return isSnapshot;
+    }
+
+    /**
+     * Returns all the recorded stages, in the order they began.
+     * @return the spans
+     */
+    @NonNull
+    public List<Span> getSpans() {
+        return spans;
+    }
+
+    /**
+     * Returns the span of the given stage, if it was recorded.
+     * @param stage the stage name, for example {@link #STAGE_CAPTURE}
+     * @return the span or null
+     */
+    @Nullable
+    public Span getSpan(@NonNull String stage) {
+        for (Span span : spans) {
+            if (span.name.equals(stage)) return span;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the duration of the given stage in milliseconds,
+     * or -1 if it was not recorded or did not end.
+     * @param stage the stage name, for example {@link #STAGE_CAPTURE}
+     * @return the duration or -1
+     */
+    public long getDuration(@NonNull String stage) {
+        Span span = getSpan(stage);
+        return span == null ? -1 : span.getDuration();
+    }
+
+    /**
+     * Returns the time in milliseconds from the start of the first stage to the end
+     * of the last one, which includes any time spent between stages.
+     * @return the total duration
+     */
+    public long getTotalDuration() {
+        if (spans.isEmpty()) return 0;
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+        for (Span span : spans) {
+            start = Math.min(start, span.startNanos);
+            end = Math.max(end, Math.max(span.startNanos, span.endNanos));
+        }
+        return (end - start) / 1000000L;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "CaptureTrace{" +
+                "isVideo=" + isVideo +
+                ", isSnapshot=" + isSnapshot +
+                ", total=" + getTotalDuration() + "ms" +
+                ", spans=" + spans +
+                '}';
+    }
+}
@@ -0,0 +1,25 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+/**
+ * Receives the {@link CaptureTrace} of every picture and video taken by a {@link CameraView},
+ * whatever the capture method. This can be used to collect latency statistics, for example
+ * to catch regressions on specific devices.
+ *
+ * @see CameraView#addCaptureTraceListener(CaptureTraceListener)
+ */
+public interface CaptureTraceListener {
+
+    /**
+     * Notifies that a picture or video result was dispatched, with its trace.
+     * This is run on the UI thread, after {@link CameraListener#onPictureTaken(PictureResult)},
+     * {@link CameraListener#onVideoTaken(VideoResult)} or, for each picture of a burst,
+     * {@link CameraListener#onBurstPictureTaken(PictureResult, java.io.File, int)}.
+     *
+     * @param trace the trace
+     */
+    @UiThread
+    void onCaptureTrace(@NonNull CaptureTrace trace);
+}
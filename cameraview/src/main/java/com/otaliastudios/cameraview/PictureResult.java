@@ -6,6 +6,8 @@ import android.os.Build;
 
 import com.otaliastudios.cameraview.controls.Facing;
 import com.otaliastudios.cameraview.controls.PictureFormat;
+import com.otaliastudios.cameraview.internal.CaptureTracer;
+import com.otaliastudios.cameraview.internal.ThumbnailHelper;
 import com.otaliastudios.cameraview.size.Size;
 
 import java.io.File;
@@ -14,8 +16,8 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 /**
- * Wraps the picture captured by {@link CameraView#takePicture()} or
- * {@link CameraView#takePictureSnapshot()}.
+ * Wraps the picture captured by {@link CameraView#takePicture()},
+ * {@link CameraView#takePicture(File)} or {@link CameraView#takePictureSnapshot()}.
  */
 @SuppressWarnings("unused")
 public class PictureResult {
@@ -33,7 +35,9 @@ public class PictureResult {
         public Size size;
         public Facing facing;
         public byte[] data;
+        public File file;
         public PictureFormat format;
+        public CaptureTracer tracer = new CaptureTracer();
     }
 
     private final boolean isSnapshot;
@@ -42,7 +46,9 @@ public class PictureResult {
     private final Size size;
     private final Facing facing;
     private final byte[] data;
+    private final File file;
     private final PictureFormat format;
+    private final CaptureTrace trace;
 
     PictureResult(@NonNull Stub builder) {
         isSnapshot = builder.isSnapshot;
@@ -51,7 +57,9 @@ public class PictureResult {
         size = builder.size;
         facing = builder.facing;
         data = builder.data;
+        file = builder.file;
         format = builder.format;
+        trace = new CaptureTrace(builder.tracer, false, isSnapshot);
     }
 
     /**
@@ -109,13 +117,30 @@ public class PictureResult {
      * Returns the raw compressed, ready to be saved to file,
      * in the given format.
      *
+     * Pictures taken with {@link CameraView#takePicture(File)} are written straight to
+     * file and do not hold their data: in this case, this method throws. See {@link #getFile()}.
+     *
      * @return the compressed data stream
      */
     @NonNull
     public byte[] getData() {
+        if (data == null) {
+            throw new IllegalStateException("This picture was written to file. Use getFile().");
+        }
         return data;
     }
 
+    /**
+     * Returns the file that this picture was written to, if it was taken with
+     * {@link CameraView#takePicture(File)}. In this case, {@link #getData()} can't be used.
+     *
+     * @return the file, or null
+     */
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
     /**
      * Returns the format for {@link #getData()}.
      *
@@ -126,6 +151,17 @@ public class PictureResult {
         return format;
     }
 
+    /**
+     * Returns the timing of the stages of this capture, from the moment it was requested
+     * to the moment this result was dispatched.
+     *
+     * @return the trace
+     */
+    @NonNull
+    public CaptureTrace getTrace() {
+        return trace;
+    }
+
     /**
      * Shorthand for {@link CameraUtils#decodeBitmap(byte[], int, int, BitmapCallback)}.
      * Decodes this picture on a background thread and posts the result in the UI thread using
@@ -136,17 +172,16 @@ public class PictureResult {
      * @param callback a callback to be notified of image decoding
      */
     public void toBitmap(int maxWidth, int maxHeight, @NonNull BitmapCallback callback) {
-        if (format == PictureFormat.JPEG) {
-            CameraUtils.decodeBitmap(getData(), maxWidth, maxHeight, new BitmapFactory.Options(),
+        if (!isDecodable()) {
+            throw new UnsupportedOperationException("PictureResult.toBitmap() does not support "
+                    + "this picture format: " + format);
+        }
+        if (file != null) {
+            CameraUtils.decodeBitmap(file, maxWidth, maxHeight, new BitmapFactory.Options(),
                     rotation, callback);
-        } else if (format == PictureFormat.DNG && Build.VERSION.SDK_INT >= 24) {
-            // Apparently: BitmapFactory added DNG support in API 24.
-            // https://github.com/aosp-mirror/platform_frameworks_base/blob/nougat-mr1-release/core/jni/android/graphics/BitmapFactory.cpp
+        } else {
             CameraUtils.decodeBitmap(getData(), maxWidth, maxHeight, new BitmapFactory.Options(),
                     rotation, callback);
-        } else {
-            throw new UnsupportedOperationException("PictureResult.toBitmap() does not support "
-                    + "this picture format: " + format);
         }
     }
 
@@ -161,15 +196,51 @@ public class PictureResult {
         toBitmap(-1, -1, callback);
     }
 
+    /**
+     * Decodes a small version of this picture on a background thread and posts the result
+     * in the UI thread using the given callback. This is much faster than
+     * {@link #toBitmap(int, int, BitmapCallback)}: the thumbnail embedded in the EXIF metadata
+     * is used when it is big enough, and the returned {@link Thumbnail} applies the rotation
+     * when drawing, so that the bitmap is never copied.
+     *
+     * The thumbnail covers the given size, but might be bigger than it.
+     *
+     * @param maxWidth the max. width of the thumbnail
+     * @param maxHeight the max. height of the thumbnail
+     * @param callback a callback to be notified of thumbnail decoding
+     */
+    public void toThumbnail(int maxWidth, int maxHeight, @NonNull ThumbnailCallback callback) {
+        if (!isDecodable()) {
+            throw new UnsupportedOperationException("PictureResult.toThumbnail() does not "
+                    + "support this picture format: " + format);
+        }
+        ThumbnailHelper.Source source = file != null
+                ? ThumbnailHelper.of(file)
+                : ThumbnailHelper.of(getData());
+        CameraUtils.decodeThumbnail(source, maxWidth, maxHeight, rotation, callback);
+    }
+
+    private boolean isDecodable() {
+        // Apparently: BitmapFactory added DNG support in API 24.
+        // https://github.com/aosp-mirror/platform_frameworks_base/blob/nougat-mr1-release/core/jni/android/graphics/BitmapFactory.cpp
+        return format == PictureFormat.JPEG
+                || (format == PictureFormat.DNG && Build.VERSION.SDK_INT >= 24);
+    }
+
     /**
      * Shorthand for {@link CameraUtils#writeToFile(byte[], File, FileCallback)}.
      * This writes this picture to file on a background thread and posts the result in the UI
-     * thread using the given callback.
+     * thread using the given callback. If the picture was already written to file
+     * (see {@link #getFile()}), that file is copied.
      *
      * @param file the file to write into
      * @param callback a callback
      */
     public void toFile(@NonNull File file, @NonNull FileCallback callback) {
-        CameraUtils.writeToFile(getData(), file, callback);
+        if (this.file != null) {
+            CameraUtils.copyFile(this.file, file, callback);
+        } else {
+            CameraUtils.writeToFile(getData(), file, callback);
+        }
     }
 }
@@ -0,0 +1,272 @@
+package com.otaliastudios.cameraview;
+
+import com.otaliastudios.cameraview.internal.StartupTracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The timing of a single camera startup, from {@link CameraView#open()} to the moment
+ * the preview is running. It lists the engine jobs that were executed meanwhile, each
+ * with the time it spent waiting in the queue and the time it took to run. Among them
+ * are the state changes (phases), like opening the camera ({@link #PHASE_ENGINE}).
+ *
+ * Traces are available through {@link StartupTraceListener}. They can also be exported
+ * with {@link #toChromeTrace()} for offline analysis of slow startups.
+ */
+@SuppressWarnings("WeakerAccess")
+public class StartupTrace {
+
+    /**
+     * Opening the camera device.
+     */
+    public final static String PHASE_ENGINE = "ENGINE";
+
+    /**
+     * Binding the camera outputs to the preview surface and the other surfaces.
+     */
+    public final static String PHASE_BIND = "BIND";
+
+    /**
+     * Starting the preview stream.
+     */
+    public final static String PHASE_PREVIEW = "PREVIEW";
+
+    private final static String STATE_CHANGE = " >> ";
+
+    /**
+     * A job executed during startup.
+     */
+    public static class Job {
+
+        private final String name;
+        private final long scheduledNanos;
+        private final long startNanos;
+        private final long endNanos;
+        private final boolean successful;
+
+        private Job(@NonNull String name,
+                    long scheduledNanos,
+                    long startNanos,
+                    long endNanos,
+                    boolean successful) {
+            this.name = name;
+            this.scheduledNanos = scheduledNanos;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.successful = successful;
+        }
+
+        /**
+         * Returns the job name. For state changes, this is in the form "BIND >> PREVIEW".
+         * @return the name
+         */
+        @NonNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns whether this job is a state change, in which case
+         * {@link #getPhase()} returns the target state.
+         * @return whether this is a state change
+         */
+        public boolean isStateChange() {
+            return name.contains(STATE_CHANGE);
+        }
+
+        /**
+         * Returns the state this job moves to, for example {@link #PHASE_BIND},
+         * or null if this job is not a state change.
+         * @return the phase or null
+         */
+        @Nullable
+        public String getPhase() {
+            int index = name.indexOf(STATE_CHANGE);
+            return index < 0 ? null : name.substring(index + STATE_CHANGE.length());
+        }
+
+        /**
+         * Returns whether the job succeeded. Failed jobs and jobs that were
+         * aborted, for example because the state was not the expected one, return false.
+         * @return whether it succeeded
+         */
+        public boolean isSuccessful() {
+            return successful;
+        }
+
+        /**
+         * Returns the time at which the job was scheduled,
+         * in the {@link System#nanoTime()} time base.
+         * @return the schedule time
+         */
+        public long getScheduledNanos() {
+            return scheduledNanos;
+        }
+
+        /**
+         * Returns the time at which the job started executing,
+         * in the {@link System#nanoTime()} time base.
+         * @return the start time
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * Returns the time at which the job completed,
+         * in the {@link System#nanoTime()} time base.
+         * @return the end time
+         */
+        public long getEndNanos() {
+            return endNanos;
+        }
+
+        /**
+         * Returns the time in milliseconds that the job waited before executing,
+         * for example because other jobs were running.
+         * @return the queue wait
+         */
+        public long getQueueWait() {
+            return (startNanos - scheduledNanos) / 1000000L;
+        }
+
+        /**
+         * Returns the time in milliseconds that the job took to execute.
+         * @return the duration
+         */
+        public long getDuration() {
+            return (endNanos - startNanos) / 1000000L;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return name + ":" + getQueueWait() + "+" + getDuration() + "ms"
+                    + (successful ? "" : "(aborted)");
+        }
+    }
+
+    private final long startNanos;
+    private final long endNanos;
+    private final List<Job> jobs;
+
+    StartupTrace(@NonNull StartupTracer tracer) {
+        this.startNanos = tracer.getStartNanos();
+        this.endNanos = tracer.getEndNanos();
+        int count = tracer.getCount();
+        List<Job> jobs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            jobs.add(new Job(tracer.getName(i),
+                    tracer.getScheduledNanos(i),
+                    tracer.getStartedNanos(i),
+                    tracer.getCompletedNanos(i),
+                    tracer.isSuccessful(i)));
+        }
+        this.jobs = Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Returns all the executed jobs, in the order they completed.
+     * @return the jobs
+     */
+    @NonNull
+    public List<Job> getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Returns the successful state change to the given phase, if any.
+     * @param phase the phase, for example {@link #PHASE_ENGINE}
+     * @return the job or null
+     */
+    @Nullable
+    public Job getPhase(@NonNull String phase) {
+        for (Job job : jobs) {
+            if (job.successful && phase.equals(job.getPhase())) return job;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the duration of the given phase in milliseconds, or -1 if it was not reached.
+     * @param phase the phase, for example {@link #PHASE_ENGINE}
+     * @return the duration or -1
+     */
+    public long getPhaseDuration(@NonNull String phase) {
+        Job job = getPhase(phase);
+        return job == null ? -1 : job.getDuration();
+    }
+
+    /**
+     * Returns the time in milliseconds from {@link CameraView#open()} to the moment the
+     * preview was started. With {@link com.otaliastudios.cameraview.controls.Engine#CAMERA2},
+     * this includes the first preview frame.
+     * @return the total duration
+     */
+    public long getTotalDuration() {
+        return (endNanos - startNanos) / 1000000L;
+    }
+
+    /**
+     * Exports this trace in the Chrome trace event format, which can be opened
+     * with chrome://tracing or https://ui.perfetto.dev. Times are in microseconds
+     * from {@link CameraView#open()}. Each job is a complete event, and the time
+     * it spent in the queue is a separate event on a second track.
+     *
+     * @return a JSON string
+     */
+    @NonNull
+    public String toChromeTrace() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"traceEvents\":[");
+        appendEvent(builder, "open", "startup", 1, startNanos, endNanos, true);
+        for (Job job : jobs) {
+            builder.append(',');
+            appendEvent(builder, job.name, "queue", 2,
+                    job.scheduledNanos, job.startNanos, job.successful);
+            builder.append(',');
+            appendEvent(builder, job.name, job.isStateChange() ? "state" : "job", 1,
+                    job.startNanos, job.endNanos, job.successful);
+        }
+        builder.append("],\"displayTimeUnit\":\"ms\"}");
+        return builder.toString();
+    }
+
+    private void appendEvent(@NonNull StringBuilder builder,
+                             @NonNull String name,
+                             @NonNull String category,
+                             int thread,
+                             long start,
+                             long end,
+                             boolean successful) {
+        builder.append("{\"name\":\"");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') builder.append('\\');
+            builder.append(c);
+        }
+        builder.append("\",\"cat\":\"").append(category)
+                .append("\",\"ph\":\"X\",\"pid\":1,\"tid\":").append(thread)
+                .append(",\"ts\":").append((start - startNanos) / 1000L)
+                .append(",\"dur\":").append((end - start) / 1000L)
+                .append(",\"args\":{\"successful\":").append(successful)
+                .append("}}");
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "StartupTrace{" +
+                "total=" + getTotalDuration() + "ms" +
+                ", engine=" + getPhaseDuration(PHASE_ENGINE) + "ms" +
+                ", bind=" + getPhaseDuration(PHASE_BIND) + "ms" +
+                ", preview=" + getPhaseDuration(PHASE_PREVIEW) + "ms" +
+                ", jobs=" + jobs +
+                '}';
+    }
+}
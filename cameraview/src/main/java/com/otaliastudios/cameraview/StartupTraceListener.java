@@ -0,0 +1,22 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+/**
+ * Receives a {@link StartupTrace} after each {@link CameraView#open()}, once the preview
+ * is running. This can be used to find out which phase makes startup slow on specific devices.
+ *
+ * @see CameraView#addStartupTraceListener(StartupTraceListener)
+ */
+public interface StartupTraceListener {
+
+    /**
+     * Notifies that the camera was started, with the startup trace.
+     * This is run on the UI thread.
+     *
+     * @param trace the trace
+     */
+    @UiThread
+    void onStartupTrace(@NonNull StartupTrace trace);
+}
@@ -0,0 +1,127 @@
+package com.otaliastudios.cameraview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import com.otaliastudios.cameraview.internal.ThumbnailHelper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A small preview of a {@link PictureResult}, as returned by
+ * {@link PictureResult#toThumbnail(int, int, ThumbnailCallback)}.
+ *
+ * This is a {@link Drawable} that can be passed to an ImageView. The bitmap is not rotated:
+ * the picture rotation is applied when drawing, so no rotated copy is ever allocated.
+ * Once the thumbnail is not displayed anymore, {@link #recycle()} can be called so that
+ * its bitmap is reused by the next thumbnail.
+ */
+@SuppressWarnings("WeakerAccess")
+public class Thumbnail extends Drawable {
+
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final int mRotation;
+    private final boolean mEmbedded;
+    private Bitmap mBitmap;
+
+    Thumbnail(@NonNull Bitmap bitmap, int rotation, boolean embedded) {
+        mBitmap = bitmap;
+        mRotation = rotation;
+        mEmbedded = embedded;
+    }
+
+    /**
+     * Returns the thumbnail bitmap, before rotation, or null if it was recycled.
+     *
+     * @return the bitmap
+     */
+    @Nullable
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * Returns the clock-wise rotation that is applied to the bitmap when drawing.
+     *
+     * @return the clock-wise rotation
+     */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * Returns true if this thumbnail was found in the picture EXIF metadata,
+     * false if it was decoded from the picture itself.
+     *
+     * @return whether this is the EXIF thumbnail
+     */
+    public boolean isEmbedded() {
+        return mEmbedded;
+    }
+
+    /**
+     * Releases the bitmap so that it can be reused by future thumbnails.
+     * After this call, the thumbnail draws nothing and {@link #getBitmap()} returns null.
+     */
+    public void recycle() {
+        if (mBitmap != null) {
+            ThumbnailHelper.recycle(mBitmap);
+            mBitmap = null;
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        if (mBitmap == null) return;
+        Rect bounds = getBounds();
+        if (bounds.isEmpty()) return;
+        boolean flip = mRotation % 180 != 0;
+        float width = flip ? mBitmap.getHeight() : mBitmap.getWidth();
+        float height = flip ? mBitmap.getWidth() : mBitmap.getHeight();
+        int save = canvas.save();
+        canvas.translate(bounds.exactCenterX(), bounds.exactCenterY());
+        canvas.scale(bounds.width() / width, bounds.height() / height);
+        canvas.rotate(mRotation);
+        canvas.drawBitmap(mBitmap, -mBitmap.getWidth() / 2F, -mBitmap.getHeight() / 2F, mPaint);
+        canvas.restoreToCount(save);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        if (mBitmap == null) return -1;
+        return mRotation % 180 != 0 ? mBitmap.getHeight() : mBitmap.getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        if (mBitmap == null) return -1;
+        return mRotation % 180 != 0 ? mBitmap.getWidth() : mBitmap.getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        if (mBitmap == null || mBitmap.hasAlpha() || mPaint.getAlpha() < 255) {
+            return PixelFormat.TRANSLUCENT;
+        }
+        return PixelFormat.OPAQUE;
+    }
+}
@@ -0,0 +1,20 @@
+package com.otaliastudios.cameraview;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+/**
+ * Receives callbacks about a thumbnail decoding operation.
+ */
+public interface ThumbnailCallback {
+
+    /**
+     * Notifies that the thumbnail was successfully decoded.
+     * This is run on the UI thread.
+     * Returns a null object if the picture could not be decoded.
+     *
+     * @param thumbnail decoded thumbnail, or null
+     */
+    @UiThread
+    void onThumbnailReady(@Nullable Thumbnail thumbnail);
+}
@@ -2,14 +2,18 @@ package com.otaliastudios.cameraview;
 
 import android.location.Location;
 
+import com.otaliastudios.cameraview.audio.AudioProcessor;
 import com.otaliastudios.cameraview.controls.Audio;
 import com.otaliastudios.cameraview.controls.AudioCodec;
 import com.otaliastudios.cameraview.controls.Facing;
 import com.otaliastudios.cameraview.controls.VideoCodec;
+import com.otaliastudios.cameraview.internal.CaptureTracer;
 import com.otaliastudios.cameraview.size.Size;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.util.ArrayList;
+import java.util.List;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -41,8 +45,22 @@ public class VideoResult {
         public int maxDuration;
         public int endReason;
         public int videoBitRate;
+        public int videoMinBitRate;
+        public int videoMaxBitRate;
         public int videoFrameRate;
         public int audioBitRate;
+        public int audioDroppedFrames;
+        public int audioMaxQueueSize;
+        public float audioAverageQueueSize;
+        public long timeToFirstFrame;
+        public long timeLapseInterval;
+        public int timeLapseFrameRate;
+        public File proxyFile;
+        public int proxyResolution;
+        public Size proxySize;
+        public int proxyVideoBitRate;
+        public List<AudioProcessor> audioProcessors = new ArrayList<>();
+        public CaptureTracer tracer = new CaptureTracer();
     }
 
     @SuppressWarnings({"WeakerAccess", "unused"})
@@ -68,8 +86,19 @@ public class VideoResult {
     private final int maxDuration;
     private final int endReason;
     private final int videoBitRate;
+    private final int videoMinBitRate;
+    private final int videoMaxBitRate;
     private final int videoFrameRate;
     private final int audioBitRate;
+    private final int audioDroppedFrames;
+    private final int audioMaxQueueSize;
+    private final float audioAverageQueueSize;
+    private final long timeToFirstFrame;
+    private final long timeLapseInterval;
+    private final File proxyFile;
+    private final Size proxySize;
+    private final int proxyVideoBitRate;
+    private final CaptureTrace trace;
 
     VideoResult(@NonNull Stub builder) {
         isSnapshot = builder.isSnapshot;
@@ -86,8 +115,19 @@ public class VideoResult {
         maxDuration = builder.maxDuration;
         endReason = builder.endReason;
         videoBitRate = builder.videoBitRate;
+        videoMinBitRate = builder.videoMinBitRate;
+        videoMaxBitRate = builder.videoMaxBitRate;
         videoFrameRate = builder.videoFrameRate;
         audioBitRate = builder.audioBitRate;
+        audioDroppedFrames = builder.audioDroppedFrames;
+        audioMaxQueueSize = builder.audioMaxQueueSize;
+        audioAverageQueueSize = builder.audioAverageQueueSize;
+        timeToFirstFrame = builder.timeToFirstFrame;
+        timeLapseInterval = builder.timeLapseInterval;
+        proxyFile = builder.proxyFile;
+        proxySize = builder.proxySize;
+        proxyVideoBitRate = builder.proxyVideoBitRate;
+        trace = new CaptureTrace(builder.tracer, true, isSnapshot);
     }
 
     /**
@@ -235,6 +275,26 @@ public class VideoResult {
         return videoBitRate;
     }
 
+    /**
+     * Returns the min bit rate that the encoder was allowed to use, if adaptive
+     * bit rate was enabled for this video. Returns 0 otherwise.
+     *
+     * @return the video min bit rate
+     */
+    public int getVideoMinBitRate() {
+        return videoMinBitRate;
+    }
+
+    /**
+     * Returns the max bit rate that the encoder was allowed to use, if adaptive
+     * bit rate was enabled for this video. Returns 0 otherwise.
+     *
+     * @return the video max bit rate
+     */
+    public int getVideoMaxBitRate() {
+        return videoMaxBitRate;
+    }
+
     /**
      * Returns the frame rate used for video encoding
      * in frames per second.
@@ -253,4 +313,101 @@ public class VideoResult {
     public int getAudioBitRate() {
         return audioBitRate;
     }
+
+    /**
+     * Returns the number of audio frames that were lost during recording, because
+     * the encoder could not keep up with the microphone. Each frame holds 1024 samples
+     * per channel. This is only available for video snapshots.
+     *
+     * @return the dropped audio frames
+     */
+    public int getAudioDroppedFrames() {
+        return audioDroppedFrames;
+    }
+
+    /**
+     * Returns the max number of audio frames that were waiting to be encoded
+     * at any given time. This is only available for video snapshots.
+     *
+     * @return the max audio queue size
+     */
+    public int getAudioMaxQueueSize() {
+        return audioMaxQueueSize;
+    }
+
+    /**
+     * Returns the average number of audio frames that were waiting to be encoded.
+     * This is only available for video snapshots.
+     *
+     * @return the average audio queue size
+     */
+    public float getAudioAverageQueueSize() {
+        return audioAverageQueueSize;
+    }
+
+    /**
+     * Returns the time in milliseconds between the video snapshot request and the moment
+     * the first frame was passed to the encoder. This is only available for video snapshots,
+     * and can be reduced with {@link CameraView#setVideoSnapshotWarmUp(boolean)}.
+     *
+     * @return the time to first frame
+     */
+    public long getTimeToFirstFrame() {
+        return timeToFirstFrame;
+    }
+
+    /**
+     * Returns the interval in milliseconds between two frames of this video, if it was
+     * recorded as a time-lapse. In this case, {@link #getVideoFrameRate()} is the playback
+     * frame rate. Returns 0 otherwise.
+     *
+     * @return the time-lapse interval
+     */
+    public long getTimeLapseInterval() {
+        return timeLapseInterval;
+    }
+
+    /**
+     * Returns the file where the low resolution copy of this video was saved,
+     * if it was requested through {@link CameraView#takeVideoSnapshot(File, File)}.
+     * Returns null otherwise.
+     *
+     * @return the proxy file
+     */
+    @Nullable
+    public File getProxyFile() {
+        return proxyFile;
+    }
+
+    /**
+     * Returns the size of the low resolution copy of this video,
+     * or null if it was not requested.
+     *
+     * @return the proxy size
+     */
+    @Nullable
+    public Size getProxySize() {
+        return proxySize;
+    }
+
+    /**
+     * Returns the bit rate used to encode the low resolution copy of this video,
+     * or 0 if it was not requested.
+     *
+     * @return the proxy bit rate
+     */
+    public int getProxyVideoBitRate() {
+        return proxyVideoBitRate;
+    }
+
+    /**
+     * Returns the timing of the stages of this recording, from the moment it was requested
+     * to the moment this result was dispatched.
+     *
+     * @return the trace
+     */
+    @NonNull
+    public CaptureTrace getTrace() {
+        return trace;
+    }
 }
@@ -0,0 +1,42 @@
+package com.otaliastudios.cameraview.audio;
+
+import com.otaliastudios.cameraview.CameraView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.nio.ShortBuffer;
+
+/**
+ * An AudioProcessor can modify the 16-bit PCM samples recorded from the microphone,
+ * before they are encoded into a video snapshot.
+ * It must be passed to {@link CameraView#addAudioProcessor(AudioProcessor)}.
+ *
+ * Processors are called on the recording thread, so they must be fast and should not
+ * allocate in {@link #process(ShortBuffer)}: any delay here means that audio frames
+ * will be lost.
+ */
+public interface AudioProcessor {
+
+    /**
+     * Called before recording starts with the format of the input samples.
+     * This is the place to reset any state and allocate buffers, if needed.
+     *
+     * @param sampleRate the sample rate in Hz
+     * @param channels the number of interleaved channels
+     * @return the number of interleaved channels after processing
+     */
+    @WorkerThread
+    int configure(int sampleRate, int channels);
+
+    /**
+     * Processes the interleaved samples between the buffer position and limit, in place.
+     * Processors that reduce the number of samples (for example, because they reduce the
+     * number of channels) should write them starting at the current position, and
+     * move the limit accordingly. The position should not be changed.
+     *
+     * @param samples the samples
+     */
+    @WorkerThread
+    void process(@NonNull ShortBuffer samples);
+}
@@ -0,0 +1,20 @@
+package com.otaliastudios.cameraview.audio;
+
+/**
+ * Utilities for {@link AudioProcessor}s.
+ */
+class AudioProcessors {
+
+    private AudioProcessors() {}
+
+    /**
+     * Converts the given value to a 16-bit sample, clipping it if needed.
+     * @param value the value
+     * @return a sample
+     */
+    static short clip(float value) {
+        if (value > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (value < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) value;
+    }
+}
@@ -0,0 +1,37 @@
+package com.otaliastudios.cameraview.audio;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ShortBuffer;
+
+/**
+ * An {@link AudioProcessor} that mixes stereo samples down to a single channel,
+ * by averaging the left and right samples. Mono input is left untouched.
+ *
+ * The encoded video will have a mono track, but the microphone is still read
+ * in stereo, which can be useful on devices with better stereo sources.
+ */
+public class DownmixAudioProcessor implements AudioProcessor {
+
+    private int mChannels;
+
+    @Override
+    public int configure(int sampleRate, int channels) {
+        mChannels = channels;
+        return channels == 2 ? 1 : channels;
+    }
+
+    @Override
+    public void process(@NonNull ShortBuffer samples) {
+        if (mChannels != 2) return;
+        int start = samples.position();
+        int frames = (samples.limit() - start) / 2;
+        for (int i = 0; i < frames; i++) {
+            // Writing at start + i is safe, we have already read everything before start + 2i.
+            int left = samples.get(start + 2 * i);
+            int right = samples.get(start + 2 * i + 1);
+            samples.put(start + i, (short) ((left + right) >> 1));
+        }
+        samples.limit(start + frames);
+    }
+}
@@ -0,0 +1,35 @@
+package com.otaliastudios.cameraview.audio;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ShortBuffer;
+
+/**
+ * An {@link AudioProcessor} that multiplies all samples by a constant gain.
+ * Samples that would overflow are clipped.
+ */
+public class GainAudioProcessor implements AudioProcessor {
+
+    private final float mGain;
+
+    /**
+     * Creates a new processor.
+     * @param gain the gain, for example 2 to double the amplitude
+     */
+    public GainAudioProcessor(float gain) {
+        mGain = gain;
+    }
+
+    @Override
+    public int configure(int sampleRate, int channels) {
+        return channels;
+    }
+
+    @Override
+    public void process(@NonNull ShortBuffer samples) {
+        int end = samples.limit();
+        for (int i = samples.position(); i < end; i++) {
+            samples.put(i, AudioProcessors.clip(samples.get(i) * mGain));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.otaliastudios.cameraview.audio;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ShortBuffer;
+
+/**
+ * An {@link AudioProcessor} that applies a first order high-pass filter to each channel.
+ * With a low cutoff frequency (for example, 20Hz) this can be used to remove the DC offset
+ * that some microphones have. With higher values, it also reduces rumble and wind noise.
+ */
+public class HighPassAudioProcessor implements AudioProcessor {
+
+    /**
+     * A cutoff frequency that only removes the DC offset.
+     */
+    public static final float DC_CUTOFF_FREQUENCY = 20F;
+
+    private final float mCutoffFrequency;
+    private float mAlpha;
+    private int mChannels;
+    private float[] mLastInput;
+    private float[] mLastOutput;
+
+    /**
+     * Creates a new processor.
+     * @param cutoffFrequency the cutoff frequency in Hz
+     */
+    public HighPassAudioProcessor(float cutoffFrequency) {
+        mCutoffFrequency = cutoffFrequency;
+    }
+
+    @Override
+    public int configure(int sampleRate, int channels) {
+        double rc = 1D / (2D * Math.PI * mCutoffFrequency);
+        double dt = 1D / sampleRate;
+        mAlpha = (float) (rc / (rc + dt));
+        mChannels = channels;
+        mLastInput = new float[channels];
+        mLastOutput = new float[channels];
+        return channels;
+    }
+
+    @Override
+    public void process(@NonNull ShortBuffer samples) {
+        int end = samples.limit();
+        int channel = 0;
+        for (int i = samples.position(); i < end; i++) {
+            float input = samples.get(i);
+            // y[n] = a * (y[n-1] + x[n] - x[n-1])
+            float output = mAlpha * (mLastOutput[channel] + input - mLastInput[channel]);
+            mLastInput[channel] = input;
+            mLastOutput[channel] = output;
+            samples.put(i, AudioProcessors.clip(output));
+            if (++channel == mChannels) channel = 0;
+        }
+    }
+}
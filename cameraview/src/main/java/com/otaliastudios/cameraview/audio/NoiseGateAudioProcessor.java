@@ -0,0 +1,72 @@
+package com.otaliastudios.cameraview.audio;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ShortBuffer;
+
+/**
+ * An {@link AudioProcessor} that silences the audio when its level is below a threshold,
+ * for example to remove the background hiss between words.
+ *
+ * The gate opens quickly when the level goes above the threshold, and closes slowly when
+ * it goes below, so that words are not cut and no clicks are introduced.
+ */
+public class NoiseGateAudioProcessor implements AudioProcessor {
+
+    private final static float ATTACK_MILLIS = 1F;
+    private final static float RELEASE_MILLIS = 100F;
+
+    private final float mThreshold;
+    private int mChannels;
+    private float mAttack;
+    private float mRelease;
+    private float mEnvelope;
+    private float mGain;
+
+    /**
+     * Creates a new processor.
+     * @param threshold the level below which audio is silenced, from 0 to 1
+     */
+    public NoiseGateAudioProcessor(float threshold) {
+        mThreshold = threshold * 32768F;
+    }
+
+    @Override
+    public int configure(int sampleRate, int channels) {
+        mChannels = channels;
+        mAttack = coefficient(sampleRate, ATTACK_MILLIS);
+        mRelease = coefficient(sampleRate, RELEASE_MILLIS);
+        mEnvelope = 0F;
+        mGain = 0F;
+        return channels;
+    }
+
+    // The smoothing coefficient to reach ~63% of the target in the given time.
+    private static float coefficient(int sampleRate, float millis) {
+        return (float) (1D - Math.exp(-1D / (sampleRate * millis / 1000D)));
+    }
+
+    @Override
+    public void process(@NonNull ShortBuffer samples) {
+        int end = samples.limit() - mChannels + 1;
+        for (int i = samples.position(); i < end; i += mChannels) {
+            // Follow the peak level of this frame, across channels.
+            int peak = 0;
+            for (int c = 0; c < mChannels; c++) {
+                int sample = Math.abs(samples.get(i + c));
+                if (sample > peak) peak = sample;
+            }
+            if (peak > mEnvelope) {
+                mEnvelope = peak;
+            } else {
+                mEnvelope += (peak - mEnvelope) * mRelease;
+            }
+            // Move the gain towards the target.
+            float target = mEnvelope >= mThreshold ? 1F : 0F;
+            mGain += (target - mGain) * (target > mGain ? mAttack : mRelease);
+            for (int c = 0; c < mChannels; c++) {
+                samples.put(i + c, (short) (samples.get(i + c) * mGain));
+            }
+        }
+    }
+}
@@ -37,9 +37,11 @@ import com.otaliastudios.cameraview.gesture.Gesture;
 import com.otaliastudios.cameraview.controls.Hdr;
 import com.otaliastudios.cameraview.controls.Mode;
 import com.otaliastudios.cameraview.controls.WhiteBalance;
+import com.otaliastudios.cameraview.internal.CameraOptionsCache;
 import com.otaliastudios.cameraview.internal.CropHelper;
 import com.otaliastudios.cameraview.metering.MeteringRegions;
 import com.otaliastudios.cameraview.metering.MeteringTransform;
+import com.otaliastudios.cameraview.picture.Full1BurstPictureRecorder;
 import com.otaliastudios.cameraview.picture.Full1PictureRecorder;
 import com.otaliastudios.cameraview.picture.Snapshot1PictureRecorder;
 import com.otaliastudios.cameraview.picture.SnapshotGlPictureRecorder;
@@ -49,6 +51,7 @@ import com.otaliastudios.cameraview.size.Size;
 import com.otaliastudios.cameraview.video.Full1VideoRecorder;
 import com.otaliastudios.cameraview.video.SnapshotVideoRecorder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -69,6 +72,9 @@ public class Camera1Engine extends CameraBaseEngine implements
     private final Camera1Mapper mMapper = Camera1Mapper.get();
     private Camera mCamera;
     @VisibleForTesting int mCameraId;
+    // Key and signature of the current camera in the CameraOptionsCache.
+    private String mOptionsKey;
+    private String mOptionsSignature;
 
     public Camera1Engine(@NonNull Callback callback) {
         super(callback);
@@ -100,6 +106,10 @@ public class Camera1Engine extends CameraBaseEngine implements
     @NonNull
     @Override
     protected List<Size> getPreviewStreamAvailableSizes() {
+        String key = mOptionsKey == null ? null : mOptionsKey + "/preview";
+        List<Size> cached = key == null ? null
+                : CameraOptionsCache.get().getSizes(key, mOptionsSignature);
+        if (cached != null) return new ArrayList<>(cached);
         List<Camera.Size> sizes;
         try {
             sizes = mCamera.getParameters().getSupportedPreviewSizes();
@@ -113,6 +123,7 @@ public class Camera1Engine extends CameraBaseEngine implements
             if (!result.contains(add)) result.add(add);
         }
         LOG.i("getPreviewStreamAvailableSizes:", result);
+        if (key != null) CameraOptionsCache.get().putSizes(key, mOptionsSignature, result);
         return result;
     }
 
@@ -175,8 +186,16 @@ public class Camera1Engine extends CameraBaseEngine implements
         LOG.i("onStartEngine:", "Applying default parameters.");
         try {
             Camera.Parameters params = mCamera.getParameters();
-            mCameraOptions = new Camera1Options(params, mCameraId,
-                    getAngles().flip(Reference.SENSOR, Reference.VIEW));
+            boolean flip = getAngles().flip(Reference.SENSOR, Reference.VIEW);
+            CameraOptionsCache cache = CameraOptionsCache.get();
+            mOptionsKey = CameraOptionsCache.createKey("Camera1", String.valueOf(mCameraId),
+                    flip, ImageFormat.JPEG);
+            mOptionsSignature = createOptionsSignature(params);
+            mCameraOptions = cache.getOptions(mOptionsKey, mOptionsSignature);
+            if (mCameraOptions == null) {
+                mCameraOptions = new Camera1Options(params, mCameraId, flip);
+                cache.putOptions(mOptionsKey, mOptionsSignature, mCameraOptions);
+            }
             applyAllParameters(params);
             mCamera.setParameters(params);
         } catch (Exception e) {
@@ -190,10 +209,32 @@ public class Camera1Engine extends CameraBaseEngine implements
             LOG.e("onStartEngine:", "Failed to connect. Can't set display orientation, maybe preview already exists?");
             throw new CameraException(CameraException.REASON_FAILED_TO_CONNECT);
         }
+        warmUpVideoCodecs();
         LOG.i("onStartEngine:", "Ended");
         return Tasks.forResult(mCameraOptions);
     }
 
+    /**
+     * Summarizes the parameters that {@link Camera1Options} and the size lists depend on,
+     * that is, the supported values and ranges. The current values are left out.
+     */
+    @NonNull
+    private static String createOptionsSignature(@NonNull Camera.Parameters params) {
+        StringBuilder builder = new StringBuilder();
+        for (String entry : params.flatten().split(";")) {
+            int index = entry.indexOf('=');
+            String key = index < 0 ? entry : entry.substring(0, index);
+            if (key.contains("-values")
+                    || key.contains("supported")
+                    || key.startsWith("max-")
+                    || key.startsWith("min-")
+                    || key.endsWith("-step")) {
+                builder.append(entry).append(';');
+            }
+        }
+        return CameraOptionsCache.createSignature(Camera.getNumberOfCameras(), builder);
+    }
+
     @EngineThread
     @NonNull
     @Override
@@ -291,6 +332,7 @@ public class Camera1Engine extends CameraBaseEngine implements
             mVideoRecorder.stop(true);
             mVideoRecorder = null;
         }
+        cancelMergedPictureSnapshot();
         mPictureRecorder = null;
         getFrameManager().release();
         LOG.i("onStopPreview:", "Releasing preview buffers.");
@@ -311,6 +353,7 @@ public class Camera1Engine extends CameraBaseEngine implements
     protected Task<Void> onStopBind() {
         mPreviewStreamSize = null;
         mCaptureSize = null;
+        releaseSnapshotGlRenderer();
         try {
             if (mPreview.getOutputClass() == SurfaceHolder.class) {
                 mCamera.setPreviewDisplay(null);
@@ -360,7 +403,10 @@ public class Camera1Engine extends CameraBaseEngine implements
             mCameraOptions = null;
         }
         mVideoRecorder = null;
+        releaseVideoCodecs();
         mCameraOptions = null;
+        mOptionsKey = null;
+        mOptionsSignature = null;
         mCamera = null;
         LOG.w("onStopEngine:", "Clean up.", "Returning.");
         return Tasks.forResult(null);
@@ -382,6 +428,28 @@ public class Camera1Engine extends CameraBaseEngine implements
         LOG.i("onTakePicture:", "executed.");
     }
 
+    /**
+     * Camera1 has no burst API, so pictures are taken one after the other.
+     * Encoding and writing still overlap with the next capture.
+     */
+    @EngineThread
+    @Override
+    protected void onTakePictureBurst(@NonNull PictureResult.Stub[] stubs,
+                                      @NonNull File directory) {
+        LOG.i("onTakePictureBurst:", "executing.", "count:", stubs.length);
+        int rotation = getAngles().offset(Reference.SENSOR, Reference.OUTPUT,
+                Axis.RELATIVE_TO_SENSOR);
+        Size size = getPictureSize(Reference.OUTPUT);
+        for (PictureResult.Stub stub : stubs) {
+            stub.rotation = rotation;
+            stub.size = size;
+        }
+        mPictureRecorder = new Full1BurstPictureRecorder(stubs, directory, this, this, mCamera,
+                getEngineHandler());
+        mPictureRecorder.take();
+        LOG.i("onTakePictureBurst:", "executed.");
+    }
+
     @EngineThread
     @Override
     protected void onTakePictureSnapshot(@NonNull PictureResult.Stub stub,
@@ -393,7 +461,8 @@ public class Camera1Engine extends CameraBaseEngine implements
         if (mPreview instanceof RendererCameraPreview && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             stub.rotation = getAngles().offset(Reference.VIEW, Reference.OUTPUT, Axis.ABSOLUTE);
             mPictureRecorder = new SnapshotGlPictureRecorder(stub, this,
-                    (RendererCameraPreview) mPreview, outputRatio, getOverlay());
+                    (RendererCameraPreview) mPreview, outputRatio, getOverlay(),
+                    getSnapshotGlRenderer());
         } else {
             stub.rotation = getAngles().offset(Reference.SENSOR, Reference.OUTPUT, Axis.RELATIVE_TO_SENSOR);
             mPictureRecorder = new Snapshot1PictureRecorder(stub, this, mCamera, outputRatio);
@@ -459,7 +528,8 @@ public class Camera1Engine extends CameraBaseEngine implements
         LOG.i("onTakeVideoSnapshot", "rotation:", stub.rotation, "size:", stub.size);
 
         // Start.
-        mVideoRecorder = new SnapshotVideoRecorder(Camera1Engine.this, glPreview, getOverlay());
+        mVideoRecorder = new SnapshotVideoRecorder(Camera1Engine.this, glPreview, getOverlay(),
+                getVideoCodecPool());
         mVideoRecorder.start(stub);
     }
 
@@ -624,9 +694,9 @@ public class Camera1Engine extends CameraBaseEngine implements
     public void setZoom(final float zoom, @Nullable final PointF[] points, final boolean notify) {
         final float old = mZoomValue;
         mZoomValue = zoom;
-        // Zoom requests can be high frequency (e.g. linked to touch events), let's trim the oldest.
-        getOrchestrator().trim("zoom", ALLOWED_ZOOM_OPS);
-        mZoomTask = getOrchestrator().scheduleStateful("zoom",
+        // Zoom requests can be high frequency (e.g. linked to touch events), so the
+        // latest replaces the pending ones and the engine only applies the newest value.
+        mZoomTask = getOrchestrator().scheduleStatefulCoalesced("zoom",
                 CameraState.ENGINE,
                 new Runnable() {
             @Override
@@ -658,9 +728,9 @@ public class Camera1Engine extends CameraBaseEngine implements
                                       @Nullable final PointF[] points, final boolean notify) {
         final float old = mExposureCorrectionValue;
         mExposureCorrectionValue = EVvalue;
-        // EV requests can be high frequency (e.g. linked to touch events), let's trim the oldest.
-        getOrchestrator().trim("exposure correction", ALLOWED_EV_OPS);
-        mExposureCorrectionTask = getOrchestrator().scheduleStateful(
+        // EV requests can be high frequency (e.g. linked to touch events), so the
+        // latest replaces the pending ones and the engine only applies the newest value.
+        mExposureCorrectionTask = getOrchestrator().scheduleStatefulCoalesced(
                 "exposure correction",
                 CameraState.ENGINE,
                 new Runnable() {
@@ -826,12 +896,24 @@ public class Camera1Engine extends CameraBaseEngine implements
         return (ByteBufferFrameManager) super.getFrameManager();
     }
 
+    @Override
+    public void setPictureZeroShutterLag(boolean enable) {
+        // Not supported: Camera1 has no access to full resolution frames.
+        mPictureZeroShutterLag = enable;
+    }
+
     @Override
     public void setHasFrameProcessors(boolean hasFrameProcessors) {
         // we don't care, FP is always on
         mHasFrameProcessors = hasFrameProcessors;
     }
 
+    @Override
+    protected boolean hasFrameStream() {
+        // The preview callback is always set.
+        return true;
+    }
+
     @Override
     public void setFrameProcessingFormat(int format) {
         // Ignore input: we only support NV21.
@@ -854,7 +936,7 @@ public class Camera1Engine extends CameraBaseEngine implements
         }
         Frame frame = getFrameManager().getFrame(data, System.currentTimeMillis());
         if (frame != null) {
-            getCallback().dispatchFrame(frame);
+            dispatchFrame(frame);
         }
     }
 
@@ -35,6 +35,7 @@ import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
 import com.otaliastudios.cameraview.CameraException;
 import com.otaliastudios.cameraview.CameraOptions;
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.VideoResult;
 import com.otaliastudios.cameraview.controls.Facing;
@@ -44,6 +45,7 @@ import com.otaliastudios.cameraview.controls.Mode;
 import com.otaliastudios.cameraview.controls.PictureFormat;
 import com.otaliastudios.cameraview.controls.WhiteBalance;
 import com.otaliastudios.cameraview.engine.action.Action;
+import com.otaliastudios.cameraview.engine.action.ActionDispatcher;
 import com.otaliastudios.cameraview.engine.action.ActionHolder;
 import com.otaliastudios.cameraview.engine.action.Actions;
 import com.otaliastudios.cameraview.engine.action.BaseAction;
@@ -60,23 +62,29 @@ import com.otaliastudios.cameraview.frame.Frame;
 import com.otaliastudios.cameraview.frame.FrameManager;
 import com.otaliastudios.cameraview.frame.ImageFrameManager;
 import com.otaliastudios.cameraview.gesture.Gesture;
+import com.otaliastudios.cameraview.internal.CameraOptionsCache;
 import com.otaliastudios.cameraview.internal.CropHelper;
 import com.otaliastudios.cameraview.internal.FpsRangeValidator;
 import com.otaliastudios.cameraview.metering.MeteringRegions;
+import com.otaliastudios.cameraview.picture.Full2BurstPictureRecorder;
 import com.otaliastudios.cameraview.picture.Full2PictureRecorder;
+import com.otaliastudios.cameraview.picture.Full2ZslPictureRecorder;
 import com.otaliastudios.cameraview.picture.Snapshot2PictureRecorder;
+import com.otaliastudios.cameraview.picture.ZslRing;
 import com.otaliastudios.cameraview.preview.RendererCameraPreview;
 import com.otaliastudios.cameraview.size.AspectRatio;
 import com.otaliastudios.cameraview.size.Size;
 import com.otaliastudios.cameraview.video.Full2VideoRecorder;
 import com.otaliastudios.cameraview.video.SnapshotVideoRecorder;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 
 @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
@@ -87,14 +95,40 @@ public class Camera2Engine extends CameraBaseEngine implements
     private static final int FRAME_PROCESSING_FORMAT = ImageFormat.YUV_420_888;
     @VisibleForTesting static final long METER_TIMEOUT = 5000;
     private static final long METER_TIMEOUT_SHORT = 2500;
+    private static final int ZSL_RING_SIZE = 3;
+    private static final long DEFAULT_FRAME_DURATION = 33333333L; // nanos, 30fps
+    private static final long MAX_FRAME_DURATION = 100000000L; // nanos
 
     private final CameraManager mManager;
     private String mCameraId;
     private CameraDevice mCamera;
     private CameraCharacteristics mCameraCharacteristics;
+    // Characteristics never change for a given id, so we query them once per engine.
+    private final Map<String, CameraCharacteristics> mCharacteristicsCache = new HashMap<>();
+    // Key and signature of the current camera in the CameraOptionsCache.
+    private String mOptionsKey;
+    private String mOptionsSignature;
     private CameraCaptureSession mSession;
     private CaptureRequest.Builder mRepeatingRequestBuilder;
     private TotalCaptureResult mLastRepeatingResult;
+    private final RequestCommitScheduler mRequestCommitScheduler
+            = new RequestCommitScheduler(new RequestCommitScheduler.Callback() {
+        @Override
+        public void commit() {
+            applyRepeatingRequestBuilder();
+        }
+
+        @Override
+        public void scheduleCommit(long delayMillis) {
+            getOrchestrator().scheduleDelayed("commit request", true, delayMillis,
+                    new Runnable() {
+                @Override
+                public void run() {
+                    mRequestCommitScheduler.onScheduledCommit();
+                }
+            });
+        }
+    });
     private final Camera2Mapper mMapper = Camera2Mapper.get();
 
     // Frame processing
@@ -110,11 +144,11 @@ public class Camera2Engine extends CameraBaseEngine implements
 
     // Picture capturing
     private ImageReader mPictureReader;
+    private ZslRing mZslRing;
     private final boolean mPictureCaptureStopsPreview = false; // can be configurable at some point
 
     // Actions
-    // Use COW to properly synchronize the list. We'll iterate much more than mutate
-    private final List<Action> mActions = new CopyOnWriteArrayList<>();
+    private final ActionDispatcher mActions = new ActionDispatcher();
     private MeterAction mMeterAction;
 
     public Camera2Engine(Callback callback) {
@@ -126,6 +160,18 @@ public class Camera2Engine extends CameraBaseEngine implements
 
     //region Utilities
 
+    @EngineThread
+    @NonNull
+    private CameraCharacteristics getCameraCharacteristics(@NonNull String cameraId)
+            throws CameraAccessException {
+        CameraCharacteristics characteristics = mCharacteristicsCache.get(cameraId);
+        if (characteristics == null) {
+            characteristics = mManager.getCameraCharacteristics(cameraId);
+            mCharacteristicsCache.put(cameraId, characteristics);
+        }
+        return characteristics;
+    }
+
     @VisibleForTesting
     @NonNull
     <T> T readCharacteristic(@NonNull CameraCharacteristics.Key<T> key,
@@ -211,6 +257,9 @@ public class Camera2Engine extends CameraBaseEngine implements
         if (mFrameProcessingSurface != null) {
             mRepeatingRequestBuilder.addTarget(mFrameProcessingSurface);
         }
+        if (mZslRing != null) {
+            mRepeatingRequestBuilder.addTarget(mZslRing.getSurface());
+        }
         for (Surface extraSurface : extraSurfaces) {
             if (extraSurface == null) {
                 throw new IllegalArgumentException("Should not add a null surface.");
@@ -227,6 +276,9 @@ public class Camera2Engine extends CameraBaseEngine implements
         if (mFrameProcessingSurface != null) {
             mRepeatingRequestBuilder.removeTarget(mFrameProcessingSurface);
         }
+        if (mZslRing != null) {
+            mRepeatingRequestBuilder.removeTarget(mZslRing.getSurface());
+        }
     }
 
     /**
@@ -258,6 +310,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             try {
                 mSession.setRepeatingRequest(mRepeatingRequestBuilder.build(),
                         mRepeatingRequestCallback, null);
+                mRequestCommitScheduler.onCommitted(System.nanoTime());
             } catch (CameraAccessException e) {
                 throw new CameraException(e, errorReason);
             } catch (IllegalStateException e) {
@@ -274,6 +327,36 @@ public class Camera2Engine extends CameraBaseEngine implements
         }
     }
 
+    /**
+     * Like {@link #applyRepeatingRequestBuilder()}, but for control changes that can come in
+     * bursts, like zoom during a gesture. The builder is committed at most once per frame
+     * interval: if the last commit was too recent, a commit is scheduled at the end of the
+     * interval and all changes made meanwhile are merged into it.
+     */
+    @EngineThread
+    @SuppressWarnings("WeakerAccess")
+    protected void scheduleRepeatingRequestBuilder() {
+        mRequestCommitScheduler.onChange(System.nanoTime(), getFrameDuration());
+    }
+
+    @EngineThread
+    private long getFrameDuration() {
+        Long duration = mLastRepeatingResult == null ? null
+                : mLastRepeatingResult.get(CaptureResult.SENSOR_FRAME_DURATION);
+        if (duration == null || duration <= 0) return DEFAULT_FRAME_DURATION;
+        return Math.min(duration, MAX_FRAME_DURATION);
+    }
+
+    @Override
+    public int getRepeatingRequestCommitCount() {
+        return mRequestCommitScheduler.getCommitCount();
+    }
+
+    @Override
+    public int getRepeatingRequestChangeCount() {
+        return mRequestCommitScheduler.getChangeCount();
+    }
+
     private final CameraCaptureSession.CaptureCallback mRepeatingRequestCallback
             = new CameraCaptureSession.CaptureCallback() {
         @Override
@@ -281,18 +364,14 @@ public class Camera2Engine extends CameraBaseEngine implements
                                      @NonNull CaptureRequest request,
                                      long timestamp,
                                      long frameNumber) {
-            for (Action action : mActions) {
-                action.onCaptureStarted(Camera2Engine.this, request);
-            }
+            mActions.dispatchCaptureStarted(Camera2Engine.this, request);
         }
 
         @Override
         public void onCaptureProgressed(@NonNull CameraCaptureSession session,
                                         @NonNull CaptureRequest request,
                                         @NonNull CaptureResult partialResult) {
-            for (Action action : mActions) {
-                action.onCaptureProgressed(Camera2Engine.this, request, partialResult);
-            }
+            mActions.dispatchCaptureProgressed(Camera2Engine.this, request, partialResult);
         }
 
         @Override
@@ -300,9 +379,10 @@ public class Camera2Engine extends CameraBaseEngine implements
                                        @NonNull CaptureRequest request,
                                        @NonNull TotalCaptureResult result) {
             mLastRepeatingResult = result;
-            for (Action action : mActions) {
-                action.onCaptureCompleted(Camera2Engine.this, request, result);
+            if (mZslRing != null) {
+                mZslRing.onCaptureCompleted(result);
             }
+            mActions.dispatchCaptureCompleted(Camera2Engine.this, request, result);
         }
     };
 
@@ -314,8 +394,13 @@ public class Camera2Engine extends CameraBaseEngine implements
     @NonNull
     @Override
     protected List<Size> getPreviewStreamAvailableSizes() {
+        String key = mOptionsKey == null ? null
+                : mOptionsKey + "/preview/" + mPreview.getOutputClass().getName();
+        List<Size> cached = key == null ? null
+                : CameraOptionsCache.get().getSizes(key, mOptionsSignature);
+        if (cached != null) return new ArrayList<>(cached);
         try {
-            CameraCharacteristics characteristics = mManager.getCameraCharacteristics(mCameraId);
+            CameraCharacteristics characteristics = getCameraCharacteristics(mCameraId);
             StreamConfigurationMap streamMap =
                     characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             if (streamMap == null) {
@@ -329,6 +414,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                 Size add = new Size(size.getWidth(), size.getHeight());
                 if (!candidates.contains(add)) candidates.add(add);
             }
+            if (key != null) CameraOptionsCache.get().putSizes(key, mOptionsSignature, candidates);
             return candidates;
         } catch (CameraAccessException e) {
             throw createCameraException(e);
@@ -339,8 +425,13 @@ public class Camera2Engine extends CameraBaseEngine implements
     @NonNull
     @Override
     protected List<Size> getFrameProcessingAvailableSizes() {
+        String key = mOptionsKey == null ? null
+                : mOptionsKey + "/frames/" + mFrameProcessingFormat;
+        List<Size> cached = key == null ? null
+                : CameraOptionsCache.get().getSizes(key, mOptionsSignature);
+        if (cached != null) return new ArrayList<>(cached);
         try {
-            CameraCharacteristics characteristics = mManager.getCameraCharacteristics(mCameraId);
+            CameraCharacteristics characteristics = getCameraCharacteristics(mCameraId);
             StreamConfigurationMap streamMap =
                     characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
             if (streamMap == null) {
@@ -352,6 +443,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                 Size add = new Size(size.getWidth(), size.getHeight());
                 if (!candidates.contains(add)) candidates.add(add);
             }
+            if (key != null) CameraOptionsCache.get().putSizes(key, mOptionsSignature, candidates);
             return candidates;
         } catch (CameraAccessException e) {
             throw createCameraException(e);
@@ -382,7 +474,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                 "Cameras:", cameraIds.length);
         for (String cameraId : cameraIds) {
             try {
-                CameraCharacteristics characteristics = mManager.getCameraCharacteristics(cameraId);
+                CameraCharacteristics characteristics = getCameraCharacteristics(cameraId);
                 if (internalFacing == readCharacteristic(characteristics,
                         CameraCharacteristics.LENS_FACING, -99)) {
                     mCameraId = cameraId;
@@ -414,26 +506,23 @@ public class Camera2Engine extends CameraBaseEngine implements
             mManager.openCamera(mCameraId, new CameraDevice.StateCallback() {
                 @Override
                 public void onOpened(@NonNull CameraDevice camera) {
+                    if (task.getTask().isComplete()) {
+                        // We failed to create the options. Nobody will close this device.
+                        LOG.w("onStartEngine:", "Opened camera device after failing. Closing.");
+                        camera.close();
+                        return;
+                    }
                     mCamera = camera;
 
                     // Set parameters that might have been set before the camera was opened.
                     try {
                         LOG.i("onStartEngine:", "Opened camera device.");
-                        mCameraCharacteristics = mManager.getCameraCharacteristics(mCameraId);
-                        boolean flip = getAngles().flip(Reference.SENSOR, Reference.VIEW);
-                        int format;
-                        switch (mPictureFormat) {
-                            case JPEG: format = ImageFormat.JPEG; break;
-                            case DNG: format = ImageFormat.RAW_SENSOR; break;
-                            default: throw new IllegalArgumentException("Unknown format:"
-                                    + mPictureFormat);
-                        }
-                        mCameraOptions = new Camera2Options(mManager, mCameraId, flip, format);
                         createRepeatingRequestBuilder(getRepeatingRequestDefaultTemplate());
                     } catch (CameraAccessException e) {
                         task.trySetException(createCameraException(e));
                         return;
                     }
+                    warmUpVideoCodecs();
                     task.trySetResult(mCameraOptions);
                 }
 
@@ -445,6 +534,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                     CameraException exception
                             = new CameraException(CameraException.REASON_DISCONNECTED);
                     if (!task.getTask().isComplete()) {
+                        clearCameraOptions();
                         task.trySetException(exception);
                     } else {
                         LOG.i("CameraDevice.StateCallback reported disconnection.");
@@ -455,6 +545,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                 @Override
                 public void onError(@NonNull CameraDevice camera, int error) {
                     if (!task.getTask().isComplete()) {
+                        clearCameraOptions();
                         task.trySetException(createCameraException(error));
                     } else {
                         // This happened while the engine is running. Throw unrecoverable exception
@@ -467,9 +558,110 @@ public class Camera2Engine extends CameraBaseEngine implements
         } catch (CameraAccessException e) {
             throw createCameraException(e);
         }
+
+        // The device is opened asynchronously by the camera service, and onOpened() will be
+        // called on this thread. Meanwhile, do the characteristics work here instead of
+        // waiting for it, so it does not add up to the startup time.
+        try {
+            createCameraOptions();
+        } catch (CameraAccessException e) {
+            clearCameraOptions();
+            task.trySetException(createCameraException(e));
+        } catch (RuntimeException e) {
+            clearCameraOptions();
+            task.trySetException(e);
+        }
         return task.getTask();
     }
 
+    @EngineThread
+    private void createCameraOptions() throws CameraAccessException {
+        mCameraCharacteristics = getCameraCharacteristics(mCameraId);
+        boolean flip = getAngles().flip(Reference.SENSOR, Reference.VIEW);
+        int format;
+        switch (mPictureFormat) {
+            case JPEG: format = ImageFormat.JPEG; break;
+            case DNG: format = ImageFormat.RAW_SENSOR; break;
+            default: throw new IllegalArgumentException("Unknown format:" + mPictureFormat);
+        }
+        String[] cameraIds = mManager.getCameraIdList();
+        CameraOptionsCache cache = CameraOptionsCache.get();
+        mOptionsKey = CameraOptionsCache.createKey("Camera2", mCameraId, flip, format);
+        mOptionsSignature = createOptionsSignature(mCameraCharacteristics, cameraIds);
+        CameraOptions options = cache.getOptions(mOptionsKey, mOptionsSignature);
+        if (options == null) {
+            List<CameraCharacteristics> all = new ArrayList<>(cameraIds.length);
+            for (String cameraId : cameraIds) {
+                all.add(getCameraCharacteristics(cameraId));
+            }
+            options = new Camera2Options(mCameraId, mCameraCharacteristics, all, flip, format);
+            cache.putOptions(mOptionsKey, mOptionsSignature, options);
+        }
+        mCameraOptions = options;
+    }
+
+    /**
+     * Summarizes the characteristics that {@link Camera2Options} and the size lists depend on:
+     * the values that the options are computed from and the output sizes of the stream map,
+     * for all formats. These are cheap to read for the current camera, as opposed to the
+     * characteristics of the other cameras. Including the sizes means that cached values are
+     * discarded if they change without a fingerprint change, for example after a HAL update
+     * or if an external camera takes the same id.
+     */
+    @NonNull
+    private static String createOptionsSignature(@NonNull CameraCharacteristics characteristics,
+                                                 @NonNull String[] cameraIds) {
+        StringBuilder sizes = new StringBuilder();
+        StreamConfigurationMap streamMap =
+                characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (streamMap != null) {
+            for (int format : streamMap.getOutputFormats()) {
+                sizes.append(format).append('=');
+                try {
+                    sizes.append(Arrays.toString(streamMap.getOutputSizes(format)));
+                } catch (IllegalArgumentException ignore) {
+                    // Some vendors list formats that they then reject.
+                }
+                sizes.append(';');
+            }
+            sizes.append(Arrays.toString(streamMap.getOutputSizes(SurfaceTexture.class)));
+        }
+        return CameraOptionsCache.createSignature(
+                Arrays.toString(cameraIds),
+                characteristics.get(CameraCharacteristics.LENS_FACING),
+                characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION),
+                characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL),
+                characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE),
+                Arrays.toString(characteristics.get(
+                        CameraCharacteristics.REQUEST_AVAILABLE_CAPABILITIES)),
+                Arrays.toString(characteristics.get(
+                        CameraCharacteristics.CONTROL_AWB_AVAILABLE_MODES)),
+                Arrays.toString(characteristics.get(
+                        CameraCharacteristics.CONTROL_AE_AVAILABLE_MODES)),
+                Arrays.toString(characteristics.get(
+                        CameraCharacteristics.CONTROL_AVAILABLE_SCENE_MODES)),
+                characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE),
+                characteristics.get(CameraCharacteristics.SCALER_AVAILABLE_MAX_DIGITAL_ZOOM),
+                characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF),
+                characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE),
+                characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AWB),
+                characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_RANGE),
+                characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_STEP),
+                Arrays.toString(characteristics.get(
+                        CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES)),
+                characteristics.getKeys().size(),
+                sizes);
+    }
+
+    @EngineThread
+    private void clearCameraOptions() {
+        // Created before the device was opened, but the device did not open.
+        mCameraCharacteristics = null;
+        mCameraOptions = null;
+        mOptionsKey = null;
+        mOptionsSignature = null;
+    }
+
     @EngineThread
     @NonNull
     @Override
@@ -538,7 +730,12 @@ public class Camera2Engine extends CameraBaseEngine implements
 
         // 3. PICTURE RECORDING
         // Format is supported, or it would have thrown in Camera2Options constructor.
-        if (getMode() == Mode.PICTURE) {
+        // With zero shutter lag, the ring replaces the picture reader: a JPEG stream at the
+        // maximum size next to a YUV one is not a guaranteed stream combination.
+        if (getMode() == Mode.PICTURE && isZeroShutterLagSupported()) {
+            mZslRing = new ZslRing(mCaptureSize, ZSL_RING_SIZE);
+            outputSurfaces.add(mZslRing.getSurface());
+        } else if (getMode() == Mode.PICTURE) {
             int format;
             switch (mPictureFormat) {
                 case JPEG: format = ImageFormat.JPEG; break;
@@ -681,7 +878,11 @@ public class Camera2Engine extends CameraBaseEngine implements
             mVideoRecorder.stop(true);
             mVideoRecorder = null;
         }
+        cancelMergedPictureSnapshot();
         mPictureRecorder = null;
+        // A scheduled commit might have been removed, and the builder is applied again
+        // when the preview restarts anyway.
+        mRequestCommitScheduler.reset();
         if (hasFrameProcessors()) {
             getFrameManager().release();
         }
@@ -721,6 +922,7 @@ public class Camera2Engine extends CameraBaseEngine implements
         mPreviewStreamSize = null;
         mCaptureSize = null;
         mFrameProcessingSize = null;
+        releaseSnapshotGlRenderer();
         if (mFrameProcessingReader != null) {
             // WARNING: This call synchronously releases all Images and their underlying
             // properties. This can cause issues if the Image is being used.
@@ -731,6 +933,12 @@ public class Camera2Engine extends CameraBaseEngine implements
             mPictureReader.close();
             mPictureReader = null;
         }
+        if (mZslRing != null) {
+            // If a ZSL picture is still encoding its frame, the ring keeps the reader
+            // open until the frame is closed.
+            mZslRing.release();
+            mZslRing = null;
+        }
         mSession.close();
         mSession = null;
         LOG.i("onStopBind:", "Returning.");
@@ -766,13 +974,16 @@ public class Camera2Engine extends CameraBaseEngine implements
         // so the ActionHolder.getBuilder() contract would be broken. Same for characteristics.
         // This can cause crashes if some ongoing Action queries the holder. So we abort them.
         LOG.i("onStopEngine:", "Aborting actions.");
-        for (Action action : mActions) {
+        for (Action action : mActions.getActions()) {
             action.abort(this);
         }
 
         mCameraCharacteristics = null;
         mCameraOptions = null;
+        mOptionsKey = null;
+        mOptionsSignature = null;
         mVideoRecorder = null;
+        releaseVideoCodecs();
         mRepeatingRequestBuilder = null;
         LOG.w("onStopEngine:", "Returning.");
         return Tasks.forResult(null);
@@ -789,10 +1000,12 @@ public class Camera2Engine extends CameraBaseEngine implements
                                          boolean doMetering) {
         if (doMetering) {
             LOG.i("onTakePictureSnapshot:", "doMetering is true. Delaying.");
+            stub.tracer.begin(CaptureTrace.STAGE_METERING);
             Action action = Actions.timeout(METER_TIMEOUT_SHORT, createMeterAction(null));
             action.addCallback(new CompletionCallback() {
                 @Override
                 protected void onActionCompleted(@NonNull Action action) {
+                    stub.tracer.end(CaptureTrace.STAGE_METERING);
                     // This is called on any thread, so be careful.
                     setPictureSnapshotMetering(false);
                     takePictureSnapshot(stub);
@@ -811,7 +1024,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             stub.size = getUncroppedSnapshotSize(Reference.OUTPUT);
             stub.rotation = getAngles().offset(Reference.VIEW, Reference.OUTPUT, Axis.ABSOLUTE);
             mPictureRecorder = new Snapshot2PictureRecorder(stub, this,
-                    (RendererCameraPreview) mPreview, outputRatio);
+                    (RendererCameraPreview) mPreview, outputRatio, getSnapshotGlRenderer());
             mPictureRecorder.take();
         }
     }
@@ -819,12 +1032,24 @@ public class Camera2Engine extends CameraBaseEngine implements
     @EngineThread
     @Override
     protected void onTakePicture(@NonNull final PictureResult.Stub stub, boolean doMetering) {
+        if (mZslRing != null) {
+            // No metering: the point is to use frames that were already captured.
+            LOG.i("onTakePicture:", "Using zero shutter lag.");
+            stub.rotation = getAngles().offset(Reference.SENSOR, Reference.OUTPUT,
+                    Axis.RELATIVE_TO_SENSOR);
+            stub.size = getPictureSize(Reference.OUTPUT);
+            mPictureRecorder = new Full2ZslPictureRecorder(stub, this, mZslRing);
+            mPictureRecorder.take();
+            return;
+        }
         if (doMetering) {
             LOG.i("onTakePicture:", "doMetering is true. Delaying.");
+            stub.tracer.begin(CaptureTrace.STAGE_METERING);
             Action action = Actions.timeout(METER_TIMEOUT_SHORT, createMeterAction(null));
             action.addCallback(new CompletionCallback() {
                 @Override
                 protected void onActionCompleted(@NonNull Action action) {
+                    stub.tracer.end(CaptureTrace.STAGE_METERING);
                     // This is called on any thread, so be careful.
                     setPictureMetering(false);
                     takePicture(stub);
@@ -859,9 +1084,41 @@ public class Camera2Engine extends CameraBaseEngine implements
         }
     }
 
+    /**
+     * Bursts skip the metering sequence: all requests use the current repeating parameters.
+     */
+    @EngineThread
+    @Override
+    protected void onTakePictureBurst(@NonNull PictureResult.Stub[] stubs,
+                                      @NonNull File directory) {
+        LOG.i("onTakePictureBurst:", "executing.", "count:", stubs.length);
+        if (mZslRing != null) {
+            throw new IllegalStateException("Bursts are not supported with zero shutter lag.");
+        }
+        int rotation = getAngles().offset(Reference.SENSOR, Reference.OUTPUT,
+                Axis.RELATIVE_TO_SENSOR);
+        Size size = getPictureSize(Reference.OUTPUT);
+        for (PictureResult.Stub stub : stubs) {
+            stub.rotation = rotation;
+            stub.size = size;
+        }
+        try {
+            CaptureRequest.Builder builder
+                    = mCamera.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+            applyAllParameters(builder, mRepeatingRequestBuilder);
+            mPictureRecorder = new Full2BurstPictureRecorder(stubs, directory, this,
+                    mSession, mCameraCharacteristics, builder, mPictureReader,
+                    getEngineHandler());
+            mPictureRecorder.take();
+        } catch (CameraAccessException e) {
+            throw createCameraException(e);
+        }
+    }
+
     @Override
     public void onPictureResult(@Nullable PictureResult.Stub result, @Nullable Exception error) {
         boolean fullPicture = mPictureRecorder instanceof Full2PictureRecorder;
+        boolean zslPicture = mPictureRecorder instanceof Full2ZslPictureRecorder;
         super.onPictureResult(result, error);
         if (fullPicture && mPictureCaptureStopsPreview) {
             applyRepeatingRequestBuilder();
@@ -870,7 +1127,7 @@ public class Camera2Engine extends CameraBaseEngine implements
         // Some picture recorders might lock metering, and we usually run a metering sequence
         // before running the recorders. So, run an unlock/reset sequence if needed.
         boolean unlock = (fullPicture && getPictureMetering())
-                || (!fullPicture && getPictureSnapshotMetering());
+                || (!fullPicture && !zslPicture && getPictureSnapshotMetering());
         if (unlock) {
             getOrchestrator().scheduleStateful("reset metering after picture",
                     CameraState.PREVIEW,
@@ -883,6 +1140,37 @@ public class Camera2Engine extends CameraBaseEngine implements
         }
     }
 
+    /**
+     * Zero shutter lag needs a YUV stream at the picture size next to the preview, which is
+     * only guaranteed to work on FULL devices or better.
+     * @return true if we should use zero shutter lag
+     */
+    @EngineThread
+    private boolean isZeroShutterLagSupported() {
+        if (!mPictureZeroShutterLag || mPictureFormat != PictureFormat.JPEG) return false;
+        int level = readCharacteristic(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL,
+                CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY);
+        boolean isLevel3 = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_3;
+        if (level != CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_FULL && !isLevel3) {
+            LOG.w("isZeroShutterLagSupported:", "hardware level not supported:", level);
+            return false;
+        }
+        StreamConfigurationMap streamMap = readCharacteristic(
+                CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP, null);
+        if (streamMap == null) return false;
+        android.util.Size[] sizes = streamMap.getOutputSizes(ImageFormat.YUV_420_888);
+        if (sizes == null) return false;
+        for (android.util.Size size : sizes) {
+            if (size.getWidth() == mCaptureSize.getWidth()
+                    && size.getHeight() == mCaptureSize.getHeight()) {
+                return true;
+            }
+        }
+        LOG.w("isZeroShutterLagSupported:", "YUV not supported at size", mCaptureSize);
+        return false;
+    }
+
     //endregion
 
     //region Videos
@@ -940,7 +1228,8 @@ public class Camera2Engine extends CameraBaseEngine implements
         stub.rotation = getAngles().offset(Reference.VIEW, Reference.OUTPUT, Axis.ABSOLUTE);
         stub.videoFrameRate = Math.round(mPreviewFrameRate);
         LOG.i("onTakeVideoSnapshot", "rotation:", stub.rotation, "size:", stub.size);
-        mVideoRecorder = new SnapshotVideoRecorder(this, glPreview, getOverlay());
+        mVideoRecorder = new SnapshotVideoRecorder(this, glPreview, getOverlay(),
+                getVideoCodecPool());
         mVideoRecorder.start(stub);
     }
 
@@ -1131,7 +1420,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                     applyRepeatingRequestBuilder();
 
                 } else if (shouldApply) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                 }
             }
         });
@@ -1188,7 +1477,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             @Override
             public void run() {
                 if (applyLocation(mRepeatingRequestBuilder, old)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                 }
             }
         });
@@ -1214,7 +1503,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             @Override
             public void run() {
                 if (applyWhiteBalance(mRepeatingRequestBuilder, old)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                 }
             }
         });
@@ -1242,7 +1531,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             @Override
             public void run() {
                 if (applyHdr(mRepeatingRequestBuilder, old)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                 }
             }
         });
@@ -1263,16 +1552,16 @@ public class Camera2Engine extends CameraBaseEngine implements
     public void setZoom(final float zoom, final @Nullable PointF[] points, final boolean notify) {
         final float old = mZoomValue;
         mZoomValue = zoom;
-        // Zoom requests can be high frequency (e.g. linked to touch events), let's trim the oldest.
-        getOrchestrator().trim("zoom", ALLOWED_ZOOM_OPS);
-        mZoomTask = getOrchestrator().scheduleStateful(
+        // Zoom requests can be high frequency (e.g. linked to touch events), so the
+        // latest replaces the pending ones and the engine only applies the newest value.
+        mZoomTask = getOrchestrator().scheduleStatefulCoalesced(
                 "zoom",
                 CameraState.ENGINE,
                 new Runnable() {
             @Override
             public void run() {
                 if (applyZoom(mRepeatingRequestBuilder, old)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                     if (notify) {
                         getCallback().dispatchOnZoomChanged(zoom, points);
                     }
@@ -1321,16 +1610,16 @@ public class Camera2Engine extends CameraBaseEngine implements
                                       final boolean notify) {
         final float old = mExposureCorrectionValue;
         mExposureCorrectionValue = EVvalue;
-        // EV requests can be high frequency (e.g. linked to touch events), let's trim the oldest.
-        getOrchestrator().trim("exposure correction", ALLOWED_EV_OPS);
-        mExposureCorrectionTask = getOrchestrator().scheduleStateful(
+        // EV requests can be high frequency (e.g. linked to touch events), so the
+        // latest replaces the pending ones and the engine only applies the newest value.
+        mExposureCorrectionTask = getOrchestrator().scheduleStatefulCoalesced(
                 "exposure correction",
                 CameraState.ENGINE,
                 new Runnable() {
             @Override
             public void run() {
                 if (applyExposureCorrection(mRepeatingRequestBuilder, old)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                     if (notify) {
                         getCallback().dispatchOnExposureCorrectionChanged(EVvalue, bounds, points);
                     }
@@ -1372,7 +1661,7 @@ public class Camera2Engine extends CameraBaseEngine implements
             @Override
             public void run() {
                 if (applyPreviewFrameRate(mRepeatingRequestBuilder, oldPreviewFrameRate)) {
-                    applyRepeatingRequestBuilder();
+                    scheduleRepeatingRequestBuilder();
                 }
             }
         });
@@ -1441,6 +1730,21 @@ public class Camera2Engine extends CameraBaseEngine implements
         return results;
     }
 
+    @Override
+    public void setPictureZeroShutterLag(boolean enable) {
+        if (enable != mPictureZeroShutterLag) {
+            mPictureZeroShutterLag = enable;
+            getOrchestrator().scheduleStateful("picture zero shutter lag (" + enable + ")",
+                    CameraState.BIND,
+                    new Runnable() {
+                @Override
+                public void run() {
+                    if (getMode() == Mode.PICTURE) restartBind();
+                }
+            });
+        }
+    }
+
     @Override
     public void setPictureFormat(final @NonNull PictureFormat pictureFormat) {
         if (pictureFormat != mPictureFormat) {
@@ -1483,7 +1787,7 @@ public class Camera2Engine extends CameraBaseEngine implements
                     System.currentTimeMillis());
             if (frame != null) {
                 LOG.v("onImageAvailable:", "Image acquired, dispatching.");
-                getCallback().dispatchFrame(frame);
+                dispatchFrame(frame);
             } else {
                 LOG.i("onImageAvailable:", "Image acquired, but no free frames. DROPPING.");
             }
@@ -1631,9 +1935,7 @@ public class Camera2Engine extends CameraBaseEngine implements
 
     @Override
     public void addAction(final @NonNull Action action) {
-        if (!mActions.contains(action)) {
-            mActions.add(action);
-        }
+        mActions.add(action);
     }
 
     @Override
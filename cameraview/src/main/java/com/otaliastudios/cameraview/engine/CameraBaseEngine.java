@@ -1,16 +1,19 @@
 package com.otaliastudios.cameraview.engine;
 
 import android.location.Location;
+import android.os.Build;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.annotation.VisibleForTesting;
 
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.otaliastudios.cameraview.CameraException;
 import com.otaliastudios.cameraview.CameraOptions;
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.VideoResult;
 import com.otaliastudios.cameraview.controls.Audio;
@@ -23,23 +26,31 @@ import com.otaliastudios.cameraview.controls.PictureFormat;
 import com.otaliastudios.cameraview.controls.VideoCodec;
 import com.otaliastudios.cameraview.controls.WhiteBalance;
 import com.otaliastudios.cameraview.engine.offset.Angles;
+import com.otaliastudios.cameraview.engine.offset.Axis;
 import com.otaliastudios.cameraview.engine.offset.Reference;
 import com.otaliastudios.cameraview.engine.orchestrator.CameraState;
+import com.otaliastudios.cameraview.frame.Frame;
 import com.otaliastudios.cameraview.frame.FrameManager;
 import com.otaliastudios.cameraview.overlay.Overlay;
 import com.otaliastudios.cameraview.picture.PictureRecorder;
+import com.otaliastudios.cameraview.picture.SnapshotGlBurstPictureRecorder;
+import com.otaliastudios.cameraview.picture.SnapshotGlRenderer;
+import com.otaliastudios.cameraview.picture.SnapshotMergePictureRecorder;
 import com.otaliastudios.cameraview.preview.CameraPreview;
+import com.otaliastudios.cameraview.preview.RendererCameraPreview;
 import com.otaliastudios.cameraview.size.AspectRatio;
 import com.otaliastudios.cameraview.size.Size;
 import com.otaliastudios.cameraview.size.SizeSelector;
 import com.otaliastudios.cameraview.size.SizeSelectors;
 import com.otaliastudios.cameraview.video.VideoRecorder;
+import com.otaliastudios.cameraview.video.encoding.MediaCodecPool;
 
 import java.io.File;
 import java.io.FileDescriptor;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -47,13 +58,15 @@ import java.util.List;
  */
 public abstract class CameraBaseEngine extends CameraEngine {
 
-    protected final static int ALLOWED_ZOOM_OPS = 20;
-    protected final static int ALLOWED_EV_OPS = 20;
+    // Merged snapshots fail if frames do not arrive within this time, plus some time per frame.
+    private static final long MERGED_SNAPSHOT_TIMEOUT = 2000;
+    private static final long MERGED_SNAPSHOT_FRAME_TIMEOUT = 200;
 
     @SuppressWarnings("WeakerAccess") protected CameraPreview mPreview;
     @SuppressWarnings("WeakerAccess") protected CameraOptions mCameraOptions;
     @SuppressWarnings("WeakerAccess") protected PictureRecorder mPictureRecorder;
     @SuppressWarnings("WeakerAccess") protected VideoRecorder mVideoRecorder;
+    private SnapshotGlRenderer mSnapshotGlRenderer;
     @SuppressWarnings("WeakerAccess") protected Size mCaptureSize;
     @SuppressWarnings("WeakerAccess") protected Size mPreviewStreamSize;
     @SuppressWarnings("WeakerAccess") protected Size mFrameProcessingSize;
@@ -70,6 +83,8 @@ public abstract class CameraBaseEngine extends CameraEngine {
     @SuppressWarnings("WeakerAccess") protected float mExposureCorrectionValue;
     @SuppressWarnings("WeakerAccess") protected boolean mPlaySounds;
     @SuppressWarnings("WeakerAccess") protected boolean mPictureMetering;
+    @SuppressWarnings("WeakerAccess") protected boolean mPictureFileSync;
+    @SuppressWarnings("WeakerAccess") protected boolean mPictureZeroShutterLag;
     @SuppressWarnings("WeakerAccess") protected boolean mPictureSnapshotMetering;
     @SuppressWarnings("WeakerAccess") protected float mPreviewFrameRate;
     @SuppressWarnings("WeakerAccess") private boolean mPreviewFrameRateExact;
@@ -85,6 +100,14 @@ public abstract class CameraBaseEngine extends CameraEngine {
     private long mVideoMaxSize;
     private int mVideoMaxDuration;
     private int mVideoBitRate;
+    private int mVideoMinBitRate;
+    private int mVideoMaxBitRate;
+    private boolean mVideoSnapshotWarmUp;
+    private MediaCodecPool mVideoCodecPool;
+    private long mVideoSnapshotTimeLapseInterval;
+    private int mVideoSnapshotTimeLapseFrameRate;
+    private int mVideoSnapshotProxyResolution;
+    private int mVideoSnapshotProxyBitRate;
     private int mAudioBitRate;
     private long mAutoFocusResetDelayMillis;
     private int mSnapshotMaxWidth; // in REF_VIEW like SizeSelectors
@@ -245,6 +268,119 @@ public abstract class CameraBaseEngine extends CameraEngine {
         return mVideoBitRate;
     }
 
+    @Override
+    public final void setVideoMinBitRate(int videoMinBitRate) {
+        mVideoMinBitRate = videoMinBitRate;
+    }
+
+    @Override
+    public final int getVideoMinBitRate() {
+        return mVideoMinBitRate;
+    }
+
+    @Override
+    public final void setVideoMaxBitRate(int videoMaxBitRate) {
+        mVideoMaxBitRate = videoMaxBitRate;
+    }
+
+    @Override
+    public final int getVideoMaxBitRate() {
+        return mVideoMaxBitRate;
+    }
+
+    @Override
+    public final void setVideoSnapshotWarmUp(boolean warmUp) {
+        mVideoSnapshotWarmUp = warmUp;
+        // Release does not block, so it can be called from here.
+        if (!warmUp) releaseVideoCodecs();
+    }
+
+    @Override
+    public final boolean getVideoSnapshotWarmUp() {
+        return mVideoSnapshotWarmUp;
+    }
+
+    @Override
+    public final void setVideoSnapshotTimeLapseInterval(long intervalMillis) {
+        mVideoSnapshotTimeLapseInterval = intervalMillis;
+    }
+
+    @Override
+    public final long getVideoSnapshotTimeLapseInterval() {
+        return mVideoSnapshotTimeLapseInterval;
+    }
+
+    @Override
+    public final void setVideoSnapshotTimeLapseFrameRate(int frameRate) {
+        mVideoSnapshotTimeLapseFrameRate = frameRate;
+    }
+
+    @Override
+    public final int getVideoSnapshotTimeLapseFrameRate() {
+        return mVideoSnapshotTimeLapseFrameRate;
+    }
+
+    @Override
+    public final void setVideoSnapshotProxyResolution(int resolution) {
+        mVideoSnapshotProxyResolution = resolution;
+    }
+
+    @Override
+    public final int getVideoSnapshotProxyResolution() {
+        return mVideoSnapshotProxyResolution;
+    }
+
+    @Override
+    public final void setVideoSnapshotProxyBitRate(int bitRate) {
+        mVideoSnapshotProxyBitRate = bitRate;
+    }
+
+    @Override
+    public final int getVideoSnapshotProxyBitRate() {
+        return mVideoSnapshotProxyBitRate;
+    }
+
+    /**
+     * Returns the pool of warm encoders that video snapshots should use,
+     * or null if warm up is disabled.
+     * @return a pool or null
+     */
+    @Nullable
+    protected final MediaCodecPool getVideoCodecPool() {
+        if (!mVideoSnapshotWarmUp
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return null;
+        }
+        if (mVideoCodecPool == null) mVideoCodecPool = new MediaCodecPool();
+        return mVideoCodecPool;
+    }
+
+    /**
+     * Prepares the video snapshot encoders in the background, if warm up is enabled.
+     * Should be called when the camera is opened.
+     */
+    @EngineThread
+    protected final void warmUpVideoCodecs() {
+        MediaCodecPool pool = getVideoCodecPool();
+        if (pool != null) {
+            LOG.i("warmUpVideoCodecs:", "warming up encoders.");
+            pool.open();
+        }
+    }
+
+    /**
+     * Releases any video snapshot encoder that was prepared by {@link #warmUpVideoCodecs()},
+     * including the ones that are still being prepared. Should be called when the camera
+     * is closed.
+     */
+    protected final void releaseVideoCodecs() {
+        if (mVideoCodecPool != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            LOG.i("releaseVideoCodecs:", "releasing warm encoders.");
+            mVideoCodecPool.release();
+        }
+    }
+
     @Override
     public final void setAudioCodec(@NonNull AudioCodec codec) {
         mAudioCodec = codec;
@@ -485,6 +621,21 @@ public abstract class CameraBaseEngine extends CameraEngine {
         return mPictureMetering;
     }
 
+    @Override
+    public final void setPictureFileSync(boolean sync) {
+        mPictureFileSync = sync;
+    }
+
+    @Override
+    public final boolean getPictureFileSync() {
+        return mPictureFileSync;
+    }
+
+    @Override
+    public final boolean getPictureZeroShutterLag() {
+        return mPictureZeroShutterLag;
+    }
+
     @Override
     public final void setPictureSnapshotMetering(boolean enable) {
         mPictureSnapshotMetering = enable;
@@ -497,6 +648,33 @@ public abstract class CameraBaseEngine extends CameraEngine {
 
     //region Picture and video control
 
+    /**
+     * Returns the offscreen renderer for GL picture snapshots, creating it if needed.
+     * It is reused by all snapshots until {@link #releaseSnapshotGlRenderer()} is called.
+     * @return the renderer
+     */
+    @EngineThread
+    @NonNull
+    @RequiresApi(Build.VERSION_CODES.KITKAT)
+    protected final SnapshotGlRenderer getSnapshotGlRenderer() {
+        if (mSnapshotGlRenderer == null) {
+            mSnapshotGlRenderer = new SnapshotGlRenderer();
+        }
+        return mSnapshotGlRenderer;
+    }
+
+    /**
+     * Releases the offscreen renderer for GL picture snapshots, if any. Should be called
+     * when the preview is unbound, since its EGL context might go away.
+     */
+    @EngineThread
+    protected final void releaseSnapshotGlRenderer() {
+        if (mSnapshotGlRenderer != null) {
+            mSnapshotGlRenderer.release();
+            mSnapshotGlRenderer = null;
+        }
+    }
+
     @Override
     public final boolean isTakingPicture() {
         return mPictureRecorder != null;
@@ -506,10 +684,12 @@ public abstract class CameraBaseEngine extends CameraEngine {
     public /* final */ void takePicture(final @NonNull PictureResult.Stub stub) {
         // Save boolean before scheduling! See how Camera2Engine calls this with a temp value.
         final boolean metering = mPictureMetering;
+        stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
         getOrchestrator().scheduleStateful("take picture", CameraState.BIND,
                 new Runnable() {
             @Override
             public void run() {
+                stub.tracer.end(CaptureTrace.STAGE_QUEUE);
                 LOG.i("takePicture:", "running. isTakingPicture:", isTakingPicture());
                 if (isTakingPicture()) return;
                 if (mMode == Mode.VIDEO) {
@@ -533,10 +713,12 @@ public abstract class CameraBaseEngine extends CameraEngine {
     public /* final */ void takePictureSnapshot(final @NonNull PictureResult.Stub stub) {
         // Save boolean before scheduling! See how Camera2Engine calls this with a temp value.
         final boolean metering = mPictureSnapshotMetering;
+        stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
         getOrchestrator().scheduleStateful("take picture snapshot", CameraState.BIND,
                 new Runnable() {
             @Override
             public void run() {
+                stub.tracer.end(CaptureTrace.STAGE_QUEUE);
                 LOG.i("takePictureSnapshot:", "running. isTakingPicture:", isTakingPicture());
                 if (isTakingPicture()) return;
                 stub.location = mLocation;
@@ -551,6 +733,167 @@ public abstract class CameraBaseEngine extends CameraEngine {
         });
     }
 
+    @Override
+    public final void takePictureBurst(final @NonNull PictureResult.Stub[] stubs,
+                                       final @NonNull File directory) {
+        for (PictureResult.Stub stub : stubs) {
+            stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
+        }
+        getOrchestrator().scheduleStateful("take picture burst", CameraState.BIND,
+                new Runnable() {
+            @Override
+            public void run() {
+                for (PictureResult.Stub stub : stubs) {
+                    stub.tracer.end(CaptureTrace.STAGE_QUEUE);
+                }
+                LOG.i("takePictureBurst:", "running. isTakingPicture:", isTakingPicture());
+                if (isTakingPicture()) return;
+                if (mMode == Mode.VIDEO) {
+                    throw new IllegalStateException("Can't take hq pictures while in VIDEO mode");
+                }
+                for (PictureResult.Stub stub : stubs) {
+                    stub.isSnapshot = false;
+                    stub.location = mLocation;
+                    stub.facing = mFacing;
+                    stub.format = mPictureFormat;
+                }
+                onTakePictureBurst(stubs, directory);
+            }
+        });
+    }
+
+    /**
+     * Snapshot bursts are only supported with a {@link RendererCameraPreview}, since they
+     * need to read consecutive frames without waiting for the previous picture.
+     * @param stubs the picture stubs
+     * @param directory the output directory
+     */
+    @Override
+    public final void takePictureSnapshotBurst(final @NonNull PictureResult.Stub[] stubs,
+                                               final @NonNull File directory) {
+        for (PictureResult.Stub stub : stubs) {
+            stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
+        }
+        getOrchestrator().scheduleStateful("take picture snapshot burst", CameraState.BIND,
+                new Runnable() {
+            @Override
+            public void run() {
+                for (PictureResult.Stub stub : stubs) {
+                    stub.tracer.end(CaptureTrace.STAGE_QUEUE);
+                }
+                LOG.i("takePictureSnapshotBurst:", "running. isTakingPicture:",
+                        isTakingPicture());
+                if (isTakingPicture()) return;
+                if (!(mPreview instanceof RendererCameraPreview)
+                        || Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+                    throw new IllegalStateException("takePictureSnapshotBurst is only "
+                            + "supported with Preview.GL_SURFACE");
+                }
+                // Not the real size: it will be cropped to match the view ratio.
+                Size size = getUncroppedSnapshotSize(Reference.OUTPUT);
+                int rotation = getAngles().offset(Reference.VIEW, Reference.OUTPUT,
+                        Axis.ABSOLUTE);
+                for (PictureResult.Stub stub : stubs) {
+                    stub.isSnapshot = true;
+                    stub.location = mLocation;
+                    stub.facing = mFacing;
+                    stub.format = PictureFormat.JPEG;
+                    stub.size = size;
+                    stub.rotation = rotation;
+                }
+                //noinspection ConstantConditions
+                AspectRatio ratio = AspectRatio.of(getPreviewSurfaceSize(Reference.OUTPUT));
+                mPictureRecorder = new SnapshotGlBurstPictureRecorder(stubs, directory,
+                        CameraBaseEngine.this, (RendererCameraPreview) mPreview, ratio,
+                        getOverlay(), getSnapshotGlRenderer());
+                mPictureRecorder.take();
+            }
+        });
+    }
+
+    /**
+     * Merged snapshots collect frames of the frame processing stream, which are passed to
+     * the recorder by {@link #dispatchFrame(Frame)}. If frames do not arrive in time or
+     * the preview is stopped, the recorder is cancelled, so a result is always dispatched.
+     * @param stub the picture stub
+     * @param frames the number of frames to merge
+     */
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public final void takeMergedPictureSnapshot(final @NonNull PictureResult.Stub stub,
+                                                final int frames) {
+        stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
+        getOrchestrator().scheduleStateful("take merged picture snapshot", CameraState.BIND,
+                new Runnable() {
+            @Override
+            public void run() {
+                stub.tracer.end(CaptureTrace.STAGE_QUEUE);
+                LOG.i("takeMergedPictureSnapshot:", "running. isTakingPicture:",
+                        isTakingPicture());
+                if (isTakingPicture()) return;
+                stub.isSnapshot = true;
+                stub.location = mLocation;
+                stub.facing = mFacing;
+                stub.format = PictureFormat.JPEG;
+                final SnapshotMergePictureRecorder recorder = new SnapshotMergePictureRecorder(
+                        stub, CameraBaseEngine.this, frames);
+                mPictureRecorder = recorder;
+                recorder.take();
+                if (!hasFrameStream()) {
+                    recorder.cancel(new IllegalStateException("takeMergedPictureSnapshot "
+                            + "needs the frame processing stream, but it is off."));
+                    return;
+                }
+                getOrchestrator().scheduleDelayed("merged picture snapshot timeout", true,
+                        MERGED_SNAPSHOT_TIMEOUT + MERGED_SNAPSHOT_FRAME_TIMEOUT * frames,
+                        new Runnable() {
+                    @Override
+                    public void run() {
+                        recorder.cancel(new TimeoutException("Frames did not arrive in time."));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Whether frames are being passed to {@link #dispatchFrame(Frame)}. By default,
+     * this happens only if there are frame processors.
+     * @return true if frames are dispatched
+     */
+    @EngineThread
+    protected boolean hasFrameStream() {
+        return hasFrameProcessors();
+    }
+
+    /**
+     * Should be called by subclasses for each frame of the frame processing stream.
+     * The current merged snapshot, if any, collects the frame before it is passed
+     * to the frame processors.
+     * @param frame the frame
+     */
+    @EngineThread
+    protected final void dispatchFrame(@NonNull Frame frame) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && mPictureRecorder instanceof SnapshotMergePictureRecorder) {
+            ((SnapshotMergePictureRecorder) mPictureRecorder).process(frame);
+        }
+        getCallback().dispatchFrame(frame);
+    }
+
+    /**
+     * Should be called by subclasses when the preview stops. Frames will stop as well,
+     * so the current merged snapshot, if it is still collecting them, fails.
+     */
+    @EngineThread
+    protected final void cancelMergedPictureSnapshot() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && mPictureRecorder instanceof SnapshotMergePictureRecorder) {
+            ((SnapshotMergePictureRecorder) mPictureRecorder).cancel(
+                    new IllegalStateException("Preview was stopped while collecting frames."));
+        }
+    }
+
     @Override
     public void onPictureShutter(boolean didPlaySound) {
         getCallback().dispatchOnPictureShutter(!didPlaySound);
@@ -568,6 +911,25 @@ public abstract class CameraBaseEngine extends CameraEngine {
         }
     }
 
+    @Override
+    public void onBurstPictureResult(@NonNull PictureResult.Stub result,
+                                     @NonNull File file,
+                                     int index) {
+        getCallback().dispatchOnBurstPictureTaken(result, file, index);
+    }
+
+    @Override
+    public void onBurstResult(int saved, @Nullable Exception error) {
+        mPictureRecorder = null;
+        if (saved > 0) {
+            getCallback().dispatchOnBurstCompleted(saved);
+        } else {
+            LOG.e("onBurstResult", "no picture was saved: something went wrong.", error);
+            getCallback().dispatchError(new CameraException(error,
+                    CameraException.REASON_PICTURE_FAILED));
+        }
+    }
+
     @Override
     public final boolean isTakingVideo() {
         return mVideoRecorder != null && mVideoRecorder.isRecording();
@@ -577,9 +939,11 @@ public abstract class CameraBaseEngine extends CameraEngine {
     public final void takeVideo(final @NonNull VideoResult.Stub stub,
                                 final @Nullable File file,
                                 final @Nullable FileDescriptor fileDescriptor) {
+        stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
         getOrchestrator().scheduleStateful("take video", CameraState.BIND, new Runnable() {
             @Override
             public void run() {
+                stub.tracer.end(CaptureTrace.STAGE_QUEUE);
                 LOG.i("takeVideo:", "running. isTakingVideo:", isTakingVideo());
                 if (isTakingVideo()) return;
                 if (mMode == Mode.PICTURE) {
@@ -614,10 +978,12 @@ public abstract class CameraBaseEngine extends CameraEngine {
     @Override
     public final void takeVideoSnapshot(@NonNull final VideoResult.Stub stub,
                                         @NonNull final File file) {
+        stub.tracer.begin(CaptureTrace.STAGE_QUEUE);
         getOrchestrator().scheduleStateful("take video snapshot", CameraState.BIND,
                 new Runnable() {
             @Override
             public void run() {
+                stub.tracer.end(CaptureTrace.STAGE_QUEUE);
                 LOG.i("takeVideoSnapshot:", "running. isTakingVideo:", isTakingVideo());
                 stub.file = file;
                 stub.isSnapshot = true;
@@ -626,6 +992,12 @@ public abstract class CameraBaseEngine extends CameraEngine {
                 stub.location = mLocation;
                 stub.facing = mFacing;
                 stub.videoBitRate = mVideoBitRate;
+                stub.videoMinBitRate = mVideoMinBitRate;
+                stub.videoMaxBitRate = mVideoMaxBitRate;
+                stub.timeLapseInterval = mVideoSnapshotTimeLapseInterval;
+                stub.timeLapseFrameRate = mVideoSnapshotTimeLapseFrameRate;
+                stub.proxyResolution = mVideoSnapshotProxyResolution;
+                stub.proxyVideoBitRate = mVideoSnapshotProxyBitRate;
                 stub.audioBitRate = mAudioBitRate;
                 stub.audio = mAudio;
                 stub.maxSize = mVideoMaxSize;
@@ -682,9 +1054,18 @@ public abstract class CameraBaseEngine extends CameraEngine {
         getCallback().dispatchOnVideoRecordingEnd();
     }
 
+    @Override
+    public void onVideoRecordingAudioLevel(float rms, float peak) {
+        getCallback().dispatchOnVideoRecordingAudioLevel(rms, peak);
+    }
+
     @EngineThread
     protected abstract void onTakePicture(@NonNull PictureResult.Stub stub, boolean doMetering);
 
+    @EngineThread
+    protected abstract void onTakePictureBurst(@NonNull PictureResult.Stub[] stubs,
+                                               @NonNull File directory);
+
     @EngineThread
     protected abstract void onTakePictureSnapshot(@NonNull PictureResult.Stub stub,
                                                   @NonNull AspectRatio outputRatio,
@@ -5,6 +5,7 @@ import android.graphics.PointF;
 import android.location.Location;
 
 
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 
@@ -29,7 +30,9 @@ import com.otaliastudios.cameraview.engine.offset.Angles;
 import com.otaliastudios.cameraview.engine.offset.Reference;
 import com.otaliastudios.cameraview.frame.Frame;
 import com.otaliastudios.cameraview.frame.FrameManager;
+import com.otaliastudios.cameraview.internal.StartupTracer;
 import com.otaliastudios.cameraview.internal.WorkerHandler;
+import com.otaliastudios.cameraview.picture.BurstPictureRecorder;
 import com.otaliastudios.cameraview.picture.PictureRecorder;
 import com.otaliastudios.cameraview.preview.CameraPreview;
 import com.otaliastudios.cameraview.controls.Audio;
@@ -46,6 +49,7 @@ import com.otaliastudios.cameraview.video.VideoRecorder;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.annotation.VisibleForTesting;
 
 import java.io.File;
@@ -109,6 +113,7 @@ import java.util.concurrent.TimeUnit;
 public abstract class CameraEngine implements
         CameraPreview.SurfaceCallback,
         PictureRecorder.PictureResultListener,
+        BurstPictureRecorder.BurstResultListener,
         VideoRecorder.VideoResultListener {
 
     public interface Callback {
@@ -119,6 +124,10 @@ public abstract class CameraEngine implements
         void dispatchOnPictureShutter(boolean shouldPlaySound);
         void dispatchOnVideoTaken(@NonNull VideoResult.Stub stub);
         void dispatchOnPictureTaken(@NonNull PictureResult.Stub stub);
+        void dispatchOnBurstPictureTaken(@NonNull PictureResult.Stub stub,
+                                         @NonNull File file,
+                                         int index);
+        void dispatchOnBurstCompleted(int count);
         void dispatchOnFocusStart(@Nullable Gesture trigger, @NonNull PointF where);
         void dispatchOnFocusEnd(@Nullable Gesture trigger, boolean success, @NonNull PointF where);
         void dispatchOnZoomChanged(final float newValue, @Nullable final PointF[] fingers);
@@ -128,6 +137,8 @@ public abstract class CameraEngine implements
         void dispatchError(CameraException exception);
         void dispatchOnVideoRecordingStart();
         void dispatchOnVideoRecordingEnd();
+        void dispatchOnVideoRecordingAudioLevel(float rms, float peak);
+        void dispatchOnStartupTrace(@NonNull StartupTracer tracer);
     }
 
     protected static final String TAG = CameraEngine.class.getSimpleName();
@@ -138,6 +149,8 @@ public abstract class CameraEngine implements
     private WorkerHandler mHandler;
     @VisibleForTesting Handler mCrashHandler;
     private final Callback mCallback;
+    private volatile StartupTracer mStartupTracer;
+    private volatile long mColdStartDuration = -1L;
     private final CameraStateOrchestrator mOrchestrator
             = new CameraStateOrchestrator(new CameraOrchestrator.Callback() {
         @Override
@@ -168,6 +181,16 @@ public abstract class CameraEngine implements
         return mOrchestrator;
     }
 
+    /**
+     * Returns the handler of the engine thread, for components that
+     * need to receive callbacks or post actions on it.
+     * @return the engine handler
+     */
+    @NonNull
+    protected final Handler getEngineHandler() {
+        return mHandler.getHandler();
+    }
+
     //region Error handling
 
     /**
@@ -275,6 +298,38 @@ public abstract class CameraEngine implements
         return mOrchestrator.hasPendingStateChange();
     }
 
+    /**
+     * Returns the duration of the last cold start in milliseconds, measured from
+     * {@link #start()} to the moment the preview is started, which for engines that
+     * wait for it means the first preview frame. Returns -1 if no start has completed.
+     *
+     * @return the cold start duration
+     */
+    public final long getColdStartDuration() {
+        return mColdStartDuration;
+    }
+
+    /**
+     * Returns the number of times the camera parameters were committed to the device,
+     * since this engine was created. Engines that do not batch commits return 0.
+     *
+     * @return the number of commits
+     */
+    public int getRepeatingRequestCommitCount() {
+        return 0;
+    }
+
+    /**
+     * Returns the number of control changes (like zoom or exposure correction) that
+     * asked for a commit, since this engine was created. Engines that do not batch
+     * commits return 0.
+     *
+     * @return the number of changes
+     */
+    public int getRepeatingRequestChangeCount() {
+        return 0;
+    }
+
     /**
      * Calls {@link #stop(boolean)} and waits for it.
      * Not final due to mockito requirements.
@@ -340,6 +395,9 @@ public abstract class CameraEngine implements
     @NonNull
     public Task<Void> start() {
         LOG.i("START:", "scheduled. State:", getState());
+        StartupTracer tracer = new StartupTracer();
+        mStartupTracer = tracer;
+        mOrchestrator.setTracer(tracer);
         Task<Void> engine = startEngine();
         startBind();
         startPreview();
@@ -521,6 +579,22 @@ public abstract class CameraEngine implements
             public Task<Void> call() {
                 return onStartPreview();
             }
+        }).addOnSuccessListener(new OnSuccessListener<Void>() {
+            @Override
+            public void onSuccess(Void aVoid) {
+                // Only the first preview after start() is a cold start. Others come from
+                // surface changes or restartBind() and are not measured.
+                StartupTracer tracer = mStartupTracer;
+                if (tracer != null) {
+                    mStartupTracer = null;
+                    mOrchestrator.setTracer(null);
+                    tracer.finish();
+                    mColdStartDuration = (tracer.getEndNanos() - tracer.getStartNanos())
+                            / 1000000L;
+                    LOG.i("START:", "Cold start took", mColdStartDuration, "ms.");
+                    mCallback.dispatchOnStartupTrace(tracer);
+                }
+            }
         });
     }
 
@@ -635,6 +709,27 @@ public abstract class CameraEngine implements
     public abstract void setVideoBitRate(int videoBitRate);
     public abstract int getVideoBitRate();
 
+    public abstract void setVideoMinBitRate(int videoMinBitRate);
+    public abstract int getVideoMinBitRate();
+
+    public abstract void setVideoMaxBitRate(int videoMaxBitRate);
+    public abstract int getVideoMaxBitRate();
+
+    public abstract void setVideoSnapshotWarmUp(boolean warmUp);
+    public abstract boolean getVideoSnapshotWarmUp();
+
+    public abstract void setVideoSnapshotTimeLapseInterval(long intervalMillis);
+    public abstract long getVideoSnapshotTimeLapseInterval();
+
+    public abstract void setVideoSnapshotTimeLapseFrameRate(int frameRate);
+    public abstract int getVideoSnapshotTimeLapseFrameRate();
+
+    public abstract void setVideoSnapshotProxyResolution(int resolution);
+    public abstract int getVideoSnapshotProxyResolution();
+
+    public abstract void setVideoSnapshotProxyBitRate(int bitRate);
+    public abstract int getVideoSnapshotProxyBitRate();
+
     public abstract void setAudioBitRate(int audioBitRate);
     public abstract int getAudioBitRate();
 
@@ -707,6 +802,12 @@ public abstract class CameraEngine implements
     public abstract void setPictureSnapshotMetering(boolean enable);
     public abstract boolean getPictureSnapshotMetering();
 
+    public abstract void setPictureFileSync(boolean sync);
+    public abstract boolean getPictureFileSync();
+
+    public abstract void setPictureZeroShutterLag(boolean enable);
+    public abstract boolean getPictureZeroShutterLag();
+
     public abstract void startAutoFocus(@Nullable Gesture gesture,
                                         @NonNull MeteringRegions regions,
                                         @NonNull PointF legacyPoint);
@@ -716,6 +817,12 @@ public abstract class CameraEngine implements
     public abstract boolean isTakingPicture();
     public abstract void takePicture(@NonNull PictureResult.Stub stub);
     public abstract void takePictureSnapshot(final @NonNull PictureResult.Stub stub);
+    public abstract void takePictureBurst(@NonNull PictureResult.Stub[] stubs,
+                                          @NonNull File directory);
+    public abstract void takePictureSnapshotBurst(@NonNull PictureResult.Stub[] stubs,
+                                                  @NonNull File directory);
+    @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+    public abstract void takeMergedPictureSnapshot(@NonNull PictureResult.Stub stub, int frames);
 
     public abstract boolean isTakingVideo();
     public abstract void takeVideo(@NonNull VideoResult.Stub stub,
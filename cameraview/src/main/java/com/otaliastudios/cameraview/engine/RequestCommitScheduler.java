@@ -0,0 +1,106 @@
+package com.otaliastudios.cameraview.engine;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides when changes to the repeating request should be committed, so that changes
+ * that come in bursts, like zoom during a gesture, are committed at most once per frame
+ * interval. If the last commit is older than one frame, a change is committed right away.
+ * Otherwise, a single commit is scheduled at the end of the interval, and it includes
+ * all the changes made meanwhile.
+ *
+ * This class is not thread safe: it should only be used from the engine thread.
+ */
+class RequestCommitScheduler {
+
+    interface Callback {
+
+        /**
+         * Should commit the request now and, if it succeeds,
+         * call {@link #onCommitted(long)}.
+         */
+        void commit();
+
+        /**
+         * Should call {@link #onScheduledCommit()} after the given delay.
+         * @param delayMillis the delay
+         */
+        void scheduleCommit(long delayMillis);
+    }
+
+    private final Callback mCallback;
+    private boolean mDirty;
+    private boolean mScheduled;
+    private boolean mCommitted;
+    private long mCommitTime;
+    private volatile int mCommits;
+    private volatile int mChanges;
+
+    RequestCommitScheduler(@NonNull Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Called when some control changed the request.
+     * @param nanos the current time, in the {@link System#nanoTime()} base
+     * @param intervalNanos the current frame interval
+     */
+    void onChange(long nanos, long intervalNanos) {
+        mChanges++;
+        mDirty = true;
+        if (mScheduled) return;
+        long elapsed = nanos - mCommitTime;
+        if (!mCommitted || elapsed >= intervalNanos) {
+            mCallback.commit();
+            return;
+        }
+        mScheduled = true;
+        mCallback.scheduleCommit((intervalNanos - elapsed + 999999L) / 1000000L);
+    }
+
+    /**
+     * Called when the delay passed to {@link Callback#scheduleCommit(long)} is over.
+     */
+    void onScheduledCommit() {
+        mScheduled = false;
+        // Not dirty if someone committed the request in the meanwhile.
+        if (mDirty) mCallback.commit();
+    }
+
+    /**
+     * Called whenever the request is committed, whether or not
+     * the commit was requested by this class.
+     * @param nanos the current time, in the {@link System#nanoTime()} base
+     */
+    void onCommitted(long nanos) {
+        mDirty = false;
+        mCommitted = true;
+        mCommitTime = nanos;
+        mCommits++;
+    }
+
+    /**
+     * Forgets about pending changes, for example because the session was closed.
+     * A scheduled commit, if it still runs, will do nothing.
+     */
+    void reset() {
+        mScheduled = false;
+        mDirty = false;
+    }
+
+    /**
+     * Returns the number of commits.
+     * @return the commit count
+     */
+    int getCommitCount() {
+        return mCommits;
+    }
+
+    /**
+     * Returns the number of changes.
+     * @return the change count
+     */
+    int getChangeCount() {
+        return mChanges;
+    }
+}
@@ -8,8 +8,11 @@ import android.hardware.camera2.TotalCaptureResult;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
+import java.util.List;
+
 /**
  * The Action class encapsulates logic for completing an action in a Camera2 environment.
  * In this case, we are often interested in constantly receiving the {@link CaptureResult}
@@ -60,6 +63,21 @@ public interface Action {
      */
     void removeCallback(@NonNull ActionCallback callback);
 
+    /**
+     * Returns the {@link CaptureResult} keys that this action reads, or null. If keys are
+     * returned, {@link #onCaptureProgressed(ActionHolder, CaptureRequest, CaptureResult)} and
+     * {@link #onCaptureCompleted(ActionHolder, CaptureRequest, TotalCaptureResult)} are only
+     * called when at least one of the values has changed since the last call.
+     *
+     * This is called for each result, so actions can return null while they are in an
+     * active state and need every frame, and return keys otherwise. Lists are compared
+     * by contents, so there is no need to return the same instance.
+     *
+     * @return the keys or null to receive all results
+     */
+    @Nullable
+    List<CaptureResult.Key<?>> getResultKeys();
+
     /**
      * Called from {@link CaptureCallback#onCaptureStarted(CameraCaptureSession, CaptureRequest,
      * long, long)}.
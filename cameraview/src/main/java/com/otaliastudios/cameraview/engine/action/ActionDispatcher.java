@@ -0,0 +1,167 @@
+package com.otaliastudios.cameraview.engine.action;
+
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dispatches the capture callbacks of the repeating request to the running {@link Action}s.
+ *
+ * Actions that return keys from {@link Action#getResultKeys()} are only passed the results
+ * in which the value of at least one of these keys has changed since the last result of the
+ * same kind (partial or total) they received. Other actions receive all results.
+ * The key lists are compared by contents, so actions are free to return a new list each time.
+ *
+ * Actions are called outside of the lock, using a snapshot of the current actions that is
+ * only rebuilt when actions are added or removed. Actions removed during dispatch, for example
+ * when they complete, are not called anymore, while actions added during dispatch will
+ * receive the next callback.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class ActionDispatcher {
+
+    private final static Object UNSET = new Object();
+    private final static Entry[] EMPTY = new Entry[0];
+
+    private static class Entry {
+        private final Action action;
+        private volatile boolean removed;
+        // Accessed by the dispatching thread only.
+        private final Values partial = new Values();
+        private final Values total = new Values();
+
+        private Entry(@NonNull Action action) {
+            this.action = action;
+        }
+    }
+
+    private static class Values {
+        private List<CaptureResult.Key<?>> keys;
+        private Object[] values;
+    }
+
+    private final List<Entry> mEntries = new ArrayList<>();
+    private Entry[] mSnapshot = EMPTY;
+
+    /**
+     * Adds an action, if it was not added already.
+     * @param action the action
+     */
+    public synchronized void add(@NonNull Action action) {
+        if (indexOf(action) >= 0) return;
+        mEntries.add(new Entry(action));
+        mSnapshot = null;
+    }
+
+    /**
+     * Removes an action, if it was added.
+     * @param action the action
+     */
+    public synchronized void remove(@NonNull Action action) {
+        int index = indexOf(action);
+        if (index < 0) return;
+        mEntries.remove(index).removed = true;
+        mSnapshot = null;
+    }
+
+    /**
+     * Returns a copy of the current actions.
+     * @return the actions
+     */
+    @NonNull
+    public synchronized List<Action> getActions() {
+        List<Action> actions = new ArrayList<>(mEntries.size());
+        for (Entry entry : mEntries) {
+            actions.add(entry.action);
+        }
+        return actions;
+    }
+
+    private int indexOf(@NonNull Action action) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).action == action) return i;
+        }
+        return -1;
+    }
+
+    @NonNull
+    private synchronized Entry[] snapshot() {
+        if (mSnapshot == null) mSnapshot = mEntries.toArray(EMPTY);
+        return mSnapshot;
+    }
+
+    public void dispatchCaptureStarted(@NonNull ActionHolder holder,
+                                       @NonNull CaptureRequest request) {
+        for (Entry entry : snapshot()) {
+            if (!entry.removed) entry.action.onCaptureStarted(holder, request);
+        }
+    }
+
+    public void dispatchCaptureProgressed(@NonNull ActionHolder holder,
+                                          @NonNull CaptureRequest request,
+                                          @NonNull CaptureResult result) {
+        for (Entry entry : snapshot()) {
+            if (!entry.removed && hasChanged(entry.action, entry.partial, result, true)) {
+                entry.action.onCaptureProgressed(holder, request, result);
+            }
+        }
+    }
+
+    public void dispatchCaptureCompleted(@NonNull ActionHolder holder,
+                                         @NonNull CaptureRequest request,
+                                         @NonNull TotalCaptureResult result) {
+        for (Entry entry : snapshot()) {
+            if (!entry.removed && hasChanged(entry.action, entry.total, result, false)) {
+                entry.action.onCaptureCompleted(holder, request, result);
+            }
+        }
+    }
+
+    /**
+     * Whether the action should receive this result. This also stores the new values.
+     * Partial and total results have their own values, so that a change first seen in
+     * a partial result is still passed along with the total result.
+     * Partial results might not contain all keys: in this case, missing keys are ignored.
+     */
+    private static boolean hasChanged(@NonNull Action action,
+                                      @NonNull Values cache,
+                                      @NonNull CaptureResult result,
+                                      boolean partial) {
+        List<CaptureResult.Key<?>> keys = action.getResultKeys();
+        if (keys == null) return true;
+        if (keys != cache.keys) {
+            // Actions might build a new list for each call, so compare the contents.
+            if (!keys.equals(cache.keys)) {
+                // First result, or the action changed its keys.
+                cache.values = new Object[keys.size()];
+                Arrays.fill(cache.values, UNSET);
+            }
+            cache.keys = keys;
+        }
+        boolean changed = false;
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = result.get(keys.get(i));
+            if (value == null && partial) continue;
+            Object last = cache.values[i];
+            if (last == UNSET || !equals(last, value)) {
+                cache.values[i] = value;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private static boolean equals(@Nullable Object first, @Nullable Object second) {
+        // Wrapping also compares the contents of arrays, like MeteringRectangle[].
+        return Arrays.deepEquals(new Object[]{first}, new Object[]{second});
+    }
+}
@@ -8,6 +8,7 @@ import android.os.Build;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
@@ -81,6 +82,13 @@ public abstract class BaseAction implements Action {
         // Overrideable
     }
 
+    @Nullable
+    @Override
+    public List<CaptureResult.Key<?>> getResultKeys() {
+        // Overrideable
+        return null;
+    }
+
     @CallSuper
     @Override
     public void onCaptureStarted(@NonNull ActionHolder holder, @NonNull CaptureRequest request) {
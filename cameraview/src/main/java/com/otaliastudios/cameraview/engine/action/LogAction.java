@@ -6,19 +6,38 @@ import android.hardware.camera2.TotalCaptureResult;
 import android.os.Build;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import com.otaliastudios.cameraview.CameraLogger;
 import com.otaliastudios.cameraview.engine.CameraEngine;
 
+import java.util.Arrays;
+import java.util.List;
+
 @RequiresApi(Build.VERSION_CODES.LOLLIPOP)
 public class LogAction extends BaseAction {
 
     private final static CameraLogger LOG
             = CameraLogger.create(CameraEngine.class.getSimpleName());
 
+    private final static List<CaptureResult.Key<?>> KEYS = Arrays.<CaptureResult.Key<?>>asList(
+            CaptureResult.CONTROL_AE_MODE,
+            CaptureResult.CONTROL_AE_STATE,
+            CaptureResult.CONTROL_AF_STATE,
+            CaptureResult.CONTROL_AE_LOCK,
+            CaptureResult.CONTROL_AE_PRECAPTURE_TRIGGER,
+            CaptureResult.CONTROL_AF_TRIGGER);
+
     private String lastLog;
 
+    @Nullable
+    @Override
+    public List<CaptureResult.Key<?>> getResultKeys() {
+        // We only log changes, so there's no need to receive all frames.
+        return KEYS;
+    }
+
     @Override
     public void onCaptureCompleted(@NonNull ActionHolder holder,
                                    @NonNull CaptureRequest request,
@@ -0,0 +1,181 @@
+package com.otaliastudios.cameraview.engine.options;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.cameraview.CameraOptions;
+import com.otaliastudios.cameraview.controls.Facing;
+import com.otaliastudios.cameraview.controls.Flash;
+import com.otaliastudios.cameraview.controls.Hdr;
+import com.otaliastudios.cameraview.controls.PictureFormat;
+import com.otaliastudios.cameraview.controls.WhiteBalance;
+import com.otaliastudios.cameraview.size.AspectRatio;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link CameraOptions} restored from a string, so that they can be cached and persisted
+ * instead of being computed by {@link Camera1Options} or {@link Camera2Options} on each start.
+ */
+public class CachedCameraOptions extends CameraOptions {
+
+    private final static String FACING = "facing";
+    private final static String FLASH = "flash";
+    private final static String WHITE_BALANCE = "wb";
+    private final static String HDR = "hdr";
+    private final static String PICTURE_FORMATS = "pictureFormats";
+    private final static String FRAME_PROCESSING_FORMATS = "frameFormats";
+    private final static String PICTURE_SIZES = "pictureSizes";
+    private final static String VIDEO_SIZES = "videoSizes";
+    private final static String PICTURE_RATIOS = "pictureRatios";
+    private final static String VIDEO_RATIOS = "videoRatios";
+    private final static String ZOOM = "zoom";
+    private final static String AUTO_FOCUS = "af";
+    private final static String EXPOSURE_CORRECTION = "ev";
+    private final static String EXPOSURE_CORRECTION_MIN = "evMin";
+    private final static String EXPOSURE_CORRECTION_MAX = "evMax";
+    private final static String FRAME_RATE_MIN = "fpsMin";
+    private final static String FRAME_RATE_MAX = "fpsMax";
+
+    private CachedCameraOptions() { }
+
+    /**
+     * Encodes the given options to a string that can be passed to {@link #decode(String)}.
+     *
+     * @param options the options
+     * @return a string
+     */
+    @NonNull
+    public static String encode(@NonNull CameraOptions options) {
+        StringBuilder builder = new StringBuilder();
+        append(builder, FACING, options.getSupportedFacing());
+        append(builder, FLASH, options.getSupportedFlash());
+        append(builder, WHITE_BALANCE, options.getSupportedWhiteBalance());
+        append(builder, HDR, options.getSupportedHdr());
+        append(builder, PICTURE_FORMATS, options.getSupportedPictureFormats());
+        append(builder, FRAME_PROCESSING_FORMATS, options.getSupportedFrameProcessingFormats());
+        append(builder, PICTURE_SIZES, options.getSupportedPictureSizes());
+        append(builder, VIDEO_SIZES, options.getSupportedVideoSizes());
+        append(builder, PICTURE_RATIOS, options.getSupportedPictureAspectRatios());
+        append(builder, VIDEO_RATIOS, options.getSupportedVideoAspectRatios());
+        append(builder, ZOOM, options.isZoomSupported());
+        append(builder, AUTO_FOCUS, options.isAutoFocusSupported());
+        append(builder, EXPOSURE_CORRECTION, options.isExposureCorrectionSupported());
+        append(builder, EXPOSURE_CORRECTION_MIN, options.getExposureCorrectionMinValue());
+        append(builder, EXPOSURE_CORRECTION_MAX, options.getExposureCorrectionMaxValue());
+        append(builder, FRAME_RATE_MIN, options.getPreviewFrameRateMinValue());
+        append(builder, FRAME_RATE_MAX, options.getPreviewFrameRateMaxValue());
+        return builder.toString();
+    }
+
+    private static void append(@NonNull StringBuilder builder,
+                               @NonNull String key,
+                               @NonNull Collection<?> values) {
+        builder.append(key).append('=');
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) builder.append(',');
+            // Enums use name(), sizes and aspect ratios use their parseable toString().
+            builder.append(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+            first = false;
+        }
+        builder.append(';');
+    }
+
+    private static void append(@NonNull StringBuilder builder,
+                               @NonNull String key,
+                               @NonNull Object value) {
+        builder.append(key).append('=').append(value).append(';');
+    }
+
+    /**
+     * Decodes options from a string that was returned by {@link #encode(CameraOptions)},
+     * or returns null if the string is not valid.
+     *
+     * @param string the string
+     * @return the options or null
+     */
+    @Nullable
+    public static CachedCameraOptions decode(@NonNull String string) {
+        Map<String, String[]> values = new HashMap<>();
+        for (String entry : string.split(";")) {
+            int index = entry.indexOf('=');
+            if (index <= 0) return null;
+            String value = entry.substring(index + 1);
+            values.put(entry.substring(0, index),
+                    value.isEmpty() ? new String[0] : value.split(","));
+        }
+        CachedCameraOptions options = new CachedCameraOptions();
+        try {
+            for (String value : get(values, FACING)) {
+                options.supportedFacing.add(Facing.valueOf(value));
+            }
+            for (String value : get(values, FLASH)) {
+                options.supportedFlash.add(Flash.valueOf(value));
+            }
+            for (String value : get(values, WHITE_BALANCE)) {
+                options.supportedWhiteBalance.add(WhiteBalance.valueOf(value));
+            }
+            for (String value : get(values, HDR)) {
+                options.supportedHdr.add(Hdr.valueOf(value));
+            }
+            for (String value : get(values, PICTURE_FORMATS)) {
+                options.supportedPictureFormats.add(PictureFormat.valueOf(value));
+            }
+            for (String value : get(values, FRAME_PROCESSING_FORMATS)) {
+                options.supportedFrameProcessingFormats.add(Integer.parseInt(value));
+            }
+            for (String value : get(values, PICTURE_SIZES)) {
+                options.supportedPictureSizes.add(parseSize(value));
+            }
+            for (String value : get(values, VIDEO_SIZES)) {
+                options.supportedVideoSizes.add(parseSize(value));
+            }
+            for (String value : get(values, PICTURE_RATIOS)) {
+                options.supportedPictureAspectRatio.add(AspectRatio.parse(value));
+            }
+            for (String value : get(values, VIDEO_RATIOS)) {
+                options.supportedVideoAspectRatio.add(AspectRatio.parse(value));
+            }
+            options.zoomSupported = Boolean.parseBoolean(getOne(values, ZOOM));
+            options.autoFocusSupported = Boolean.parseBoolean(getOne(values, AUTO_FOCUS));
+            options.exposureCorrectionSupported
+                    = Boolean.parseBoolean(getOne(values, EXPOSURE_CORRECTION));
+            options.exposureCorrectionMinValue
+                    = Float.parseFloat(getOne(values, EXPOSURE_CORRECTION_MIN));
+            options.exposureCorrectionMaxValue
+                    = Float.parseFloat(getOne(values, EXPOSURE_CORRECTION_MAX));
+            options.previewFrameRateMinValue = Float.parseFloat(getOne(values, FRAME_RATE_MIN));
+            options.previewFrameRateMaxValue = Float.parseFloat(getOne(values, FRAME_RATE_MAX));
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException and unknown enum values.
+            return null;
+        }
+        return options;
+    }
+
+    @NonNull
+    private static String[] get(@NonNull Map<String, String[]> values, @NonNull String key) {
+        String[] value = values.get(key);
+        if (value == null) throw new IllegalArgumentException("Missing key: " + key);
+        return value;
+    }
+
+    @NonNull
+    private static String getOne(@NonNull Map<String, String[]> values, @NonNull String key) {
+        String[] value = get(values, key);
+        if (value.length != 1) throw new IllegalArgumentException("Invalid key: " + key);
+        return value[0];
+    }
+
+    @NonNull
+    private static Size parseSize(@NonNull String value) {
+        int index = value.indexOf('x');
+        if (index <= 0) throw new IllegalArgumentException("Invalid size: " + value);
+        return new Size(Integer.parseInt(value.substring(0, index)),
+                Integer.parseInt(value.substring(index + 1)));
+    }
+}
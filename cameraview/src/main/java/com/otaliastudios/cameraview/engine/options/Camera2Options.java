@@ -25,6 +25,9 @@ import com.otaliastudios.cameraview.internal.CamcorderProfiles;
 import com.otaliastudios.cameraview.size.AspectRatio;
 import com.otaliastudios.cameraview.size.Size;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import static android.hardware.camera2.CameraCharacteristics.*;
@@ -36,13 +39,32 @@ public class Camera2Options extends CameraOptions {
                           @NonNull String cameraId,
                           boolean flipSizes,
                           int pictureFormat) throws CameraAccessException {
+        this(cameraId,
+                manager.getCameraCharacteristics(cameraId),
+                getAllCharacteristics(manager),
+                flipSizes,
+                pictureFormat);
+    }
+
+    /**
+     * Creates options out of characteristics that were already queried, so that
+     * no {@link CameraManager} call is needed.
+     *
+     * @param cameraId the camera id
+     * @param cameraCharacteristics characteristics of the camera id
+     * @param allCharacteristics characteristics of all cameras, to collect facing values
+     * @param flipSizes whether sizes should be flipped
+     * @param pictureFormat the picture format
+     */
+    public Camera2Options(@NonNull String cameraId,
+                          @NonNull CameraCharacteristics cameraCharacteristics,
+                          @NonNull Collection<CameraCharacteristics> allCharacteristics,
+                          boolean flipSizes,
+                          int pictureFormat) {
         Camera2Mapper mapper = Camera2Mapper.get();
-        CameraCharacteristics cameraCharacteristics = manager.getCameraCharacteristics(cameraId);
 
         // Facing
-        for (String cameraId1 : manager.getCameraIdList()) {
-            CameraCharacteristics cameraCharacteristics1 = manager
-                    .getCameraCharacteristics(cameraId1);
+        for (CameraCharacteristics cameraCharacteristics1 : allCharacteristics) {
             Integer cameraFacing = cameraCharacteristics1.get(LENS_FACING);
             if (cameraFacing != null) {
                 Facing value = mapper.unmapFacing(cameraFacing);
@@ -185,4 +207,15 @@ public class Camera2Options extends CameraOptions {
             }
         }
     }
+
+    @NonNull
+    private static List<CameraCharacteristics> getAllCharacteristics(
+            @NonNull CameraManager manager) throws CameraAccessException {
+        String[] cameraIds = manager.getCameraIdList();
+        List<CameraCharacteristics> all = new ArrayList<>(cameraIds.length);
+        for (String cameraId : cameraIds) {
+            all.add(manager.getCameraCharacteristics(cameraId));
+        }
+        return all;
+    }
 }
@@ -11,11 +11,12 @@ import com.google.android.gms.tasks.Tasks;
 import com.otaliastudios.cameraview.CameraLogger;
 import com.otaliastudios.cameraview.internal.WorkerHandler;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -42,15 +43,42 @@ public class CameraOrchestrator {
         void handleJobException(@NonNull String job, @NonNull Exception exception);
     }
 
+    /**
+     * Receives the timing of every executed job, for instrumentation.
+     * All times are in the {@link System#nanoTime()} time base.
+     */
+    public interface Tracer {
+
+        /**
+         * Called when a job is completed, whatever the outcome. This is called
+         * before the job task is completed, from the job worker thread.
+         *
+         * @param job the job name
+         * @param scheduledNanos when the job was scheduled
+         * @param startedNanos when the job started executing
+         * @param completedNanos when the job (and the task it returned) completed
+         * @param successful whether the job succeeded, as opposed to failing or being aborted
+         */
+        void onJobCompleted(@NonNull String job,
+                            long scheduledNanos,
+                            long startedNanos,
+                            long completedNanos,
+                            boolean successful);
+    }
+
     protected static class Job<T> {
         public final String name;
-        public final TaskCompletionSource<T> source = new TaskCompletionSource<>();
+        public final TaskCompletionSource<T> source;
         public final Callable<Task<T>> scheduler;
         public final boolean dispatchExceptions;
         public final long startTime;
+        public final long scheduledNanos = System.nanoTime();
+        public long startedNanos;
+        public boolean executing; // guarded by mJobsLock
 
-        private Job(@NonNull String name, @NonNull Callable<Task<T>> scheduler, boolean dispatchExceptions, long startTime) {
+        private Job(@NonNull String name, @NonNull TaskCompletionSource<T> source, @NonNull Callable<Task<T>> scheduler, boolean dispatchExceptions, long startTime) {
             this.name = name;
+            this.source = source;
             this.scheduler = scheduler;
             this.dispatchExceptions = dispatchExceptions;
             this.startTime = startTime;
@@ -58,14 +86,25 @@ public class CameraOrchestrator {
     }
 
     protected final Callback mCallback;
-    protected final ArrayDeque<Job<?>> mJobs = new ArrayDeque<>();
+    protected final LinkedList<Job<?>> mJobs = new LinkedList<>();
     protected boolean mJobRunning = false;
     protected final Object mJobsLock = new Object();
+    private volatile Tracer mTracer;
 
     public CameraOrchestrator(@NonNull Callback callback) {
         mCallback = callback;
     }
 
+    /**
+     * Sets a {@link Tracer} that will receive the timing of the jobs executed
+     * from now on, or null to stop tracing.
+     *
+     * @param tracer a tracer or null
+     */
+    public void setTracer(@Nullable Tracer tracer) {
+        mTracer = tracer;
+    }
+
     @NonNull
     public Task<Void> schedule(@NonNull String name,
                                boolean dispatchExceptions,
@@ -77,36 +116,99 @@ public class CameraOrchestrator {
     public Task<Void> scheduleDelayed(@NonNull String name,
                                       boolean dispatchExceptions,
                                       long minDelay,
-                                      @NonNull final Runnable job) {
-        return scheduleInternal(name, dispatchExceptions, minDelay, new Callable<Task<Void>>() {
-            @Override
-            public Task<Void> call() {
-                job.run();
-                return Tasks.forResult(null);
-            }
-        });
+                                      @NonNull Runnable job) {
+        return scheduleInternal(name, dispatchExceptions, minDelay, false, wrap(job));
+    }
+
+    /**
+     * Like {@link #schedule(String, boolean, Runnable)}, but if a job with the same name
+     * is still waiting to be executed, it is replaced by this one, which takes its place in
+     * the queue, so that only the latest is executed. This is meant for high frequency jobs
+     * that apply the latest value of some parameter, like zoom during a pinch gesture.
+     *
+     * The replaced jobs share the returned task, which completes when this job completes.
+     * A job that is already executing is not replaced.
+     *
+     * @param name the job name
+     * @param dispatchExceptions whether exceptions should be dispatched
+     * @param job the job
+     * @return a task that completes when the latest job completes
+     */
+    @NonNull
+    public Task<Void> scheduleCoalesced(@NonNull String name,
+                                        boolean dispatchExceptions,
+                                        @NonNull Runnable job) {
+        return scheduleInternal(name, dispatchExceptions, 0L, true, wrap(job));
     }
 
     @NonNull
     public <T> Task<T> schedule(@NonNull String name,
                                 boolean dispatchExceptions,
                                 @NonNull Callable<Task<T>> scheduler) {
-        return scheduleInternal(name, dispatchExceptions, 0L, scheduler);
+        return scheduleInternal(name, dispatchExceptions, 0L, false, scheduler);
+    }
+
+    @NonNull
+    private static Callable<Task<Void>> wrap(@NonNull final Runnable job) {
+        return new Callable<Task<Void>>() {
+            @Override
+            public Task<Void> call() {
+                job.run();
+                return Tasks.forResult(null);
+            }
+        };
     }
 
     @NonNull
     private <T> Task<T> scheduleInternal(@NonNull String name,
                                          boolean dispatchExceptions,
                                          long minDelay,
+                                         boolean coalesce,
                                          @NonNull Callable<Task<T>> scheduler) {
         LOG.i(name.toUpperCase(), "- Scheduling.");
-        Job<T> job = new Job<>(name, scheduler, dispatchExceptions,
-                System.currentTimeMillis() + minDelay);
         synchronized (mJobsLock) {
-            mJobs.addLast(job);
+            Job<T> job = null;
+            if (coalesce) job = coalesce(name, scheduler, dispatchExceptions, minDelay);
+            if (job == null) {
+                job = new Job<>(name, new TaskCompletionSource<T>(), scheduler,
+                        dispatchExceptions, System.currentTimeMillis() + minDelay);
+                mJobs.addLast(job);
+            }
             sync(minDelay);
+            return job.source.getTask();
+        }
+    }
+
+    /**
+     * Replaces the first pending job with the given name with a new one, in place, so that
+     * it keeps its position with respect to the other jobs, and removes the other pending
+     * jobs with the same name. The new job inherits the source of the replaced one, so
+     * there is at most one pending source per name.
+     * Returns null if there is no pending job with this name.
+     */
+    @GuardedBy("mJobsLock")
+    @Nullable
+    private <T> Job<T> coalesce(@NonNull String name,
+                                @NonNull Callable<Task<T>> scheduler,
+                                boolean dispatchExceptions,
+                                long minDelay) {
+        Job<T> replacement = null;
+        ListIterator<Job<?>> iterator = mJobs.listIterator();
+        while (iterator.hasNext()) {
+            Job<?> job = iterator.next();
+            if (job.executing || !job.name.equals(name)) continue;
+            if (replacement == null) {
+                LOG.v("coalesce: name=", name, "replacing pending job.");
+                //noinspection unchecked
+                replacement = new Job<>(name, (TaskCompletionSource<T>) job.source, scheduler,
+                        dispatchExceptions, System.currentTimeMillis() + minDelay);
+                iterator.set(replacement);
+            } else {
+                LOG.v("coalesce: name=", name, "removing duplicate pending job.");
+                iterator.remove();
+            }
         }
-        return job.source.getTask();
+        return replacement;
     }
 
     @GuardedBy("mJobsLock")
@@ -129,6 +231,7 @@ public class CameraOrchestrator {
                             }
                         }
                         if (job != null) {
+                            job.executing = true;
                             mJobRunning = true;
                         }
                     }
@@ -149,11 +252,13 @@ public class CameraOrchestrator {
             public void run() {
                 try {
                     LOG.i(job.name.toUpperCase(), "- Executing.");
+                    job.startedNanos = System.nanoTime();
                     Task<T> task = job.scheduler.call();
                     onComplete(task, worker, new OnCompleteListener<T>() {
                         @Override
                         public void onComplete(@NonNull Task<T> task) {
                             Exception e = task.getException();
+                            trace(job, task.isSuccessful());
                             if (e != null) {
                                 LOG.w(job.name.toUpperCase(), "- Finished with ERROR.", e);
                                 if (job.dispatchExceptions) {
@@ -174,6 +279,7 @@ public class CameraOrchestrator {
                     });
                 } catch (Exception e) {
                     LOG.i(job.name.toUpperCase(), "- Finished with ERROR.", e);
+                    trace(job, false);
                     if (job.dispatchExceptions) {
                         mCallback.handleJobException(job.name, e);
                     }
@@ -186,6 +292,14 @@ public class CameraOrchestrator {
         });
     }
 
+    private void trace(@NonNull Job<?> job, boolean successful) {
+        Tracer tracer = mTracer;
+        if (tracer != null) {
+            tracer.onJobCompleted(job.name, job.scheduledNanos, job.startedNanos,
+                    System.nanoTime(), successful);
+        }
+    }
+
     @GuardedBy("mJobsLock")
     private <T> void executed(Job<T> job) {
         if (!mJobRunning) {
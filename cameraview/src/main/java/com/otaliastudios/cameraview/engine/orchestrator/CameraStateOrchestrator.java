@@ -103,6 +103,25 @@ public class CameraStateOrchestrator extends CameraOrchestrator {
         });
     }
 
+    /**
+     * Like {@link #scheduleStateful(String, CameraState, Runnable)}, but replaces the pending
+     * jobs with the same name. See {@link #scheduleCoalesced(String, boolean, Runnable)}.
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @NonNull
+    public Task<Void> scheduleStatefulCoalesced(@NonNull String name,
+                                                @NonNull final CameraState atLeast,
+                                                @NonNull final Runnable job) {
+        return scheduleCoalesced(name, true, new Runnable() {
+            @Override
+            public void run() {
+                if (getCurrentState().isAtLeast(atLeast)) {
+                    job.run();
+                }
+            }
+        });
+    }
+
     public void scheduleStatefulDelayed(@NonNull String name,
                                         @NonNull final CameraState atLeast,
                                         long delay,
@@ -0,0 +1,268 @@
+package com.otaliastudios.cameraview.internal;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.CameraOptions;
+import com.otaliastudios.cameraview.engine.options.CachedCameraOptions;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Remembers the {@link CameraOptions} and the available stream sizes of each camera,
+ * so that next starts can skip computing them. This means parsing the parameters
+ * with Camera1 and querying characteristics of all cameras with Camera2.
+ *
+ * Values are kept in memory and, optionally, in a file (see {@link #setDiskStore(File)}),
+ * so that they survive the process. Like {@link EncoderSelectionCache}, the file is bound
+ * to the build fingerprint and is discarded when the OS is updated.
+ *
+ * Each value is stored with a signature, a cheap summary of what the device reported
+ * when it was computed. Engines pass the current signature when reading, and a value
+ * whose signature does not match is discarded, for example if an external camera with
+ * different capabilities took the same camera id.
+ *
+ * Writes to the file are batched and happen on a background thread, so that the
+ * values computed during a cold start cost a single write and do not block the engine.
+ */
+public class CameraOptionsCache {
+
+    private final static String TAG = CameraOptionsCache.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static String OPTIONS_PREFIX = "options/";
+    private final static String SIZES_PREFIX = "sizes/";
+    private final static long SAVE_DELAY = 1000;
+
+    private static CameraOptionsCache sInstance;
+
+    /**
+     * Returns the shared cache for this device.
+     * @return the cache
+     */
+    @NonNull
+    public synchronized static CameraOptionsCache get() {
+        if (sInstance == null) {
+            final WorkerHandler worker = WorkerHandler.get("CameraOptionsCache");
+            sInstance = new CameraOptionsCache(Build.FINGERPRINT, new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    // Wait a bit, so that values computed during the same start are saved
+                    // together.
+                    worker.post(SAVE_DELAY, command);
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    /**
+     * Creates a key for the options of the given camera. Two starts can share the
+     * same options only if all of these are equal.
+     *
+     * @param engine the engine name
+     * @param cameraId the camera id
+     * @param flipSizes whether sizes are flipped
+     * @param pictureFormat the picture format
+     * @return a key
+     */
+    @NonNull
+    public static String createKey(@NonNull String engine,
+                                   @NonNull String cameraId,
+                                   boolean flipSizes,
+                                   int pictureFormat) {
+        return engine + "/" + cameraId + "/" + flipSizes + "/" + pictureFormat;
+    }
+
+    /**
+     * Creates a signature out of the given values, which should be cheap to read
+     * and change whenever the cached values would change.
+     *
+     * @param values the values
+     * @return a signature
+     */
+    @NonNull
+    public static String createSignature(@NonNull Object... values) {
+        StringBuilder builder = new StringBuilder();
+        for (Object value : values) {
+            builder.append(value).append('/');
+        }
+        String string = builder.toString();
+        // Hash to keep the store small. The length makes collisions even less likely.
+        return Integer.toHexString(string.hashCode()) + "-" + string.length();
+    }
+
+    private static class Entry {
+        private final String signature;
+        private final String encoded;
+        private Object decoded;
+
+        private Entry(@NonNull String signature, @NonNull String encoded) {
+            this.signature = signature;
+            this.encoded = encoded;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<>();
+    private final PropertiesStore mStore;
+
+    @VisibleForTesting
+    CameraOptionsCache(@NonNull String fingerprint, @NonNull Executor saveExecutor) {
+        mStore = new PropertiesStore(fingerprint, saveExecutor, new PropertiesStore.Source() {
+            @NonNull
+            @Override
+            public Properties snapshot() {
+                Properties properties = new Properties();
+                synchronized (CameraOptionsCache.this) {
+                    for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+                        properties.setProperty(entry.getKey(),
+                                entry.getValue().signature + "|" + entry.getValue().encoded);
+                    }
+                }
+                return properties;
+            }
+        });
+    }
+
+    /**
+     * Sets a file where values are persisted, or null to keep them in memory only.
+     * If the file exists and was written by this same build, its values are loaded.
+     *
+     * @param file the store file
+     */
+    public synchronized void setDiskStore(@Nullable File file) {
+        Properties properties = mStore.setFile(file);
+        if (properties == null) return;
+        for (String key : properties.stringPropertyNames()) {
+            if (mEntries.containsKey(key)) continue;
+            String value = properties.getProperty(key);
+            int index = value.indexOf('|');
+            if (index <= 0) continue;
+            mEntries.put(key, new Entry(value.substring(0, index), value.substring(index + 1)));
+        }
+        LOG.i("setDiskStore:", "Loaded entries:", mEntries.size());
+    }
+
+    /**
+     * Returns the options for the given key, or null if there are none or
+     * if they were computed with a different signature.
+     *
+     * @param key a key from {@link #createKey(String, String, boolean, int)}
+     * @param signature the current signature
+     * @return the options or null
+     */
+    @Nullable
+    public synchronized CameraOptions getOptions(@NonNull String key,
+                                                 @NonNull String signature) {
+        Entry entry = getEntry(OPTIONS_PREFIX + key, signature);
+        if (entry == null) return null;
+        if (entry.decoded == null) {
+            entry.decoded = CachedCameraOptions.decode(entry.encoded);
+            if (entry.decoded == null) {
+                invalidate(OPTIONS_PREFIX + key);
+                return null;
+            }
+        }
+        return (CameraOptions) entry.decoded;
+    }
+
+    /**
+     * Stores the options for the given key.
+     *
+     * @param key the key
+     * @param signature the signature
+     * @param options the options
+     */
+    public synchronized void putOptions(@NonNull String key,
+                                        @NonNull String signature,
+                                        @NonNull CameraOptions options) {
+        Entry entry = new Entry(signature, CachedCameraOptions.encode(options));
+        entry.decoded = options;
+        put(OPTIONS_PREFIX + key, entry);
+    }
+
+    /**
+     * Returns the sizes for the given key, or null if there are none or
+     * if they were computed with a different signature.
+     *
+     * @param key the key, for example the options key plus the stream name
+     * @param signature the current signature
+     * @return the sizes or null
+     */
+    @Nullable
+    public synchronized List<Size> getSizes(@NonNull String key, @NonNull String signature) {
+        Entry entry = getEntry(SIZES_PREFIX + key, signature);
+        if (entry == null) return null;
+        if (entry.decoded == null) {
+            List<Size> sizes = new ArrayList<>();
+            try {
+                for (String value : entry.encoded.split(",")) {
+                    if (value.isEmpty()) continue;
+                    int index = value.indexOf('x');
+                    sizes.add(new Size(Integer.parseInt(value.substring(0, index)),
+                            Integer.parseInt(value.substring(index + 1))));
+                }
+            } catch (RuntimeException e) {
+                invalidate(SIZES_PREFIX + key);
+                return null;
+            }
+            entry.decoded = Collections.unmodifiableList(sizes);
+        }
+        //noinspection unchecked
+        return (List<Size>) entry.decoded;
+    }
+
+    /**
+     * Stores the sizes for the given key.
+     *
+     * @param key the key
+     * @param signature the signature
+     * @param sizes the sizes
+     */
+    public synchronized void putSizes(@NonNull String key,
+                                      @NonNull String signature,
+                                      @NonNull List<Size> sizes) {
+        StringBuilder builder = new StringBuilder();
+        for (Size size : sizes) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(size);
+        }
+        Entry entry = new Entry(signature, builder.toString());
+        entry.decoded = Collections.unmodifiableList(new ArrayList<>(sizes));
+        put(SIZES_PREFIX + key, entry);
+    }
+
+    @Nullable
+    private Entry getEntry(@NonNull String key, @NonNull String signature) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) return null;
+        if (!entry.signature.equals(signature)) {
+            LOG.w("get:", key, "Device reported different values. Invalidating.");
+            invalidate(key);
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(@NonNull String key, @NonNull Entry entry) {
+        mEntries.put(key, entry);
+        LOG.i("put:", key, "signature:", entry.signature);
+        mStore.scheduleSave();
+    }
+
+    private void invalidate(@NonNull String key) {
+        if (mEntries.remove(key) != null) mStore.scheduleSave();
+    }
+}
@@ -0,0 +1,108 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Records the timing of the stages of a single capture, from the moment it is requested
+ * to the moment the result is dispatched. Stages can begin and end on any thread.
+ *
+ * This is always enabled, so it must stay cheap: each call is a {@link System#nanoTime()}
+ * and a few array writes, and there is no allocation after construction.
+ * A stage can only be recorded once: calling {@link #begin(String)} for a stage that was
+ * already started, or {@link #end(String)} for a stage that is not running, does nothing.
+ * This makes it safe to call both from code paths that can run twice, like metering retries.
+ */
+public class CaptureTracer {
+
+    private final static int MAX_SPANS = 12;
+
+    private final String[] mNames = new String[MAX_SPANS];
+    private final long[] mStarts = new long[MAX_SPANS];
+    private final long[] mEnds = new long[MAX_SPANS];
+    private int mCount;
+
+    /**
+     * Marks the beginning of the given stage.
+     * @param stage the stage name
+     */
+    public void begin(@NonNull String stage) {
+        begin(stage, System.nanoTime());
+    }
+
+    /**
+     * Marks the beginning of the given stage at the given time.
+     * @param stage the stage name
+     * @param nanos the {@link System#nanoTime()} of the beginning
+     */
+    public synchronized void begin(@NonNull String stage, long nanos) {
+        if (mCount == MAX_SPANS || indexOf(stage) >= 0) return;
+        mNames[mCount] = stage;
+        mStarts[mCount] = nanos;
+        mEnds[mCount] = -1;
+        mCount++;
+    }
+
+    /**
+     * Marks the end of the given stage, if it is running.
+     * @param stage the stage name
+     */
+    public void end(@NonNull String stage) {
+        end(stage, System.nanoTime());
+    }
+
+    /**
+     * Marks the end of the given stage at the given time, if it is running.
+     * @param stage the stage name
+     * @param nanos the {@link System#nanoTime()} of the end
+     */
+    public synchronized void end(@NonNull String stage, long nanos) {
+        int index = indexOf(stage);
+        if (index >= 0 && mEnds[index] < 0) {
+            mEnds[index] = nanos;
+        }
+    }
+
+    private int indexOf(@NonNull String stage) {
+        for (int i = 0; i < mCount; i++) {
+            if (mNames[i].equals(stage)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of recorded stages, in the order they began.
+     * @return the count
+     */
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the name of the stage at the given index.
+     * @param index the index
+     * @return the name
+     */
+    @NonNull
+    public synchronized String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the stage at the given index began.
+     * @param index the index
+     * @return the start time
+     */
+    public synchronized long getStartNanos(int index) {
+        return mStarts[index];
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the stage at the given index ended,
+     * or -1 if it never ended.
+     * @param index the index
+     * @return the end time or -1
+     */
+    public synchronized long getEndNanos(int index) {
+        return mEnds[index];
+    }
+}
@@ -0,0 +1,273 @@
+package com.otaliastudios.cameraview.internal;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Remembers the results of the {@link DeviceEncoders} checks that recorders perform before
+ * each recording, so that next recordings with the same parameters can skip them.
+ * These checks enumerate the device codecs and configure a few of them, which is slow.
+ *
+ * Selections are kept in memory and, optionally, in a file (see {@link #setDiskStore(File)}),
+ * so that they survive the process. The file is bound to the build fingerprint and is
+ * discarded when the OS is updated, because the codec list might have changed.
+ *
+ * A selection that was cached is not checked again, so recorders should call
+ * {@link #invalidate(String)} as soon as a recording that used it fails.
+ *
+ * Writes to the file are batched and happen on a background thread, so that recordings
+ * do not wait for them when they start or fail.
+ */
+public class EncoderSelectionCache {
+
+    private final static String TAG = EncoderSelectionCache.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static long SAVE_DELAY = 1000;
+
+    private static EncoderSelectionCache sInstance;
+
+    /**
+     * Returns the shared cache for this device.
+     * @return the cache
+     */
+    @NonNull
+    public synchronized static EncoderSelectionCache get() {
+        if (sInstance == null) {
+            final WorkerHandler worker = WorkerHandler.get("EncoderSelectionCache");
+            sInstance = new EncoderSelectionCache(Build.FINGERPRINT, new Executor() {
+                @Override
+                public void execute(@NonNull Runnable command) {
+                    worker.post(SAVE_DELAY, command);
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    /**
+     * The result of the encoder checks for a given key.
+     */
+    public static class Selection {
+        @Nullable public final String videoEncoder;
+        @Nullable public final String audioEncoder;
+        @NonNull public final Size videoSize;
+        public final int videoBitRate;
+        public final int videoFrameRate;
+        public final int audioBitRate;
+        private final int videoMinBitRate;
+        private final int videoMaxBitRate;
+
+        /**
+         * Creates a new selection.
+         *
+         * @param videoEncoder the video encoder name, if known
+         * @param audioEncoder the audio encoder name, if known
+         * @param videoSize the supported video size
+         * @param videoBitRate the supported video bit rate
+         * @param videoFrameRate the supported video frame rate
+         * @param audioBitRate the supported audio bit rate
+         * @param videoMinBitRate the min bit rate supported by the video encoder
+         * @param videoMaxBitRate the max bit rate supported by the video encoder
+         */
+        public Selection(@Nullable String videoEncoder,
+                         @Nullable String audioEncoder,
+                         @NonNull Size videoSize,
+                         int videoBitRate,
+                         int videoFrameRate,
+                         int audioBitRate,
+                         int videoMinBitRate,
+                         int videoMaxBitRate) {
+            this.videoEncoder = videoEncoder;
+            this.audioEncoder = audioEncoder;
+            this.videoSize = videoSize;
+            this.videoBitRate = videoBitRate;
+            this.videoFrameRate = videoFrameRate;
+            this.audioBitRate = audioBitRate;
+            this.videoMinBitRate = videoMinBitRate;
+            this.videoMaxBitRate = videoMaxBitRate;
+        }
+
+        /**
+         * Creates a selection from the given {@link DeviceEncoders}, which should have
+         * passed the configuration checks for these values.
+         *
+         * @param encoders the encoders
+         * @param videoSize the supported video size
+         * @param videoBitRate the supported video bit rate
+         * @param videoFrameRate the supported video frame rate
+         * @param audioBitRate the supported audio bit rate
+         * @return a new selection
+         */
+        @NonNull
+        public static Selection from(@NonNull DeviceEncoders encoders,
+                                     @NonNull Size videoSize,
+                                     int videoBitRate,
+                                     int videoFrameRate,
+                                     int audioBitRate) {
+            return new Selection(encoders.getVideoEncoder(),
+                    encoders.getAudioEncoder(),
+                    videoSize, videoBitRate, videoFrameRate, audioBitRate,
+                    encoders.getSupportedVideoBitRate(0),
+                    encoders.getSupportedVideoBitRate(Integer.MAX_VALUE));
+        }
+
+        /**
+         * Returns a video bit rate supported by the selected encoder, just like
+         * {@link DeviceEncoders#getSupportedVideoBitRate(int)} would.
+         *
+         * @param bitRate input rate
+         * @return adjusted rate
+         */
+        public int getSupportedVideoBitRate(int bitRate) {
+            return Math.max(videoMinBitRate, Math.min(videoMaxBitRate, bitRate));
+        }
+
+        @NonNull
+        private String encode() {
+            return (videoEncoder == null ? "" : videoEncoder)
+                    + "|" + (audioEncoder == null ? "" : audioEncoder)
+                    + "|" + videoSize.getWidth()
+                    + "|" + videoSize.getHeight()
+                    + "|" + videoBitRate
+                    + "|" + videoFrameRate
+                    + "|" + audioBitRate
+                    + "|" + videoMinBitRate
+                    + "|" + videoMaxBitRate;
+        }
+
+        @Nullable
+        private static Selection decode(@NonNull String value) {
+            String[] values = value.split("\\|", -1);
+            if (values.length != 9) return null;
+            try {
+                return new Selection(values[0].isEmpty() ? null : values[0],
+                        values[1].isEmpty() ? null : values[1],
+                        new Size(Integer.parseInt(values[2]), Integer.parseInt(values[3])),
+                        Integer.parseInt(values[4]),
+                        Integer.parseInt(values[5]),
+                        Integer.parseInt(values[6]),
+                        Integer.parseInt(values[7]),
+                        Integer.parseInt(values[8]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Creates a key for the given recording parameters. Two recordings can share the
+     * same selection only if all of these are equal.
+     *
+     * @param recorder the recorder performing the checks
+     * @param videoType the video mime type
+     * @param audioType the audio mime type, or null for no audio
+     * @param videoSize the requested video size
+     * @param videoBitRate the requested video bit rate
+     * @param videoFrameRate the requested video frame rate
+     * @param audioBitRate the requested audio bit rate
+     * @param audioSampleRate the audio sample rate
+     * @param audioChannels the audio channels
+     * @return a key
+     */
+    @NonNull
+    public static String createKey(@NonNull String recorder,
+                                   @NonNull String videoType,
+                                   @Nullable String audioType,
+                                   @NonNull Size videoSize,
+                                   int videoBitRate,
+                                   int videoFrameRate,
+                                   int audioBitRate,
+                                   int audioSampleRate,
+                                   int audioChannels) {
+        return recorder
+                + "/" + videoType + "/" + videoSize + "/" + videoBitRate + "/" + videoFrameRate
+                + "/" + audioType + "/" + audioBitRate + "/" + audioSampleRate
+                + "/" + audioChannels;
+    }
+
+    private final Map<String, Selection> mSelections = new HashMap<>();
+    private final PropertiesStore mStore;
+
+    @VisibleForTesting
+    EncoderSelectionCache(@NonNull String fingerprint, @NonNull Executor saveExecutor) {
+        mStore = new PropertiesStore(fingerprint, saveExecutor, new PropertiesStore.Source() {
+            @NonNull
+            @Override
+            public Properties snapshot() {
+                Properties properties = new Properties();
+                synchronized (EncoderSelectionCache.this) {
+                    for (Map.Entry<String, Selection> entry : mSelections.entrySet()) {
+                        properties.setProperty(entry.getKey(), entry.getValue().encode());
+                    }
+                }
+                return properties;
+            }
+        });
+    }
+
+    /**
+     * Sets a file where selections are persisted, or null to keep them in memory only.
+     * If the file exists and was written by this same build, its selections are loaded.
+     *
+     * @param file the store file
+     */
+    public synchronized void setDiskStore(@Nullable File file) {
+        Properties properties = mStore.setFile(file);
+        if (properties == null) return;
+        for (String key : properties.stringPropertyNames()) {
+            if (mSelections.containsKey(key)) continue;
+            Selection selection = Selection.decode(properties.getProperty(key));
+            if (selection != null) mSelections.put(key, selection);
+        }
+        LOG.i("setDiskStore:", "Loaded selections:", mSelections.size());
+    }
+
+    /**
+     * Returns the selection for the given key, or null if there's none.
+     *
+     * @param key a key from {@link #createKey(String, String, String, Size, int, int, int, int, int)}
+     * @return the selection or null
+     */
+    @Nullable
+    public synchronized Selection get(@NonNull String key) {
+        return mSelections.get(key);
+    }
+
+    /**
+     * Stores the selection for the given key.
+     *
+     * @param key the key
+     * @param selection the selection
+     */
+    public synchronized void put(@NonNull String key, @NonNull Selection selection) {
+        mSelections.put(key, selection);
+        LOG.i("put:", key, "selection:", selection.encode());
+        mStore.scheduleSave();
+    }
+
+    /**
+     * Removes the selection for the given key, if present. Should be called
+     * when the encoders that were cached fail.
+     *
+     * @param key the key
+     */
+    public synchronized void invalidate(@NonNull String key) {
+        if (mSelections.remove(key) != null) {
+            LOG.w("invalidate:", key);
+            mStore.scheduleSave();
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package com.otaliastudios.cameraview.internal;
 
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
 import androidx.exifinterface.media.ExifInterface;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Super basic exif utilities.
  */
@@ -47,5 +54,68 @@ public class ExifHelper {
             default: throw new IllegalArgumentException("Invalid orientation: " + orientation);
         }
     }
+
+    /**
+     * Writes the given {@link ExifInterface} orientation into the given JPEG.
+     * The tag is patched in place if it exists. Otherwise, if the JPEG has no EXIF at all,
+     * a minimal EXIF segment is added. Only as a last resort, the whole EXIF is rewritten
+     * by {@link ExifInterface}, through a temporary file.
+     *
+     * @param jpeg the JPEG
+     * @param exifOrientation the orientation
+     * @return the JPEG, which is the same array if it was patched in place
+     * @throws IOException if the rewrite fails
+     */
+    @WorkerThread
+    @NonNull
+    public static byte[] writeOrientation(@NonNull byte[] jpeg, int exifOrientation)
+            throws IOException {
+        if (ExifOrientation.patch(jpeg, exifOrientation)) return jpeg;
+        byte[] result = ExifOrientation.insert(jpeg, exifOrientation);
+        if (result != null) return result;
+        File file = File.createTempFile("cameraview_exif", ".jpg");
+        try {
+            FileHelper.write(jpeg, file, false);
+            writeOrientation(file, exifOrientation);
+            return FileHelper.read(file);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes the given location into the EXIF of the given JPEG file.
+     * This rewrites the whole EXIF through {@link ExifInterface}.
+     *
+     * @param file the JPEG file
+     * @param location the location
+     * @throws IOException if writing fails
+     */
+    @WorkerThread
+    public static void writeLocation(@NonNull File file, @NonNull Location location)
+            throws IOException {
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setGpsInfo(location);
+        exif.saveAttributes();
+    }
+
+    /**
+     * Writes the given {@link ExifInterface} orientation into the given JPEG file.
+     * The tag is patched in place if it exists, otherwise the whole EXIF is rewritten
+     * by {@link ExifInterface}.
+     *
+     * @param file the JPEG file
+     * @param exifOrientation the orientation
+     * @throws IOException if writing fails
+     */
+    @WorkerThread
+    public static void writeOrientation(@NonNull File file, int exifOrientation)
+            throws IOException {
+        if (ExifOrientation.patch(file, exifOrientation)) return;
+        ExifInterface exif = new ExifInterface(file.getAbsolutePath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(exifOrientation));
+        exif.saveAttributes();
+    }
 }
 
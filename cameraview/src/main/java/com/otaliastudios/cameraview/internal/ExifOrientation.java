@@ -0,0 +1,326 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and patches the EXIF orientation tag of JPEG pictures, without parsing the whole
+ * EXIF block like {@link androidx.exifinterface.media.ExifInterface} does.
+ *
+ * We scan the JPEG segments up to the APP1 (Exif) one, then walk the first IFD of the TIFF
+ * structure looking for the orientation tag. Patching overwrites its two bytes in place, so
+ * the rest of the picture is never copied. If the tag does not exist, it can't be patched:
+ * see {@link ExifHelper} for the fallbacks.
+ *
+ * Orientation values are the EXIF ones, for example
+ * {@link androidx.exifinterface.media.ExifInterface#ORIENTATION_ROTATE_90}.
+ */
+public class ExifOrientation {
+
+    /**
+     * Returned by the read methods when the orientation tag is missing.
+     * Same as {@link androidx.exifinterface.media.ExifInterface#ORIENTATION_UNDEFINED}.
+     */
+    public final static int UNDEFINED = 0;
+
+    private final static int MARKER_SOI = 0xD8;
+    private final static int MARKER_APP0 = 0xE0;
+    private final static int MARKER_APP1 = 0xE1;
+    private final static int MARKER_SOS = 0xDA;
+    private final static int MARKER_EOI = 0xD9;
+    private final static int TAG_ORIENTATION = 0x0112;
+    private final static int TYPE_SHORT = 3;
+    private final static int FILE_WINDOW = 4096;
+
+    /**
+     * Returns the EXIF orientation of the given JPEG.
+     *
+     * @param jpeg the JPEG
+     * @return the EXIF orientation, or {@link #UNDEFINED}
+     */
+    public static int read(@NonNull byte[] jpeg) {
+        try {
+            return read(new ArrayInput(jpeg));
+        } catch (IOException e) {
+            return UNDEFINED; // Can't happen with arrays.
+        }
+    }
+
+    /**
+     * Returns the EXIF orientation of the given JPEG file.
+     *
+     * @param file the JPEG file
+     * @return the EXIF orientation, or {@link #UNDEFINED}
+     * @throws IOException if reading fails
+     */
+    @WorkerThread
+    public static int read(@NonNull File file) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "r");
+        try {
+            return read(new FileInput(access.getChannel()));
+        } finally {
+            access.close();
+        }
+    }
+
+    /**
+     * Overwrites the EXIF orientation of the given JPEG, in place.
+     *
+     * @param jpeg the JPEG
+     * @param orientation the new EXIF orientation
+     * @return true if patched, false if the JPEG has no orientation tag
+     */
+    public static boolean patch(@NonNull byte[] jpeg, int orientation) {
+        Location location;
+        try {
+            location = find(new ArrayInput(jpeg));
+        } catch (IOException e) {
+            return false; // Can't happen with arrays.
+        }
+        if (location == null) return false;
+        byte[] value = encode(orientation, location.littleEndian);
+        jpeg[location.offset] = value[0];
+        jpeg[location.offset + 1] = value[1];
+        return true;
+    }
+
+    /**
+     * Overwrites the EXIF orientation of the given JPEG file, in place, with a positional
+     * write of two bytes.
+     *
+     * @param file the JPEG file
+     * @param orientation the new EXIF orientation
+     * @return true if patched, false if the JPEG has no orientation tag
+     * @throws IOException if reading or writing fails
+     */
+    @WorkerThread
+    public static boolean patch(@NonNull File file, int orientation) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = access.getChannel();
+            Location location = find(new FileInput(channel));
+            if (location == null) return false;
+            ByteBuffer value = ByteBuffer.wrap(encode(orientation, location.littleEndian));
+            while (value.hasRemaining()) {
+                channel.write(value, location.offset + value.position());
+            }
+            return true;
+        } finally {
+            access.close();
+        }
+    }
+
+    /**
+     * Returns a copy of the given JPEG with a minimal APP1 segment holding the given
+     * orientation, right after the start of image or, if present, after the JFIF APP0
+     * segments, which should come first. This only works if the JPEG has no Exif segment
+     * at all: otherwise, it returns null.
+     *
+     * @param jpeg the JPEG
+     * @param orientation the EXIF orientation
+     * @return a new JPEG, or null
+     */
+    @Nullable
+    public static byte[] insert(@NonNull byte[] jpeg, int orientation) {
+        ArrayInput input = new ArrayInput(jpeg);
+        int position = 2;
+        try {
+            if (!isJpeg(input) || findExifSegment(input) >= 0) return null;
+            while (input.get(position) == 0xFF && input.get(position + 1) == MARKER_APP0) {
+                int length = readShort(input, position + 2, false);
+                if (length < 2 || position + 2 + length > jpeg.length) return null;
+                position += 2 + length;
+            }
+        } catch (IOException e) {
+            return null; // Can't happen with arrays.
+        }
+        byte[] value = encode(orientation, false);
+        byte[] segment = new byte[] {
+                (byte) 0xFF, (byte) MARKER_APP1,
+                0, 34, // Segment length, including these two bytes
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8, // Big endian TIFF header, IFD0 at 8
+                0, 1, // One entry
+                0x01, 0x12, 0, TYPE_SHORT, 0, 0, 0, 1, value[0], value[1], 0, 0,
+                0, 0, 0, 0 // No next IFD
+        };
+        byte[] result = new byte[jpeg.length + segment.length];
+        System.arraycopy(jpeg, 0, result, 0, position);
+        System.arraycopy(segment, 0, result, position, segment.length);
+        System.arraycopy(jpeg, position, result, position + segment.length,
+                jpeg.length - position);
+        return result;
+    }
+
+    private static int read(@NonNull Input input) throws IOException {
+        Location location = find(input);
+        if (location == null) return UNDEFINED;
+        int first = input.get(location.offset);
+        int second = input.get(location.offset + 1);
+        if (first < 0 || second < 0) return UNDEFINED;
+        return location.littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    @NonNull
+    private static byte[] encode(int orientation, boolean littleEndian) {
+        byte high = (byte) ((orientation >> 8) & 0xFF);
+        byte low = (byte) (orientation & 0xFF);
+        return littleEndian ? new byte[]{low, high} : new byte[]{high, low};
+    }
+
+    private static boolean isJpeg(@NonNull Input input) throws IOException {
+        return input.get(0) == 0xFF && input.get(1) == MARKER_SOI;
+    }
+
+    /**
+     * Returns the offset of the Exif APP1 segment marker, or -1.
+     */
+    private static int findExifSegment(@NonNull Input input) throws IOException {
+        int position = 2;
+        while (true) {
+            int prefix = input.get(position);
+            int marker = input.get(position + 1);
+            if (prefix != 0xFF || marker < 0) return -1;
+            if (marker == 0xFF) { // Fill byte
+                position++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) return -1;
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) { // No length
+                position += 2;
+                continue;
+            }
+            int length = readShort(input, position + 2, false);
+            if (length < 2) return -1;
+            if (marker == MARKER_APP1 && length >= 8
+                    && input.get(position + 4) == 'E'
+                    && input.get(position + 5) == 'x'
+                    && input.get(position + 6) == 'i'
+                    && input.get(position + 7) == 'f'
+                    && input.get(position + 8) == 0
+                    && input.get(position + 9) == 0) {
+                return position;
+            }
+            position += 2 + length;
+        }
+    }
+
+    @Nullable
+    private static Location find(@NonNull Input input) throws IOException {
+        if (!isJpeg(input)) return null;
+        int segment = findExifSegment(input);
+        if (segment < 0) return null;
+        int end = segment + 2 + readShort(input, segment + 2, false);
+        int tiff = segment + 10;
+        boolean littleEndian;
+        int first = input.get(tiff);
+        int second = input.get(tiff + 1);
+        if (first == 'I' && second == 'I') {
+            littleEndian = true;
+        } else if (first == 'M' && second == 'M') {
+            littleEndian = false;
+        } else {
+            return null;
+        }
+        if (readShort(input, tiff + 2, littleEndian) != 42) return null;
+        long ifdOffset = readInt(input, tiff + 4, littleEndian);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) return null;
+        int ifd = tiff + (int) ifdOffset;
+        int entries = readShort(input, ifd, littleEndian);
+        if (entries < 0) return null;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if (entry + 12 > end) return null;
+            if (readShort(input, entry, littleEndian) == TAG_ORIENTATION) {
+                if (readShort(input, entry + 2, littleEndian) != TYPE_SHORT) return null;
+                if (readInt(input, entry + 4, littleEndian) != 1) return null;
+                Location location = new Location();
+                location.offset = entry + 8;
+                location.littleEndian = littleEndian;
+                return location;
+            }
+        }
+        return null;
+    }
+
+    private static int readShort(@NonNull Input input, int position, boolean littleEndian)
+            throws IOException {
+        int first = input.get(position);
+        int second = input.get(position + 1);
+        if (first < 0 || second < 0) return -1;
+        return littleEndian ? (second << 8) | first : (first << 8) | second;
+    }
+
+    private static long readInt(@NonNull Input input, int position, boolean littleEndian)
+            throws IOException {
+        int first = readShort(input, position, littleEndian);
+        int second = readShort(input, position + 2, littleEndian);
+        if (first < 0 || second < 0) return -1;
+        return littleEndian
+                ? ((long) second << 16) | first
+                : ((long) first << 16) | second;
+    }
+
+    private static class Location {
+        private int offset;
+        private boolean littleEndian;
+    }
+
+    /**
+     * Random access to the JPEG bytes. Returns -1 when out of bounds.
+     */
+    private interface Input {
+        int get(int position) throws IOException;
+    }
+
+    private static class ArrayInput implements Input {
+        private final byte[] mData;
+
+        private ArrayInput(@NonNull byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public int get(int position) {
+            if (position < 0 || position >= mData.length) return -1;
+            return mData[position] & 0xFF;
+        }
+    }
+
+    /**
+     * Reads the file through a small window, since we only look at the first segments.
+     */
+    private static class FileInput implements Input {
+        private final FileChannel mChannel;
+        private final ByteBuffer mWindow = ByteBuffer.allocate(FILE_WINDOW);
+        private long mWindowStart = -1;
+
+        private FileInput(@NonNull FileChannel channel) {
+            mChannel = channel;
+        }
+
+        @Override
+        public int get(int position) throws IOException {
+            if (position < 0) return -1;
+            if (mWindowStart < 0
+                    || position < mWindowStart
+                    || position >= mWindowStart + mWindow.limit()) {
+                mWindow.clear();
+                mWindowStart = position;
+                while (mWindow.hasRemaining()) {
+                    if (mChannel.read(mWindow, mWindowStart + mWindow.position()) < 0) break;
+                }
+                mWindow.flip();
+                if (mWindow.limit() == 0) return -1;
+            }
+            return mWindow.get((int) (position - mWindowStart)) & 0xFF;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes pictures through a {@link FileChannel}.
+ *
+ * Channels can write direct buffers (like the planes of an {@link android.media.Image})
+ * without copying them on the heap first, and can optionally sync the file
+ * to the storage device before returning.
+ */
+public class FileHelper {
+
+    private final static int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes the remaining bytes of the given buffer to the given file, replacing its contents.
+     * When this returns, the buffer has no remaining bytes.
+     *
+     * @param buffer the buffer
+     * @param file the file
+     * @param sync whether to sync contents and metadata to the storage device
+     * @throws IOException if writing fails
+     */
+    @WorkerThread
+    public static void write(@NonNull ByteBuffer buffer,
+                             @NonNull File file,
+                             boolean sync) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) channel.force(true);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes the given array to the given file, replacing its contents.
+     *
+     * @param data the data
+     * @param file the file
+     * @param sync whether to sync contents and metadata to the storage device
+     * @throws IOException if writing fails
+     */
+    @WorkerThread
+    public static void write(@NonNull byte[] data,
+                             @NonNull File file,
+                             boolean sync) throws IOException {
+        write(ByteBuffer.wrap(data), file, sync);
+    }
+
+    /**
+     * Writes something to a stream.
+     */
+    public interface StreamWriter {
+
+        /**
+         * Writes to the given stream. The stream is flushed and closed by the caller.
+         *
+         * @param stream the stream
+         * @throws IOException if writing fails
+         */
+        @WorkerThread
+        void write(@NonNull OutputStream stream) throws IOException;
+    }
+
+    /**
+     * Streams the output of the given writer to the given file, replacing its contents.
+     * This is meant for producers that can only write to an {@link OutputStream},
+     * like {@link android.hardware.camera2.DngCreator}: the data is never held in memory.
+     *
+     * @param writer the writer
+     * @param file the file
+     * @param sync whether to sync contents and metadata to the storage device
+     * @throws IOException if writing fails
+     */
+    @WorkerThread
+    public static void write(@NonNull StreamWriter writer,
+                             @NonNull File file,
+                             boolean sync) throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try {
+            OutputStream buffered = new BufferedOutputStream(stream, STREAM_BUFFER_SIZE);
+            writer.write(buffered);
+            buffered.flush();
+            if (sync) stream.getChannel().force(true);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the whole file into a new array.
+     *
+     * @param file the file
+     * @return the file contents
+     * @throws IOException if reading fails
+     */
+    @WorkerThread
+    @NonNull
+    public static byte[] read(@NonNull File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+            if (buffer.hasRemaining()) throw new IOException("Unexpected end of file.");
+            return buffer.array();
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Copies a file into another, replacing its contents. Depending on the platform,
+     * this might not go through user space at all.
+     *
+     * @param source the source file
+     * @param destination the destination file
+     * @param sync whether to sync contents and metadata to the storage device
+     * @throws IOException if copying fails
+     */
+    @WorkerThread
+    public static void copy(@NonNull File source,
+                            @NonNull File destination,
+                            boolean sync) throws IOException {
+        FileInputStream input = new FileInputStream(source);
+        try {
+            FileOutputStream output = new FileOutputStream(destination);
+            try {
+                FileChannel in = input.getChannel();
+                FileChannel out = output.getChannel();
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+                if (sync) out.force(true);
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
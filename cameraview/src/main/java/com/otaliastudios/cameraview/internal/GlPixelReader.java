@@ -0,0 +1,192 @@
+package com.otaliastudios.cameraview.internal;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.opengl.core.Egloo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads RGBA pixels from the currently bound framebuffer.
+ *
+ * On GLES3 contexts (and API 24+, where the offset variant of glReadPixels is available),
+ * this uses two pixel buffer objects. {@link #read(long, Callback)} only schedules the copy
+ * into one of them and returns immediately, while the pixels from the previous read are
+ * mapped from the other one and passed to the callback. This way the GPU copy of a frame
+ * overlaps with the CPU work done on the previous one. Pixels of the last read are delivered
+ * by {@link #flush()}.
+ *
+ * On other devices, this falls back to a blocking glReadPixels into a reused buffer, and
+ * the callback is invoked before {@link #read(long, Callback)} returns.
+ *
+ * Like glReadPixels, rows are returned bottom to top. All methods must be called on the
+ * thread where the GL context is current, and the buffer passed to the callback is only
+ * valid during the callback itself.
+ */
+public class GlPixelReader {
+
+    private final static String TAG = GlPixelReader.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    /**
+     * Receives the pixels read by a {@link GlPixelReader}.
+     */
+    public interface Callback {
+
+        /**
+         * Called with the RGBA pixels of a frame.
+         *
+         * @param pixels the pixels, valid only during this call
+         * @param width the frame width
+         * @param height the frame height
+         * @param timestampUs the timestamp that was passed to {@link #read(long, Callback)}
+         */
+        void onPixels(@NonNull ByteBuffer pixels, int width, int height, long timestampUs);
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mSize;
+    private final boolean mAsync;
+
+    // Async
+    private final int[] mBuffers = new int[2];
+    private int mIndex = 0;
+    private boolean mPending = false;
+    private long mPendingTimestampUs;
+    private Callback mPendingCallback;
+
+    // Sync
+    private ByteBuffer mBuffer;
+
+    /**
+     * Creates a new reader. Should be called on the GL thread.
+     *
+     * @param width the width of the area to read
+     * @param height the height of the area to read
+     */
+    public GlPixelReader(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mSize = width * height * 4;
+        mAsync = isAsyncSupported();
+        if (mAsync) {
+            GLES30.glGenBuffers(2, mBuffers, 0);
+            for (int buffer : mBuffers) {
+                GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, buffer);
+                GLES30.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, mSize, null,
+                        GLES30.GL_STREAM_READ);
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+            Egloo.checkGlError("GlPixelReader buffers");
+        }
+        LOG.i("Created.", "width:", width, "height:", height, "async:", mAsync);
+    }
+
+    // The GLES3 overload of glReadPixels that writes into a bound buffer is API 24.
+    // GL_VERSION describes the current context, so GLES2 contexts fall back to sync reads
+    // even if the device supports GLES3. Our contexts are GLES3 whenever possible.
+    private static boolean isAsyncSupported() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) return false;
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        return version != null && version.startsWith("OpenGL ES 3");
+    }
+
+    /**
+     * Returns true if reads are asynchronous, false if we had to fall back
+     * to blocking reads.
+     * @return true if async
+     */
+    public boolean isAsync() {
+        return mAsync;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Reads the current framebuffer. If async, this delivers the previous read (if any) to its
+     * callback, and the current one will be delivered by the next read or by {@link #flush()}.
+     * If not async, the callback is invoked immediately.
+     *
+     * @param timestampUs a timestamp that will be passed to the callback
+     * @param callback the callback for this read
+     */
+    public void read(long timestampUs, @NonNull Callback callback) {
+        if (!mAsync) {
+            if (mBuffer == null) {
+                mBuffer = ByteBuffer.allocateDirect(mSize).order(ByteOrder.nativeOrder());
+            }
+            mBuffer.rewind();
+            GLES20.glReadPixels(0, 0, mWidth, mHeight,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, mBuffer);
+            Egloo.checkGlError("glReadPixels");
+            mBuffer.rewind();
+            callback.onPixels(mBuffer, mWidth, mHeight, timestampUs);
+            return;
+        }
+        // Schedule the copy into the current buffer. This does not wait for the GPU.
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mBuffers[mIndex]);
+        GLES30.glReadPixels(0, 0, mWidth, mHeight,
+                GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE, 0);
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        Egloo.checkGlError("glReadPixels into buffer");
+        // Deliver the previous read, which has likely completed by now.
+        flush();
+        mPending = true;
+        mPendingTimestampUs = timestampUs;
+        mPendingCallback = callback;
+        mIndex = 1 - mIndex;
+    }
+
+    /**
+     * Delivers the last read, if it was not delivered yet. This blocks until the
+     * GPU copy is complete. Does nothing if not async.
+     */
+    public void flush() {
+        if (!mPending) return;
+        int index = 1 - mIndex;
+        mPending = false;
+        Callback callback = mPendingCallback;
+        mPendingCallback = null;
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mBuffers[index]);
+        ByteBuffer pixels = (ByteBuffer) GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER,
+                0, mSize, GLES30.GL_MAP_READ_BIT);
+        Egloo.checkGlError("glMapBufferRange");
+        if (pixels != null) {
+            pixels.order(ByteOrder.nativeOrder());
+            pixels.rewind();
+            callback.onPixels(pixels, mWidth, mHeight, mPendingTimestampUs);
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+        } else {
+            LOG.w("flush:", "Could not map buffer. Dropping frame.");
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    /**
+     * Releases the GL resources. Pending reads are dropped.
+     * Should be called on the GL thread.
+     */
+    public void release() {
+        mPending = false;
+        mPendingCallback = null;
+        if (mAsync) {
+            GLES30.glDeleteBuffers(2, mBuffers, 0);
+            mBuffers[0] = 0;
+            mBuffers[1] = 0;
+        }
+        mBuffer = null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.otaliastudios.cameraview.CameraLogger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared pool of threads for picture post-processing: JPEG compression, EXIF handling
+ * and file I/O. It used to happen on the single {@link WorkerHandler#get()} thread, where
+ * one slow write would delay the next picture and any unrelated background work.
+ *
+ * The pool runs at most {@link #getParallelism()} tasks at a time. Other tasks are queued.
+ * Threads are created lazily and die after a few seconds of inactivity.
+ */
+public class PictureExecutor implements Executor {
+
+    private final static String TAG = PictureExecutor.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    public final static int DEFAULT_PARALLELISM = 2;
+
+    private static PictureExecutor sInstance;
+
+    /**
+     * Returns the shared executor.
+     * @return the executor
+     */
+    @NonNull
+    public synchronized static PictureExecutor get() {
+        if (sInstance == null) sInstance = new PictureExecutor(DEFAULT_PARALLELISM);
+        return sInstance;
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+
+    @VisibleForTesting
+    PictureExecutor(int parallelism) {
+        checkParallelism(parallelism);
+        mExecutor = new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                4,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+                    @Override
+                    public Thread newThread(@NonNull Runnable r) {
+                        Thread thread = new Thread(r, "PictureExecutor #"
+                                + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        mExecutor.execute(command);
+    }
+
+    /**
+     * Sets the max number of tasks that can run at the same time.
+     * Tasks that are already queued are not affected.
+     *
+     * @param parallelism the max number of threads
+     */
+    public synchronized void setParallelism(int parallelism) {
+        checkParallelism(parallelism);
+        LOG.i("setParallelism:", parallelism);
+        // The core size can't be bigger than the max size, so order matters.
+        if (parallelism > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(parallelism);
+            mExecutor.setCorePoolSize(parallelism);
+        } else {
+            mExecutor.setCorePoolSize(parallelism);
+            mExecutor.setMaximumPoolSize(parallelism);
+        }
+    }
+
+    /**
+     * Returns the max number of tasks that can run at the same time.
+     * @return the max number of threads
+     */
+    public int getParallelism() {
+        return mExecutor.getMaximumPoolSize();
+    }
+
+    private static void checkParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Need at least 1 thread, got " + parallelism);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.otaliastudios.cameraview.CameraLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link Properties} file bound to the build fingerprint, used by the caches in this
+ * package. A file written by a different build is discarded when loaded, so that values
+ * are computed again after an OS update.
+ *
+ * Writes are batched: any number of {@link #scheduleSave()} calls before the executor
+ * runs result in a single write, which happens on the executor thread.
+ */
+class PropertiesStore {
+
+    private final static String TAG = PropertiesStore.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static String FINGERPRINT_KEY = "fingerprint";
+
+    /**
+     * Provides the values to be written.
+     */
+    interface Source {
+
+        /**
+         * Returns a copy of the values to be written. This is called on the
+         * executor thread, so implementations should synchronize as needed.
+         *
+         * @return the values
+         */
+        @NonNull
+        Properties snapshot();
+    }
+
+    private final String mFingerprint;
+    private final Executor mSaveExecutor;
+    private final Source mSource;
+    private File mFile;
+    private boolean mSaveScheduled;
+
+    PropertiesStore(@NonNull String fingerprint,
+                    @NonNull Executor saveExecutor,
+                    @NonNull Source source) {
+        mFingerprint = fingerprint;
+        mSaveExecutor = saveExecutor;
+        mSource = source;
+    }
+
+    /**
+     * Sets the file, or null to keep values in memory only. If the file exists and was
+     * written by this same build, its values are returned, otherwise it is deleted.
+     *
+     * @param file the file
+     * @return the stored values or null
+     */
+    @Nullable
+    synchronized Properties setFile(@Nullable File file) {
+        mFile = file;
+        if (file == null || !file.exists()) return null;
+        Properties properties = new Properties();
+        try {
+            properties.load(new ByteArrayInputStream(FileHelper.read(file)));
+        } catch (Exception e) {
+            LOG.w("setFile:", "Could not read store.", e);
+            return null;
+        }
+        if (!mFingerprint.equals(properties.getProperty(FINGERPRINT_KEY))) {
+            LOG.i("setFile:", "Store was written by a different build. Discarding.");
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+        properties.remove(FINGERPRINT_KEY);
+        return properties;
+    }
+
+    /**
+     * Schedules a write, unless one is scheduled already. Changes made before
+     * it runs are included, so a single write covers all of them.
+     */
+    synchronized void scheduleSave() {
+        if (mFile == null || mSaveScheduled) return;
+        mSaveScheduled = true;
+        mSaveExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                save();
+            }
+        });
+    }
+
+    @WorkerThread
+    private void save() {
+        File file;
+        synchronized (this) {
+            mSaveScheduled = false;
+            file = mFile;
+        }
+        if (file == null) return;
+        // Not under our lock, so that callers can hold theirs when scheduling.
+        final Properties properties = mSource.snapshot();
+        properties.setProperty(FINGERPRINT_KEY, mFingerprint);
+        try {
+            FileHelper.write(new FileHelper.StreamWriter() {
+                @Override
+                public void write(@NonNull OutputStream stream) throws IOException {
+                    properties.store(stream, null);
+                }
+            }, file, false);
+        } catch (Exception e) {
+            LOG.w("save:", "Could not write store.", e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.otaliastudios.cameraview.internal;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the sharpness of a frame from its luminance plane, so that we can discard
+ * blurry frames, for example when picking a frame for zero shutter lag pictures.
+ *
+ * This is the variance of the Laplacian, computed on a sparse grid of pixels in the center
+ * of the frame: a few thousand samples are enough to compare frames of the same scene,
+ * and the cost does not depend on the frame size.
+ */
+public class SharpnessHelper {
+
+    private final static int GRID_SIZE = 64;
+
+    /**
+     * Returns the sharpness of the given luminance plane. The value has no unit and
+     * should only be compared to the value of other frames of the same scene.
+     *
+     * @param luma the luminance plane, whose position is not changed
+     * @param width the plane width
+     * @param height the plane height
+     * @param rowStride the plane row stride
+     * @param pixelStride the plane pixel stride
+     * @return the sharpness, higher is sharper
+     */
+    public static float estimate(@NonNull ByteBuffer luma,
+                                 int width,
+                                 int height,
+                                 int rowStride,
+                                 int pixelStride) {
+        // Use the central half of the frame, where the subject usually is.
+        int left = width / 4;
+        int top = height / 4;
+        int right = Math.max(left + 1, width - width / 4);
+        int bottom = Math.max(top + 1, height - height / 4);
+        int stepX = Math.max(1, (right - left) / GRID_SIZE);
+        int stepY = Math.max(1, (bottom - top) / GRID_SIZE);
+        int start = luma.position();
+        double sum = 0;
+        double sumOfSquares = 0;
+        int count = 0;
+        for (int y = Math.max(1, top); y < Math.min(height - 1, bottom); y += stepY) {
+            int row = start + y * rowStride;
+            for (int x = Math.max(1, left); x < Math.min(width - 1, right); x += stepX) {
+                int offset = row + x * pixelStride;
+                int center = luma.get(offset) & 0xFF;
+                int laplacian = 4 * center
+                        - (luma.get(offset - pixelStride) & 0xFF)
+                        - (luma.get(offset + pixelStride) & 0xFF)
+                        - (luma.get(offset - rowStride) & 0xFF)
+                        - (luma.get(offset + rowStride) & 0xFF);
+                sum += laplacian;
+                sumOfSquares += (double) laplacian * laplacian;
+                count++;
+            }
+        }
+        if (count == 0) return 0;
+        double mean = sum / count;
+        return (float) (sumOfSquares / count - mean * mean);
+    }
+}
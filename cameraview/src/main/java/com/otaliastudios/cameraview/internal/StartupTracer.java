@@ -0,0 +1,129 @@
+package com.otaliastudios.cameraview.internal;
+
+import com.otaliastudios.cameraview.engine.orchestrator.CameraOrchestrator;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Records the jobs executed by the engine orchestrator during a single startup,
+ * from the moment the engine is started to the moment the preview is running.
+ * Jobs can be recorded on any thread.
+ *
+ * Like {@link CaptureTracer}, there is no allocation after construction and the number
+ * of recorded jobs is bounded. Once {@link #finish()} is called, nothing else is recorded.
+ */
+public class StartupTracer implements CameraOrchestrator.Tracer {
+
+    private final static int MAX_JOBS = 32;
+
+    private final long mStartNanos = System.nanoTime();
+    private long mEndNanos = -1;
+    private final String[] mNames = new String[MAX_JOBS];
+    private final long[] mScheduled = new long[MAX_JOBS];
+    private final long[] mStarted = new long[MAX_JOBS];
+    private final long[] mCompleted = new long[MAX_JOBS];
+    private final boolean[] mSuccessful = new boolean[MAX_JOBS];
+    private int mCount;
+
+    @Override
+    public synchronized void onJobCompleted(@NonNull String job,
+                                            long scheduledNanos,
+                                            long startedNanos,
+                                            long completedNanos,
+                                            boolean successful) {
+        if (mEndNanos >= 0 || mCount == MAX_JOBS) return;
+        mNames[mCount] = job;
+        mScheduled[mCount] = scheduledNanos;
+        mStarted[mCount] = startedNanos;
+        mCompleted[mCount] = completedNanos;
+        mSuccessful[mCount] = successful;
+        mCount++;
+    }
+
+    /**
+     * Marks the end of the startup. Jobs completed after this are not recorded.
+     */
+    public void finish() {
+        finish(System.nanoTime());
+    }
+
+    /**
+     * Marks the end of the startup at the given time.
+     * Jobs completed after this are not recorded.
+     * @param nanos the {@link System#nanoTime()} of the end
+     */
+    public synchronized void finish(long nanos) {
+        if (mEndNanos < 0) mEndNanos = nanos;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which this tracer was created.
+     * @return the start time
+     */
+    public long getStartNanos() {
+        return mStartNanos;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which {@link #finish()} was called,
+     * or -1 if it was not called.
+     * @return the end time or -1
+     */
+    public synchronized long getEndNanos() {
+        return mEndNanos;
+    }
+
+    /**
+     * Returns the number of recorded jobs, in the order they completed.
+     * @return the count
+     */
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the name of the job at the given index.
+     * @param index the index
+     * @return the name
+     */
+    @NonNull
+    public synchronized String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the job at the given index was scheduled.
+     * @param index the index
+     * @return the schedule time
+     */
+    public synchronized long getScheduledNanos(int index) {
+        return mScheduled[index];
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the job at the given index started.
+     * @param index the index
+     * @return the start time
+     */
+    public synchronized long getStartedNanos(int index) {
+        return mStarted[index];
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the job at the given index completed.
+     * @param index the index
+     * @return the completion time
+     */
+    public synchronized long getCompletedNanos(int index) {
+        return mCompleted[index];
+    }
+
+    /**
+     * Returns whether the job at the given index succeeded.
+     * @param index the index
+     * @return whether it succeeded
+     */
+    public synchronized boolean isSuccessful(int index) {
+        return mSuccessful[index];
+    }
+}
@@ -0,0 +1,296 @@
+package com.otaliastudios.cameraview.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.size.Size;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Decodes small thumbnails of JPEG pictures.
+ *
+ * The thumbnail embedded in the EXIF metadata is used when it is big enough and has the picture
+ * aspect ratio. Otherwise, the picture is decoded with the largest power-of-two sample size that
+ * still covers the requested size. Bitmaps are never rotated here: the rotation is applied when
+ * drawing. Bitmaps released through {@link #recycle(Bitmap)} are reused for future decodes.
+ */
+public class ThumbnailHelper {
+
+    private final static String TAG = ThumbnailHelper.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    private final static int MAX_RECYCLED = 4;
+    private final static float RATIO_TOLERANCE = 0.02F;
+    private final static LinkedList<Bitmap> sRecycled = new LinkedList<>();
+
+    /**
+     * Something that can be decoded, either a byte array or a file.
+     */
+    public static abstract class Source {
+
+        private Size mSize;
+
+        @NonNull
+        abstract ExifInterface readExif() throws IOException;
+
+        @Nullable
+        abstract Bitmap decode(@NonNull BitmapFactory.Options options);
+
+        @Nullable
+        private Size getSize() {
+            if (mSize == null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                decode(options);
+                if (options.outWidth > 0 && options.outHeight > 0) {
+                    mSize = new Size(options.outWidth, options.outHeight);
+                }
+            }
+            return mSize;
+        }
+    }
+
+    /**
+     * Returns a source for the given encoded picture.
+     *
+     * @param data the picture
+     * @return a source
+     */
+    @NonNull
+    public static Source of(@NonNull final byte[] data) {
+        return new Source() {
+            @NonNull
+            @Override
+            ExifInterface readExif() throws IOException {
+                return new ExifInterface(new ByteArrayInputStream(data));
+            }
+
+            @Nullable
+            @Override
+            Bitmap decode(@NonNull BitmapFactory.Options options) {
+                return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        };
+    }
+
+    /**
+     * Returns a source for the given picture file.
+     *
+     * @param file the picture file
+     * @return a source
+     */
+    @NonNull
+    public static Source of(@NonNull final File file) {
+        return new Source() {
+            @NonNull
+            @Override
+            ExifInterface readExif() throws IOException {
+                return new ExifInterface(file.getAbsolutePath());
+            }
+
+            @Nullable
+            @Override
+            Bitmap decode(@NonNull BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+            }
+        };
+    }
+
+    /**
+     * Decodes the thumbnail embedded in the EXIF metadata, if it is big enough to cover
+     * the given size once rotated, and has the same aspect ratio of the picture.
+     *
+     * @param source the picture
+     * @param maxWidth the max width after rotation, or non-positive for no limit
+     * @param maxHeight the max height after rotation, or non-positive for no limit
+     * @param rotation the picture rotation
+     * @return the unrotated thumbnail, or null
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeEmbedded(@NonNull Source source,
+                                        int maxWidth,
+                                        int maxHeight,
+                                        int rotation) {
+        byte[] data;
+        try {
+            ExifInterface exif = source.readExif();
+            if (!exif.hasThumbnail() || !exif.isThumbnailCompressed()) return null;
+            data = exif.getThumbnailBytes();
+        } catch (IOException e) {
+            LOG.w("decodeEmbedded:", "could not read EXIF.", e);
+            return null;
+        }
+        if (data == null) return null;
+        Size imageSize = source.getSize();
+        Source thumbnail = of(data);
+        Size thumbnailSize = thumbnail.getSize();
+        if (imageSize == null || thumbnailSize == null) return null;
+        Size target = computeTargetSize(imageSize, maxWidth, maxHeight, rotation);
+        if (!covers(thumbnailSize, imageSize, target)) {
+            LOG.i("decodeEmbedded:", "EXIF thumbnail can't be used.",
+                    "thumbnail:", thumbnailSize, "picture:", imageSize, "target:", target);
+            return null;
+        }
+        return decode(thumbnail, thumbnailSize, target);
+    }
+
+    /**
+     * Decodes the picture with the largest power-of-two sample size that still covers
+     * the given size once rotated.
+     *
+     * @param source the picture
+     * @param maxWidth the max width after rotation, or non-positive for no limit
+     * @param maxHeight the max height after rotation, or non-positive for no limit
+     * @param rotation the picture rotation
+     * @return the unrotated thumbnail, or null
+     */
+    @WorkerThread
+    @Nullable
+    public static Bitmap decodeScaled(@NonNull Source source,
+                                      int maxWidth,
+                                      int maxHeight,
+                                      int rotation) {
+        Size imageSize = source.getSize();
+        if (imageSize == null) return null;
+        Size target = computeTargetSize(imageSize, maxWidth, maxHeight, rotation);
+        return decode(source, imageSize, target);
+    }
+
+    /**
+     * Releases a thumbnail bitmap, so that it can be reused by future decodes.
+     * The bitmap should not be used after this call.
+     *
+     * @param bitmap the bitmap
+     */
+    public static void recycle(@NonNull Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT
+                || !bitmap.isMutable()
+                || bitmap.isRecycled()) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (sRecycled) {
+            if (sRecycled.contains(bitmap)) return;
+            if (sRecycled.size() >= MAX_RECYCLED) {
+                sRecycled.removeFirst().recycle();
+            }
+            sRecycled.addLast(bitmap);
+        }
+    }
+
+    @Nullable
+    private static Bitmap decode(@NonNull Source source, @NonNull Size size, @NonNull Size target) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = computeSampleSize(size, target);
+        options.inMutable = true;
+        Bitmap reused = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int width = (size.getWidth() + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (size.getHeight() + options.inSampleSize - 1) / options.inSampleSize;
+            reused = obtain(width * height * 4); // ARGB_8888
+            options.inBitmap = reused;
+        }
+        try {
+            Bitmap bitmap;
+            try {
+                bitmap = source.decode(options);
+            } catch (IllegalArgumentException e) {
+                // The reused bitmap was not suitable after all.
+                LOG.w("decode:", "could not reuse bitmap.", e);
+                options.inBitmap = null;
+                bitmap = source.decode(options);
+            }
+            if (reused != null && bitmap != reused) recycle(reused);
+            return bitmap;
+        } catch (OutOfMemoryError e) {
+            if (reused != null) recycle(reused);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static Bitmap obtain(int byteCount) {
+        synchronized (sRecycled) {
+            Bitmap best = null;
+            Iterator<Bitmap> iterator = sRecycled.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.isRecycled()) {
+                    iterator.remove();
+                } else if (bitmap.getAllocationByteCount() >= byteCount
+                        && (best == null
+                        || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                    best = bitmap;
+                }
+            }
+            if (best != null) sRecycled.remove(best);
+            return best;
+        }
+    }
+
+    /**
+     * Returns the size, before rotation, that the picture of the given size should have in
+     * order to fit the given bounds, which are after rotation. Pictures are never upscaled.
+     */
+    @VisibleForTesting
+    @NonNull
+    static Size computeTargetSize(@NonNull Size size, int maxWidth, int maxHeight, int rotation) {
+        if (maxWidth <= 0) maxWidth = Integer.MAX_VALUE;
+        if (maxHeight <= 0) maxHeight = Integer.MAX_VALUE;
+        if (rotation % 180 != 0) {
+            int temp = maxWidth;
+            //noinspection SuspiciousNameCombination
+            maxWidth = maxHeight;
+            maxHeight = temp;
+        }
+        float scale = Math.min(1F, Math.min(
+                (float) maxWidth / size.getWidth(),
+                (float) maxHeight / size.getHeight()));
+        return new Size(
+                Math.max(1, Math.round(size.getWidth() * scale)),
+                Math.max(1, Math.round(size.getHeight() * scale)));
+    }
+
+    /**
+     * Whether a thumbnail of the given size can replace the picture of the given size,
+     * when displayed at the given target size.
+     */
+    @VisibleForTesting
+    static boolean covers(@NonNull Size thumbnail, @NonNull Size picture, @NonNull Size target) {
+        long thumbnailCross = (long) thumbnail.getWidth() * picture.getHeight();
+        long pictureCross = (long) picture.getWidth() * thumbnail.getHeight();
+        if (Math.abs(thumbnailCross - pictureCross) > RATIO_TOLERANCE * pictureCross) {
+            return false;
+        }
+        return thumbnail.getWidth() >= target.getWidth()
+                && thumbnail.getHeight() >= target.getHeight();
+    }
+
+    /**
+     * Returns the largest power of two that, used as sample size, keeps the decoded
+     * bitmap at least as big as the target size.
+     */
+    @VisibleForTesting
+    static int computeSampleSize(@NonNull Size size, @NonNull Size target) {
+        int inSampleSize = 1;
+        while (size.getWidth() / (inSampleSize * 2) >= target.getWidth()
+                && size.getHeight() / (inSampleSize * 2) >= target.getHeight()) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,66 @@
+package com.otaliastudios.cameraview.internal;
+
+import android.graphics.ImageFormat;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * Conversions between YUV layouts.
+ */
+public class YuvHelper {
+
+    /**
+     * Copies a {@link ImageFormat#YUV_420_888} image into a NV21 array, which is what
+     * {@link YuvImage} accepts. NV21 is the Y plane followed by interleaved V and U samples.
+     *
+     * @param image the image
+     * @return a new NV21 array
+     */
+    @RequiresApi(Build.VERSION_CODES.KITKAT)
+    @NonNull
+    public static byte[] toNv21(@NonNull Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        byte[] nv21 = new byte[width * height + 2 * chromaWidth * chromaHeight];
+        Image.Plane[] planes = image.getPlanes();
+
+        ByteBuffer y = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int position = 0;
+        for (int row = 0; row < height; row++) {
+            if (yPixelStride == 1) {
+                y.position(row * yRowStride);
+                y.get(nv21, position, width);
+                position += width;
+            } else {
+                int offset = row * yRowStride;
+                for (int col = 0; col < width; col++) {
+                    nv21[position++] = y.get(offset + col * yPixelStride);
+                }
+            }
+        }
+
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int chromaRowStride = planes[1].getRowStride();
+        int chromaPixelStride = planes[1].getPixelStride();
+        for (int row = 0; row < chromaHeight; row++) {
+            int offset = row * chromaRowStride;
+            for (int col = 0; col < chromaWidth; col++) {
+                int index = offset + col * chromaPixelStride;
+                nv21[position++] = v.get(index);
+                nv21[position++] = u.get(index);
+            }
+        }
+        return nv21;
+    }
+}
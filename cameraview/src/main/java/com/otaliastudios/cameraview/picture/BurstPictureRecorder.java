@@ -0,0 +1,160 @@
+package com.otaliastudios.cameraview.picture;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.CaptureTrace;
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.controls.PictureFormat;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
+
+import java.io.File;
+
+/**
+ * Base class for recorders that capture a burst of pictures. Subclasses capture
+ * as fast as they can and pass each picture to the {@link BurstPipeline}, which encodes
+ * and writes them in the background. Results are streamed to the {@link BurstResultListener}
+ * as soon as each file is written, and the burst ends with {@link #dispatchBurstEnd(int)}.
+ *
+ * The {@link PictureResultListener} of the base class is not used, so {@link #dispatchResult()}
+ * does nothing here. The first stub is kept by the base class as the burst parameters.
+ */
+public abstract class BurstPictureRecorder extends PictureRecorder
+        implements BurstPipeline.Listener {
+
+    private static final String TAG = BurstPictureRecorder.class.getSimpleName();
+    protected static final CameraLogger LOG = CameraLogger.create(TAG);
+
+    /**
+     * Listens for burst events.
+     */
+    public interface BurstResultListener {
+
+        /**
+         * The shutter was activated for one of the pictures.
+         * @param didPlaySound whether a sound was played
+         */
+        void onPictureShutter(boolean didPlaySound);
+
+        /**
+         * One of the pictures was saved to file.
+         *
+         * @param result the filled stub
+         * @param file the file
+         * @param index the picture index in the burst
+         */
+        void onBurstPictureResult(@NonNull PictureResult.Stub result,
+                                  @NonNull File file,
+                                  int index);
+
+        /**
+         * The burst has ended.
+         *
+         * @param saved the number of pictures that were saved
+         * @param error an error, if no picture could be saved
+         */
+        void onBurstResult(int saved, @Nullable Exception error);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    protected final PictureResult.Stub[] mStubs;
+    @SuppressWarnings("WeakerAccess")
+    protected final BurstPipeline mPipeline;
+    private volatile BurstResultListener mBurstListener;
+    private volatile Exception mFirstError;
+
+    /**
+     * Creates a new burst recorder.
+     *
+     * @param stubs one stub per picture, all filled with the same parameters
+     * @param directory the directory where pictures will be saved
+     * @param listener a listener
+     */
+    @SuppressWarnings("WeakerAccess")
+    public BurstPictureRecorder(@NonNull PictureResult.Stub[] stubs,
+                                @NonNull File directory,
+                                @Nullable BurstResultListener listener) {
+        this(stubs, directory, listener, getDefaultCapacity());
+    }
+
+    /**
+     * Creates a new burst recorder with the given pipeline capacity.
+     *
+     * @param stubs one stub per picture, all filled with the same parameters
+     * @param directory the directory where pictures will be saved
+     * @param listener a listener
+     * @param capacity the max number of pictures in flight
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected BurstPictureRecorder(@NonNull PictureResult.Stub[] stubs,
+                                   @NonNull File directory,
+                                   @Nullable BurstResultListener listener,
+                                   int capacity) {
+        super(stubs[0], null);
+        mStubs = stubs;
+        mBurstListener = listener;
+        mPipeline = new BurstPipeline(directory,
+                "burst_" + System.currentTimeMillis(),
+                stubs[0].format == PictureFormat.DNG ? "dng" : "jpg",
+                stubs.length,
+                PictureExecutor.get(),
+                capacity,
+                this);
+    }
+
+    /**
+     * Returns the default pipeline capacity: one picture in flight for each thread,
+     * plus one waiting.
+     *
+     * @return the default capacity
+     */
+    protected static int getDefaultCapacity() {
+        return PictureExecutor.get().getParallelism() + 1;
+    }
+
+    @Override
+    protected void dispatchOnShutter(boolean didPlaySound) {
+        BurstResultListener listener = mBurstListener;
+        if (listener != null) listener.onPictureShutter(didPlaySound);
+    }
+
+    @Override
+    public void onBurstPictureSaved(int index, @Nullable byte[] data, @NonNull File file) {
+        PictureResult.Stub stub = mStubs[index];
+        mStubs[index] = null;
+        stub.data = data;
+        if (data == null) stub.file = file;
+        BurstResultListener listener = mBurstListener;
+        if (listener != null) {
+            stub.tracer.begin(CaptureTrace.STAGE_DISPATCH);
+            listener.onBurstPictureResult(stub, file, index);
+        }
+    }
+
+    @Override
+    public void onBurstPictureFailed(int index, @NonNull Exception error) {
+        mStubs[index] = null;
+        if (mFirstError == null) mFirstError = error;
+    }
+
+    @Override
+    public void onBurstCompleted(int saved) {
+        LOG.i("onBurstCompleted:", "saved:", saved, "count:", mStubs.length);
+        dispatchBurstEnd(saved);
+    }
+
+    /**
+     * Notifies that the burst has ended. This is the terminal dispatch of bursts,
+     * like {@link #dispatchResult()} is for single pictures, and is called once
+     * the pipeline has completed all pictures.
+     *
+     * @param saved the number of pictures that were saved
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected void dispatchBurstEnd(int saved) {
+        BurstResultListener listener = mBurstListener;
+        mBurstListener = null;
+        if (listener != null) listener.onBurstResult(saved, saved == 0 ? mFirstError : null);
+    }
+}
@@ -0,0 +1,360 @@
+package com.otaliastudios.cameraview.picture;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.internal.FileHelper;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encodes and writes the pictures of a burst on an {@link Executor}, typically the shared
+ * picture processing pool, so that capturing the next picture overlaps with processing
+ * the previous ones.
+ *
+ * The pipeline is bounded: at most a given number of pictures can be in flight (queued or
+ * being processed) at any given time. Capture sources can:
+ * - wait for a free slot with {@link #submit(int, Job)}, which is what makes a camera burst
+ *   slow down instead of piling up images in memory. This blocks the caller, so it should
+ *   only be used from threads that are owned by the capture source.
+ * - reserve a slot before capturing, with {@link #tryReserve()} (dropping frames when full)
+ *   or {@link #reserve(Runnable)} (capturing later when a slot is released), then pass the
+ *   picture to {@link #submitReserved(int, Job)} or {@link #failReserved(int, Exception)}.
+ *   This never blocks, so it is safe on camera callbacks or on the renderer thread.
+ *
+ * Results are passed to the {@link Listener} as soon as each picture is written,
+ * so they are not necessarily ordered. When all pictures have either been written or
+ * failed, the listener is notified.
+ */
+public class BurstPipeline {
+
+    private final static String TAG = BurstPipeline.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    /**
+     * Produces the encoded bytes of a picture. Runs on the pipeline threads.
+     */
+    public interface Job {
+
+        /**
+         * Encodes the picture.
+         * @return the encoded bytes
+         * @throws Exception if something goes wrong
+         */
+        @WorkerThread
+        @NonNull
+        byte[] encode() throws Exception;
+    }
+
+    /**
+     * Writes a picture straight to its file, for pictures that can be streamed
+     * without being encoded in memory first. Runs on the pipeline threads.
+     */
+    public interface WriteJob {
+
+        /**
+         * Writes the picture.
+         * @param file the file to be written
+         * @throws Exception if something goes wrong
+         */
+        @WorkerThread
+        void write(@NonNull File file) throws Exception;
+    }
+
+    /**
+     * Receives the pipeline results, on the pipeline threads.
+     */
+    public interface Listener {
+
+        /**
+         * The picture at the given index was encoded and written to file.
+         *
+         * @param index the picture index
+         * @param data the encoded bytes, or null if it was a {@link WriteJob}
+         * @param file the file
+         */
+        @WorkerThread
+        void onBurstPictureSaved(int index, @Nullable byte[] data, @NonNull File file);
+
+        /**
+         * The picture at the given index could not be captured, encoded or written.
+         *
+         * @param index the picture index
+         * @param error the error
+         */
+        @WorkerThread
+        void onBurstPictureFailed(int index, @NonNull Exception error);
+
+        /**
+         * All pictures were processed.
+         *
+         * @param saved the number of pictures that were written
+         */
+        @WorkerThread
+        void onBurstCompleted(int saved);
+    }
+
+    private final File mDirectory;
+    private final String mPrefix;
+    private final String mExtension;
+    private final int mCount;
+    private final Listener mListener;
+    private final Semaphore mSlots;
+    // Waiting for a slot, see reserve(). Guarded by itself.
+    private final Queue<Runnable> mReservations = new ArrayDeque<>();
+    private final Executor mExecutor;
+    private final AtomicInteger mProcessed = new AtomicInteger(0);
+    private final AtomicInteger mSaved = new AtomicInteger(0);
+
+    /**
+     * Creates a new pipeline for JPEG pictures.
+     *
+     * @param directory the directory where pictures are written
+     * @param prefix the file name prefix
+     * @param count the number of pictures in this burst
+     * @param executor the executor for encoding and writing
+     * @param capacity the max number of pictures in flight
+     * @param listener a listener
+     */
+    public BurstPipeline(@NonNull File directory,
+                         @NonNull String prefix,
+                         int count,
+                         @NonNull Executor executor,
+                         int capacity,
+                         @NonNull Listener listener) {
+        this(directory, prefix, "jpg", count, executor, capacity, listener);
+    }
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param directory the directory where pictures are written
+     * @param prefix the file name prefix
+     * @param extension the file name extension
+     * @param count the number of pictures in this burst
+     * @param executor the executor for encoding and writing
+     * @param capacity the max number of pictures in flight
+     * @param listener a listener
+     */
+    public BurstPipeline(@NonNull File directory,
+                         @NonNull String prefix,
+                         @NonNull String extension,
+                         int count,
+                         @NonNull Executor executor,
+                         int capacity,
+                         @NonNull Listener listener) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Need at least 1 picture, got " + count);
+        }
+        mDirectory = directory;
+        mPrefix = prefix;
+        mExtension = extension;
+        mCount = count;
+        mListener = listener;
+        mSlots = new Semaphore(Math.max(1, capacity));
+        mExecutor = executor;
+    }
+
+    /**
+     * Returns the number of pictures in this burst.
+     * @return the count
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the file where the picture at the given index will be written.
+     * @param index the picture index
+     * @return the file
+     */
+    @NonNull
+    public File getFile(int index) {
+        return new File(mDirectory, mPrefix + "_" + index + "." + mExtension);
+    }
+
+    /**
+     * Submits a picture, waiting for a free slot if the pipeline is full.
+     *
+     * @param index the picture index
+     * @param job the encoding job
+     */
+    public void submit(int index, @NonNull Job job) {
+        submit(index, new EncodeJob(job));
+    }
+
+    /**
+     * Submits a picture that writes itself, waiting for a free slot if the pipeline is full.
+     *
+     * @param index the picture index
+     * @param job the writing job
+     */
+    public void submit(int index, @NonNull WriteJob job) {
+        try {
+            mSlots.acquire();
+        } catch (InterruptedException e) {
+            fail(index, e);
+            return;
+        }
+        execute(index, job);
+    }
+
+    /**
+     * Submits a picture if there is a free slot in the pipeline.
+     * If this returns false, the job was not accepted and the caller should try again later,
+     * for example with the next frame.
+     *
+     * @param index the picture index
+     * @param job the encoding job
+     * @return true if accepted
+     */
+    public boolean trySubmit(int index, @NonNull Job job) {
+        if (!tryReserve()) return false;
+        submitReserved(index, job);
+        return true;
+    }
+
+    /**
+     * Returns true if {@link #trySubmit(int, Job)} would accept a new picture.
+     * @return true if there are free slots
+     */
+    public boolean hasCapacity() {
+        synchronized (mReservations) {
+            return mReservations.isEmpty() && mSlots.availablePermits() > 0;
+        }
+    }
+
+    /**
+     * Reserves a slot if there is a free one in the pipeline, without blocking.
+     * If this returns true, the caller must pass the picture to
+     * {@link #submitReserved(int, Job)} or {@link #failReserved(int, Exception)}.
+     *
+     * @return true if a slot was reserved
+     */
+    public boolean tryReserve() {
+        synchronized (mReservations) {
+            // Do not overtake callers that are waiting in reserve().
+            return mReservations.isEmpty() && mSlots.tryAcquire();
+        }
+    }
+
+    /**
+     * Reserves a slot, without blocking. The action is run right away if there is a free slot,
+     * otherwise as soon as one is released, on the thread that released it.
+     * Once the action runs, the caller must pass the picture to
+     * {@link #submitReserved(int, Job)} or {@link #failReserved(int, Exception)}.
+     *
+     * @param onReserved the action
+     */
+    public void reserve(@NonNull Runnable onReserved) {
+        synchronized (mReservations) {
+            if (!mReservations.isEmpty() || !mSlots.tryAcquire()) {
+                mReservations.add(onReserved);
+                return;
+            }
+        }
+        onReserved.run();
+    }
+
+    /**
+     * Submits a picture for which a slot was already reserved.
+     *
+     * @param index the picture index
+     * @param job the encoding job
+     */
+    public void submitReserved(int index, @NonNull Job job) {
+        execute(index, new EncodeJob(job));
+    }
+
+    /**
+     * Notifies that the picture at the given index, for which a slot was already
+     * reserved, could not be captured. This releases the slot.
+     *
+     * @param index the picture index
+     * @param error the error
+     */
+    public void failReserved(int index, @NonNull Exception error) {
+        releaseSlot();
+        fail(index, error);
+    }
+
+    /**
+     * Notifies that the picture at the given index could not be captured.
+     *
+     * @param index the picture index
+     * @param error the error
+     */
+    public void fail(int index, @NonNull Exception error) {
+        LOG.w("fail:", "index:", index, "error:", error);
+        mListener.onBurstPictureFailed(index, error);
+        onProcessed();
+    }
+
+    private void execute(final int index, @NonNull final WriteJob job) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] data = null;
+                Exception error = null;
+                File file = getFile(index);
+                try {
+                    job.write(file);
+                    if (job instanceof EncodeJob) data = ((EncodeJob) job).mData;
+                } catch (Exception e) {
+                    error = e;
+                } finally {
+                    releaseSlot();
+                }
+                if (error != null) {
+                    fail(index, error);
+                } else {
+                    LOG.v("execute:", "Saved picture.", "index:", index, "file:", file);
+                    mSaved.incrementAndGet();
+                    mListener.onBurstPictureSaved(index, data, file);
+                    onProcessed();
+                }
+            }
+        });
+    }
+
+    private void releaseSlot() {
+        Runnable reservation;
+        synchronized (mReservations) {
+            reservation = mReservations.poll();
+            // If someone is waiting, the slot goes to them.
+            if (reservation == null) mSlots.release();
+        }
+        if (reservation != null) reservation.run();
+    }
+
+    private void onProcessed() {
+        if (mProcessed.incrementAndGet() == mCount) {
+            int saved = mSaved.get();
+            LOG.i("onProcessed:", "Burst completed.", "saved:", saved, "count:", mCount);
+            mListener.onBurstCompleted(saved);
+        }
+    }
+
+    private static class EncodeJob implements WriteJob {
+
+        private final Job mJob;
+        private byte[] mData;
+
+        private EncodeJob(@NonNull Job job) {
+            mJob = job;
+        }
+
+        @Override
+        public void write(@NonNull File file) throws Exception {
+            mData = mJob.encode();
+            FileHelper.write(mData, file, false);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.hardware.Camera;
+import android.os.Handler;
+
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.engine.Camera1Engine;
+
+import java.io.File;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A {@link BurstPictureRecorder} for Camera1, which has no burst API. Pictures are taken
+ * one after the other with {@link Full1PictureRecorder}, as soon as the previous one
+ * was received, while the pipeline writes the previous ones.
+ *
+ * A slot in the pipeline is reserved before each picture is taken, so that the camera
+ * callback never has to wait for the pipeline. When the pipeline is full, the next picture
+ * is taken as soon as a slot is released.
+ */
+public class Full1BurstPictureRecorder extends BurstPictureRecorder {
+
+    private final Camera1Engine mEngine;
+    private final Camera mCamera;
+    private final Handler mHandler;
+
+    public Full1BurstPictureRecorder(@NonNull PictureResult.Stub[] stubs,
+                                     @NonNull File directory,
+                                     @Nullable BurstResultListener listener,
+                                     @NonNull Camera1Engine engine,
+                                     @NonNull Camera camera,
+                                     @NonNull Handler engineHandler) {
+        super(stubs, directory, listener);
+        mEngine = engine;
+        mCamera = camera;
+        mHandler = engineHandler;
+    }
+
+    @Override
+    public void take() {
+        takeNext(0);
+    }
+
+    private void takeNext(final int index) {
+        if (index >= mStubs.length) return;
+        mPipeline.reserve(new Runnable() {
+            @Override
+            public void run() {
+                // This might be a pipeline thread: the camera should be used from the engine.
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        takePicture(index);
+                    }
+                });
+            }
+        });
+    }
+
+    private void takePicture(final int index) {
+        LOG.i("takePicture:", "index:", index);
+        PictureResultListener listener = new PictureResultListener() {
+            @Override
+            public void onPictureShutter(boolean didPlaySound) {
+                dispatchOnShutter(didPlaySound);
+            }
+
+            @Override
+            public void onPictureResult(@Nullable PictureResult.Stub result,
+                                        @Nullable Exception error) {
+                if (result == null || result.data == null || error != null) {
+                    mPipeline.failReserved(index, error != null ? error
+                            : new RuntimeException("No data for index " + index));
+                } else {
+                    final byte[] jpeg = result.data;
+                    mPipeline.submitReserved(index, new BurstPipeline.Job() {
+                        @NonNull
+                        @Override
+                        public byte[] encode() {
+                            return jpeg;
+                        }
+                    });
+                }
+                takeNext(index + 1);
+            }
+        };
+        try {
+            new Full1PictureRecorder(mStubs[index], listener, mEngine, mCamera).take();
+        } catch (RuntimeException e) {
+            // The camera is not usable anymore, for example because it was released.
+            LOG.e("takePicture:", "Could not take picture. Ending burst.", e);
+            mPipeline.failReserved(index, e);
+            for (int i = index + 1; i < mStubs.length; i++) {
+                mPipeline.fail(i, e);
+            }
+        }
+    }
+}
@@ -4,17 +4,20 @@ import android.hardware.Camera;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
-import androidx.exifinterface.media.ExifInterface;
+import androidx.annotation.Nullable;
 
 import com.otaliastudios.cameraview.CameraException;
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.engine.Camera1Engine;
 import com.otaliastudios.cameraview.engine.offset.Reference;
 import com.otaliastudios.cameraview.engine.orchestrator.CameraState;
 import com.otaliastudios.cameraview.internal.ExifHelper;
+import com.otaliastudios.cameraview.internal.ExifOrientation;
+import com.otaliastudios.cameraview.internal.FileHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
 import com.otaliastudios.cameraview.size.Size;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 /**
@@ -28,7 +31,14 @@ public class Full1PictureRecorder extends FullPictureRecorder {
     public Full1PictureRecorder(@NonNull PictureResult.Stub stub,
                                 @NonNull Camera1Engine engine,
                                 @NonNull Camera camera) {
-        super(stub, engine);
+        this(stub, engine, engine, camera);
+    }
+
+    public Full1PictureRecorder(@NonNull PictureResult.Stub stub,
+                                @Nullable PictureResultListener listener,
+                                @NonNull Camera1Engine engine,
+                                @NonNull Camera camera) {
+        super(stub, listener);
         mEngine = engine;
         mCamera = camera;
 
@@ -46,6 +56,7 @@ public class Full1PictureRecorder extends FullPictureRecorder {
         // or takePicture can hang and leave the camera in a bad state.
         mCamera.setPreviewCallbackWithBuffer(null);
         mEngine.getFrameManager().release();
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
         try {
             mCamera.takePicture(
                     new Camera.ShutterCallback() {
@@ -61,16 +72,11 @@ public class Full1PictureRecorder extends FullPictureRecorder {
                         @Override
                         public void onPictureTaken(byte[] data, final Camera camera) {
                             LOG.i("take(): got picture callback.");
-                            int exifRotation;
-                            try {
-                                ExifInterface exif = new ExifInterface(new ByteArrayInputStream(data));
-                                int exifOrientation = exif.getAttributeInt(
-                                        ExifInterface.TAG_ORIENTATION,
-                                        ExifInterface.ORIENTATION_NORMAL);
-                                exifRotation = ExifHelper.getOrientation(exifOrientation);
-                            } catch (IOException e) {
-                                exifRotation = 0;
-                            }
+                            mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
+                            mResult.tracer.begin(CaptureTrace.STAGE_EXIF);
+                            int exifOrientation = ExifOrientation.read(data);
+                            int exifRotation = ExifHelper.getOrientation(exifOrientation);
+                            mResult.tracer.end(CaptureTrace.STAGE_EXIF);
                             mResult.data = data;
                             mResult.rotation = exifRotation;
                             LOG.i("take(): starting preview again. ", Thread.currentThread());
@@ -93,7 +99,11 @@ public class Full1PictureRecorder extends FullPictureRecorder {
                                 );
                                 camera.startPreview();
                             }
-                            dispatchResult();
+                            if (mResult.file != null) {
+                                writeToFile();
+                            } else {
+                                dispatchResult();
+                            }
                         }
                     }
             );
@@ -104,6 +114,29 @@ public class Full1PictureRecorder extends FullPictureRecorder {
         }
     }
 
+    /**
+     * Camera1 only gives us an array, but we can still avoid keeping it in the result.
+     * Writing happens on the picture processing pool.
+     */
+    private void writeToFile() {
+        final boolean sync = mEngine.getPictureFileSync();
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mResult.tracer.begin(CaptureTrace.STAGE_WRITING);
+                    FileHelper.write(mResult.data, mResult.file, sync);
+                    mResult.tracer.end(CaptureTrace.STAGE_WRITING);
+                    mResult.data = null;
+                } catch (IOException e) {
+                    mResult = null;
+                    mError = e;
+                }
+                dispatchResult();
+            }
+        });
+    }
+
     @Override
     protected void dispatchResult() {
         LOG.i("dispatching result. Thread:", Thread.currentThread());
@@ -0,0 +1,321 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CaptureFailure;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.DngCreator;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.controls.PictureFormat;
+import com.otaliastudios.cameraview.internal.ExifHelper;
+import com.otaliastudios.cameraview.internal.ExifOrientation;
+import com.otaliastudios.cameraview.internal.FileHelper;
+import com.otaliastudios.cameraview.internal.WorkerHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * A {@link BurstPictureRecorder} for Camera2. All the still capture requests are sent
+ * at once with {@link CameraCaptureSession#captureBurst(List,
+ * CameraCaptureSession.CaptureCallback, android.os.Handler)}, so the camera can run them
+ * back to back.
+ *
+ * JPEG images are copied out of the {@link ImageReader} and handed to the pipeline, which
+ * reads their EXIF and writes them. When the pipeline is full, the reader thread waits: the reader then runs
+ * out of images and the camera slows down, instead of us buffering the whole burst.
+ *
+ * RAW images are not copied at all: they stay open until the pipeline streams them to file
+ * through a {@link DngCreator}, which also needs the matching {@link TotalCaptureResult}.
+ * Since the reader only has two images, one can be written while the next is being captured.
+ *
+ * Images are matched to their burst index through the sensor timestamp, which we receive in
+ * {@link CameraCaptureSession.CaptureCallback#onCaptureStarted(CameraCaptureSession,
+ * CaptureRequest, long, long)}. Images that come first are held until then. Each index ends
+ * exactly once, with a submit or a failure: indices that got no image some time after the
+ * burst sequence ended are failed, so the burst always completes.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class Full2BurstPictureRecorder extends BurstPictureRecorder
+        implements ImageReader.OnImageAvailableListener {
+
+    private final static long RAW_RESULT_TIMEOUT = 5000;
+    private final static long IMAGE_TIMEOUT = 5000;
+
+    private final CameraCaptureSession mSession;
+    private final CameraCharacteristics mCharacteristics;
+    private final CaptureRequest.Builder mPictureBuilder;
+    private final ImageReader mPictureReader;
+    private final Handler mEngineHandler;
+    private final WorkerHandler mReaderThread = WorkerHandler.get("BurstPictureReader");
+    // Sensor timestamp to burst index. Needed because failed captures produce no image.
+    // This and the fields below are guarded by mIndices.
+    private final Map<Long, Integer> mIndices = new HashMap<>();
+    // Images that arrived before their onCaptureStarted, by sensor timestamp.
+    private final Map<Long, Image> mPendingImages = new HashMap<>();
+    // Whether each index was submitted or failed already.
+    private final boolean[] mEnded;
+    private boolean mTimedOut;
+    // Sensor timestamp to capture result, for RAW images.
+    private final Map<Long, TotalCaptureResult> mCaptureResults = new HashMap<>();
+
+    public Full2BurstPictureRecorder(@NonNull PictureResult.Stub[] stubs,
+                                     @NonNull File directory,
+                                     @Nullable BurstResultListener listener,
+                                     @NonNull CameraCaptureSession session,
+                                     @NonNull CameraCharacteristics characteristics,
+                                     @NonNull CaptureRequest.Builder pictureBuilder,
+                                     @NonNull ImageReader pictureReader,
+                                     @NonNull Handler engineHandler) {
+        super(stubs, directory, listener,
+                stubs[0].format == PictureFormat.DNG ? 1 : getDefaultCapacity());
+        mSession = session;
+        mCharacteristics = characteristics;
+        mPictureBuilder = pictureBuilder;
+        mPictureReader = pictureReader;
+        mEngineHandler = engineHandler;
+        mEnded = new boolean[stubs.length];
+    }
+
+    @Override
+    public void take() {
+        mPictureReader.setOnImageAvailableListener(this, mReaderThread.getHandler());
+        mPictureBuilder.addTarget(mPictureReader.getSurface());
+        if (mResult.format == PictureFormat.JPEG) {
+            mPictureBuilder.set(CaptureRequest.JPEG_ORIENTATION, mResult.rotation);
+        }
+        List<CaptureRequest> requests = new ArrayList<>(mStubs.length);
+        for (int i = 0; i < mStubs.length; i++) {
+            mPictureBuilder.setTag(i);
+            requests.add(mPictureBuilder.build());
+        }
+        try {
+            LOG.i("take:", "Sending burst of", requests.size(), "requests.");
+            mSession.captureBurst(requests, new CameraCaptureSession.CaptureCallback() {
+                @Override
+                public void onCaptureStarted(@NonNull CameraCaptureSession session,
+                                             @NonNull CaptureRequest request,
+                                             long timestamp,
+                                             long frameNumber) {
+                    dispatchOnShutter(false);
+                    final int index = (Integer) request.getTag();
+                    final Image image;
+                    synchronized (mIndices) {
+                        image = mPendingImages.remove(timestamp);
+                        if (image == null) mIndices.put(timestamp, index);
+                    }
+                    if (image != null) {
+                        mReaderThread.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onImage(index, image);
+                            }
+                        });
+                    }
+                }
+
+                @Override
+                public void onCaptureCompleted(@NonNull CameraCaptureSession session,
+                                               @NonNull CaptureRequest request,
+                                               @NonNull TotalCaptureResult result) {
+                    if (mResult.format != PictureFormat.DNG) return;
+                    Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+                    if (timestamp == null) return;
+                    synchronized (mCaptureResults) {
+                        mCaptureResults.put(timestamp, result);
+                        mCaptureResults.notifyAll();
+                    }
+                }
+
+                @Override
+                public void onCaptureFailed(@NonNull CameraCaptureSession session,
+                                            @NonNull CaptureRequest request,
+                                            @NonNull CaptureFailure failure) {
+                    if (failure.wasImageCaptured()) return; // We'll get the image anyway.
+                    int index = (Integer) request.getTag();
+                    fail(index, new RuntimeException("Capture failed. index: "
+                            + index + " reason: " + failure.getReason()));
+                }
+
+                @Override
+                public void onCaptureSequenceCompleted(@NonNull CameraCaptureSession session,
+                                                       int sequenceId,
+                                                       long frameNumber) {
+                    mReaderThread.post(IMAGE_TIMEOUT, mTimeoutRunnable);
+                }
+
+                @Override
+                public void onCaptureSequenceAborted(@NonNull CameraCaptureSession session,
+                                                     int sequenceId) {
+                    mReaderThread.post(IMAGE_TIMEOUT, mTimeoutRunnable);
+                }
+            }, mEngineHandler);
+        } catch (CameraAccessException e) {
+            for (int i = 0; i < mStubs.length; i++) {
+                fail(i, e);
+            }
+        }
+    }
+
+    /**
+     * Marks the given index as ended. Returns false if it had ended already,
+     * in which case the caller should do nothing.
+     */
+    private boolean end(int index) {
+        synchronized (mIndices) {
+            if (mEnded[index]) return false;
+            mEnded[index] = true;
+            return true;
+        }
+    }
+
+    private void fail(int index, @NonNull Exception error) {
+        if (end(index)) mPipeline.fail(index, error);
+    }
+
+    private final Runnable mTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<Image> pending;
+            synchronized (mIndices) {
+                mTimedOut = true;
+                pending = new ArrayList<>(mPendingImages.values());
+                mPendingImages.clear();
+                mIndices.clear();
+            }
+            for (Image image : pending) image.close();
+            TimeoutException error = new TimeoutException("No image for burst picture.");
+            for (int i = 0; i < mStubs.length; i++) {
+                fail(i, error);
+            }
+        }
+    };
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireNextImage();
+        } catch (Exception e) {
+            // We don't know the index, the timeout will fail it.
+            LOG.e("onImageAvailable:", "Could not acquire image.", e);
+            return;
+        }
+        if (image == null) return;
+        Integer index;
+        synchronized (mIndices) {
+            index = mIndices.remove(image.getTimestamp());
+            if (index == null && !mTimedOut) {
+                // Wait for onCaptureStarted to tell us the index.
+                mPendingImages.put(image.getTimestamp(), image);
+                return;
+            }
+        }
+        if (index == null) {
+            image.close();
+        } else {
+            onImage(index, image);
+        }
+    }
+
+    private void onImage(int index, @NonNull Image image) {
+        if (!end(index)) {
+            image.close();
+            return;
+        }
+        if (mResult.format == PictureFormat.DNG) {
+            submitRawImage(index, image); // Closed by the pipeline.
+            return;
+        }
+        byte[] data;
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+        } catch (Exception e) {
+            LOG.e("onImage:", "Could not read image.", e);
+            mPipeline.fail(index, e);
+            return;
+        } finally {
+            // Close as soon as possible, so the camera can go on with the burst.
+            image.close();
+        }
+
+        // Just like Full2PictureRecorder, read the rotation from the EXIF.
+        // This happens in the pipeline, so the reader thread is free for the next image.
+        final PictureResult.Stub stub = mStubs[index];
+        final byte[] jpeg = data;
+        mPipeline.submit(index, new BurstPipeline.Job() {
+            @NonNull
+            @Override
+            public byte[] encode() {
+                stub.rotation = ExifHelper.getOrientation(ExifOrientation.read(jpeg));
+                return jpeg;
+            }
+        });
+    }
+
+    private void submitRawImage(int index, @NonNull final Image image) {
+        final PictureResult.Stub stub = mStubs[index];
+        final long timestamp = image.getTimestamp();
+        mPipeline.submit(index, new BurstPipeline.WriteJob() {
+            @Override
+            public void write(@NonNull File file) throws Exception {
+                try {
+                    TotalCaptureResult result = awaitCaptureResult(timestamp);
+                    final DngCreator creator = new DngCreator(mCharacteristics, result);
+                    try {
+                        creator.setOrientation(ExifHelper.getExifOrientation(stub.rotation));
+                        if (stub.location != null) creator.setLocation(stub.location);
+                        FileHelper.write(new FileHelper.StreamWriter() {
+                            @Override
+                            public void write(@NonNull OutputStream stream) throws IOException {
+                                creator.writeImage(stream, image);
+                            }
+                        }, file, false);
+                    } finally {
+                        creator.close();
+                    }
+                } finally {
+                    image.close();
+                }
+            }
+        });
+    }
+
+    @NonNull
+    private TotalCaptureResult awaitCaptureResult(long timestamp) throws Exception {
+        long end = System.currentTimeMillis() + RAW_RESULT_TIMEOUT;
+        synchronized (mCaptureResults) {
+            while (!mCaptureResults.containsKey(timestamp)) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("No capture result for RAW image. "
+                            + "timestamp: " + timestamp);
+                }
+                mCaptureResults.wait(remaining);
+            }
+            return mCaptureResults.remove(timestamp);
+        }
+    }
+}
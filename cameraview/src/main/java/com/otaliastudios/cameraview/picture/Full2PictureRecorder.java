@@ -10,6 +10,7 @@ import android.media.ImageReader;
 import android.os.Build;
 import android.util.Log;
 
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.controls.PictureFormat;
 import com.otaliastudios.cameraview.engine.Camera2Engine;
@@ -17,17 +18,19 @@ import com.otaliastudios.cameraview.engine.action.Action;
 import com.otaliastudios.cameraview.engine.action.ActionHolder;
 import com.otaliastudios.cameraview.engine.action.BaseAction;
 import com.otaliastudios.cameraview.internal.ExifHelper;
+import com.otaliastudios.cameraview.internal.ExifOrientation;
+import com.otaliastudios.cameraview.internal.FileHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
 import com.otaliastudios.cameraview.internal.WorkerHandler;
 
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
-import androidx.exifinterface.media.ExifInterface;
 
 /**
  * A {@link PictureResult} that uses standard APIs.
@@ -40,6 +43,7 @@ public class Full2PictureRecorder extends FullPictureRecorder
     private final Action mAction;
     private final ImageReader mPictureReader;
     private final CaptureRequest.Builder mPictureBuilder;
+    private final boolean mFileSync;
 
     private DngCreator mDngCreator;
 
@@ -49,9 +53,11 @@ public class Full2PictureRecorder extends FullPictureRecorder
                                 @NonNull ImageReader pictureReader) {
         super(stub, engine);
         mHolder = engine;
+        mFileSync = engine.getPictureFileSync();
         mPictureBuilder = pictureBuilder;
         mPictureReader = pictureReader;
-        mPictureReader.setOnImageAvailableListener(this, WorkerHandler.get().getHandler());
+        mPictureReader.setOnImageAvailableListener(this,
+                WorkerHandler.get("PictureReader").getHandler());
         mAction = new BaseAction() {
 
             @Override
@@ -107,6 +113,7 @@ public class Full2PictureRecorder extends FullPictureRecorder
 
     @Override
     public void take() {
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
         mAction.start(mHolder);
     }
 
@@ -117,9 +124,29 @@ public class Full2PictureRecorder extends FullPictureRecorder
         //noinspection TryFinallyCanBeTryWithResources
         try {
             image = reader.acquireNextImage();
+            mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
             switch (mResult.format) {
-                case JPEG: readJpegImage(image); break;
-                case DNG: readRawImage(image); break;
+                case JPEG: {
+                    if (mResult.file != null) {
+                        mResult.tracer.begin(CaptureTrace.STAGE_WRITING);
+                        writeJpegImage(image);
+                        mResult.tracer.end(CaptureTrace.STAGE_WRITING);
+                    } else {
+                        readJpegImage(image);
+                    }
+                    break;
+                }
+                case DNG: {
+                    if (mResult.file != null) {
+                        writeRawImage(image);
+                        image = null; // Closed after writing.
+                        return;
+                    }
+                    mResult.tracer.begin(CaptureTrace.STAGE_ENCODING);
+                    readRawImage(image);
+                    mResult.tracer.end(CaptureTrace.STAGE_ENCODING);
+                    break;
+                }
                 default: throw new IllegalStateException("Unknown format: " + mResult.format);
             }
         } catch (Exception e) {
@@ -133,9 +160,21 @@ public class Full2PictureRecorder extends FullPictureRecorder
             }
         }
 
-        // Leave.
-        LOG.i("onImageAvailable ended.");
-        dispatchResult();
+        if (mResult.format == PictureFormat.JPEG) {
+            // Read EXIF on the picture processing pool, so the reader thread is free.
+            PictureExecutor.get().execute(new Runnable() {
+                @Override
+                public void run() {
+                    readJpegRotation();
+                    LOG.i("onImageAvailable ended.");
+                    dispatchResult();
+                }
+            });
+        } else {
+            // Leave.
+            LOG.i("onImageAvailable ended.");
+            dispatchResult();
+        }
     }
 
     private void readJpegImage(@NonNull Image image) {
@@ -143,18 +182,61 @@ public class Full2PictureRecorder extends FullPictureRecorder
         byte[] bytes = new byte[buffer.remaining()];
         buffer.get(bytes);
         mResult.data = bytes;
+    }
 
+    /**
+     * Writes the direct buffer of the JPEG plane straight to file, with no copy on the heap.
+     * This must happen before the image is closed.
+     */
+    private void writeJpegImage(@NonNull Image image) throws IOException {
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        FileHelper.write(buffer, mResult.file, mFileSync);
+    }
+
+    private void readJpegRotation() {
         // Just like Camera1, unfortunately, the camera might rotate the image
         // and put EXIF=0 instead of respecting our EXIF and leave the image unaltered.
         mResult.rotation = 0;
+        mResult.tracer.begin(CaptureTrace.STAGE_EXIF);
         try {
-            ExifInterface exif = new ExifInterface(new ByteArrayInputStream(mResult.data));
-            int exifOrientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                    ExifInterface.ORIENTATION_NORMAL);
+            int exifOrientation = mResult.file != null
+                    ? ExifOrientation.read(mResult.file)
+                    : ExifOrientation.read(mResult.data);
             mResult.rotation = ExifHelper.getOrientation(exifOrientation);
         } catch (IOException ignore) {
             // Should not happen
         }
+        mResult.tracer.end(CaptureTrace.STAGE_EXIF);
+    }
+
+    /**
+     * Streams the DNG straight to file on the picture processing pool, so the
+     * RAW data is never held on the heap. The image is closed once written.
+     */
+    private void writeRawImage(@NonNull final Image image) {
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mResult.tracer.begin(CaptureTrace.STAGE_WRITING);
+                    FileHelper.write(new FileHelper.StreamWriter() {
+                        @Override
+                        public void write(@NonNull OutputStream stream) throws IOException {
+                            mDngCreator.writeImage(stream, image);
+                        }
+                    }, mResult.file, mFileSync);
+                    mResult.tracer.end(CaptureTrace.STAGE_WRITING);
+                } catch (Exception e) {
+                    mResult = null;
+                    mError = e;
+                } finally {
+                    mDngCreator.close();
+                    image.close();
+                }
+                LOG.i("onImageAvailable ended.");
+                dispatchResult();
+            }
+        });
     }
 
     private void readRawImage(@NonNull Image image) {
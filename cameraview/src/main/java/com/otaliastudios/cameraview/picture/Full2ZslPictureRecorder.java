@@ -0,0 +1,120 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.os.Build;
+
+import com.otaliastudios.cameraview.CaptureTrace;
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.engine.Camera2Engine;
+import com.otaliastudios.cameraview.internal.ExifHelper;
+import com.otaliastudios.cameraview.internal.FileHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
+import com.otaliastudios.cameraview.internal.YuvHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+/**
+ * A {@link PictureRecorder} for zero shutter lag pictures. Instead of sending a still capture
+ * request and waiting for the camera, we take the best recent frame from the {@link ZslRing}
+ * and encode it to JPEG ourselves, writing the rotation in the EXIF orientation tag.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class Full2ZslPictureRecorder extends FullPictureRecorder {
+
+    private final static long FRAME_TIMEOUT = 2000;
+
+    private final ZslRing mRing;
+    private final boolean mFileSync;
+
+    public Full2ZslPictureRecorder(@NonNull PictureResult.Stub stub,
+                                   @NonNull Camera2Engine engine,
+                                   @NonNull ZslRing ring) {
+        super(stub, engine);
+        mRing = ring;
+        mFileSync = engine.getPictureFileSync();
+    }
+
+    @Override
+    public void take() {
+        // The frame was already captured, so the shutter is now.
+        dispatchOnShutter(false);
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                ZslRing.Entry entry = null;
+                try {
+                    entry = mRing.take(FRAME_TIMEOUT);
+                    if (entry == null) {
+                        throw new TimeoutException("No frame available for zero shutter lag.");
+                    }
+                    mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
+                    mResult.tracer.begin(CaptureTrace.STAGE_ENCODING);
+                    byte[] jpeg = encode(entry.getImage());
+                    entry.close();
+                    entry = null;
+                    mResult.tracer.end(CaptureTrace.STAGE_ENCODING);
+                    mResult.tracer.begin(CaptureTrace.STAGE_EXIF);
+                    jpeg = ExifHelper.writeOrientation(jpeg,
+                            ExifHelper.getExifOrientation(mResult.rotation));
+                    if (mResult.file != null) {
+                        mResult.tracer.end(CaptureTrace.STAGE_EXIF);
+                        mResult.tracer.begin(CaptureTrace.STAGE_WRITING);
+                        FileHelper.write(jpeg, mResult.file, mFileSync);
+                        mResult.tracer.end(CaptureTrace.STAGE_WRITING);
+                        if (mResult.location != null) {
+                            ExifHelper.writeLocation(mResult.file, mResult.location);
+                        }
+                    } else {
+                        if (mResult.location != null) {
+                            jpeg = writeLocation(jpeg);
+                        }
+                        mResult.tracer.end(CaptureTrace.STAGE_EXIF);
+                        mResult.data = jpeg;
+                    }
+                } catch (Exception e) {
+                    mResult = null;
+                    mError = e;
+                } finally {
+                    if (entry != null) entry.close();
+                }
+                LOG.i("take:", "dispatching result.");
+                dispatchResult();
+            }
+        });
+    }
+
+    @NonNull
+    private static byte[] encode(@NonNull Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        YuvImage yuv = new YuvImage(YuvHelper.toNv21(image), ImageFormat.NV21,
+                width, height, null);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        yuv.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, stream);
+        return stream.toByteArray();
+    }
+
+    @NonNull
+    private byte[] writeLocation(@NonNull byte[] jpeg) throws IOException {
+        File file = File.createTempFile("cameraview_zsl", ".jpg");
+        try {
+            FileHelper.write(jpeg, file, false);
+            //noinspection ConstantConditions
+            ExifHelper.writeLocation(file, mResult.location);
+            return FileHelper.read(file);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.os.Build;
+
+import com.otaliastudios.cameraview.internal.SharpnessHelper;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Merges a few consecutive NV21 frames of the same scene into a single, less noisy frame.
+ * This is plain Java over primitive arrays, so it can run and be tested anywhere.
+ *
+ * It works as follows:
+ * - The sharpest frame is chosen as reference. The others are merged into it.
+ * - The luma planes are downscaled, and for each tile of the reference we search for
+ *   the best matching block in each frame (coarse block matching). The result is then
+ *   refined at full resolution. This compensates for hand shake, not for rotations.
+ * - Each output pixel is a weighted average of the aligned samples. The weight of a sample
+ *   goes to zero as it gets further from the reference value, so that moving objects
+ *   and alignment errors are rejected rather than blended (no ghosting).
+ *
+ * Tiles are independent, so they are processed in parallel on a {@link ForkJoinPool}.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class MultiFrameMerger {
+
+    // Downscale factor for coarse alignment.
+    private final static int SCALE = 4;
+    // Tile size at full resolution. Must be a multiple of 2 * SCALE.
+    private final static int TILE_SIZE = 32;
+    // Coarse search radius, in downscaled pixels.
+    private final static int SEARCH_RADIUS = 4;
+    // Fine search radius, in full resolution pixels. Covers the coarse rounding error.
+    private final static int REFINE_RADIUS = SCALE / 2;
+    // Number of tiles under which we stop splitting tasks.
+    private final static int TILES_PER_TASK = 4;
+    // Weight of the reference samples, in fixed point.
+    private final static int WEIGHT_ONE = 256;
+
+    /**
+     * The default luma difference above which a sample is rejected.
+     * This should be a few times the noise standard deviation.
+     */
+    public final static int DEFAULT_NOISE_THRESHOLD = 24;
+
+    private static ForkJoinPool sPool;
+
+    /**
+     * Returns a shared pool with one thread per core.
+     * @return the pool
+     */
+    @NonNull
+    public synchronized static ForkJoinPool getPool() {
+        if (sPool == null) sPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return sPool;
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mWeights = new int[256];
+
+    /**
+     * Creates a merger for frames of the given size.
+     * @param width frame width
+     * @param height frame height
+     */
+    public MultiFrameMerger(int width, int height) {
+        this(width, height, DEFAULT_NOISE_THRESHOLD);
+    }
+
+    /**
+     * Creates a merger for frames of the given size.
+     * @param width frame width
+     * @param height frame height
+     * @param noiseThreshold the luma difference above which samples are rejected
+     */
+    public MultiFrameMerger(int width, int height, int noiseThreshold) {
+        if (width <= 0 || height <= 0 || width % 2 != 0 || height % 2 != 0) {
+            throw new IllegalArgumentException("Invalid NV21 size: " + width + "x" + height);
+        }
+        if (noiseThreshold <= 0) {
+            throw new IllegalArgumentException("Invalid noise threshold: " + noiseThreshold);
+        }
+        mWidth = width;
+        mHeight = height;
+        // Tukey biweight: smooth, and exactly zero past the threshold.
+        for (int d = 0; d < mWeights.length; d++) {
+            if (d >= noiseThreshold) break;
+            double ratio = (double) d / noiseThreshold;
+            double weight = (1 - ratio * ratio) * (1 - ratio * ratio);
+            mWeights[d] = (int) Math.round(WEIGHT_ONE * weight);
+        }
+    }
+
+    /**
+     * Merges the given frames. The input arrays are not modified.
+     *
+     * @param frames the NV21 frames, at least one
+     * @param pool the pool where tiles are processed
+     * @return a new NV21 frame
+     */
+    @NonNull
+    public byte[] merge(@NonNull byte[][] frames, @NonNull ForkJoinPool pool) {
+        int length = mWidth * mHeight * 3 / 2;
+        if (frames.length == 0) {
+            throw new IllegalArgumentException("No frames to merge.");
+        }
+        for (byte[] frame : frames) {
+            if (frame.length < length) {
+                throw new IllegalArgumentException("Frame is too small: " + frame.length);
+            }
+        }
+        int reference = selectReference(frames);
+        byte[] output = new byte[length];
+        System.arraycopy(frames[reference], 0, output, 0, length);
+        if (frames.length == 1) return output;
+
+        int[][] small = new int[frames.length][];
+        for (int i = 0; i < frames.length; i++) {
+            small[i] = downscale(frames[i], mWidth, mHeight);
+        }
+        int tilesX = (mWidth + TILE_SIZE - 1) / TILE_SIZE;
+        int tilesY = (mHeight + TILE_SIZE - 1) / TILE_SIZE;
+        pool.invoke(new TileTask(frames, small, reference, output,
+                tilesX, 0, tilesX * tilesY));
+        return output;
+    }
+
+    /**
+     * Returns the index of the sharpest frame.
+     * @param frames the frames
+     * @return the reference index
+     */
+    @VisibleForTesting
+    int selectReference(@NonNull byte[][] frames) {
+        int best = 0;
+        float bestSharpness = -1;
+        for (int i = 0; i < frames.length; i++) {
+            float sharpness = SharpnessHelper.estimate(ByteBuffer.wrap(frames[i]),
+                    mWidth, mHeight, mWidth, 1);
+            if (sharpness > bestSharpness) {
+                best = i;
+                bestSharpness = sharpness;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Averages the luma plane over SCALE x SCALE blocks.
+     */
+    @NonNull
+    private static int[] downscale(@NonNull byte[] frame, int width, int height) {
+        int smallWidth = width / SCALE;
+        int smallHeight = height / SCALE;
+        int[] small = new int[smallWidth * smallHeight];
+        for (int sy = 0; sy < smallHeight; sy++) {
+            for (int sx = 0; sx < smallWidth; sx++) {
+                int sum = 0;
+                for (int y = sy * SCALE; y < (sy + 1) * SCALE; y++) {
+                    int row = y * width;
+                    for (int x = sx * SCALE; x < (sx + 1) * SCALE; x++) {
+                        sum += frame[row + x] & 0xFF;
+                    }
+                }
+                small[sy * smallWidth + sx] = sum / (SCALE * SCALE);
+            }
+        }
+        return small;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    /**
+     * Finds the offset of the given tile in the given frame, such that
+     * frame(x + dx, y + dy) matches reference(x, y).
+     *
+     * @return a {dx, dy} array, in full resolution pixels
+     */
+    @VisibleForTesting
+    @NonNull
+    int[] align(@NonNull byte[] reference, @NonNull int[] smallReference,
+                @NonNull byte[] frame, @NonNull int[] smallFrame,
+                int tileX, int tileY) {
+        // 1. Coarse search on the downscaled luma, with a block a bit larger than the tile.
+        int smallWidth = mWidth / SCALE;
+        int smallHeight = mHeight / SCALE;
+        int smallTile = TILE_SIZE / SCALE;
+        int margin = smallTile / 2;
+        int left = Math.max(0, tileX * smallTile - margin);
+        int top = Math.max(0, tileY * smallTile - margin);
+        int right = Math.min(smallWidth, (tileX + 1) * smallTile + margin);
+        int bottom = Math.min(smallHeight, (tileY + 1) * smallTile + margin);
+        int bestU = 0, bestV = 0;
+        long bestCost = Long.MAX_VALUE;
+        // Start from zero so that ties go to no motion.
+        for (int r = 0; r <= SEARCH_RADIUS; r++) {
+            for (int v = -r; v <= r; v++) {
+                for (int u = -r; u <= r; u++) {
+                    if (Math.abs(u) != r && Math.abs(v) != r) continue;
+                    long cost = 0;
+                    for (int y = top; y < bottom && cost < bestCost; y++) {
+                        int frameRow = clamp(y + v, 0, smallHeight - 1) * smallWidth;
+                        int referenceRow = y * smallWidth;
+                        for (int x = left; x < right; x++) {
+                            int frameX = clamp(x + u, 0, smallWidth - 1);
+                            cost += Math.abs(smallReference[referenceRow + x]
+                                    - smallFrame[frameRow + frameX]);
+                        }
+                    }
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestU = u;
+                        bestV = v;
+                    }
+                }
+            }
+        }
+
+        // 2. Refine at full resolution over the tile, sampling every other pixel.
+        int fullLeft = tileX * TILE_SIZE;
+        int fullTop = tileY * TILE_SIZE;
+        int fullRight = Math.min(mWidth, fullLeft + TILE_SIZE);
+        int fullBottom = Math.min(mHeight, fullTop + TILE_SIZE);
+        int centerX = bestU * SCALE;
+        int centerY = bestV * SCALE;
+        int bestDx = centerX, bestDy = centerY;
+        bestCost = Long.MAX_VALUE;
+        for (int r = 0; r <= REFINE_RADIUS; r++) {
+            for (int dy = centerY - r; dy <= centerY + r; dy++) {
+                for (int dx = centerX - r; dx <= centerX + r; dx++) {
+                    if (Math.abs(dx - centerX) != r && Math.abs(dy - centerY) != r) continue;
+                    long cost = 0;
+                    for (int y = fullTop; y < fullBottom && cost < bestCost; y += 2) {
+                        int frameRow = clamp(y + dy, 0, mHeight - 1) * mWidth;
+                        int referenceRow = y * mWidth;
+                        for (int x = fullLeft; x < fullRight; x += 2) {
+                            int frameX = clamp(x + dx, 0, mWidth - 1);
+                            cost += Math.abs((reference[referenceRow + x] & 0xFF)
+                                    - (frame[frameRow + frameX] & 0xFF));
+                        }
+                    }
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestDx = dx;
+                        bestDy = dy;
+                    }
+                }
+            }
+        }
+        return new int[]{ bestDx, bestDy };
+    }
+
+    /**
+     * Merges a single tile of luma and the matching chroma into the output.
+     */
+    private void mergeTile(@NonNull byte[][] frames, @NonNull int[][] small,
+                           int reference, @NonNull byte[] output, int tileX, int tileY) {
+        int count = frames.length;
+        byte[] ref = frames[reference];
+        int[] dxs = new int[count];
+        int[] dys = new int[count];
+        for (int i = 0; i < count; i++) {
+            if (i == reference) continue;
+            int[] offset = align(ref, small[reference], frames[i], small[i], tileX, tileY);
+            dxs[i] = offset[0];
+            dys[i] = offset[1];
+        }
+
+        // Luma.
+        int left = tileX * TILE_SIZE;
+        int top = tileY * TILE_SIZE;
+        int right = Math.min(mWidth, left + TILE_SIZE);
+        int bottom = Math.min(mHeight, top + TILE_SIZE);
+        for (int y = top; y < bottom; y++) {
+            int row = y * mWidth;
+            for (int x = left; x < right; x++) {
+                int value = ref[row + x] & 0xFF;
+                int sum = value * WEIGHT_ONE;
+                int weights = WEIGHT_ONE;
+                for (int i = 0; i < count; i++) {
+                    if (i == reference) continue;
+                    int frameY = clamp(y + dys[i], 0, mHeight - 1);
+                    int frameX = clamp(x + dxs[i], 0, mWidth - 1);
+                    int sample = frames[i][frameY * mWidth + frameX] & 0xFF;
+                    int weight = mWeights[Math.abs(sample - value)];
+                    sum += sample * weight;
+                    weights += weight;
+                }
+                output[row + x] = (byte) ((sum + weights / 2) / weights);
+            }
+        }
+
+        // Chroma: interleaved V and U at half resolution. Samples are weighted
+        // by how well the luma of the top-left pixel of their 2x2 block matches.
+        int chromaStart = mWidth * mHeight;
+        int chromaWidth = mWidth / 2;
+        int chromaHeight = mHeight / 2;
+        for (int cy = top / 2; cy < bottom / 2; cy++) {
+            int lumaRow = cy * 2 * mWidth;
+            int chromaRow = chromaStart + cy * mWidth;
+            for (int cx = left / 2; cx < right / 2; cx++) {
+                int lumaValue = ref[lumaRow + cx * 2] & 0xFF;
+                int index = chromaRow + cx * 2;
+                int sumV = (ref[index] & 0xFF) * WEIGHT_ONE;
+                int sumU = (ref[index + 1] & 0xFF) * WEIGHT_ONE;
+                int weights = WEIGHT_ONE;
+                for (int i = 0; i < count; i++) {
+                    if (i == reference) continue;
+                    int frameY = clamp(cy * 2 + dys[i], 0, mHeight - 1);
+                    int frameX = clamp(cx * 2 + dxs[i], 0, mWidth - 1);
+                    int lumaSample = frames[i][frameY * mWidth + frameX] & 0xFF;
+                    int weight = mWeights[Math.abs(lumaSample - lumaValue)];
+                    if (weight == 0) continue;
+                    int frameCy = clamp(frameY / 2, 0, chromaHeight - 1);
+                    int frameCx = clamp(frameX / 2, 0, chromaWidth - 1);
+                    int frameIndex = chromaStart + frameCy * mWidth + frameCx * 2;
+                    sumV += (frames[i][frameIndex] & 0xFF) * weight;
+                    sumU += (frames[i][frameIndex + 1] & 0xFF) * weight;
+                    weights += weight;
+                }
+                output[index] = (byte) ((sumV + weights / 2) / weights);
+                output[index + 1] = (byte) ((sumU + weights / 2) / weights);
+            }
+        }
+    }
+
+    /**
+     * Processes a range of tiles, splitting it in two until it is small enough.
+     */
+    private class TileTask extends RecursiveAction {
+
+        private final byte[][] mFrames;
+        private final int[][] mSmall;
+        private final int mReference;
+        private final byte[] mOutput;
+        private final int mTilesX;
+        private final int mStart;
+        private final int mEnd;
+
+        private TileTask(@NonNull byte[][] frames, @NonNull int[][] small, int reference,
+                         @NonNull byte[] output, int tilesX, int start, int end) {
+            mFrames = frames;
+            mSmall = small;
+            mReference = reference;
+            mOutput = output;
+            mTilesX = tilesX;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (mEnd - mStart <= TILES_PER_TASK) {
+                for (int tile = mStart; tile < mEnd; tile++) {
+                    mergeTile(mFrames, mSmall, mReference, mOutput,
+                            tile % mTilesX, tile / mTilesX);
+                }
+            } else {
+                int middle = (mStart + mEnd) / 2;
+                invokeAll(new TileTask(mFrames, mSmall, mReference, mOutput,
+                                mTilesX, mStart, middle),
+                        new TileTask(mFrames, mSmall, mReference, mOutput,
+                                mTilesX, middle, mEnd));
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.otaliastudios.cameraview.picture;
 
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 
 import androidx.annotation.NonNull;
@@ -33,6 +34,11 @@ public abstract class PictureRecorder {
         void onPictureResult(@Nullable PictureResult.Stub result, @Nullable Exception error);
     }
 
+    /**
+     * The quality of the JPEGs that are compressed by recorders, rather than by the camera.
+     */
+    final static int JPEG_QUALITY = 90;
+
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED) PictureResult.Stub mResult;
     @VisibleForTesting PictureResultListener mListener;
     @SuppressWarnings("WeakerAccess")
@@ -68,9 +74,11 @@ public abstract class PictureRecorder {
     /**
      * Subclasses can call this to notify that the result was obtained,
      * either with some error (null result) or with the actual stub, filled.
+     * Does nothing if there is no listener, or if the result was already dispatched.
      */
     protected void dispatchResult() {
         if (mListener != null) {
+            if (mResult != null) mResult.tracer.begin(CaptureTrace.STAGE_DISPATCH);
             mListener.onPictureResult(mResult, mError);
             mListener = null;
             mResult = null;
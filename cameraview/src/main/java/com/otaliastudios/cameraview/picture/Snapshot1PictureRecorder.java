@@ -4,12 +4,13 @@ import android.graphics.Rect;
 import android.graphics.YuvImage;
 import android.hardware.Camera;
 
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.engine.Camera1Engine;
 import com.otaliastudios.cameraview.engine.offset.Reference;
 import com.otaliastudios.cameraview.internal.CropHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
 import com.otaliastudios.cameraview.internal.RotationHelper;
-import com.otaliastudios.cameraview.internal.WorkerHandler;
 import com.otaliastudios.cameraview.size.AspectRatio;
 import com.otaliastudios.cameraview.size.Size;
 
@@ -41,9 +42,11 @@ public class Snapshot1PictureRecorder extends SnapshotPictureRecorder {
 
     @Override
     public void take() {
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
         mCamera.setOneShotPreviewCallback(new Camera.PreviewCallback() {
             @Override
             public void onPreviewFrame(@NonNull final byte[] yuv, Camera camera) {
+                mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
                 dispatchOnShutter(false);
 
                 // Got to rotate the preview frame, since byte[] data here does not include
@@ -56,11 +59,12 @@ public class Snapshot1PictureRecorder extends SnapshotPictureRecorder {
                     throw new IllegalStateException("Preview stream size " +
                             "should never be null here.");
                 }
-                WorkerHandler.execute(new Runnable() {
+                PictureExecutor.get().execute(new Runnable() {
                     @Override
                     public void run() {
                         // Rotate the picture, because no one will write EXIF data,
                         // then crop if needed. In both cases, transform yuv to jpeg.
+                        mResult.tracer.begin(CaptureTrace.STAGE_ENCODING);
                         //noinspection deprecation
                         byte[] data = RotationHelper.rotate(yuv, previewStreamSize, sensorToOutput);
                         YuvImage yuv = new YuvImage(data, mFormat, outputSize.getWidth(),
@@ -68,8 +72,9 @@ public class Snapshot1PictureRecorder extends SnapshotPictureRecorder {
 
                         ByteArrayOutputStream stream = new ByteArrayOutputStream();
                         Rect outputRect = CropHelper.computeCrop(outputSize, mOutputRatio);
-                        yuv.compressToJpeg(outputRect, 90, stream);
+                        yuv.compressToJpeg(outputRect, JPEG_QUALITY, stream);
                         data = stream.toByteArray();
+                        mResult.tracer.end(CaptureTrace.STAGE_ENCODING);
 
                         mResult.data = data;
                         mResult.size = new Size(outputRect.width(), outputRect.height());
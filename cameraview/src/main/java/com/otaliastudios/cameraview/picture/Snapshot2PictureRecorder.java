@@ -10,6 +10,7 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
 import com.otaliastudios.cameraview.engine.Camera2Engine;
 import com.otaliastudios.cameraview.engine.action.Action;
@@ -108,8 +109,9 @@ public class Snapshot2PictureRecorder extends SnapshotGlPictureRecorder {
     public Snapshot2PictureRecorder(@NonNull PictureResult.Stub stub,
                                     @NonNull Camera2Engine engine,
                                     @NonNull RendererCameraPreview preview,
-                                    @NonNull AspectRatio outputRatio) {
-        super(stub, engine, preview, outputRatio, engine.getOverlay());
+                                    @NonNull AspectRatio outputRatio,
+                                    @NonNull SnapshotGlRenderer renderer) {
+        super(stub, engine, preview, outputRatio, engine.getOverlay(), renderer);
         mHolder = engine;
 
         mAction = Actions.sequence(
@@ -118,6 +120,7 @@ public class Snapshot2PictureRecorder extends SnapshotGlPictureRecorder {
         mAction.addCallback(new CompletionCallback() {
             @Override
             protected void onActionCompleted(@NonNull Action action) {
+                mResult.tracer.end(CaptureTrace.STAGE_METERING);
                 LOG.i("Taking picture with super.take().");
                 Snapshot2PictureRecorder.super.take();
             }
@@ -145,6 +148,7 @@ public class Snapshot2PictureRecorder extends SnapshotGlPictureRecorder {
             super.take();
         } else {
             LOG.i("take:", "Engine needs flash. Starting action");
+            mResult.tracer.begin(CaptureTrace.STAGE_METERING);
             mAction.start(mHolder);
         }
     }
@@ -0,0 +1,156 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.os.Build;
+
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.filter.Filter;
+import com.otaliastudios.cameraview.internal.CropHelper;
+import com.otaliastudios.cameraview.overlay.Overlay;
+import com.otaliastudios.cameraview.overlay.OverlayDrawer;
+import com.otaliastudios.cameraview.preview.RendererCameraPreview;
+import com.otaliastudios.cameraview.preview.RendererFrameCallback;
+import com.otaliastudios.cameraview.preview.RendererThread;
+import com.otaliastudios.cameraview.size.AspectRatio;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.io.File;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * A {@link BurstPictureRecorder} that takes snapshots of consecutive renderer frames.
+ * Each frame is drawn and read just like {@link SnapshotGlPictureRecorder} does, through the
+ * {@link SnapshotGlRenderer}, then JPEG compression happens in the pipeline.
+ *
+ * A renderer frame is skipped if the previous one is still being read, or if the pipeline
+ * is full, so the burst goes as fast as the device can encode. The pipeline slot is reserved
+ * when the frame is accepted, so the renderer thread never waits for the pipeline.
+ */
+public class SnapshotGlBurstPictureRecorder extends BurstPictureRecorder {
+
+    private final RendererCameraPreview mPreview;
+    private final AspectRatio mOutputRatio;
+    private final SnapshotGlRenderer mRenderer;
+    private final int mOutputRotation;
+    private final Overlay mOverlay;
+    private final boolean mHasOverlay;
+    private OverlayDrawer mOverlayDrawer;
+    private int mTextureId;
+    private Filter mFilter;
+    private Size mSize;
+    private int mNextIndex = 0;
+    private volatile boolean mIsTakingFrame = false;
+
+    public SnapshotGlBurstPictureRecorder(@NonNull PictureResult.Stub[] stubs,
+                                          @NonNull File directory,
+                                          @Nullable BurstResultListener listener,
+                                          @NonNull RendererCameraPreview preview,
+                                          @NonNull AspectRatio outputRatio,
+                                          @Nullable Overlay overlay,
+                                          @NonNull SnapshotGlRenderer renderer) {
+        super(stubs, directory, listener);
+        mPreview = preview;
+        mOutputRatio = outputRatio;
+        mRenderer = renderer;
+        mOutputRotation = mResult.rotation;
+        mOverlay = overlay;
+        mHasOverlay = mOverlay != null && mOverlay.drawsOn(Overlay.Target.PICTURE_SNAPSHOT);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    @Override
+    public void take() {
+        mPreview.addRendererFrameCallback(new RendererFrameCallback() {
+
+            @RendererThread
+            public void onRendererTextureCreated(int textureId) {
+                mTextureId = textureId;
+                // Need to crop the size.
+                Rect crop = CropHelper.computeCrop(mResult.size, mOutputRatio);
+                mSize = new Size(crop.width(), crop.height());
+                for (PictureResult.Stub stub : mStubs) {
+                    stub.size = mSize;
+                    stub.rotation = 0; // We rotate the texture instead.
+                }
+                if (mHasOverlay) {
+                    mOverlayDrawer = new OverlayDrawer(mOverlay, mSize);
+                }
+            }
+
+            @RendererThread
+            @Override
+            public void onRendererFilterChanged(@NonNull Filter filter) {
+                mFilter = filter;
+            }
+
+            @RendererThread
+            @Override
+            public void onRendererFrame(@NonNull final SurfaceTexture surfaceTexture,
+                                        final int rotation,
+                                        final float scaleX,
+                                        final float scaleY) {
+                if (mIsTakingFrame || !mPipeline.tryReserve()) return;
+                final int index = mNextIndex++;
+                if (mNextIndex == mStubs.length) {
+                    mPreview.removeRendererFrameCallback(this);
+                }
+                mIsTakingFrame = true;
+                final EGLContext eglContext = EGL14.eglGetCurrentContext();
+                mRenderer.getHandler().run(new Runnable() {
+                    @Override
+                    public void run() {
+                        takeFrame(index, surfaceTexture, rotation, scaleX, scaleY, eglContext);
+                    }
+                });
+            }
+        });
+    }
+
+    @WorkerThread
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void takeFrame(final int index,
+                           @NonNull SurfaceTexture surfaceTexture,
+                           int rotation,
+                           float scaleX,
+                           float scaleY,
+                           @NonNull EGLContext eglContext) {
+        LOG.i("takeFrame:", "index:", index);
+        final boolean[] submitted = new boolean[1];
+        try {
+            mRenderer.prepare(eglContext, mTextureId, mSize, mFilter);
+            // Where supported, the read is asynchronous: this frame is delivered
+            // when the next one is drawn, so their copies overlap.
+            mRenderer.draw(surfaceTexture, rotation, scaleX, scaleY,
+                    mOutputRotation, mHasOverlay ? mOverlayDrawer : null,
+                    new SnapshotGlRenderer.Callback() {
+                @Override
+                public void onBitmap(@NonNull final Bitmap bitmap) {
+                    submitted[0] = true;
+                    mPipeline.submitReserved(index, new BurstPipeline.Job() {
+                        @NonNull
+                        @Override
+                        public byte[] encode() {
+                            return SnapshotGlRenderer.compress(bitmap);
+                        }
+                    });
+                }
+            });
+        } catch (Exception e) {
+            if (!submitted[0]) mPipeline.failReserved(index, e);
+        } finally {
+            mIsTakingFrame = false;
+            if (index == mStubs.length - 1 && mOverlayDrawer != null) {
+                mOverlayDrawer.release();
+                mOverlayDrawer = null;
+            }
+        }
+    }
+}
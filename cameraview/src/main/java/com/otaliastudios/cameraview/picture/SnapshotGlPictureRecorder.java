@@ -6,15 +6,15 @@ import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.opengl.EGL14;
 import android.opengl.EGLContext;
-import android.opengl.Matrix;
 import android.os.Build;
 
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.PictureResult;
-import com.otaliastudios.cameraview.internal.GlTextureDrawer;
 import com.otaliastudios.cameraview.overlay.Overlay;
 import com.otaliastudios.cameraview.engine.offset.Reference;
 import com.otaliastudios.cameraview.internal.CropHelper;
-import com.otaliastudios.cameraview.internal.WorkerHandler;
+import com.otaliastudios.cameraview.internal.GlPixelReader;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
 import com.otaliastudios.cameraview.overlay.OverlayDrawer;
 import com.otaliastudios.cameraview.preview.RendererCameraPreview;
 import com.otaliastudios.cameraview.preview.RendererFrameCallback;
@@ -22,9 +22,6 @@ import com.otaliastudios.cameraview.preview.RendererThread;
 import com.otaliastudios.cameraview.filter.Filter;
 import com.otaliastudios.cameraview.size.AspectRatio;
 import com.otaliastudios.cameraview.size.Size;
-import com.otaliastudios.opengl.core.EglCore;
-import com.otaliastudios.opengl.surface.EglSurface;
-import com.otaliastudios.opengl.surface.EglWindowSurface;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -43,13 +40,17 @@ import android.view.Surface;
  * - We move to another thread, and create a new EGL surface for that EGL context.
  * - We make this new surface current, and re-draw the textureId on it
  * - [Optional: fill the overlayTextureId and draw it on the same surface]
- * - We use glReadPixels (through {@link EglSurface#toByteArray(Bitmap.CompressFormat)})
- *   and save to file.
+ * - We use glReadPixels (through {@link GlPixelReader}) to copy the pixels into a
+ *   {@link Bitmap}, asynchronously where supported, then we compress it on another thread,
+ *   so that the renderer thread is free to read the next snapshot in the meanwhile.
  *
  * We create a new EGL surface and redraw the frame because:
  * 1. We want to go off the renderer thread as soon as possible
  * 2. We have overlays to be drawn - we don't want to draw them on the preview surface,
  *    not even for a frame.
+ *
+ * The EGL context, surface and filter copy are held by a {@link SnapshotGlRenderer}, which
+ * is owned by the engine and reused by the next snapshots, as long as they are still valid.
  */
 public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
 
@@ -59,16 +60,20 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
     private Overlay mOverlay;
     private boolean mHasOverlay;
     private OverlayDrawer mOverlayDrawer;
-    private GlTextureDrawer mTextureDrawer;
+    private final SnapshotGlRenderer mRenderer;
+    private int mTextureId;
+    private Filter mFilter;
 
     public SnapshotGlPictureRecorder(
             @NonNull PictureResult.Stub stub,
             @Nullable PictureResultListener listener,
             @NonNull RendererCameraPreview preview,
             @NonNull AspectRatio outputRatio,
-            @Nullable Overlay overlay) {
+            @Nullable Overlay overlay,
+            @NonNull SnapshotGlRenderer renderer) {
         super(stub, listener);
         mPreview = preview;
+        mRenderer = renderer;
         mOutputRatio = outputRatio;
         mOverlay = overlay;
         mHasOverlay = mOverlay != null && mOverlay.drawsOn(Overlay.Target.PICTURE_SNAPSHOT);
@@ -77,6 +82,7 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
     @TargetApi(Build.VERSION_CODES.KITKAT)
     @Override
     public void take() {
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
         mPreview.addRendererFrameCallback(new RendererFrameCallback() {
 
             @RendererThread
@@ -106,7 +112,7 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
     @RendererThread
     @TargetApi(Build.VERSION_CODES.KITKAT)
     protected void onRendererTextureCreated(int textureId) {
-        mTextureDrawer = new GlTextureDrawer(textureId);
+        mTextureId = textureId;
         // Need to crop the size.
         Rect crop = CropHelper.computeCrop(mResult.size, mOutputRatio);
         mResult.size = new Size(crop.width(), crop.height());
@@ -119,7 +125,8 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
     @RendererThread
     @TargetApi(Build.VERSION_CODES.KITKAT)
     protected void onRendererFilterChanged(@NonNull Filter filter) {
-        mTextureDrawer.setFilter(filter.copy());
+        // Not copied here: the renderer will reuse its copy if the filter did not change.
+        mFilter = filter;
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -133,7 +140,7 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
         // the textureId and the overlayTextureId, managed by the GlSurfaceView.
         // Next operations can then be performed on different threads using this handle.
         final EGLContext eglContext = EGL14.eglGetCurrentContext();
-        WorkerHandler.execute(new Runnable() {
+        mRenderer.getHandler().run(new Runnable() {
             @Override
             public void run() {
                 takeFrame(surfaceTexture, rotation, scaleX, scaleY, eglContext);
@@ -162,6 +169,9 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
      * {@link Surface} or {@link SurfaceTexture} we have at hand. Since we never call
      * swapBuffers(), the frame will not actually be rendered. This is the fastest.
      *
+     * The surface and its EGL context are provided by the {@link SnapshotGlRenderer},
+     * so they are only created for the first snapshot. This runs on its thread.
+     *
      * @param scaleX frame scale x in {@link Reference#VIEW}
      * @param scaleY frame scale y in {@link Reference#VIEW}
      */
@@ -174,59 +184,34 @@ public class SnapshotGlPictureRecorder extends SnapshotPictureRecorder {
                              float scaleY,
                              @NonNull EGLContext eglContext) {
 
-        // 0. EGL window will need an output.
-        // We create a fake one as explained in javadocs.
-        final int fakeOutputTextureId = 9999;
-        SurfaceTexture fakeOutputSurface = new SurfaceTexture(fakeOutputTextureId);
-        fakeOutputSurface.setDefaultBufferSize(mResult.size.getWidth(), mResult.size.getHeight());
-
-        // 1. Create an EGL surface
-        final EglCore core = new EglCore(eglContext, EglCore.FLAG_RECORDABLE);
-        final EglSurface eglSurface = new EglWindowSurface(core, fakeOutputSurface);
-        eglSurface.makeCurrent();
-        final float[] transform = mTextureDrawer.getTextureTransform();
-
-        // 2. Apply preview transformations
-        surfaceTexture.getTransformMatrix(transform);
-        float scaleTranslX = (1F - scaleX) / 2F;
-        float scaleTranslY = (1F - scaleY) / 2F;
-        Matrix.translateM(transform, 0, scaleTranslX, scaleTranslY, 0);
-        Matrix.scaleM(transform, 0, scaleX, scaleY, 1);
-
-        // 3. Apply rotation and flip
-        // If this doesn't work, rotate "rotation" before scaling, like GlCameraPreview does.
-        Matrix.translateM(transform, 0, 0.5F, 0.5F, 0); // Go back to 0,0
-        Matrix.rotateM(transform, 0, rotation + mResult.rotation, 0, 0, 1); // Rotate to OUTPUT
-        Matrix.scaleM(transform, 0, 1, -1, 1); // Vertical flip because we'll use glReadPixels
-        Matrix.translateM(transform, 0, -0.5F, -0.5F, 0); // Go back to old position
-
-        // 4. Do pretty much the same for overlays
-        if (mHasOverlay) {
-            // 1. First we must draw on the texture and get latest image
-            mOverlayDrawer.draw(Overlay.Target.PICTURE_SNAPSHOT);
-
-            // 2. Then we can apply the transformations
-            Matrix.translateM(mOverlayDrawer.getTransform(), 0, 0.5F, 0.5F, 0);
-            Matrix.rotateM(mOverlayDrawer.getTransform(), 0, mResult.rotation, 0, 0, 1);
-            Matrix.scaleM(mOverlayDrawer.getTransform(), 0, 1, -1, 1); // Vertical flip because we'll use glReadPixels
-            Matrix.translateM(mOverlayDrawer.getTransform(), 0, -0.5F, -0.5F, 0);
-        }
+        // 0-1. Get an EGL surface, using a fake output as explained in javadocs.
+        // This is created once and reused, unless something has changed.
+        mRenderer.prepare(eglContext, mTextureId, mResult.size, mFilter);
+
+        // 2-5. Apply transformations, draw with overlays, and read. Where supported,
+        // the read is asynchronous and the callback is invoked later on this thread.
+        mRenderer.draw(surfaceTexture, rotation, scaleX, scaleY, mResult.rotation,
+                mHasOverlay ? mOverlayDrawer : null, new SnapshotGlRenderer.Callback() {
+            @Override
+            public void onBitmap(@NonNull final Bitmap bitmap) {
+                mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
+
+                // 7. Compress off the renderer thread, on the picture processing pool.
+                PictureExecutor.get().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mResult.tracer.begin(CaptureTrace.STAGE_ENCODING);
+                        mResult.data = SnapshotGlRenderer.compress(bitmap);
+                        mResult.tracer.end(CaptureTrace.STAGE_ENCODING);
+                        dispatchResult();
+                    }
+                });
+            }
+        });
         mResult.rotation = 0;
 
-        // 5. Draw and save
-        long timestampUs = surfaceTexture.getTimestamp() / 1000L;
-        LOG.i("takeFrame:", "timestampUs:", timestampUs);
-        mTextureDrawer.draw(timestampUs);
-        if (mHasOverlay) mOverlayDrawer.render(timestampUs);
-        mResult.data = eglSurface.toByteArray(Bitmap.CompressFormat.JPEG);
-
-        // 6. Cleanup
-        eglSurface.release();
-        mTextureDrawer.release();
-        fakeOutputSurface.release();
+        // 6. Cleanup. The renderer is kept for the next snapshot.
         if (mHasOverlay) mOverlayDrawer.release();
-        core.release();
-        dispatchResult();
     }
 
     @Override
@@ -0,0 +1,306 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.SurfaceTexture;
+import android.opengl.EGLContext;
+import android.opengl.Matrix;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.filter.Filter;
+import com.otaliastudios.cameraview.filter.OneParameterFilter;
+import com.otaliastudios.cameraview.filter.TwoParameterFilter;
+import com.otaliastudios.cameraview.internal.GlPixelReader;
+import com.otaliastudios.cameraview.internal.GlTextureDrawer;
+import com.otaliastudios.cameraview.internal.WorkerHandler;
+import com.otaliastudios.cameraview.overlay.Overlay;
+import com.otaliastudios.cameraview.overlay.OverlayDrawer;
+import com.otaliastudios.cameraview.size.Size;
+import com.otaliastudios.opengl.core.EglCore;
+import com.otaliastudios.opengl.surface.EglSurface;
+import com.otaliastudios.opengl.surface.EglWindowSurface;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The offscreen rendering state used by {@link SnapshotGlPictureRecorder}, kept alive
+ * across snapshots so that only the first one pays for its creation.
+ *
+ * This holds an EGL context shared with the preview context, a fake output surface
+ * (see {@link SnapshotGlPictureRecorder#takeFrame} for details) with its
+ * {@link GlPixelReader}, and a copy of the preview filter, which means a compiled shader
+ * program. Each part is only created again when it is not valid anymore:
+ * - the EGL context, when the preview EGL context or texture changes
+ * - the output surface and reader, when the snapshot size changes
+ * - the filter copy, when the preview filter changes. Filter parameters are synced
+ *   before each snapshot, which is cheap.
+ *
+ * All GL operations must happen on {@link #getHandler()}, which is the thread where our
+ * EGL context is current. Owners should call {@link #release()} when the preview
+ * EGL context is about to go away.
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class SnapshotGlRenderer {
+
+    private final static String TAG = SnapshotGlRenderer.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    // Fake texture name for the output surface, see SnapshotGlPictureRecorder.takeFrame().
+    private final static int FAKE_OUTPUT_TEXTURE_ID = 9999;
+
+    /**
+     * Receives the snapshot drawn by {@link #draw(SurfaceTexture, int, float, float, int,
+     * OverlayDrawer, Callback)}.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the renderer thread with the snapshot contents, already rotated.
+         * @param bitmap the bitmap
+         */
+        @WorkerThread
+        void onBitmap(@NonNull Bitmap bitmap);
+    }
+
+    private final WorkerHandler mHandler = WorkerHandler.get("SnapshotGlRenderer");
+
+    private EGLContext mSharedContext;
+    private int mTextureId;
+    private EglCore mCore;
+    private GlTextureDrawer mTextureDrawer;
+
+    private Size mSize;
+    private SurfaceTexture mOutputSurfaceTexture;
+    private EglSurface mOutputSurface;
+    private GlPixelReader mPixelReader;
+
+    private Filter mFilter;
+    private Filter mFilterCopy;
+
+    /**
+     * Returns the thread where {@link #prepare(EGLContext, int, Size, Filter)}
+     * and all drawing operations should be performed.
+     * @return the handler
+     */
+    @NonNull
+    public WorkerHandler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Makes sure that our state is valid for the given parameters, creating or reusing
+     * what's needed, and makes the output surface current. After this returns, callers
+     * can use {@link #draw(SurfaceTexture, int, float, float, int, OverlayDrawer, Callback)}.
+     *
+     * @param sharedContext the preview EGL context
+     * @param textureId the preview texture
+     * @param size the snapshot size
+     * @param filter the preview filter
+     */
+    @WorkerThread
+    public void prepare(@NonNull EGLContext sharedContext,
+                        int textureId,
+                        @NonNull Size size,
+                        @NonNull Filter filter) {
+        if (mCore != null && (!sharedContext.equals(mSharedContext) || textureId != mTextureId)) {
+            LOG.i("prepare:", "Preview context or texture changed. Releasing.");
+            onRelease();
+        }
+        if (mCore == null) {
+            LOG.i("prepare:", "Creating EGL context.");
+            // GLES3, where available, lets the pixel reader copy asynchronously.
+            mCore = new EglCore(sharedContext,
+                    EglCore.FLAG_RECORDABLE | EglCore.FLAG_TRY_GLES3);
+            mSharedContext = sharedContext;
+            mTextureId = textureId;
+            mTextureDrawer = new GlTextureDrawer(textureId);
+        }
+        if (mOutputSurface != null && !size.equals(mSize)) {
+            LOG.i("prepare:", "Size changed. Releasing output surface.");
+            releaseOutputSurface();
+        }
+        if (mOutputSurface == null) {
+            LOG.i("prepare:", "Creating output surface. size:", size);
+            mOutputSurfaceTexture = new SurfaceTexture(FAKE_OUTPUT_TEXTURE_ID);
+            mOutputSurfaceTexture.setDefaultBufferSize(size.getWidth(), size.getHeight());
+            mOutputSurface = new EglWindowSurface(mCore, mOutputSurfaceTexture);
+            mSize = size;
+        }
+        mOutputSurface.makeCurrent();
+        if (mPixelReader == null) {
+            mPixelReader = new GlPixelReader(size.getWidth(), size.getHeight());
+        }
+        if (filter != mFilter) {
+            // The drawer will release the old program and compile the new one when drawing.
+            LOG.i("prepare:", "Filter changed. Copying.");
+            mFilter = filter;
+            mFilterCopy = filter.copy();
+            mTextureDrawer.setFilter(mFilterCopy);
+        } else {
+            syncFilterParameters(filter, mFilterCopy);
+        }
+    }
+
+    /**
+     * Draws the current preview frame, with filter and optional overlay, and reads it into
+     * a new bitmap. Must be called after {@link #prepare(EGLContext, int, Size, Filter)}.
+     *
+     * Where supported, the pixels are copied asynchronously: this returns before the copy is
+     * complete, and the bitmap is delivered when the next snapshot is drawn, or as soon as
+     * this thread is idle. This way, the copy of a frame overlaps with other snapshots
+     * and does not block the thread. Otherwise, the callback is invoked before returning.
+     *
+     * @param surfaceTexture the preview surface texture
+     * @param rotation the preview rotation, to reach {@link com.otaliastudios.cameraview.engine.offset.Reference#VIEW}
+     * @param scaleX the preview scale x
+     * @param scaleY the preview scale y
+     * @param outputRotation the rotation from the view to the output
+     * @param overlayDrawer an overlay drawer, or null
+     * @param callback receives the bitmap
+     */
+    @WorkerThread
+    public void draw(@NonNull SurfaceTexture surfaceTexture,
+                     int rotation,
+                     float scaleX,
+                     float scaleY,
+                     int outputRotation,
+                     @Nullable OverlayDrawer overlayDrawer,
+                     @NonNull final Callback callback) {
+        final float[] transform = mTextureDrawer.getTextureTransform();
+
+        // 1. Apply preview transformations
+        surfaceTexture.getTransformMatrix(transform);
+        float scaleTranslX = (1F - scaleX) / 2F;
+        float scaleTranslY = (1F - scaleY) / 2F;
+        Matrix.translateM(transform, 0, scaleTranslX, scaleTranslY, 0);
+        Matrix.scaleM(transform, 0, scaleX, scaleY, 1);
+
+        // 2. Apply rotation and flip
+        // If this doesn't work, rotate "rotation" before scaling, like GlCameraPreview does.
+        Matrix.translateM(transform, 0, 0.5F, 0.5F, 0); // Go back to 0,0
+        Matrix.rotateM(transform, 0, rotation + outputRotation, 0, 0, 1); // Rotate to OUTPUT
+        Matrix.scaleM(transform, 0, 1, -1, 1); // Vertical flip because we'll use glReadPixels
+        Matrix.translateM(transform, 0, -0.5F, -0.5F, 0); // Go back to old position
+
+        // 3. Do pretty much the same for overlays
+        if (overlayDrawer != null) {
+            // 1. First we must draw on the texture and get latest image
+            overlayDrawer.draw(Overlay.Target.PICTURE_SNAPSHOT);
+
+            // 2. Then we can apply the transformations
+            Matrix.translateM(overlayDrawer.getTransform(), 0, 0.5F, 0.5F, 0);
+            Matrix.rotateM(overlayDrawer.getTransform(), 0, outputRotation, 0, 0, 1);
+            Matrix.scaleM(overlayDrawer.getTransform(), 0, 1, -1, 1); // Vertical flip because we'll use glReadPixels
+            Matrix.translateM(overlayDrawer.getTransform(), 0, -0.5F, -0.5F, 0);
+        }
+
+        // 4. Draw and read
+        long timestampUs = surfaceTexture.getTimestamp() / 1000L;
+        LOG.v("draw:", "timestampUs:", timestampUs);
+        mTextureDrawer.draw(timestampUs);
+        if (overlayDrawer != null) overlayDrawer.render(timestampUs);
+        final Bitmap bitmap = Bitmap.createBitmap(mSize.getWidth(), mSize.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        mPixelReader.read(timestampUs, new GlPixelReader.Callback() {
+            @Override
+            public void onPixels(@NonNull ByteBuffer pixels, int width, int height,
+                                 long timestampUs) {
+                bitmap.copyPixelsFromBuffer(pixels);
+                callback.onBitmap(bitmap);
+            }
+        });
+        if (mPixelReader.isAsync()) {
+            // If another snapshot is queued, its read will deliver this one.
+            mHandler.post(mFlushRunnable);
+        }
+    }
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @WorkerThread
+        @Override
+        public void run() {
+            // Our output surface is still current, unless we were released.
+            if (mPixelReader != null) mPixelReader.flush();
+        }
+    };
+
+    /**
+     * Compresses a bitmap received by {@link Callback#onBitmap(Bitmap)} to JPEG,
+     * then recycles it. Can be called on any thread.
+     *
+     * @param bitmap the bitmap
+     * @return the JPEG bytes
+     */
+    @WorkerThread
+    @NonNull
+    static byte[] compress(@NonNull Bitmap bitmap) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, PictureRecorder.JPEG_QUALITY, stream);
+        bitmap.recycle();
+        return stream.toByteArray();
+    }
+
+    /**
+     * Releases all resources. This is done on our thread, after any pending snapshot.
+     */
+    public void release() {
+        mHandler.run(new Runnable() {
+            @Override
+            public void run() {
+                onRelease();
+            }
+        });
+    }
+
+    // Copying parameters is what BaseFilter.copy() does too, but it does not recompile.
+    private static void syncFilterParameters(@NonNull Filter source, @NonNull Filter copy) {
+        if (source instanceof OneParameterFilter && copy instanceof OneParameterFilter) {
+            ((OneParameterFilter) copy).setParameter1(
+                    ((OneParameterFilter) source).getParameter1());
+        }
+        if (source instanceof TwoParameterFilter && copy instanceof TwoParameterFilter) {
+            ((TwoParameterFilter) copy).setParameter2(
+                    ((TwoParameterFilter) source).getParameter2());
+        }
+    }
+
+    private void releaseOutputSurface() {
+        if (mPixelReader != null) {
+            // Deliver the last snapshot, if any. The output surface is still current.
+            mPixelReader.flush();
+            mPixelReader.release();
+            mPixelReader = null;
+        }
+        if (mOutputSurface != null) {
+            mOutputSurface.release();
+            mOutputSurface = null;
+        }
+        if (mOutputSurfaceTexture != null) {
+            mOutputSurfaceTexture.release();
+            mOutputSurfaceTexture = null;
+        }
+        mSize = null;
+    }
+
+    @WorkerThread
+    private void onRelease() {
+        if (mCore == null) return;
+        LOG.i("release:", "Releasing EGL resources.");
+        // The program must be deleted while our context is current.
+        if (mOutputSurface != null) mOutputSurface.makeCurrent();
+        mTextureDrawer.release();
+        mTextureDrawer = null;
+        releaseOutputSurface();
+        mCore.release();
+        mCore = null;
+        mSharedContext = null;
+        mFilter = null;
+        mFilterCopy = null;
+    }
+}
@@ -0,0 +1,175 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.Image;
+import android.os.Build;
+
+import com.otaliastudios.cameraview.CaptureTrace;
+import com.otaliastudios.cameraview.PictureResult;
+import com.otaliastudios.cameraview.frame.Frame;
+import com.otaliastudios.cameraview.frame.FrameProcessor;
+import com.otaliastudios.cameraview.internal.ExifHelper;
+import com.otaliastudios.cameraview.internal.PictureExecutor;
+import com.otaliastudios.cameraview.internal.YuvHelper;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.io.ByteArrayOutputStream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.WorkerThread;
+
+/**
+ * A {@link PictureRecorder} for low-light snapshots. It collects a few consecutive frames
+ * from the frame processing stream, then merges them with {@link MultiFrameMerger} to reduce
+ * noise and compresses the result to JPEG.
+ *
+ * The engine passes its frames through {@link #process(Frame)} before they reach the
+ * {@link FrameProcessor}s, and calls {@link #cancel(Exception)} if frames stop, so that
+ * the result is always dispatched.
+ *
+ * The frames are copied as NV21, so this works with both the byte[] frames of Camera1
+ * and the {@link Image} frames of Camera2.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class SnapshotMergePictureRecorder extends SnapshotPictureRecorder {
+
+    private final byte[][] mFrames;
+    private final Object mLock = new Object();
+    private int mCollected;
+    private Size mSize;
+    private int mRotation;
+    private boolean mTaking;
+
+    public SnapshotMergePictureRecorder(@NonNull PictureResult.Stub stub,
+                                        @Nullable PictureResultListener listener,
+                                        int count) {
+        super(stub, listener);
+        if (count < 1) {
+            throw new IllegalArgumentException("Frame count should be at least 1.");
+        }
+        mFrames = new byte[count][];
+    }
+
+    /**
+     * Starts collecting frames. This recorder should then be passed the frames
+     * of the frame processing stream, through {@link #process(Frame)}.
+     */
+    @Override
+    public void take() {
+        synchronized (mLock) {
+            mTaking = true;
+        }
+        mResult.tracer.begin(CaptureTrace.STAGE_CAPTURE);
+    }
+
+    /**
+     * Collects the given frame, if still needed. The frame is copied, so it can be
+     * released as soon as this returns.
+     *
+     * @param frame a frame of the frame processing stream
+     */
+    public void process(@NonNull Frame frame) {
+        synchronized (mLock) {
+            if (!mTaking || mCollected == mFrames.length) return;
+            Size size = frame.getSize();
+            if (mCollected > 0 && !size.equals(mSize)) {
+                // The stream changed, frames can't be merged. Start over.
+                LOG.w("process:", "frame size changed. Restarting.");
+                mCollected = 0;
+            }
+            if (mCollected == 0) {
+                mSize = size;
+                mRotation = frame.getRotationToUser();
+            }
+            try {
+                mFrames[mCollected] = copy(frame);
+            } catch (Exception e) {
+                mCollected = mFrames.length;
+                mResult = null;
+                mError = e;
+                dispatchResult();
+                return;
+            }
+            mCollected++;
+            if (mCollected == 1) dispatchOnShutter(false);
+            if (mCollected < mFrames.length) return;
+        }
+        mResult.tracer.end(CaptureTrace.STAGE_CAPTURE);
+        PictureExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    merge();
+                } catch (Exception e) {
+                    mResult = null;
+                    mError = e;
+                }
+                dispatchResult();
+            }
+        });
+    }
+
+    /**
+     * Ends the capture with the given error, unless all frames were already collected,
+     * in which case the result will be dispatched anyway. Can be called more than once.
+     *
+     * @param error the error
+     */
+    public void cancel(@NonNull Exception error) {
+        synchronized (mLock) {
+            if (mCollected == mFrames.length) return;
+            LOG.w("cancel:", "collected", mCollected, "of", mFrames.length, "frames.", error);
+            mCollected = mFrames.length;
+            for (int i = 0; i < mFrames.length; i++) mFrames[i] = null;
+            mResult = null;
+            mError = error;
+            dispatchResult();
+        }
+    }
+
+    @NonNull
+    private static byte[] copy(@NonNull Frame frame) {
+        if (frame.getDataClass() == byte[].class) {
+            if (frame.getFormat() != ImageFormat.NV21) {
+                throw new IllegalStateException("Unsupported frame format: "
+                        + frame.getFormat());
+            }
+            byte[] data = frame.getData();
+            return data.clone();
+        } else {
+            if (frame.getFormat() != ImageFormat.YUV_420_888) {
+                throw new IllegalStateException("Unsupported frame format: "
+                        + frame.getFormat());
+            }
+            Image image = frame.getData();
+            return YuvHelper.toNv21(image);
+        }
+    }
+
+    @WorkerThread
+    private void merge() throws Exception {
+        int width = mSize.getWidth();
+        int height = mSize.getHeight();
+        LOG.i("merge:", "merging", mFrames.length, "frames of size", mSize);
+        mResult.tracer.begin(CaptureTrace.STAGE_ENCODING);
+        MultiFrameMerger merger = new MultiFrameMerger(width, height);
+        byte[] merged = merger.merge(mFrames, MultiFrameMerger.getPool());
+        for (int i = 0; i < mFrames.length; i++) mFrames[i] = null;
+        YuvImage image = new YuvImage(merged, ImageFormat.NV21, width, height, null);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        image.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, stream);
+        mResult.tracer.end(CaptureTrace.STAGE_ENCODING);
+
+        // Like Snapshot1, we write the rotation in EXIF instead of rotating the pixels.
+        mResult.tracer.begin(CaptureTrace.STAGE_EXIF);
+        mResult.data = ExifHelper.writeOrientation(stream.toByteArray(),
+                ExifHelper.getExifOrientation(mRotation));
+        mResult.tracer.end(CaptureTrace.STAGE_EXIF);
+        mResult.rotation = mRotation;
+        mResult.size = mRotation % 180 != 0 ? mSize.flip() : mSize;
+    }
+}
@@ -0,0 +1,284 @@
+package com.otaliastudios.cameraview.picture;
+
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.view.Surface;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.internal.SharpnessHelper;
+import com.otaliastudios.cameraview.internal.WorkerHandler;
+import com.otaliastudios.cameraview.size.Size;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Keeps the most recent full resolution YUV frames of the repeating request, together with
+ * their {@link TotalCaptureResult}s, so that a picture can be taken from a frame that was
+ * already captured (zero shutter lag).
+ *
+ * Memory is bounded by the {@link ImageReader}: frames are never copied, and the oldest one
+ * is closed as soon as a new one arrives and the ring is full. Two extra images are allocated,
+ * so that the camera always has a free buffer even while a frame is being encoded.
+ *
+ * Taken entries are counted: their images belong to the reader, so when {@link #release()}
+ * is called while some of them are still in use, the reader is closed only when the last
+ * one is closed.
+ */
+@RequiresApi(Build.VERSION_CODES.LOLLIPOP)
+public class ZslRing implements ImageReader.OnImageAvailableListener {
+
+    private final static String TAG = ZslRing.class.getSimpleName();
+    private final static CameraLogger LOG = CameraLogger.create(TAG);
+
+    // Frames older than this, relative to the most recent one, are not considered.
+    private final static long MAX_FRAME_AGE_NANOS = 200 * 1000 * 1000;
+
+    /**
+     * A frame of the ring. It must be closed after use.
+     */
+    public static class Entry {
+
+        private final ZslRing mRing;
+        private final Image mImage;
+        private TotalCaptureResult mResult;
+        private boolean mTaken;
+        private boolean mClosed;
+
+        private Entry(@NonNull ZslRing ring, @NonNull Image image) {
+            mRing = ring;
+            mImage = image;
+        }
+
+        /**
+         * The frame image, in {@link ImageFormat#YUV_420_888}.
+         * @return the image
+         */
+        @NonNull
+        public Image getImage() {
+            return mImage;
+        }
+
+        /**
+         * The capture result of this frame, if it was received.
+         * @return the result, or null
+         */
+        @Nullable
+        public TotalCaptureResult getResult() {
+            return mResult;
+        }
+
+        /**
+         * Releases the frame. Can be called more than once.
+         */
+        public void close() {
+            mRing.onEntryClosed(this);
+        }
+    }
+
+    private final int mCapacity;
+    private final ImageReader mReader;
+    private final ArrayDeque<Entry> mEntries = new ArrayDeque<>();
+    // Results that arrived before their image. Bounded to the ring capacity.
+    private final Map<Long, TotalCaptureResult> mPendingResults = new LinkedHashMap<>();
+    private int mTakenCount;
+    private boolean mReleased;
+    private boolean mReaderClosed;
+
+    /**
+     * Creates a new ring.
+     *
+     * @param size the frame size
+     * @param capacity the max number of frames to keep
+     */
+    public ZslRing(@NonNull Size size, int capacity) {
+        this(ImageReader.newInstance(size.getWidth(), size.getHeight(),
+                ImageFormat.YUV_420_888, capacity + 2), capacity);
+        mReader.setOnImageAvailableListener(this, WorkerHandler.get("ZslRing").getHandler());
+    }
+
+    @VisibleForTesting
+    ZslRing(@NonNull ImageReader reader, int capacity) {
+        mCapacity = capacity;
+        mReader = reader;
+    }
+
+    /**
+     * The surface that should be a target of the repeating request.
+     * @return the surface
+     */
+    @NonNull
+    public Surface getSurface() {
+        return mReader.getSurface();
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+        Image image;
+        try {
+            image = reader.acquireNextImage();
+        } catch (IllegalStateException e) {
+            // All images are being used. The next frame will make room.
+            LOG.v("onImageAvailable:", "no free image.", e);
+            return;
+        }
+        if (image == null) return;
+        synchronized (mEntries) {
+            if (mReleased) {
+                image.close();
+                return;
+            }
+            Entry entry = new Entry(this, image);
+            entry.mResult = mPendingResults.remove(image.getTimestamp());
+            mEntries.addLast(entry);
+            while (mEntries.size() > mCapacity) {
+                mEntries.removeFirst().close();
+            }
+            mEntries.notifyAll();
+        }
+    }
+
+    /**
+     * Should be called with the results of the repeating request.
+     * @param result the result
+     */
+    public void onCaptureCompleted(@NonNull TotalCaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) return;
+        synchronized (mEntries) {
+            for (Entry entry : mEntries) {
+                if (entry.mImage.getTimestamp() == timestamp) {
+                    entry.mResult = result;
+                    return;
+                }
+            }
+            mPendingResults.put(timestamp, result);
+            Iterator<Long> iterator = mPendingResults.keySet().iterator();
+            while (mPendingResults.size() > mCapacity && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the best recent frame from the ring, waiting for one if the ring is empty.
+     * Among the frames captured shortly before the most recent one, we prefer frames whose
+     * lens was not moving, then the sharpest. The caller must close the returned entry.
+     *
+     * @param timeoutMillis how long to wait for a frame
+     * @return the frame, or null
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Nullable
+    public Entry take(long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        synchronized (mEntries) {
+            while (mEntries.isEmpty() && !mReleased) {
+                long remaining = end - System.currentTimeMillis();
+                if (remaining <= 0) return null;
+                mEntries.wait(remaining);
+            }
+            if (mReleased) return null;
+            long newest = mEntries.getLast().mImage.getTimestamp();
+            Entry best = null;
+            boolean bestStationary = false;
+            float bestSharpness = 0;
+            // Iterate from the newest, so that ties go to the most recent frame.
+            Iterator<Entry> iterator = mEntries.descendingIterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (newest - entry.mImage.getTimestamp() > MAX_FRAME_AGE_NANOS) break;
+                boolean stationary = isStationary(entry);
+                if (best != null && bestStationary && !stationary) continue;
+                float sharpness = computeSharpness(entry);
+                if (best == null
+                        || (stationary && !bestStationary)
+                        || sharpness > bestSharpness) {
+                    best = entry;
+                    bestStationary = stationary;
+                    bestSharpness = sharpness;
+                }
+            }
+            LOG.i("take:", "selected frame.", "age:", newest - best.mImage.getTimestamp(),
+                    "stationary:", bestStationary, "sharpness:", bestSharpness);
+            mEntries.remove(best);
+            best.mTaken = true;
+            mTakenCount++;
+            return best;
+        }
+    }
+
+    private static boolean isStationary(@NonNull Entry entry) {
+        if (entry.mResult == null) return false;
+        Integer lensState = entry.mResult.get(CaptureResult.LENS_STATE);
+        return lensState == null || lensState == CaptureResult.LENS_STATE_STATIONARY;
+    }
+
+    private static float computeSharpness(@NonNull Entry entry) {
+        Image image = entry.mImage;
+        Image.Plane plane = image.getPlanes()[0];
+        return SharpnessHelper.estimate(plane.getBuffer(),
+                image.getWidth(),
+                image.getHeight(),
+                plane.getRowStride(),
+                plane.getPixelStride());
+    }
+
+    private void onEntryClosed(@NonNull Entry entry) {
+        boolean closeReader;
+        synchronized (mEntries) {
+            if (entry.mClosed) return;
+            entry.mClosed = true;
+            entry.mImage.close();
+            if (!entry.mTaken) return;
+            mTakenCount--;
+            closeReader = mReleased && mTakenCount == 0 && !mReaderClosed;
+            if (closeReader) mReaderClosed = true;
+        }
+        if (closeReader) {
+            LOG.i("onEntryClosed:", "last taken entry closed. Closing reader.");
+            mReader.close();
+        }
+    }
+
+    /**
+     * Releases all frames and the reader. Entries that were already taken might still
+     * be in use, for example by an encoder: closing the reader would invalidate their
+     * planes, so in this case the reader is closed as soon as the last one is closed.
+     */
+    public void release() {
+        boolean closeReader;
+        int taken;
+        synchronized (mEntries) {
+            if (mReleased) return;
+            mReleased = true;
+            for (Entry entry : new ArrayList<>(mEntries)) {
+                entry.close();
+            }
+            mEntries.clear();
+            mPendingResults.clear();
+            mEntries.notifyAll();
+            taken = mTakenCount;
+            closeReader = taken == 0;
+            if (closeReader) mReaderClosed = true;
+        }
+        if (closeReader) {
+            mReader.close();
+        } else {
+            LOG.i("release:", "waiting for taken entries before closing reader:", taken);
+        }
+    }
+}
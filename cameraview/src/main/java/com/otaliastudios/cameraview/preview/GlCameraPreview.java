@@ -14,15 +14,20 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.otaliastudios.cameraview.R;
+import com.otaliastudios.cameraview.internal.GlPixelReader;
 import com.otaliastudios.cameraview.internal.GlTextureDrawer;
 import com.otaliastudios.cameraview.filter.Filter;
 import com.otaliastudios.cameraview.filter.NoFilter;
 import com.otaliastudios.cameraview.size.AspectRatio;
 
+import java.nio.ByteBuffer;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.opengles.GL10;
 
 /**
@@ -69,6 +74,8 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
     // A synchronized set was not enough to avoid crashes, probably due to external classes
     // removing the callback while this set is being iterated. CopyOnWriteArraySet solves this.
     private final Set<RendererFrameCallback> mRendererFrameCallbacks = new CopyOnWriteArraySet<>();
+    private final Set<RgbaFrameCallback> mRgbaFrameCallbacks = new CopyOnWriteArraySet<>();
+    private GlPixelReader mPixelReader;
     @VisibleForTesting float mCropScaleX = 1F;
     @VisibleForTesting float mCropScaleY = 1F;
     private View mRootView;
@@ -85,7 +92,10 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
                 .inflate(R.layout.cameraview_gl_view, parent, false);
         final GLSurfaceView glView = root.findViewById(R.id.gl_surface_view);
         final Renderer renderer = instantiateRenderer();
+        // Our factory creates the context, but the default config chooser still reads this
+        // to pick a config that can render GLES2, which GLES3 contexts can also use.
         glView.setEGLContextClientVersion(2);
+        glView.setEGLContextFactory(new ContextFactory());
         glView.setRenderer(renderer);
         glView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         glView.getHolder().addCallback(new SurfaceHolder.Callback() {
@@ -132,6 +142,7 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
         super.onDestroy();
         // View is gone, so EGL context is gone: callbacks make no sense anymore.
         mRendererFrameCallbacks.clear();
+        mRgbaFrameCallbacks.clear();
     }
 
     /**
@@ -180,6 +191,7 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
                 mOutputTextureDrawer.release();
                 mOutputTextureDrawer = null;
             }
+            releasePixelReader();
         }
 
         @RendererThread
@@ -231,13 +243,89 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
                 Matrix.scaleM(transform, 0, mCropScaleX, mCropScaleY, 1);
             }
 
-            mOutputTextureDrawer.draw(mInputSurfaceTexture.getTimestamp() / 1000L);
+            long timestampUs = mInputSurfaceTexture.getTimestamp() / 1000L;
+            mOutputTextureDrawer.draw(timestampUs);
+            if (!mRgbaFrameCallbacks.isEmpty()) {
+                readPixels(timestampUs);
+            } else {
+                releasePixelReader();
+            }
             for (RendererFrameCallback callback : mRendererFrameCallbacks) {
                 callback.onRendererFrame(mInputSurfaceTexture, mDrawRotation, mCropScaleX, mCropScaleY);
             }
         }
+
+        /**
+         * Reads the frame that was just drawn, for {@link RgbaFrameCallback}s.
+         * Where supported, the GPU copy is asynchronous and this frame will be delivered
+         * at the next one, so the renderer thread does not wait for it.
+         */
+        @RendererThread
+        private void readPixels(long timestampUs) {
+            if (mOutputSurfaceWidth <= 0 || mOutputSurfaceHeight <= 0) return;
+            if (mPixelReader != null && (mPixelReader.getWidth() != mOutputSurfaceWidth
+                    || mPixelReader.getHeight() != mOutputSurfaceHeight)) {
+                releasePixelReader();
+            }
+            if (mPixelReader == null) {
+                mPixelReader = new GlPixelReader(mOutputSurfaceWidth, mOutputSurfaceHeight);
+            }
+            mPixelReader.read(timestampUs, mPixelReaderCallback);
+        }
+
+        @RendererThread
+        private void releasePixelReader() {
+            if (mPixelReader != null) {
+                mPixelReader.release();
+                mPixelReader = null;
+            }
+        }
     }
 
+    /**
+     * Creates a GLES3 context where possible, falling back to GLES2. GLES3 is backwards
+     * compatible, so drawing is not affected, but it lets {@link GlPixelReader} copy pixels
+     * asynchronously, and snapshot contexts shared with this one can be GLES3 as well.
+     */
+    private static class ContextFactory implements GLSurfaceView.EGLContextFactory {
+
+        private final static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+        @Override
+        public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig config) {
+            EGLContext context = createContext(egl, display, config, 3);
+            if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+                LOG.i("createContext:", "GLES3 not available. Falling back to GLES2.");
+                context = createContext(egl, display, config, 2);
+            }
+            return context;
+        }
+
+        private static EGLContext createContext(EGL10 egl, EGLDisplay display,
+                                                EGLConfig config, int version) {
+            int[] attributes = { EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE };
+            return egl.eglCreateContext(display, config, EGL10.EGL_NO_CONTEXT, attributes);
+        }
+
+        @Override
+        public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            if (!egl.eglDestroyContext(display, context)) {
+                LOG.e("destroyContext:", "eglDestroyContext failed:", egl.eglGetError());
+            }
+        }
+    }
+
+    private final GlPixelReader.Callback mPixelReaderCallback = new GlPixelReader.Callback() {
+        @RendererThread
+        @Override
+        public void onPixels(@NonNull ByteBuffer pixels, int width, int height, long timestampUs) {
+            for (RgbaFrameCallback callback : mRgbaFrameCallbacks) {
+                pixels.rewind();
+                callback.onRgbaFrame(pixels, width, height, timestampUs);
+            }
+        }
+    };
+
     @NonNull
     @Override
     public Class<SurfaceTexture> getOutputClass() {
@@ -310,6 +398,24 @@ public class GlCameraPreview extends CameraPreview<GLSurfaceView, SurfaceTexture
         mRendererFrameCallbacks.remove(callback);
     }
 
+    /**
+     * Adds a {@link RgbaFrameCallback} to receive the RGBA pixels of each frame that
+     * is drawn on the preview surface. Reading pixels has a cost, which is only paid
+     * while at least one callback is registered.
+     * @param callback a callback
+     */
+    public void addRgbaFrameCallback(@NonNull RgbaFrameCallback callback) {
+        mRgbaFrameCallbacks.add(callback);
+    }
+
+    /**
+     * Removes a {@link RgbaFrameCallback} that was previously added.
+     * @param callback a callback
+     */
+    public void removeRgbaFrameCallback(@NonNull RgbaFrameCallback callback) {
+        mRgbaFrameCallbacks.remove(callback);
+    }
+
     /**
      * Returns the output GL texture id.
      * @return the output GL texture id
@@ -0,0 +1,30 @@
+package com.otaliastudios.cameraview.preview;
+
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback for the RGBA pixels of the frames drawn by {@link GlCameraPreview},
+ * see {@link GlCameraPreview#addRgbaFrameCallback(RgbaFrameCallback)}.
+ */
+public interface RgbaFrameCallback {
+
+    /**
+     * Called on the renderer thread with the pixels of a frame, as they were drawn
+     * on the preview surface, so including filters. Rows go from bottom to top.
+     * Frames are read asynchronously where possible, so this is typically called one frame
+     * after the one that was drawn.
+     *
+     * The buffer is only valid during this call: implementations should copy what they need
+     * and return quickly, because this is the rendering thread.
+     *
+     * @param pixels the RGBA pixels
+     * @param width the frame width
+     * @param height the frame height
+     * @param timestampUs the frame timestamp
+     */
+    @RendererThread
+    void onRgbaFrame(@NonNull ByteBuffer pixels, int width, int height, long timestampUs);
+}
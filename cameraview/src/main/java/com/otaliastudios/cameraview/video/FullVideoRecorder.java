@@ -10,6 +10,7 @@ import com.otaliastudios.cameraview.controls.Audio;
 import com.otaliastudios.cameraview.controls.AudioCodec;
 import com.otaliastudios.cameraview.controls.VideoCodec;
 import com.otaliastudios.cameraview.internal.DeviceEncoders;
+import com.otaliastudios.cameraview.internal.EncoderSelectionCache;
 import com.otaliastudios.cameraview.internal.CamcorderProfiles;
 import com.otaliastudios.cameraview.size.Size;
 
@@ -37,6 +38,7 @@ public abstract class FullVideoRecorder extends VideoRecorder {
     @SuppressWarnings("WeakerAccess") protected MediaRecorder mMediaRecorder;
     private CamcorderProfile mProfile;
     private boolean mMediaRecorderPrepared;
+    private String mEncoderSelectionKey;
 
 
     FullVideoRecorder(@Nullable VideoResultListener listener) {
@@ -165,6 +167,22 @@ public abstract class FullVideoRecorder extends VideoRecorder {
             int videoEncoderOffset = 0;
             int audioEncoderOffset = 0;
             boolean encodersFound = false;
+            EncoderSelectionCache cache = EncoderSelectionCache.get();
+            String selectionKey = EncoderSelectionCache.createKey(TAG, videoType,
+                    hasAudio ? audioType : null, stub.size, stub.videoBitRate,
+                    stub.videoFrameRate, hasAudio ? stub.audioBitRate : 0,
+                    mProfile.audioSampleRate, audioChannels);
+            EncoderSelectionCache.Selection selection = cache.get(selectionKey);
+            if (selection != null) {
+                LOG.i("prepareMediaRecorder:", "Using cached encoders.",
+                        "video:", selection.videoEncoder,
+                        "audio:", selection.audioEncoder);
+                newVideoSize = selection.videoSize;
+                newVideoBitRate = selection.videoBitRate;
+                newVideoFrameRate = selection.videoFrameRate;
+                newAudioBitRate = selection.audioBitRate;
+                encodersFound = true;
+            }
             while (!encodersFound) {
                 LOG.i("prepareMediaRecorder:", "Checking DeviceEncoders...",
                         "videoOffset:", videoEncoderOffset,
@@ -191,6 +209,8 @@ public abstract class FullVideoRecorder extends VideoRecorder {
                                 mProfile.audioSampleRate, audioChannels);
                     }
                     encodersFound = true;
+                    cache.put(selectionKey, EncoderSelectionCache.Selection.from(encoders,
+                            newVideoSize, newVideoBitRate, newVideoFrameRate, newAudioBitRate));
                 } catch (DeviceEncoders.VideoException videoException) {
                     LOG.i("prepareMediaRecorder:", "Got VideoException:",
                             videoException.getMessage());
@@ -201,6 +221,7 @@ public abstract class FullVideoRecorder extends VideoRecorder {
                     audioEncoderOffset++;
                 }
             }
+            mEncoderSelectionKey = selectionKey;
             // D. Apply results
             stub.size = newVideoSize;
             stub.videoBitRate = newVideoBitRate;
@@ -283,6 +304,7 @@ public abstract class FullVideoRecorder extends VideoRecorder {
                 LOG.e("OnErrorListener: got error", what, extra, ". Stopping.");
                 mResult = null;
                 mError = new RuntimeException("MediaRecorder error: " + what + " " + extra);
+                invalidateEncoderSelection();
                 LOG.i("OnErrorListener:", "Stopping");
                 stop(false);
             }
@@ -298,6 +320,7 @@ public abstract class FullVideoRecorder extends VideoRecorder {
             LOG.w("prepareMediaRecorder:", "Error while preparing media recorder.", e);
             mMediaRecorderPrepared = false;
             mError = e;
+            invalidateEncoderSelection();
             return false;
         }
     }
@@ -317,10 +340,22 @@ public abstract class FullVideoRecorder extends VideoRecorder {
             LOG.w("start:", "Error while starting media recorder.", e);
             mResult = null;
             mError = e;
+            invalidateEncoderSelection();
             stop(false);
         }
     }
 
+    /**
+     * Called when recording fails. Since wrong parameters make MediaRecorder fail in start()
+     * or later, the encoders we chose might be the culprit: they will be checked again
+     * the next time.
+     */
+    private void invalidateEncoderSelection() {
+        if (mEncoderSelectionKey != null) {
+            EncoderSelectionCache.get().invalidate(mEncoderSelectionKey);
+        }
+    }
+
     @Override
     protected void onStop(boolean isCameraShutdown) {
         if (mMediaRecorder != null) {
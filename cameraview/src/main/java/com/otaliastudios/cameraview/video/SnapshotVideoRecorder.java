@@ -9,6 +9,7 @@ import android.os.Build;
 import com.otaliastudios.cameraview.CameraLogger;
 import com.otaliastudios.cameraview.controls.AudioCodec;
 import com.otaliastudios.cameraview.internal.DeviceEncoders;
+import com.otaliastudios.cameraview.internal.EncoderSelectionCache;
 import com.otaliastudios.cameraview.overlay.Overlay;
 import com.otaliastudios.cameraview.VideoResult;
 import com.otaliastudios.cameraview.controls.Audio;
@@ -22,9 +23,12 @@ import com.otaliastudios.cameraview.size.Size;
 import com.otaliastudios.cameraview.video.encoding.AudioConfig;
 import com.otaliastudios.cameraview.video.encoding.AudioMediaEncoder;
 import com.otaliastudios.cameraview.video.encoding.EncoderThread;
+import com.otaliastudios.cameraview.video.encoding.MediaCodecPool;
 import com.otaliastudios.cameraview.video.encoding.MediaEncoderEngine;
+import com.otaliastudios.cameraview.video.encoding.ProxyVideoMediaEncoder;
 import com.otaliastudios.cameraview.video.encoding.TextureConfig;
 import com.otaliastudios.cameraview.video.encoding.TextureMediaEncoder;
+import com.otaliastudios.cameraview.video.encoding.VideoConfig;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -50,10 +54,29 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
         return (int) (0.07F * 1F * size.getWidth() * size.getHeight() * frameRate);
     }
 
+    // Scales the size so that its short side matches the proxy resolution (e.g. 480 for 480p).
+    // Encoders generally prefer sizes that are a multiple of 16.
+    @NonNull
+    private static Size computeProxySize(@NonNull Size size, int resolution) {
+        int shortSide = Math.min(size.getWidth(), size.getHeight());
+        if (resolution <= 0 || resolution >= shortSide) return size;
+        float scale = (float) resolution / shortSide;
+        int width = Math.max(16, Math.round(size.getWidth() * scale) / 16 * 16);
+        int height = Math.max(16, Math.round(size.getHeight() * scale) / 16 * 16);
+        return new Size(width, height);
+    }
+
     private static final int STATE_RECORDING = 0;
     private static final int STATE_NOT_RECORDING = 1;
 
     private MediaEncoderEngine mEncoderEngine;
+    private AudioMediaEncoder mAudioEncoder;
+    private TextureMediaEncoder mVideoEncoder;
+    private final MediaCodecPool mCodecPool;
+    private String mEncoderSelectionKey;
+    private TimeLapseDecimator mTimeLapseDecimator;
+    private long mStartTimeMillis;
+    private boolean mIsCameraShutdown;
     private final Object mEncoderEngineLock = new Object();
     private RendererCameraPreview mPreview;
 
@@ -69,8 +92,10 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
 
     public SnapshotVideoRecorder(@NonNull CameraEngine engine,
                                  @NonNull RendererCameraPreview preview,
-                                 @Nullable Overlay overlay) {
+                                 @Nullable Overlay overlay,
+                                 @Nullable MediaCodecPool codecPool) {
         super(engine);
+        mCodecPool = codecPool;
         mPreview = preview;
         mOverlay = overlay;
         mHasOverlay = overlay != null && overlay.drawsOn(Overlay.Target.VIDEO_SNAPSHOT);
@@ -78,6 +103,7 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
 
     @Override
     protected void onStart() {
+        mStartTimeMillis = System.currentTimeMillis();
         mPreview.addRendererFrameCallback(this);
         mDesiredState = STATE_RECORDING;
         dispatchVideoRecordingStart();
@@ -90,6 +116,7 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             // The renderer callback might never be called. From my tests, it's not,
             // so we can't wait for that callback to stop the encoder engine.
             LOG.i("Stopping the encoder engine from isCameraShutdown.");
+            mIsCameraShutdown = true;
             mDesiredState = STATE_NOT_RECORDING;
             mCurrentState = STATE_NOT_RECORDING;
             synchronized (mEncoderEngineLock) {
@@ -131,6 +158,14 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
         if (mCurrentState == STATE_NOT_RECORDING && mDesiredState == STATE_RECORDING) {
             LOG.i("Starting the encoder engine.");
 
+            // Time-lapse videos have no audio, and play at their own frame rate.
+            if (mResult.timeLapseInterval > 0) {
+                if (mResult.timeLapseFrameRate > 0) {
+                    mResult.videoFrameRate = mResult.timeLapseFrameRate;
+                }
+                mResult.audio = Audio.OFF;
+            }
+
             // Set default options
             if (mResult.videoFrameRate <= 0) mResult.videoFrameRate = DEFAULT_VIDEO_FRAMERATE;
             if (mResult.videoBitRate <= 0) mResult.videoBitRate
@@ -175,6 +210,22 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             int audioEncoderOffset = 0;
             boolean encodersFound = false;
             DeviceEncoders deviceEncoders = null;
+            EncoderSelectionCache cache = EncoderSelectionCache.get();
+            String selectionKey = EncoderSelectionCache.createKey(TAG, videoType,
+                    hasAudio ? audioType : null, mResult.size, mResult.videoBitRate,
+                    mResult.videoFrameRate, hasAudio ? mResult.audioBitRate : 0,
+                    audioConfig.samplingFrequency, audioChannels);
+            EncoderSelectionCache.Selection selection = cache.get(selectionKey);
+            if (selection != null) {
+                LOG.i("Using cached encoders.",
+                        "video:", selection.videoEncoder,
+                        "audio:", selection.audioEncoder);
+                newVideoSize = selection.videoSize;
+                newVideoBitRate = selection.videoBitRate;
+                newVideoFrameRate = selection.videoFrameRate;
+                newAudioBitRate = selection.audioBitRate;
+                encodersFound = true;
+            }
             while (!encodersFound) {
                 LOG.i("Checking DeviceEncoders...",
                         "videoOffset:", videoEncoderOffset,
@@ -215,19 +266,45 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
                     audioEncoderOffset++;
                 }
             }
+            if (encodersFound && selection == null) {
+                selection = EncoderSelectionCache.Selection.from(deviceEncoders, newVideoSize,
+                        newVideoBitRate, newVideoFrameRate, newAudioBitRate);
+                cache.put(selectionKey, selection);
+            }
+            mEncoderSelectionKey = selectionKey;
             mResult.size = newVideoSize;
             mResult.videoBitRate = newVideoBitRate;
             mResult.audioBitRate = newAudioBitRate;
             mResult.videoFrameRate = newVideoFrameRate;
 
+            // Adaptive bit rate bounds. The max defaults to the bit rate we just computed.
+            if (mResult.videoMinBitRate > 0) {
+                if (mResult.videoMaxBitRate <= 0) mResult.videoMaxBitRate = mResult.videoBitRate;
+                if (selection != null) {
+                    mResult.videoMinBitRate = selection
+                            .getSupportedVideoBitRate(mResult.videoMinBitRate);
+                    mResult.videoMaxBitRate = selection
+                            .getSupportedVideoBitRate(mResult.videoMaxBitRate);
+                }
+                if (mResult.videoMaxBitRate < mResult.videoMinBitRate) {
+                    mResult.videoMaxBitRate = mResult.videoMinBitRate;
+                }
+                mResult.videoBitRate = Math.max(mResult.videoMinBitRate,
+                        Math.min(mResult.videoMaxBitRate, mResult.videoBitRate));
+            } else {
+                mResult.videoMaxBitRate = 0;
+            }
+
             // Video
             videoConfig.width = mResult.size.getWidth();
             videoConfig.height = mResult.size.getHeight();
             videoConfig.bitRate = mResult.videoBitRate;
+            videoConfig.minBitRate = mResult.videoMinBitRate;
+            videoConfig.maxBitRate = mResult.videoMaxBitRate;
             videoConfig.frameRate = mResult.videoFrameRate;
             videoConfig.rotation = rotation + mResult.rotation;
             videoConfig.mimeType = videoType;
-            videoConfig.encoder = deviceEncoders.getVideoEncoder();
+            videoConfig.encoder = selection != null ? selection.videoEncoder : null;
             videoConfig.textureId = mTextureId;
             videoConfig.scaleX = scaleX;
             videoConfig.scaleY = scaleY;
@@ -242,6 +319,25 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
                 // ^ no "rotation" here! Overlays are already in VIEW ref.
             }
             TextureMediaEncoder videoEncoder = new TextureMediaEncoder(videoConfig);
+            videoEncoder.setCodecPool(mCodecPool);
+            mVideoEncoder = videoEncoder;
+
+            // Proxy: rendered by the video encoder, so no texture, overlay or rotation here.
+            ProxyVideoMediaEncoder proxyEncoder = null;
+            if (mResult.proxyFile != null) {
+                mResult.proxySize = computeProxySize(mResult.size, mResult.proxyResolution);
+                if (mResult.proxyVideoBitRate <= 0) mResult.proxyVideoBitRate
+                        = estimateVideoBitRate(mResult.proxySize, mResult.videoFrameRate);
+                VideoConfig proxyConfig = new VideoConfig();
+                proxyConfig.width = mResult.proxySize.getWidth();
+                proxyConfig.height = mResult.proxySize.getHeight();
+                proxyConfig.bitRate = mResult.proxyVideoBitRate;
+                proxyConfig.frameRate = mResult.videoFrameRate;
+                proxyConfig.mimeType = videoType;
+                proxyConfig.encoder = videoConfig.encoder;
+                proxyEncoder = new ProxyVideoMediaEncoder(proxyConfig);
+                videoEncoder.setProxyEncoder(proxyEncoder);
+            }
 
             // Adjustment
             mResult.rotation = 0; // We will rotate the result instead.
@@ -252,8 +348,22 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             if (hasAudio) {
                 audioConfig.bitRate = mResult.audioBitRate;
                 audioConfig.channels = audioChannels;
-                audioConfig.encoder = deviceEncoders.getAudioEncoder();
+                audioConfig.encoder = selection != null ? selection.audioEncoder : null;
+                audioConfig.processors = mResult.audioProcessors;
                 audioEncoder = new AudioMediaEncoder(audioConfig);
+                audioEncoder.setCodecPool(mCodecPool);
+                audioEncoder.setLevelListener(new AudioMediaEncoder.LevelListener() {
+                    @Override
+                    public void onAudioLevel(float rms, float peak) {
+                        dispatchVideoRecordingAudioLevel(rms, peak);
+                    }
+                });
+            }
+            mAudioEncoder = audioEncoder;
+            mTimeLapseDecimator = null;
+            if (mResult.timeLapseInterval > 0) {
+                mTimeLapseDecimator = new TimeLapseDecimator(mResult.timeLapseInterval,
+                        mResult.videoFrameRate);
             }
 
             // Engine
@@ -261,6 +371,8 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
                 mEncoderEngine = new MediaEncoderEngine(mResult.file,
                         videoEncoder,
                         audioEncoder,
+                        mResult.proxyFile,
+                        proxyEncoder,
                         mResult.maxDuration,
                         mResult.maxSize,
                         SnapshotVideoRecorder.this);
@@ -270,7 +382,13 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             mCurrentState = STATE_RECORDING;
         }
 
-        if (mCurrentState == STATE_RECORDING) {
+        long timestampNanos = surfaceTexture.getTimestamp();
+        if (mCurrentState == STATE_RECORDING && mTimeLapseDecimator != null) {
+            // Decide here, so that skipped frames cost no event and no GL work.
+            timestampNanos = mTimeLapseDecimator.process(timestampNanos);
+        }
+
+        if (mCurrentState == STATE_RECORDING && timestampNanos != TimeLapseDecimator.SKIP) {
             LOG.i("scheduling frame.");
             synchronized (mEncoderEngineLock) {
                 if (mEncoderEngine != null) { // Can be null on teardown.
@@ -278,7 +396,7 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
                     TextureMediaEncoder textureEncoder
                             = (TextureMediaEncoder) mEncoderEngine.getVideoEncoder();
                     TextureMediaEncoder.Frame frame = textureEncoder.acquireFrame();
-                    frame.timestampNanos = surfaceTexture.getTimestamp();
+                    frame.timestampNanos = timestampNanos;
                     // NOTE: this is an approximation but it seems to work:
                     frame.timestampMillis = System.currentTimeMillis();
                     surfaceTexture.getTransformMatrix(frame.transform);
@@ -321,6 +439,10 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             LOG.e("Error onEncodingEnd", e);
             mResult = null;
             mError = e;
+            // The encoders we chose might be the culprit. Check them again next time.
+            if (mEncoderSelectionKey != null) {
+                EncoderSelectionCache.get().invalidate(mEncoderSelectionKey);
+            }
         } else {
             if (stopReason == MediaEncoderEngine.END_BY_MAX_DURATION) {
                 LOG.i("onEncodingEnd because of max duration.");
@@ -331,6 +453,23 @@ public class SnapshotVideoRecorder extends VideoRecorder implements RendererFram
             } else {
                 LOG.i("onEncodingEnd because of user.");
             }
+            if (mAudioEncoder != null) {
+                mResult.audioDroppedFrames = mAudioEncoder.getDroppedFrames();
+                mResult.audioMaxQueueSize = mAudioEncoder.getMaxQueueSize();
+                mResult.audioAverageQueueSize = mAudioEncoder.getAverageQueueSize();
+            }
+            if (mVideoEncoder != null
+                    && mVideoEncoder.getFirstFrameRenderedMillis() != Long.MIN_VALUE) {
+                mResult.timeToFirstFrame = mVideoEncoder.getFirstFrameRenderedMillis()
+                        - mStartTimeMillis;
+            }
+        }
+        mAudioEncoder = null;
+        mVideoEncoder = null;
+        // Prepare the encoders for the next recording, unless the camera is being closed.
+        // If the pool was released in the meantime, this does nothing.
+        if (mCodecPool != null && !mIsCameraShutdown) {
+            mCodecPool.warmUp();
         }
         // Cleanup
         mCurrentState = STATE_NOT_RECORDING;
@@ -0,0 +1,54 @@
+package com.otaliastudios.cameraview.video;
+
+/**
+ * Decides which preview frames should be recorded in a time-lapse video, and which
+ * presentation timestamp they should have.
+ *
+ * One frame is taken every capture interval, with respect to the first frame, so that the
+ * capture cadence does not drift if the preview stutters. Timestamps are rewritten so that
+ * frames are spaced by exactly one output frame duration: the video will play at the output
+ * frame rate, no matter how far apart frames were captured.
+ *
+ * This is meant to be called on the renderer thread, before any frame is posted to the
+ * encoders, so that skipped frames cost nothing. It is not thread safe.
+ */
+class TimeLapseDecimator {
+
+    final static long SKIP = -1;
+
+    private final long mCaptureIntervalNanos;
+    private final long mFrameDurationNanos;
+    private long mFirstNanos = Long.MIN_VALUE;
+    private long mNextCaptureNanos;
+    private long mFrames;
+
+    /**
+     * Creates a new decimator.
+     * @param captureIntervalMillis the interval between two captured frames, greater than 0
+     * @param outputFrameRate the frame rate of the output video
+     */
+    TimeLapseDecimator(long captureIntervalMillis, int outputFrameRate) {
+        mCaptureIntervalNanos = captureIntervalMillis * 1000000L;
+        mFrameDurationNanos = 1000000000L / outputFrameRate;
+    }
+
+    /**
+     * Processes a new preview frame.
+     *
+     * @param timestampNanos the frame timestamp
+     * @return the timestamp that this frame should have in the output video,
+     *         or {@link #SKIP} if the frame should not be recorded
+     */
+    long process(long timestampNanos) {
+        if (mFirstNanos == Long.MIN_VALUE) {
+            // Keep the original time base: the encoder rejects 0 timestamps.
+            mFirstNanos = timestampNanos;
+            mNextCaptureNanos = timestampNanos;
+        }
+        if (timestampNanos < mNextCaptureNanos) return SKIP;
+        while (mNextCaptureNanos <= timestampNanos) {
+            mNextCaptureNanos += mCaptureIntervalNanos;
+        }
+        return mFirstNanos + mFrameDurationNanos * mFrames++;
+    }
+}
@@ -1,6 +1,7 @@
 package com.otaliastudios.cameraview.video;
 
 import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.CaptureTrace;
 import com.otaliastudios.cameraview.VideoResult;
 
 import androidx.annotation.CallSuper;
@@ -39,6 +40,15 @@ public abstract class VideoRecorder {
          * and soon {@link #onVideoResult(VideoResult.Stub, Exception)} will be called.
          */
         void onVideoRecordingEnd();
+
+        /**
+         * New audio levels are available for the current recording.
+         * This is called on a background thread.
+         *
+         * @param rms the RMS level, from 0 to 1
+         * @param peak the peak level, from 0 to 1
+         */
+        void onVideoRecordingAudioLevel(float rms, float peak);
     }
 
     private final static int STATE_IDLE = 0;
@@ -77,6 +87,7 @@ public abstract class VideoRecorder {
             mState = STATE_RECORDING;
         }
         mResult = stub;
+        mResult.tracer.begin(CaptureTrace.STAGE_STARTING);
         onStart();
     }
 
@@ -133,6 +144,11 @@ public abstract class VideoRecorder {
             mState = STATE_IDLE;
         }
         onDispatchResult();
+        if (mResult != null) {
+            mResult.tracer.end(CaptureTrace.STAGE_RECORDING);
+            mResult.tracer.end(CaptureTrace.STAGE_FINALIZING);
+            mResult.tracer.begin(CaptureTrace.STAGE_DISPATCH);
+        }
         LOG.i("dispatchResult:", "About to dispatch result:", mResult, mError);
         if (mListener != null) {
             mListener.onVideoResult(mResult, mError);
@@ -156,6 +172,11 @@ public abstract class VideoRecorder {
     @CallSuper
     protected void dispatchVideoRecordingStart() {
         LOG.i("dispatchVideoRecordingStart:", "About to dispatch.");
+        VideoResult.Stub result = mResult;
+        if (result != null) {
+            result.tracer.end(CaptureTrace.STAGE_STARTING);
+            result.tracer.begin(CaptureTrace.STAGE_RECORDING);
+        }
         if (mListener != null) {
             mListener.onVideoRecordingStart();
         }
@@ -169,8 +190,27 @@ public abstract class VideoRecorder {
     @CallSuper
     protected void dispatchVideoRecordingEnd() {
         LOG.i("dispatchVideoRecordingEnd:", "About to dispatch.");
+        VideoResult.Stub result = mResult;
+        if (result != null) {
+            result.tracer.end(CaptureTrace.STAGE_RECORDING);
+            result.tracer.begin(CaptureTrace.STAGE_FINALIZING);
+        }
         if (mListener != null) {
             mListener.onVideoRecordingEnd();
         }
     }
+
+    /**
+     * Subclasses can call this to notify the audio levels of the current recording.
+     * This can be called very often, so we don't log here.
+     *
+     * @param rms the RMS level, from 0 to 1
+     * @param peak the peak level, from 0 to 1
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected void dispatchVideoRecordingAudioLevel(float rms, float peak) {
+        if (mListener != null) {
+            mListener.onVideoRecordingAudioLevel(rms, peak);
+        }
+    }
 }
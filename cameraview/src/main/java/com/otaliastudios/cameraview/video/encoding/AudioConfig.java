@@ -2,8 +2,13 @@ package com.otaliastudios.cameraview.video.encoding;
 
 import android.media.AudioFormat;
 
+import com.otaliastudios.cameraview.audio.AudioProcessor;
+
 import androidx.annotation.NonNull;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Audio configuration to be passed as input to the constructor
  * of an {@link AudioMediaEncoder}.
@@ -17,6 +22,7 @@ public class AudioConfig {
     public String encoder;
     public String mimeType = "audio/mp4a-latm";
     public int samplingFrequency = 44100; // samples/sec
+    public List<AudioProcessor> processors = new ArrayList<>();
 
     // Not configurable options (for now)
     final int encoding = AudioFormat.ENCODING_PCM_16BIT; // Determines the sampleSizePerChannel
@@ -33,6 +39,7 @@ public class AudioConfig {
         config.encoder = encoder;
         config.mimeType = mimeType;
         config.samplingFrequency = samplingFrequency;
+        config.processors = new ArrayList<>(processors);
         return config;
     }
 
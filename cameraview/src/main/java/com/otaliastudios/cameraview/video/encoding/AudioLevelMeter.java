@@ -0,0 +1,86 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the RMS and peak levels of 16-bit PCM audio, as read by the
+ * {@link AudioMediaEncoder} recording thread.
+ *
+ * Each call to {@link #process(ByteBuffer, long)} analyzes a chunk of audio, typically
+ * {@link AudioConfig#frameSize()} bytes, and accumulates it into the current window.
+ * When the window is longer than the publish interval, the method returns true and
+ * {@link #getRms()} and {@link #getPeak()} hold the levels for the whole window.
+ *
+ * This class does not allocate and does not change the buffer position, limit or order,
+ * so it can be called on pooled buffers right before they are encoded.
+ * It is not thread safe.
+ */
+class AudioLevelMeter {
+
+    private final static float MAX_VALUE = 32768F;
+
+    private final long mIntervalMillis;
+    private long mWindowStartMillis = Long.MIN_VALUE;
+    private double mWindowSquares;
+    private long mWindowSamples;
+    private int mWindowPeak;
+
+    private float mRms;
+    private float mPeak;
+
+    /**
+     * Creates a new meter.
+     * @param intervalMillis the min interval between two published values
+     */
+    AudioLevelMeter(long intervalMillis) {
+        mIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Analyzes the samples between the buffer position and limit.
+     * Samples are expected to be little endian, as {@link android.media.AudioRecord}
+     * writes them.
+     *
+     * @param buffer the buffer
+     * @param nowMillis the current time in millis
+     * @return true if new levels should be published
+     */
+    boolean process(@NonNull ByteBuffer buffer, long nowMillis) {
+        if (mWindowStartMillis == Long.MIN_VALUE) mWindowStartMillis = nowMillis;
+        int end = buffer.limit() - 1;
+        for (int i = buffer.position(); i < end; i += 2) {
+            int sample = (short) ((buffer.get(i) & 0xFF) | (buffer.get(i + 1) << 8));
+            mWindowSquares += (double) sample * sample;
+            if (sample < 0) sample = -sample;
+            if (sample > mWindowPeak) mWindowPeak = sample;
+            mWindowSamples++;
+        }
+        if (nowMillis - mWindowStartMillis < mIntervalMillis) return false;
+        mRms = mWindowSamples == 0 ? 0F
+                : (float) (Math.sqrt(mWindowSquares / mWindowSamples) / MAX_VALUE);
+        mPeak = mWindowPeak / MAX_VALUE;
+        mWindowStartMillis = nowMillis;
+        mWindowSquares = 0;
+        mWindowSamples = 0;
+        mWindowPeak = 0;
+        return true;
+    }
+
+    /**
+     * Returns the RMS level of the last window, from 0 to 1.
+     * @return the rms level
+     */
+    float getRms() {
+        return mRms;
+    }
+
+    /**
+     * Returns the peak level of the last window, from 0 to 1.
+     * @return the peak level
+     */
+    float getPeak() {
+        return mPeak;
+    }
+}
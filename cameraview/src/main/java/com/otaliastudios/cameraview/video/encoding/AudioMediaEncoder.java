@@ -1,7 +1,6 @@
 package com.otaliastudios.cameraview.video.encoding;
 
 import android.media.AudioRecord;
-import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.media.MediaRecorder;
@@ -10,9 +9,9 @@ import android.os.Build;
 import com.otaliastudios.cameraview.CameraLogger;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.HashMap;
@@ -29,19 +28,57 @@ public class AudioMediaEncoder extends MediaEncoder {
     private static final String TAG = AudioMediaEncoder.class.getSimpleName();
     private static final CameraLogger LOG = CameraLogger.create(TAG);
 
+    /**
+     * Receives the audio levels, as computed on the recording thread.
+     * See {@link #setLevelListener(LevelListener)}.
+     */
+    public interface LevelListener {
+
+        /**
+         * Called at most every {@link AudioMediaEncoder#LEVEL_INTERVAL_MILLIS} with the levels of the
+         * audio recorded since the last call. This is called on the recording thread
+         * and must be fast.
+         *
+         * @param rms the RMS level, from 0 to 1
+         * @param peak the peak level, from 0 to 1
+         */
+        void onAudioLevel(float rms, float peak);
+    }
+
     private static final boolean PERFORMANCE_DEBUG = false;
     private static final boolean PERFORMANCE_FILL_GAPS = true;
     private static final int PERFORMANCE_MAX_GAPS = 8;
 
-    private boolean mRequestStop = false;
+    // How long the encoding thread waits for a codec input buffer before draining
+    // the output again. Should be smaller than the duration of a single frame.
+    private static final long INPUT_BUFFER_WAIT_US = 5000;
+
+    // About 20 times per second, which is enough for a VU meter.
+    @SuppressWarnings("WeakerAccess")
+    public static final long LEVEL_INTERVAL_MILLIS = 50;
+
+    private volatile boolean mRequestStop = false;
+    // Notified when stop is requested and when a byte buffer is recycled.
+    private final Object mLock = new Object();
     private AudioEncodingThread mEncoder;
     private AudioRecordingThread mRecorder;
     private ByteBufferPool mByteBufferPool;
     private final AudioTimestamp mTimestamp;
     private AudioConfig mConfig;
+    // Same as mConfig, but with the channels that come out of the processor chain.
+    private AudioConfig mEncoderConfig;
+    private final AudioProcessorChain mProcessorChain;
     private InputBufferPool mInputBufferPool = new InputBufferPool();
     private final LinkedBlockingQueue<InputBuffer> mInputBufferQueue = new LinkedBlockingQueue<>();
     private AudioNoise mAudioNoise;
+    private final AudioLevelMeter mLevelMeter = new AudioLevelMeter(LEVEL_INTERVAL_MILLIS);
+    private volatile LevelListener mLevelListener;
+
+    // Stats, written by the recording thread only.
+    private volatile int mDroppedFrames;
+    private volatile int mMaxQueueSize;
+    private long mQueueSizeSum;
+    private int mQueueSizeSamples;
 
     // Just to debug performance.
     private int mDebugSendCount = 0;
@@ -53,6 +90,11 @@ public class AudioMediaEncoder extends MediaEncoder {
     public AudioMediaEncoder(@NonNull AudioConfig config) {
         super("AudioEncoder");
         mConfig = config.copy();
+        mProcessorChain = new AudioProcessorChain(mConfig.processors,
+                mConfig.samplingFrequency, mConfig.channels);
+        mEncoderConfig = mConfig.copy();
+        mEncoderConfig.channels = mProcessorChain.getOutputChannels();
+        // Timestamps are computed from the bytes we read, so they use the input byte rate.
         mTimestamp = new AudioTimestamp(mConfig.byteRate());
         // These two were in onPrepare() but it's better to do warm-up here
         // since thread and looper creation is expensive.
@@ -65,26 +107,17 @@ public class AudioMediaEncoder extends MediaEncoder {
     protected void onPrepare(@NonNull MediaEncoderEngine.Controller controller, long maxLengthUs) {
         final MediaFormat audioFormat = MediaFormat.createAudioFormat(
                 mConfig.mimeType,
-                mConfig.samplingFrequency,
-                mConfig.channels);
+                mEncoderConfig.samplingFrequency,
+                mEncoderConfig.channels);
         audioFormat.setInteger(MediaFormat.KEY_AAC_PROFILE,
                 MediaCodecInfo.CodecProfileLevel.AACObjectLC);
-        audioFormat.setInteger(MediaFormat.KEY_CHANNEL_MASK, mConfig.audioFormatChannels());
+        audioFormat.setInteger(MediaFormat.KEY_CHANNEL_MASK,
+                mEncoderConfig.audioFormatChannels());
         audioFormat.setInteger(MediaFormat.KEY_BIT_RATE, mConfig.bitRate);
-        try {
-            if (mConfig.encoder != null) {
-                mMediaCodec = MediaCodec.createByCodecName(mConfig.encoder);
-            } else {
-                mMediaCodec = MediaCodec.createEncoderByType(mConfig.mimeType);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        mMediaCodec.configure(audioFormat, null, null,
-                MediaCodec.CONFIGURE_FLAG_ENCODE);
+        mMediaCodec = obtainCodec(audioFormat, mConfig.encoder, false).codec;
         mMediaCodec.start();
         mByteBufferPool = new ByteBufferPool(mConfig.frameSize(), mConfig.bufferPoolMaxSize());
-        mAudioNoise = new AudioNoise(mConfig);
+        mAudioNoise = new AudioNoise(mEncoderConfig);
     }
 
     @EncoderThread
@@ -98,7 +131,10 @@ public class AudioMediaEncoder extends MediaEncoder {
     @EncoderThread
     @Override
     protected void onStop() {
-        mRequestStop = true;
+        synchronized (mLock) {
+            mRequestStop = true;
+            mLock.notifyAll();
+        }
     }
 
     @Override
@@ -111,6 +147,7 @@ public class AudioMediaEncoder extends MediaEncoder {
             mByteBufferPool.clear();
             mByteBufferPool = null;
         }
+        mProcessorChain.release();
     }
 
     @Override
@@ -119,15 +156,85 @@ public class AudioMediaEncoder extends MediaEncoder {
     }
 
     /**
-     * Sleeps for some frames duration, to skip them. This can be used to slow down
-     * the recording operation to balance it with encoding.
+     * Sets a listener to be notified of the audio levels while recording.
+     * The levels are computed while a listener is set, which costs one pass over each chunk.
+     * {@link com.otaliastudios.cameraview.video.SnapshotVideoRecorder} always sets one,
+     * and levels are dropped later if there are no camera listeners to receive them.
+     *
+     * @param listener a listener or null
+     */
+    public void setLevelListener(@Nullable LevelListener listener) {
+        mLevelListener = listener;
+    }
+
+    /**
+     * Returns the number of audio frames, each one of {@link AudioConfig#frameSize()} bytes,
+     * that were lost because we could not read them in time. This typically means that
+     * the encoder was too slow and the {@link AudioRecord} buffer overflowed.
+     *
+     * @return the dropped frames
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Returns the max number of audio frames that were waiting to be encoded
+     * at any given time.
+     *
+     * @return the max queue size
      */
-    private void skipFrames(int frames) {
-        try {
-            Thread.sleep(AudioTimestamp.bytesToMillis(
-                    mConfig.frameSize() * frames,
-                    mConfig.byteRate()));
-        } catch (InterruptedException ignore) {}
+    public int getMaxQueueSize() {
+        return mMaxQueueSize;
+    }
+
+    /**
+     * Returns the average number of audio frames that were waiting to be encoded.
+     *
+     * @return the average queue size
+     */
+    public float getAverageQueueSize() {
+        synchronized (mLock) {
+            if (mQueueSizeSamples == 0) return 0F;
+            return (float) mQueueSizeSum / mQueueSizeSamples;
+        }
+    }
+
+    /**
+     * Returns a byte buffer from the pool, waiting for one to be recycled
+     * by the {@link AudioEncodingThread} if needed.
+     *
+     * If endOfStream is false, this returns null as soon as stop is requested. Otherwise,
+     * this waits until a buffer is available, because we can't lose the end of stream frame.
+     *
+     * @param endOfStream true if last read
+     * @return a buffer or null
+     */
+    @Nullable
+    private ByteBuffer awaitByteBuffer(boolean endOfStream) {
+        synchronized (mLock) {
+            ByteBuffer buffer;
+            while ((buffer = mByteBufferPool.get()) == null) {
+                if (!endOfStream && mRequestStop) return null;
+                try {
+                    mLock.wait();
+                } catch (InterruptedException ignore) {}
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Recycles a byte buffer and wakes up the {@link AudioRecordingThread},
+     * in case it was waiting for one.
+     *
+     * @param buffer the buffer
+     */
+    private void recycleByteBuffer(@NonNull ByteBuffer buffer) {
+        synchronized (mLock) {
+            mByteBufferPool.recycle(buffer);
+            mLock.notifyAll();
+        }
     }
 
     /**
@@ -174,18 +281,20 @@ public class AudioMediaEncoder extends MediaEncoder {
                     // We have reached the max length, so stop reading.
                     // However, do not get out of the loop - the controller
                     // will call stop() on us soon. It's not our responsibility
-                    // to stop ourselves.
-                    //noinspection UnnecessaryContinue
-                    continue;
+                    // to stop ourselves. Just wait for it.
+                    synchronized (mLock) {
+                        while (!mRequestStop) {
+                            try {
+                                mLock.wait();
+                            } catch (InterruptedException ignore) {}
+                        }
+                    }
                 }
             }
             LOG.w("Stop was requested. We're out of the loop. Will post an endOfStream.");
             // Last input with 0 length. This will signal the endOfStream.
             // Can't use drain(true); it is only available when writing to the codec InputSurface.
-            boolean didReadEos = false;
-            while (!didReadEos) {
-                didReadEos = read(true);
-            }
+            read(true);
             mAudioRecord.stop();
             mAudioRecord.release();
             mAudioRecord = null;
@@ -193,26 +302,23 @@ public class AudioMediaEncoder extends MediaEncoder {
 
         /**
          * Returns true if we found a buffer and could proceed, false if we found no buffer
-         * so the operation should be performed again by the caller.
+         * because stop was requested while waiting for it.
          * @param endOfStream true if last read
          * @return true if proceeded
          */
         private boolean read(boolean endOfStream) {
-            mCurrentBuffer = mByteBufferPool.get();
-            if (mCurrentBuffer == null) {
+            if (mByteBufferPool.isEmpty()) {
                 // This can happen and it means that encoding is slow with respect to recording.
                 // One might be tempted to fix precisely the next frame presentation time when
                 // this happens, but this is not needed because the current increaseTime()
                 // algorithm will consider delays when they get large.
-                // Sleeping before returning is a good way of balancing the two operations.
-                // However, if endOfStream, we CAN'T lose this frame!
-                if (endOfStream) {
-                    LOG.v("read thread - eos: true - No buffer, retrying.");
-                } else {
-                    LOG.w("read thread - eos: false - Skipping audio frame,",
-                            "encoding is too slow.");
-                    skipFrames(6); // sleep a bit
-                }
+                // Waiting for a buffer is a good way of balancing the two operations.
+                // Frames lost in the meanwhile are counted as gaps in increaseTime().
+                LOG.w("read thread - eos:", endOfStream, "- No buffer, encoding is too slow.",
+                        "Waiting for a buffer to be recycled.");
+            }
+            mCurrentBuffer = awaitByteBuffer(endOfStream);
+            if (mCurrentBuffer == null) {
                 return false;
             } else {
                 mCurrentBuffer.clear();
@@ -237,6 +343,12 @@ public class AudioMediaEncoder extends MediaEncoder {
                     increaseTime(mCurrentReadBytes, endOfStream);
                     LOG.v("read thread - eos:", endOfStream, "- mLastTimeUs:", mLastTimeUs);
                     mCurrentBuffer.limit(mCurrentReadBytes);
+                    mProcessorChain.process(mCurrentBuffer);
+                    LevelListener listener = mLevelListener;
+                    if (listener != null && mLevelMeter.process(mCurrentBuffer,
+                            System.currentTimeMillis())) {
+                        listener.onAudioLevel(mLevelMeter.getRms(), mLevelMeter.getPeak());
+                    }
                     enqueue(mCurrentBuffer, mLastTimeUs, endOfStream);
                 } else if (mCurrentReadBytes == AudioRecord.ERROR_INVALID_OPERATION) {
                     LOG.e("read thread - eos:", endOfStream,
@@ -245,6 +357,16 @@ public class AudioMediaEncoder extends MediaEncoder {
                     LOG.e("read thread - eos:", endOfStream,
                             "- Got AudioRecord.ERROR_BAD_VALUE");
                 }
+                if (mCurrentReadBytes <= 0) {
+                    if (endOfStream) {
+                        // We can't lose the end of stream, or the encoding thread
+                        // would wait for it forever. Send an empty buffer.
+                        mCurrentBuffer.limit(0);
+                        enqueue(mCurrentBuffer, mLastTimeUs, true);
+                    } else {
+                        recycleByteBuffer(mCurrentBuffer);
+                    }
+                }
                 return true;
             }
         }
@@ -260,6 +382,7 @@ public class AudioMediaEncoder extends MediaEncoder {
         private void increaseTime(int readBytes, boolean endOfStream) {
             // Get the latest frame timestamp.
             mLastTimeUs = mTimestamp.increaseUs(readBytes);
+            mDroppedFrames += mTimestamp.getGapCount(mConfig.frameSize());
             if (mFirstTimeUs == Long.MIN_VALUE) {
                 mFirstTimeUs = mLastTimeUs;
                 // Compute the first frame milliseconds as well.
@@ -295,6 +418,12 @@ public class AudioMediaEncoder extends MediaEncoder {
             inputBuffer.length = readBytes;
             inputBuffer.isEndOfStream = isEndOfStream;
             mInputBufferQueue.add(inputBuffer);
+            int queueSize = mInputBufferQueue.size();
+            synchronized (mLock) {
+                mQueueSizeSum += queueSize;
+                mQueueSizeSamples++;
+            }
+            if (queueSize > mMaxQueueSize) mMaxQueueSize = queueSize;
         }
 
         /**
@@ -331,6 +460,8 @@ public class AudioMediaEncoder extends MediaEncoder {
                     break;
                 }
                 noiseBuffer.clear();
+                // Noise goes straight to the encoder, so it must match the output channels.
+                noiseBuffer.limit(mEncoderConfig.frameSize());
                 mAudioNoise.fill(noiseBuffer);
                 noiseBuffer.rewind();
                 enqueue(noiseBuffer, gapStart, false);
@@ -357,43 +488,35 @@ public class AudioMediaEncoder extends MediaEncoder {
 
         @Override
         public void run() {
-            encoding: while (true) {
-                if (mInputBufferQueue.isEmpty()) {
-                    skipFrames(3);
-                } else {
-                    LOG.v("encoding thread - performing", mInputBufferQueue.size(),
-                            "pending operations.");
-                    InputBuffer inputBuffer;
-                    while ((inputBuffer = mInputBufferQueue.peek()) != null) {
-
-                        // Performance logging
-                        if (PERFORMANCE_DEBUG) {
-                            long sendEnd = System.nanoTime() / 1000000;
-                            Long sendStart = mDebugSendStartMap.remove(inputBuffer.timestamp);
-                            //noinspection StatementWithEmptyBody
-                            if (sendStart != null) {
-                                mDebugSendAvgDelay = ((mDebugSendAvgDelay * mDebugSendCount)
-                                        + (sendEnd - sendStart)) / (++mDebugSendCount);
-                                LOG.v("send delay millis:", sendEnd - sendStart,
-                                        "average:", mDebugSendAvgDelay);
-                            } else {
-                                // This input buffer was already processed
-                                // (but tryAcquire failed for now).
-                            }
-                        }
+            while (true) {
+                // Wait for the recording thread to pass us some data.
+                InputBuffer inputBuffer;
+                try {
+                    inputBuffer = mInputBufferQueue.take();
+                } catch (InterruptedException ignore) {
+                    continue;
+                }
 
-                        // Actual work
-                        if (inputBuffer.isEndOfStream) {
-                            acquireInputBuffer(inputBuffer);
-                            encode(inputBuffer);
-                            break encoding;
-                        } else if (tryAcquireInputBuffer(inputBuffer)) {
-                            encode(inputBuffer);
-                        } else {
-                            skipFrames(3);
-                        }
+                // Performance logging
+                if (PERFORMANCE_DEBUG) {
+                    long sendEnd = System.nanoTime() / 1000000;
+                    Long sendStart = mDebugSendStartMap.remove(inputBuffer.timestamp);
+                    if (sendStart != null) {
+                        mDebugSendAvgDelay = ((mDebugSendAvgDelay * mDebugSendCount)
+                                + (sendEnd - sendStart)) / (++mDebugSendCount);
+                        LOG.v("send delay millis:", sendEnd - sendStart,
+                                "average:", mDebugSendAvgDelay);
                     }
                 }
+
+                // Actual work. While we wait for the codec to give us an input buffer,
+                // drain the output so that the codec can make progress.
+                while (!tryAcquireInputBuffer(inputBuffer, INPUT_BUFFER_WAIT_US)) {
+                    drainOutput(false);
+                }
+                boolean eos = inputBuffer.isEndOfStream;
+                encode(inputBuffer);
+                if (eos) break;
             }
             // We got an end of stream.
             mInputBufferPool.clear();
@@ -415,8 +538,7 @@ public class AudioMediaEncoder extends MediaEncoder {
                     buffer.timestamp, "- encoding.");
             // NOTE: this copy is prob. the worst part here for performance
             buffer.data.put(buffer.source);
-            mByteBufferPool.recycle(buffer.source);
-            mInputBufferQueue.remove(buffer);
+            recycleByteBuffer(buffer.source);
             encodeInputBuffer(buffer);
             boolean eos = buffer.isEndOfStream;
             mInputBufferPool.recycle(buffer);
@@ -0,0 +1,122 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+import com.otaliastudios.cameraview.audio.AudioProcessor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a list of {@link AudioProcessor}s on the 16-bit PCM chunks read by the
+ * {@link AudioMediaEncoder} recording thread.
+ *
+ * Processors work in place on the pooled byte buffers. To avoid creating a new
+ * {@link ShortBuffer} view for each chunk, we keep one view per byte buffer: since buffers
+ * come from a bounded {@link ByteBufferPool}, the number of views is bounded as well, and
+ * after the first few chunks {@link #process(ByteBuffer)} does not allocate.
+ *
+ * This class is not thread safe. {@link #process(ByteBuffer)} should always be called
+ * from the same thread.
+ */
+class AudioProcessorChain {
+
+    private final List<AudioProcessor> mProcessors;
+    private final int mInputChannels;
+    private final int mOutputChannels;
+    private final Map<ByteBuffer, ShortBuffer> mViews = new IdentityHashMap<>();
+
+    /**
+     * Creates a new chain and configures all processors, in order.
+     *
+     * @param processors the processors
+     * @param sampleRate the input sample rate
+     * @param channels the input channels
+     */
+    AudioProcessorChain(@NonNull List<AudioProcessor> processors, int sampleRate, int channels) {
+        mProcessors = new ArrayList<>(processors);
+        mInputChannels = channels;
+        for (AudioProcessor processor : mProcessors) {
+            channels = processor.configure(sampleRate, channels);
+            if (channels != 1 && channels != 2) {
+                throw new IllegalStateException("Invalid number of channels after processor "
+                        + processor + ": " + channels);
+            }
+        }
+        mOutputChannels = channels;
+    }
+
+    /**
+     * Whether this chain has no processors.
+     * @return true if empty
+     */
+    boolean isEmpty() {
+        return mProcessors.isEmpty();
+    }
+
+    /**
+     * Returns the number of channels that are passed to the chain.
+     * @return the input channels
+     */
+    int getInputChannels() {
+        return mInputChannels;
+    }
+
+    /**
+     * Returns the number of channels that come out of the chain.
+     * @return the output channels
+     */
+    int getOutputChannels() {
+        return mOutputChannels;
+    }
+
+    /**
+     * Processes the samples between the buffer position and limit, in place.
+     * When this returns, the buffer limit reflects the processed samples, which
+     * might be less than before. The position is not changed.
+     *
+     * @param buffer a buffer holding native order 16-bit samples
+     */
+    void process(@NonNull ByteBuffer buffer) {
+        if (mProcessors.isEmpty()) return;
+        ShortBuffer view = mViews.get(buffer);
+        if (view == null) {
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.clear();
+            view = duplicate.order(ByteOrder.nativeOrder()).asShortBuffer();
+            mViews.put(buffer, view);
+        }
+        int position = buffer.position();
+        view.limit(buffer.limit() / 2);
+        view.position(position / 2);
+        // Indexed loop, so we don't allocate an iterator for each chunk.
+        //noinspection ForLoopReplaceableByForEach
+        for (int i = 0; i < mProcessors.size(); i++) {
+            mProcessors.get(i).process(view);
+        }
+        buffer.limit(view.limit() * 2);
+        buffer.position(position);
+    }
+
+    /**
+     * Returns the number of buffer views that were created so far.
+     * @return the view count
+     */
+    @VisibleForTesting
+    int getViewCount() {
+        return mViews.size();
+    }
+
+    /**
+     * Releases the buffer views.
+     */
+    void release() {
+        mViews.clear();
+    }
+}
@@ -0,0 +1,261 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.view.Surface;
+
+import com.otaliastudios.cameraview.CameraLogger;
+import com.otaliastudios.cameraview.internal.WorkerHandler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+/**
+ * Keeps {@link MediaCodec} encoders created and configured ahead of time, so that
+ * {@link MediaEncoder}s can skip the most expensive part of their preparation.
+ *
+ * We don't know the encoder configuration until a recording starts, so we remember
+ * the format that each track used the last time (one video and one audio template).
+ * Templates are shared by all pools in the process, so that a new camera can warm up
+ * as soon as it opens. Before the first recording of the process, there is nothing to warm up.
+ *
+ * The pool is opened with {@link #open()}, when the camera opens. While it is open,
+ * each call to {@link #warmUp()} creates and configures new codecs for the templates
+ * on a background thread. A codec is then handed out by {@link #obtain(MediaFormat, String,
+ * boolean)} only if it matches exactly the format and the encoder name that are requested,
+ * otherwise a new codec is created as usual.
+ *
+ * Warm codecs are configured but not started, and hold hardware resources: users should call
+ * {@link #release()} as soon as they are not going to record for a while. This also releases
+ * codecs that are still being warmed up, as soon as they are created.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class MediaCodecPool {
+
+    private static final String TAG = MediaCodecPool.class.getSimpleName();
+    private static final CameraLogger LOG = CameraLogger.create(TAG);
+
+    /**
+     * A configured codec, along with its input surface if it was requested.
+     */
+    static class Codec {
+        final MediaCodec codec;
+        final Surface surface;
+
+        private Codec(@NonNull MediaCodec codec, @Nullable Surface surface) {
+            this.codec = codec;
+            this.surface = surface;
+        }
+
+        private void release() {
+            if (surface != null) surface.release();
+            codec.release();
+        }
+    }
+
+    private static class Template {
+        final String key;
+        final MediaFormat format;
+        final String encoder;
+        final boolean inputSurface;
+
+        private Template(@NonNull MediaFormat format, @Nullable String encoder,
+                         boolean inputSurface) {
+            this.key = createKey(format, encoder, inputSurface);
+            this.format = format;
+            this.encoder = encoder;
+            this.inputSurface = inputSurface;
+        }
+    }
+
+    private static final int VIDEO = 0;
+    private static final int AUDIO = 1;
+
+    // Guarded by itself.
+    private static final Template[] sTemplates = new Template[2];
+
+    private final Object mLock = new Object();
+    private final Codec[] mCodecs = new Codec[2];
+    private boolean mOpen;
+    // Incremented by release(), so that warm ups in flight know they are stale.
+    private int mGeneration;
+    private int mPendingWarmUps;
+    private WorkerHandler mWorker;
+
+    /**
+     * Opens the pool and warms up codecs, if there is any template.
+     * This should be called when the camera opens.
+     */
+    public void open() {
+        synchronized (mLock) {
+            mOpen = true;
+        }
+        warmUp();
+    }
+
+    /**
+     * Creates and configures codecs for the formats that were last passed to
+     * {@link #obtain(MediaFormat, String, boolean)}, if they are not available already.
+     * This happens asynchronously. It does nothing if the pool is not open,
+     * or if no recording happened yet.
+     */
+    public void warmUp() {
+        final int generation;
+        synchronized (mLock) {
+            if (!mOpen) return;
+            synchronized (sTemplates) {
+                if (sTemplates[VIDEO] == null && sTemplates[AUDIO] == null) return;
+            }
+            if (mWorker == null) mWorker = WorkerHandler.get("MediaCodecPool");
+            generation = mGeneration;
+            mPendingWarmUps++;
+        }
+        mWorker.post(new Runnable() {
+            @Override
+            public void run() {
+                for (int type = VIDEO; type <= AUDIO; type++) {
+                    warmUp(type, generation);
+                }
+                synchronized (mLock) {
+                    mPendingWarmUps--;
+                    mLock.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void warmUp(int type, int generation) {
+        Template template;
+        synchronized (mLock) {
+            if (generation != mGeneration || mCodecs[type] != null) return;
+            synchronized (sTemplates) {
+                template = sTemplates[type];
+            }
+            if (template == null) return;
+        }
+        long start = System.currentTimeMillis();
+        Codec codec;
+        try {
+            codec = create(template.format, template.encoder, template.inputSurface);
+        } catch (Exception e) {
+            // The codec might be in use by someone else. Not a big deal, we'll
+            // create a new one when needed, and probably fail there.
+            LOG.w("warmUp:", "Could not create codec.", template.key, e);
+            return;
+        }
+        LOG.i("warmUp:", "Created codec.", template.key,
+                "took:", System.currentTimeMillis() - start);
+        synchronized (mLock) {
+            if (generation == mGeneration && mCodecs[type] == null) {
+                mCodecs[type] = codec;
+                return;
+            }
+        }
+        // The pool was released while we were creating the codec.
+        LOG.i("warmUp:", "Pool was released. Releasing codec.", template.key);
+        codec.release();
+    }
+
+    /**
+     * Returns a configured codec for the given format, taking it from the pool if it was
+     * prepared already. The format is remembered, so that the next call to {@link #warmUp()}
+     * prepares a new codec for it.
+     *
+     * @param format the format
+     * @param encoder the encoder name, or null to use the default one
+     * @param inputSurface whether an input surface should be created
+     * @return a configured codec
+     */
+    @NonNull
+    Codec obtain(@NonNull MediaFormat format, @Nullable String encoder, boolean inputSurface) {
+        Template template = new Template(format, encoder, inputSurface);
+        int type = inputSurface ? VIDEO : AUDIO;
+        Codec codec = null;
+        synchronized (mLock) {
+            // If we are warming up, wait. We don't want two instances of the same codec,
+            // and the warm up has probably done most of the work already.
+            while (mPendingWarmUps > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException ignore) {}
+            }
+            if (mCodecs[type] != null) {
+                Template last;
+                synchronized (sTemplates) {
+                    last = sTemplates[type];
+                }
+                if (last != null && last.key.equals(template.key)) {
+                    codec = mCodecs[type];
+                } else {
+                    mCodecs[type].release();
+                }
+                mCodecs[type] = null;
+            }
+            synchronized (sTemplates) {
+                sTemplates[type] = template;
+            }
+        }
+        if (codec != null) {
+            LOG.i("obtain:", "Found a warm codec.", template.key);
+            return codec;
+        }
+        LOG.i("obtain:", "No warm codec. Creating.", template.key);
+        return create(format, encoder, inputSurface);
+    }
+
+    /**
+     * Closes the pool and releases any codec that was prepared. Codecs that are being
+     * prepared right now are released as soon as they are created, so this does not block.
+     * Templates are kept, so that the pool can be opened again later, for example when the
+     * camera reopens. Until then, {@link #warmUp()} does nothing.
+     */
+    public void release() {
+        synchronized (mLock) {
+            mOpen = false;
+            mGeneration++;
+            for (int type = VIDEO; type <= AUDIO; type++) {
+                if (mCodecs[type] != null) {
+                    mCodecs[type].release();
+                    mCodecs[type] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates and configures a new codec, without starting it.
+     *
+     * @param format the format
+     * @param encoder the encoder name, or null to use the default one
+     * @param inputSurface whether an input surface should be created
+     * @return a configured codec
+     */
+    @NonNull
+    static Codec create(@NonNull MediaFormat format, @Nullable String encoder,
+                        boolean inputSurface) {
+        MediaCodec codec;
+        try {
+            if (encoder != null) {
+                codec = MediaCodec.createByCodecName(encoder);
+            } else {
+                codec = MediaCodec.createEncoderByType(format.getString(MediaFormat.KEY_MIME));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        Surface surface = inputSurface ? codec.createInputSurface() : null;
+        return new Codec(codec, surface);
+    }
+
+    @NonNull
+    private static String createKey(@NonNull MediaFormat format, @Nullable String encoder,
+                                    boolean inputSurface) {
+        // MediaFormat.toString() lists all keys and values, which is what we need.
+        return encoder + "/" + inputSurface + "/" + format.toString();
+    }
+}
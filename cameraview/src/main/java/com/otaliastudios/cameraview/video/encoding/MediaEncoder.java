@@ -116,6 +116,7 @@ public abstract class MediaEncoder {
     protected WorkerHandler mWorker;
 
     private MediaEncoderEngine.Controller mController;
+    private MediaCodecPool mCodecPool;
     private int mTrackIndex;
     private OutputBufferPool mOutputBufferPool;
     private MediaCodec.BufferInfo mBufferInfo;
@@ -341,10 +342,23 @@ public abstract class MediaEncoder {
      */
     @SuppressWarnings("WeakerAccess")
     protected boolean tryAcquireInputBuffer(@NonNull InputBuffer holder) {
+        return tryAcquireInputBuffer(holder, INPUT_TIMEOUT_US);
+    }
+
+    /**
+     * Returns a new input buffer and index, waiting at most timeoutUs if none
+     * is available. Callers should check the boolean result - true if the buffer was filled.
+     *
+     * @param holder the input buffer holder
+     * @param timeoutUs the max wait in microseconds
+     * @return true if acquired
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected boolean tryAcquireInputBuffer(@NonNull InputBuffer holder, long timeoutUs) {
         if (mBuffers == null) {
             mBuffers = new MediaCodecBuffers(mMediaCodec);
         }
-        int inputBufferIndex = mMediaCodec.dequeueInputBuffer(INPUT_TIMEOUT_US);
+        int inputBufferIndex = mMediaCodec.dequeueInputBuffer(timeoutUs);
         if (inputBufferIndex < 0) {
             return false;
         } else {
@@ -549,6 +563,38 @@ public abstract class MediaEncoder {
         }
     }
 
+    /**
+     * Sets a pool that will be used to obtain the {@link MediaCodec} instance,
+     * instead of creating it from scratch. Should be called before the encoder is passed
+     * to the {@link MediaEncoderEngine}.
+     *
+     * @param pool a pool or null
+     */
+    public final void setCodecPool(@Nullable MediaCodecPool pool) {
+        mCodecPool = pool;
+    }
+
+    /**
+     * Returns a configured but not started codec for the given format, either taking it
+     * from the {@link MediaCodecPool}, if one was set, or creating it.
+     * Should be called by subclasses in {@link #onPrepare(MediaEncoderEngine.Controller, long)}.
+     *
+     * @param format the format
+     * @param encoder the encoder name, or null to use the default one
+     * @param inputSurface whether an input surface should be created
+     * @return a configured codec
+     */
+    @NonNull
+    final MediaCodecPool.Codec obtainCodec(@NonNull MediaFormat format,
+                                           @Nullable String encoder,
+                                           boolean inputSurface) {
+        if (mCodecPool != null) {
+            return mCodecPool.obtain(format, encoder, inputSurface);
+        } else {
+            return MediaCodecPool.create(format, encoder, inputSurface);
+        }
+    }
+
     /**
      * Should be called by subclasses to pass the milliseconds of the first frame - as soon
      * as this information is available. The milliseconds should be in the
@@ -51,6 +51,10 @@ import java.util.Map;
  * because they reach some limit or constraint (e.g. max duration). For this, they should
  * call {@link Controller#requestStop(int)}. Once all MediaEncoders have stopped, we will
  * actually call {@link #stop()} on ourselves.
+ *
+ * Optionally, the engine can also write a proxy file: a second copy of the video, encoded by a
+ * {@link ProxyVideoMediaEncoder} with its own size and bit rate, into its own muxer.
+ * The audio track, if present, is encoded once and written into both muxers.
  */
 @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
 public class MediaEncoderEngine {
@@ -98,12 +102,20 @@ public class MediaEncoderEngine {
     public final static int END_BY_MAX_SIZE = 2;
 
     private final List<MediaEncoder> mEncoders = new ArrayList<>();
+    private final VideoMediaEncoder mVideoEncoder;
+    private final AudioMediaEncoder mAudioEncoder;
+    private final ProxyVideoMediaEncoder mProxyEncoder;
     private MediaMuxer mMediaMuxer;
+    private MediaMuxer mProxyMuxer;
+    private int mAudioTrack = -1;
+    private int mProxyAudioTrack = -1;
     private int mStartedEncodersCount = 0;
     private int mStoppedEncodersCount = 0;
     private boolean mMediaMuxerStarted = false;
     @SuppressWarnings("FieldCanBeLocal")
-    private final Controller mController = new Controller();
+    private final Controller mController = new Controller(false);
+    @SuppressWarnings("FieldCanBeLocal")
+    private final Controller mProxyController = new Controller(true);
     private final WorkerHandler mControllerThread = WorkerHandler.get("EncoderEngine");
     private final Object mControllerLock = new Object();
     private Listener mListener;
@@ -127,7 +139,37 @@ public class MediaEncoderEngine {
                               final int maxDuration,
                               final long maxSize,
                               @Nullable Listener listener) {
+        this(file, videoEncoder, audioEncoder, null, null,
+                maxDuration, maxSize, listener);
+    }
+
+    /**
+     * Creates a new engine for the given file, with the given encoders and max limits,
+     * and listener to receive events. A proxy file is also written, if proxy file and
+     * encoder are not null. The proxy encoder should be attached to the video encoder,
+     * which is responsible for passing frames to it.
+     *
+     * @param file output file
+     * @param videoEncoder video encoder to use
+     * @param audioEncoder audio encoder to use
+     * @param proxyFile proxy output file
+     * @param proxyEncoder proxy video encoder
+     * @param maxDuration max duration in millis
+     * @param maxSize max size of the output file
+     * @param listener a listener
+     */
+    public MediaEncoderEngine(@NonNull File file,
+                              @NonNull VideoMediaEncoder videoEncoder,
+                              @Nullable AudioMediaEncoder audioEncoder,
+                              @Nullable File proxyFile,
+                              @Nullable ProxyVideoMediaEncoder proxyEncoder,
+                              final int maxDuration,
+                              final long maxSize,
+                              @Nullable Listener listener) {
         mListener = listener;
+        mVideoEncoder = videoEncoder;
+        mAudioEncoder = audioEncoder;
+        mProxyEncoder = proxyFile != null ? proxyEncoder : null;
         mEncoders.add(videoEncoder);
         if (audioEncoder != null) {
             mEncoders.add(audioEncoder);
@@ -135,6 +177,10 @@ public class MediaEncoderEngine {
         try {
             mMediaMuxer = new MediaMuxer(file.toString(),
                     MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            if (mProxyEncoder != null) {
+                mProxyMuxer = new MediaMuxer(proxyFile.toString(),
+                        MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -142,6 +188,7 @@ public class MediaEncoderEngine {
         // Trying to convert the size constraints to duration constraints,
         // because they are super easy to check.
         // This is really naive & probably not accurate, but...
+        // The proxy is not considered here, max size refers to the main file.
         int bitRate = 0;
         for (MediaEncoder encoder : mEncoders) {
             bitRate += encoder.getEncodedBitRate();
@@ -165,6 +212,10 @@ public class MediaEncoderEngine {
         for (MediaEncoder encoder : mEncoders) {
             encoder.prepare(mController, finalMaxDurationUs);
         }
+        if (mProxyEncoder != null) {
+            mEncoders.add(mProxyEncoder);
+            mProxyEncoder.prepare(mProxyController, finalMaxDurationUs);
+        }
     }
 
     /**
@@ -187,6 +238,8 @@ public class MediaEncoderEngine {
     public final void notify(final String event, final Object data) {
         LOG.v("Passing event to encoders:", event);
         for (MediaEncoder encoder : mEncoders) {
+            // The proxy receives frames from the video encoder, not from us.
+            if (encoder == mProxyEncoder) continue;
             encoder.notify(event, data);
         }
     }
@@ -231,6 +284,19 @@ public class MediaEncoderEngine {
             }
             mMediaMuxer = null;
         }
+        if (mProxyMuxer != null) {
+            try {
+                mProxyMuxer.stop();
+            } catch (Exception e) {
+                if (error == null) error = e;
+            }
+            try {
+                mProxyMuxer.release();
+            } catch (Exception e) {
+                if (error == null) error = e;
+            }
+            mProxyMuxer = null;
+        }
         LOG.w("end:", "Dispatching end to listener - reason:", mEndReason, "error:", error);
         if (mListener != null) {
             mListener.onEncodingEnd(mEndReason, error);
@@ -240,6 +306,8 @@ public class MediaEncoderEngine {
         mStartedEncodersCount = 0;
         mStoppedEncodersCount = 0;
         mMediaMuxerStarted = false;
+        mAudioTrack = -1;
+        mProxyAudioTrack = -1;
         mControllerThread.destroy();
         LOG.i("end:", "Completed.");
     }
@@ -250,7 +318,7 @@ public class MediaEncoderEngine {
      */
     @NonNull
     public VideoMediaEncoder getVideoEncoder() {
-        return (VideoMediaEncoder) mEncoders.get(0);
+        return mVideoEncoder;
     }
 
     /**
@@ -260,20 +328,40 @@ public class MediaEncoderEngine {
     @SuppressWarnings("unused")
     @Nullable
     public AudioMediaEncoder getAudioEncoder() {
-        if (mEncoders.size() > 1) {
-            return (AudioMediaEncoder) mEncoders.get(1);
-        } else {
-            return null;
-        }
+        return mAudioEncoder;
+    }
+
+    /**
+     * Returns the current proxy encoder.
+     * @return the current proxy encoder
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public ProxyVideoMediaEncoder getProxyEncoder() {
+        return mProxyEncoder;
     }
 
     /**
      * A handle for {@link MediaEncoder}s to pass information to this engine.
      * All methods here can be called for multiple threads.
+     *
+     * There is one controller for each output file, but they share the same state:
+     * both muxers are started and stopped together.
      */
     @SuppressWarnings("WeakerAccess")
     public class Controller {
 
+        private final boolean mIsProxy;
+
+        private Controller(boolean isProxy) {
+            mIsProxy = isProxy;
+        }
+
+        @NonNull
+        private MediaMuxer getMuxer() {
+            return mIsProxy ? mProxyMuxer : mMediaMuxer;
+        }
+
         /**
          * Request that the muxer should start. This is not guaranteed to be executed:
          * we wait for all encoders to call this method, and only then, start the muxer.
@@ -285,9 +373,15 @@ public class MediaEncoderEngine {
                 if (mMediaMuxerStarted) {
                     throw new IllegalStateException("Trying to start but muxer started already");
                 }
-                int track = mMediaMuxer.addTrack(format);
-                LOG.w("notifyStarted:", "Assigned track", track, "to format",
-                        format.getString(MediaFormat.KEY_MIME));
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                int track = getMuxer().addTrack(format);
+                LOG.w("notifyStarted:", "Assigned track", track, "to format", mime,
+                        "proxy:", mIsProxy);
+                if (!mIsProxy && mProxyMuxer != null && mime.startsWith("audio/")) {
+                    // Audio is shared: also write it into the proxy file.
+                    mAudioTrack = track;
+                    mProxyAudioTrack = mProxyMuxer.addTrack(format);
+                }
                 if (++mStartedEncodersCount == mEncoders.size()) {
                     LOG.w("notifyStarted:", "All encoders have started.",
                             "Starting muxer and dispatching onEncodingStart().");
@@ -297,6 +391,7 @@ public class MediaEncoderEngine {
                         @Override
                         public void run() {
                             mMediaMuxer.start();
+                            if (mProxyMuxer != null) mProxyMuxer.start();
                             mMediaMuxerStarted = true;
                             if (mListener != null) {
                                 mListener.onEncodingStart();
@@ -359,7 +454,10 @@ public class MediaEncoderEngine {
                         "track:", buffer.trackIndex,
                         "presentation:", buffer.info.presentationTimeUs);
             }
-            mMediaMuxer.writeSampleData(buffer.trackIndex, buffer.data, buffer.info);
+            getMuxer().writeSampleData(buffer.trackIndex, buffer.data, buffer.info);
+            if (!mIsProxy && mProxyAudioTrack >= 0 && buffer.trackIndex == mAudioTrack) {
+                mProxyMuxer.writeSampleData(mProxyAudioTrack, buffer.data, buffer.info);
+            }
             pool.recycle(buffer);
         }
 
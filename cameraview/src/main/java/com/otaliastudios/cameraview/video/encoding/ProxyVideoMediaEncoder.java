@@ -0,0 +1,106 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+import android.os.Build;
+import android.view.Surface;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.otaliastudios.cameraview.CameraLogger;
+
+/**
+ * A video encoder for a second, typically smaller, copy of the video recorded by a
+ * {@link TextureMediaEncoder}, with its own size and bit rate.
+ *
+ * This encoder does not draw anything. The {@link TextureMediaEncoder} it is attached to
+ * (see {@link TextureMediaEncoder#setProxyEncoder(ProxyVideoMediaEncoder)}) renders
+ * each frame once, then copies the result into the input surface of this encoder, using
+ * its own EGL context. This way the camera texture is sampled once for both outputs.
+ * This encoder just drains the codec when notified about a new frame.
+ *
+ * The proxy has its own muxer and output file, see {@link MediaEncoderEngine}.
+ */
+@RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN_MR2)
+public class ProxyVideoMediaEncoder extends VideoMediaEncoder<VideoConfig> {
+
+    private static final String TAG = ProxyVideoMediaEncoder.class.getSimpleName();
+    private static final CameraLogger LOG = CameraLogger.create(TAG);
+
+    final static String FRAME_EVENT = "proxyFrame";
+
+    // Guards the input surface: the TextureMediaEncoder must not draw into it after
+    // we signal the end of stream.
+    private final Object mSurfaceLock = new Object();
+    private boolean mAcceptsFrames;
+
+    public ProxyVideoMediaEncoder(@NonNull VideoConfig config) {
+        super("ProxyVideoEncoder", config);
+    }
+
+    @EncoderThread
+    @Override
+    protected void onStart() {
+        super.onStart();
+        synchronized (mSurfaceLock) {
+            mAcceptsFrames = true;
+        }
+    }
+
+    @EncoderThread
+    @Override
+    protected void onStop() {
+        synchronized (mSurfaceLock) {
+            mAcceptsFrames = false;
+        }
+        super.onStop();
+    }
+
+    /**
+     * The lock that should be held while drawing into the surface
+     * returned by {@link #getInputSurface()}.
+     * @return the lock
+     */
+    @NonNull
+    Object getSurfaceLock() {
+        return mSurfaceLock;
+    }
+
+    /**
+     * Returns the surface that should receive the frames, or null if we
+     * are not accepting frames. Should be called holding {@link #getSurfaceLock()}.
+     * @return the surface or null
+     */
+    @Nullable
+    Surface getInputSurface() {
+        return mAcceptsFrames && !hasReachedMaxLength() ? mSurface : null;
+    }
+
+    int getWidth() {
+        return mConfig.width;
+    }
+
+    int getHeight() {
+        return mConfig.height;
+    }
+
+    @EncoderThread
+    @Override
+    protected void onEvent(@NonNull String event, @Nullable Object data) {
+        if (event.equals(FRAME_EVENT)) {
+            //noinspection ConstantConditions
+            onFrame((Long) data);
+        }
+    }
+
+    private void onFrame(long timestampMillis) {
+        // The frame was rendered already, we just have to count and drain.
+        if (mFrameNumber < 0) return;
+        mFrameNumber++;
+        if (mFrameNumber == 1) {
+            notifyFirstFrameMillis(timestampMillis);
+        }
+        LOG.v("onFrame -", "frameNumber:", mFrameNumber, "- draining.");
+        drainOutput(false);
+    }
+}
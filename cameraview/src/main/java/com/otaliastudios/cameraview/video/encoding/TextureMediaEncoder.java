@@ -1,8 +1,10 @@
 package com.otaliastudios.cameraview.video.encoding;
 
 import android.graphics.SurfaceTexture;
+import android.opengl.GLES20;
 import android.opengl.Matrix;
 import android.os.Build;
+import android.view.Surface;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -10,10 +12,14 @@ import androidx.annotation.RequiresApi;
 
 import com.otaliastudios.cameraview.CameraLogger;
 import com.otaliastudios.cameraview.filter.Filter;
+import com.otaliastudios.cameraview.filter.NoFilter;
+import com.otaliastudios.cameraview.filter.SimpleFilter;
 import com.otaliastudios.cameraview.internal.GlTextureDrawer;
 import com.otaliastudios.cameraview.internal.Pool;
 import com.otaliastudios.opengl.core.EglCore;
 import com.otaliastudios.opengl.surface.EglWindowSurface;
+import com.otaliastudios.opengl.texture.GlFramebuffer;
+import com.otaliastudios.opengl.texture.GlTexture;
 
 /**
  * Default implementation for video encoding.
@@ -39,6 +45,14 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
     });
 
     private long mFirstTimeUs = Long.MIN_VALUE;
+    private volatile long mFirstFrameRenderedMillis = Long.MIN_VALUE;
+
+    // When we have a proxy, we render once into this framebuffer, then copy to both outputs.
+    private ProxyVideoMediaEncoder mProxyEncoder;
+    private EglWindowSurface mProxyWindow;
+    private GlTexture mOutputTexture;
+    private GlFramebuffer mOutputFramebuffer;
+    private GlTextureDrawer mOutputDrawer;
 
     public TextureMediaEncoder(@NonNull TextureConfig config) {
         super(config.copy());
@@ -73,6 +87,28 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
         }
     }
 
+    /**
+     * Returns the time at which the first frame was rendered into the encoder surface,
+     * in the {@link System#currentTimeMillis()} reference, or {@link Long#MIN_VALUE}
+     * if no frame was rendered yet.
+     *
+     * @return the first frame time
+     */
+    public long getFirstFrameRenderedMillis() {
+        return mFirstFrameRenderedMillis;
+    }
+
+    /**
+     * Sets a proxy encoder that should receive a copy of each frame that we render.
+     * The proxy must also be passed to the {@link MediaEncoderEngine}.
+     * Should be called before the encoder is passed to the engine.
+     *
+     * @param proxyEncoder the proxy encoder
+     */
+    public void setProxyEncoder(@Nullable ProxyVideoMediaEncoder proxyEncoder) {
+        mProxyEncoder = proxyEncoder;
+    }
+
     /**
      * Returns a new frame to be filled. See {@link Frame} for details.
      * @return a new frame
@@ -100,6 +136,17 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
         mWindow = new EglWindowSurface(mEglCore, mSurface, true);
         mWindow.makeCurrent();
         mDrawer = new GlTextureDrawer(mConfig.textureId);
+        if (mProxyEncoder != null) {
+            mOutputTexture = new GlTexture(GLES20.GL_TEXTURE0, GLES20.GL_TEXTURE_2D,
+                    mConfig.width, mConfig.height);
+            mOutputFramebuffer = new GlFramebuffer();
+            mOutputFramebuffer.attach(mOutputTexture);
+            // Same hack as MultiFilter: read from the 2D framebuffer texture.
+            String fragmentShader = new NoFilter().getFragmentShader()
+                    .replace("samplerExternalOES ", "sampler2D ");
+            mOutputDrawer = new GlTextureDrawer(mOutputTexture);
+            mOutputDrawer.setFilter(new SimpleFilter(fragmentShader));
+        }
     }
 
     /**
@@ -127,6 +174,7 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
         } else if (getPendingEvents(FRAME_EVENT) > 2) {
             LOG.i("shouldRenderFrame - Dropping, we already have too many pending events:",
                     getPendingEvents(FRAME_EVENT));
+            if (mBitRateController != null) mBitRateController.onFrameDropped();
             return false;
         } else {
             return true;
@@ -158,6 +206,11 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
             return;
         }
 
+        if (mBitRateController != null) {
+            // Pending events include the one we're processing now.
+            mBitRateController.onFrameRendered(getPendingEvents(FRAME_EVENT) - 1);
+        }
+
         // Notify we're got the first frame and its absolute time.
         if (mFrameNumber == 1) {
             notifyFirstFrameMillis(frame.timestampMillis);
@@ -229,13 +282,28 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
                 "hasReachedMaxLength:", hasReachedMaxLength(),
                 "thread:", Thread.currentThread(),
                 "- gl rendering.");
+        if (mProxyEncoder != null) {
+            // Sample the camera texture once, into our framebuffer.
+            mOutputFramebuffer.bind();
+            GLES20.glViewport(0, 0, mConfig.width, mConfig.height);
+        }
         mDrawer.setTextureTransform(transform);
         mDrawer.draw(frame.timestampUs());
         if (mConfig.hasOverlay()) {
             mConfig.overlayDrawer.render(frame.timestampUs());
         }
+        if (mProxyEncoder != null) {
+            GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+            mOutputDrawer.draw(frame.timestampUs());
+        }
         mWindow.setPresentationTime(frame.timestampNanos);
         mWindow.swapBuffers();
+        if (mProxyEncoder != null) {
+            onProxyFrame(frame);
+        }
+        if (mFrameNumber == 1) {
+            mFirstFrameRenderedMillis = System.currentTimeMillis();
+        }
         mFramePool.recycle(frame);
         LOG.i("onEvent -",
                 "frameNumber:", mFrameNumber,
@@ -245,10 +313,51 @@ public class TextureMediaEncoder extends VideoMediaEncoder<TextureConfig> {
                 "- gl rendered.");
     }
 
+    /**
+     * Copies the frame that was just rendered into the proxy encoder surface,
+     * then notifies the proxy so that it can drain its codec.
+     *
+     * @param frame the frame
+     */
+    private void onProxyFrame(@NonNull Frame frame) {
+        synchronized (mProxyEncoder.getSurfaceLock()) {
+            Surface surface = mProxyEncoder.getInputSurface();
+            if (surface == null) return;
+            if (mProxyWindow == null) {
+                // The proxy owns the surface, so we should not release it.
+                mProxyWindow = new EglWindowSurface(mEglCore, surface, false);
+            }
+            mProxyWindow.makeCurrent();
+            GLES20.glViewport(0, 0, mProxyEncoder.getWidth(), mProxyEncoder.getHeight());
+            mOutputDrawer.draw(frame.timestampUs());
+            mProxyWindow.setPresentationTime(frame.timestampNanos);
+            mProxyWindow.swapBuffers();
+        }
+        mWindow.makeCurrent();
+        GLES20.glViewport(0, 0, mConfig.width, mConfig.height);
+        mProxyEncoder.notify(ProxyVideoMediaEncoder.FRAME_EVENT, frame.timestampMillis);
+    }
+
     @Override
     protected void onStopped() {
         super.onStopped();
         mFramePool.clear();
+        if (mProxyWindow != null) {
+            mProxyWindow.release();
+            mProxyWindow = null;
+        }
+        if (mOutputDrawer != null) {
+            mOutputDrawer.release();
+            mOutputDrawer = null;
+        }
+        if (mOutputFramebuffer != null) {
+            mOutputFramebuffer.release();
+            mOutputFramebuffer = null;
+        }
+        if (mOutputTexture != null) {
+            mOutputTexture.release();
+            mOutputTexture = null;
+        }
         if (mWindow != null) {
             mWindow.release();
             mWindow = null;
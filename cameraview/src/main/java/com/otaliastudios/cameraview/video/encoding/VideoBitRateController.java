@@ -0,0 +1,145 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Adapts the video encoder bit rate to the backpressure that we observe while encoding.
+ * This is used by {@link VideoMediaEncoder} when {@link VideoConfig#minBitRate} is set.
+ *
+ * We collect three signals on the {@link EncoderThread}:
+ * - the number of pending frame events when a frame is rendered, see
+ *   {@link #onFrameRendered(int)}
+ * - the number of frames that were dropped because we were late, see {@link #onFrameDropped()}
+ * - the time it took to write each output buffer into the muxer, see
+ *   {@link #onOutputWritten(long)}
+ *
+ * Every {@link #WINDOW_MILLIS} we look at these values and decide whether the encoder is
+ * congested. If it is, the bit rate is decreased multiplicatively, so we react quickly to
+ * thermal throttling. If it is not for a few windows in a row, the bit rate is increased
+ * by a small step, up to the max value. This is basically the AIMD scheme used by network
+ * congestion control, and it avoids oscillations at the edge of the encoder capacity.
+ *
+ * This class is not thread safe. All methods should be called from the same thread.
+ */
+class VideoBitRateController {
+
+    @VisibleForTesting static final long WINDOW_MILLIS = 1000;
+    @VisibleForTesting static final float DECREASE_FACTOR = 0.8F;
+    @VisibleForTesting static final float INCREASE_FACTOR = 0.05F;
+    @VisibleForTesting static final int INCREASE_WINDOWS = 3;
+
+    // Frames are dropped in TextureMediaEncoder when two more frames are waiting behind
+    // the current one. We want to act before this happens.
+    private static final float MAX_AVERAGE_PENDING_FRAMES = 1F;
+    private static final float MAX_DROPPED_FRAMES_RATIO = 0.05F;
+    // The muxer write should take a small fraction of the frame interval.
+    private static final float MAX_WRITE_FRAME_INTERVAL_RATIO = 0.25F;
+
+    private final int mMinBitRate;
+    private final int mMaxBitRate;
+    private final long mFrameIntervalUs;
+    private int mBitRate;
+
+    private long mWindowStartMillis = Long.MIN_VALUE;
+    private int mRenderedFrames;
+    private int mDroppedFrames;
+    private long mPendingFrames;
+    private int mWrites;
+    private long mWriteTimeUs;
+    private int mClearWindows;
+
+    /**
+     * Creates a new controller.
+     *
+     * @param bitRate the initial bit rate
+     * @param minBitRate the min bit rate
+     * @param maxBitRate the max bit rate
+     * @param frameRate the encoder frame rate
+     */
+    VideoBitRateController(int bitRate, int minBitRate, int maxBitRate, int frameRate) {
+        mMinBitRate = Math.min(minBitRate, maxBitRate);
+        mMaxBitRate = Math.max(minBitRate, maxBitRate);
+        mFrameIntervalUs = 1000000L / Math.max(frameRate, 1);
+        mBitRate = Math.max(mMinBitRate, Math.min(mMaxBitRate, bitRate));
+    }
+
+    /**
+     * Returns the bit rate that the encoder should be using.
+     * @return the current bit rate
+     */
+    int getBitRate() {
+        return mBitRate;
+    }
+
+    /**
+     * A frame was rendered into the encoder surface.
+     * @param pendingFrames the number of frames waiting to be rendered after this one
+     */
+    void onFrameRendered(int pendingFrames) {
+        mRenderedFrames++;
+        mPendingFrames += pendingFrames;
+    }
+
+    /**
+     * A frame was dropped because the encoder thread was late.
+     */
+    void onFrameDropped() {
+        mDroppedFrames++;
+    }
+
+    /**
+     * An output buffer was written into the muxer.
+     * @param durationUs the time it took, in microseconds
+     */
+    void onOutputWritten(long durationUs) {
+        mWrites++;
+        mWriteTimeUs += durationUs;
+    }
+
+    /**
+     * Evaluates the signals collected so far, if enough time has passed.
+     *
+     * @param nowMillis the current time in millis
+     * @return true if {@link #getBitRate()} has changed
+     */
+    boolean update(long nowMillis) {
+        if (mWindowStartMillis == Long.MIN_VALUE) {
+            mWindowStartMillis = nowMillis;
+            return false;
+        }
+        if (nowMillis - mWindowStartMillis < WINDOW_MILLIS) return false;
+        int frames = mRenderedFrames + mDroppedFrames;
+        boolean congested = false;
+        if (frames > 0) {
+            float droppedRatio = (float) mDroppedFrames / frames;
+            float averagePending = mRenderedFrames == 0 ? 0F
+                    : (float) mPendingFrames / mRenderedFrames;
+            congested = droppedRatio > MAX_DROPPED_FRAMES_RATIO
+                    || averagePending > MAX_AVERAGE_PENDING_FRAMES;
+        }
+        if (mWrites > 0) {
+            long averageWriteUs = mWriteTimeUs / mWrites;
+            congested = congested
+                    || averageWriteUs > mFrameIntervalUs * MAX_WRITE_FRAME_INTERVAL_RATIO;
+        }
+        mWindowStartMillis = nowMillis;
+        mRenderedFrames = 0;
+        mDroppedFrames = 0;
+        mPendingFrames = 0;
+        mWrites = 0;
+        mWriteTimeUs = 0;
+
+        int newBitRate = mBitRate;
+        if (congested) {
+            mClearWindows = 0;
+            newBitRate = Math.max(mMinBitRate, (int) (mBitRate * DECREASE_FACTOR));
+        } else if (++mClearWindows >= INCREASE_WINDOWS) {
+            mClearWindows = 0;
+            int step = Math.max(1, (int) (mMaxBitRate * INCREASE_FACTOR));
+            newBitRate = (int) Math.min((long) mMaxBitRate, (long) mBitRate + step);
+        }
+        if (newBitRate == mBitRate) return false;
+        mBitRate = newBitRate;
+        return true;
+    }
+}
@@ -10,6 +10,8 @@ public class VideoConfig {
     public int width;
     public int height;
     public int bitRate;
+    public int minBitRate; // 0 = no adaptive bit rate
+    public int maxBitRate;
     public int frameRate;
     public int rotation;
     public String mimeType;
@@ -19,9 +21,15 @@ public class VideoConfig {
         output.width = this.width;
         output.height = this.height;
         output.bitRate = this.bitRate;
+        output.minBitRate = this.minBitRate;
+        output.maxBitRate = this.maxBitRate;
         output.frameRate = this.frameRate;
         output.rotation = this.rotation;
         output.mimeType = this.mimeType;
         output.encoder = this.encoder;
     }
+
+    boolean hasAdaptiveBitRate() {
+        return minBitRate > 0;
+    }
 }
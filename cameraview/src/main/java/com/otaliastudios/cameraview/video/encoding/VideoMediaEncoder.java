@@ -5,6 +5,7 @@ import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.os.Build;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import android.os.Bundle;
@@ -12,8 +13,6 @@ import android.view.Surface;
 
 import com.otaliastudios.cameraview.CameraLogger;
 
-import java.io.IOException;
-
 /**
  * Base class for video encoding.
  *
@@ -44,10 +43,18 @@ abstract class VideoMediaEncoder<C extends VideoConfig> extends MediaEncoder {
     @SuppressWarnings("WeakerAccess")
     protected int mFrameNumber = -1;
 
+    @SuppressWarnings("WeakerAccess")
+    @Nullable
+    protected VideoBitRateController mBitRateController;
+
     private boolean mSyncFrameFound = false;
 
     VideoMediaEncoder(@NonNull C config) {
-        super("VideoEncoder");
+        this("VideoEncoder", config);
+    }
+
+    VideoMediaEncoder(@NonNull String name, @NonNull C config) {
+        super(name);
         mConfig = config;
     }
 
@@ -70,18 +77,20 @@ abstract class VideoMediaEncoder<C extends VideoConfig> extends MediaEncoder {
         format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, 1); // seconds between key frames!
         format.setInteger("rotation-degrees", mConfig.rotation);
 
-        try {
-            if (mConfig.encoder != null) {
-                mMediaCodec = MediaCodec.createByCodecName(mConfig.encoder);
-            } else {
-                mMediaCodec = MediaCodec.createEncoderByType(mConfig.mimeType);
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        mMediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-        mSurface = mMediaCodec.createInputSurface();
+        MediaCodecPool.Codec codec = obtainCodec(format, mConfig.encoder, true);
+        mMediaCodec = codec.codec;
+        mSurface = codec.surface;
         mMediaCodec.start();
+
+        // Changing the bit rate on the fly is only possible since API 19.
+        if (mConfig.hasAdaptiveBitRate() && Build.VERSION.SDK_INT >= 19) {
+            int maxBitRate = mConfig.maxBitRate > 0 ? mConfig.maxBitRate : mConfig.bitRate;
+            mBitRateController = new VideoBitRateController(mConfig.bitRate,
+                    mConfig.minBitRate, maxBitRate, mConfig.frameRate);
+            LOG.i("onPrepare:", "adaptive bit rate enabled.",
+                    "min:", mConfig.minBitRate,
+                    "max:", maxBitRate);
+        }
     }
 
     @EncoderThread
@@ -123,7 +132,7 @@ abstract class VideoMediaEncoder<C extends VideoConfig> extends MediaEncoder {
             if (hasFlag) {
                 LOG.w("onWriteOutput:", "SYNC FRAME FOUND!");
                 mSyncFrameFound = true;
-                super.onWriteOutput(pool, buffer);
+                writeOutput(pool, buffer);
             } else {
                 LOG.w("onWriteOutput:", "DROPPING FRAME and requesting a sync frame soon.");
                 if (Build.VERSION.SDK_INT >= 19) {
@@ -134,7 +143,33 @@ abstract class VideoMediaEncoder<C extends VideoConfig> extends MediaEncoder {
                 pool.recycle(buffer);
             }
         } else {
+            writeOutput(pool, buffer);
+        }
+    }
+
+    /**
+     * Writes the buffer through the superclass implementation
+     * and, if adaptive bit rate is enabled, measures the muxer latency and eventually
+     * applies the new bit rate to the codec.
+     *
+     * @param pool the buffer pool
+     * @param buffer the buffer
+     */
+    private void writeOutput(@NonNull OutputBufferPool pool, @NonNull OutputBuffer buffer) {
+        if (mBitRateController == null) {
             super.onWriteOutput(pool, buffer);
+            return;
+        }
+        long startNanos = System.nanoTime();
+        super.onWriteOutput(pool, buffer);
+        mBitRateController.onOutputWritten((System.nanoTime() - startNanos) / 1000L);
+        if (mBitRateController.update(System.currentTimeMillis())
+                && Build.VERSION.SDK_INT >= 19) {
+            int bitRate = mBitRateController.getBitRate();
+            LOG.i("writeOutput:", "changing bit rate to", bitRate);
+            Bundle params = new Bundle();
+            params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+            mMediaCodec.setParameters(params);
         }
     }
 
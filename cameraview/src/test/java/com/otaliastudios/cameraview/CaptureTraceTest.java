@@ -0,0 +1,102 @@
+package com.otaliastudios.cameraview;
+
+
+import com.otaliastudios.cameraview.internal.CaptureTracer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureTraceTest {
+
+    private final static long MS = 1000000L;
+
+    @Test
+    public void testSpans() {
+        CaptureTracer tracer = new CaptureTracer();
+        tracer.begin(CaptureTrace.STAGE_QUEUE);
+        tracer.end(CaptureTrace.STAGE_QUEUE);
+        tracer.begin(CaptureTrace.STAGE_CAPTURE);
+        tracer.end(CaptureTrace.STAGE_CAPTURE);
+        CaptureTrace trace = new CaptureTrace(tracer, false, true);
+        assertFalse(trace.isVideo());
+        assertTrue(trace.isSnapshot());
+        List<CaptureTrace.Span> spans = trace.getSpans();
+        assertEquals(2, spans.size());
+        assertEquals(CaptureTrace.STAGE_QUEUE, spans.get(0).getName());
+        assertEquals(CaptureTrace.STAGE_CAPTURE, spans.get(1).getName());
+        CaptureTrace.Span queue = spans.get(0);
+        CaptureTrace.Span capture = spans.get(1);
+        assertTrue(queue.getEndNanos() >= queue.getStartNanos());
+        assertTrue(capture.getStartNanos() >= queue.getEndNanos());
+        assertTrue(trace.getDuration(CaptureTrace.STAGE_CAPTURE) >= 0);
+        assertEquals(-1, trace.getDuration(CaptureTrace.STAGE_ENCODING));
+        assertNull(trace.getSpan(CaptureTrace.STAGE_ENCODING));
+    }
+
+    @Test
+    public void testRecordedOnce() {
+        CaptureTracer tracer = new CaptureTracer();
+        tracer.begin(CaptureTrace.STAGE_QUEUE);
+        tracer.end(CaptureTrace.STAGE_QUEUE);
+        long start = tracer.getStartNanos(0);
+        long end = tracer.getEndNanos(0);
+        // A second run, like a metering retry, does not change the span.
+        tracer.begin(CaptureTrace.STAGE_QUEUE);
+        tracer.end(CaptureTrace.STAGE_QUEUE);
+        assertEquals(1, tracer.getCount());
+        assertEquals(start, tracer.getStartNanos(0));
+        assertEquals(end, tracer.getEndNanos(0));
+    }
+
+    @Test
+    public void testEndWithoutBegin() {
+        CaptureTracer tracer = new CaptureTracer();
+        tracer.end(CaptureTrace.STAGE_CAPTURE);
+        assertEquals(0, tracer.getCount());
+        CaptureTrace trace = new CaptureTrace(tracer, true, false);
+        assertTrue(trace.getSpans().isEmpty());
+        assertEquals(0, trace.getTotalDuration());
+    }
+
+    @Test
+    public void testUnfinishedSpan() {
+        CaptureTracer tracer = new CaptureTracer();
+        tracer.begin(CaptureTrace.STAGE_RECORDING);
+        CaptureTrace trace = new CaptureTrace(tracer, true, false);
+        CaptureTrace.Span span = trace.getSpan(CaptureTrace.STAGE_RECORDING);
+        //noinspection ConstantConditions
+        assertEquals(-1, span.getEndNanos());
+        assertEquals(-1, span.getDuration());
+        assertEquals(0, trace.getTotalDuration());
+    }
+
+    @Test
+    public void testTotalDuration() {
+        CaptureTracer tracer = new CaptureTracer();
+        long t = System.nanoTime();
+        tracer.begin(CaptureTrace.STAGE_QUEUE, t);
+        tracer.end(CaptureTrace.STAGE_QUEUE, t + 2 * MS);
+        tracer.begin(CaptureTrace.STAGE_DISPATCH, t + 22 * MS);
+        tracer.end(CaptureTrace.STAGE_DISPATCH, t + 25 * MS);
+        CaptureTrace trace = new CaptureTrace(tracer, false, false);
+        // The gap between stages is part of the total.
+        assertEquals(25, trace.getTotalDuration());
+        assertEquals(2, trace.getDuration(CaptureTrace.STAGE_QUEUE));
+        assertEquals(3, trace.getDuration(CaptureTrace.STAGE_DISPATCH));
+    }
+
+    @Test
+    public void testBounded() {
+        CaptureTracer tracer = new CaptureTracer();
+        for (int i = 0; i < 100; i++) {
+            tracer.begin("stage" + i);
+        }
+        assertTrue(tracer.getCount() < 100);
+    }
+}
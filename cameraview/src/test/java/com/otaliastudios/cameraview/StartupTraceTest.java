@@ -0,0 +1,104 @@
+package com.otaliastudios.cameraview;
+
+
+import com.otaliastudios.cameraview.internal.StartupTracer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTraceTest {
+
+    private final static long MS = 1000000L;
+
+    @Test
+    public void testJobs() {
+        StartupTracer tracer = new StartupTracer();
+        long t = tracer.getStartNanos();
+        tracer.onJobCompleted("OFF >> ENGINE", t, t + MS, t + 30 * MS, true);
+        tracer.onJobCompleted("facing", t + 2 * MS, t + 30 * MS, t + 31 * MS, true);
+        tracer.onJobCompleted("ENGINE >> BIND", t, t + 31 * MS, t + 41 * MS, true);
+        tracer.finish();
+        StartupTrace trace = new StartupTrace(tracer);
+        List<StartupTrace.Job> jobs = trace.getJobs();
+        assertEquals(3, jobs.size());
+
+        StartupTrace.Job engine = jobs.get(0);
+        assertTrue(engine.isStateChange());
+        assertEquals(StartupTrace.PHASE_ENGINE, engine.getPhase());
+        assertEquals(1, engine.getQueueWait());
+        assertEquals(29, engine.getDuration());
+
+        StartupTrace.Job facing = jobs.get(1);
+        assertFalse(facing.isStateChange());
+        assertNull(facing.getPhase());
+        assertEquals(28, facing.getQueueWait());
+
+        // The bind job waited for the engine.
+        assertEquals(31, trace.getPhase(StartupTrace.PHASE_BIND).getQueueWait());
+        assertEquals(10, trace.getPhaseDuration(StartupTrace.PHASE_BIND));
+        assertEquals(-1, trace.getPhaseDuration(StartupTrace.PHASE_PREVIEW));
+    }
+
+    @Test
+    public void testAbortedPhase() {
+        StartupTracer tracer = new StartupTracer();
+        long t = tracer.getStartNanos();
+        // Bind is aborted when there is no surface, then retried.
+        tracer.onJobCompleted("ENGINE >> BIND", t, t + MS, t + MS, false);
+        tracer.onJobCompleted("ENGINE >> BIND", t + 5 * MS, t + 5 * MS, t + 12 * MS, true);
+        tracer.finish();
+        StartupTrace trace = new StartupTrace(tracer);
+        assertEquals(2, trace.getJobs().size());
+        assertFalse(trace.getJobs().get(0).isSuccessful());
+        assertEquals(7, trace.getPhaseDuration(StartupTrace.PHASE_BIND));
+    }
+
+    @Test
+    public void testFinish() {
+        StartupTracer tracer = new StartupTracer();
+        long end = tracer.getStartNanos() + 20 * MS;
+        tracer.finish(end);
+        assertEquals(end, tracer.getEndNanos());
+        tracer.finish(end + MS);
+        assertEquals(end, tracer.getEndNanos());
+        // Jobs after the end are not recorded.
+        tracer.onJobCompleted("facing", end, end, end, true);
+        assertEquals(0, tracer.getCount());
+        assertEquals(20, new StartupTrace(tracer).getTotalDuration());
+    }
+
+    @Test
+    public void testBounded() {
+        StartupTracer tracer = new StartupTracer();
+        for (int i = 0; i < 100; i++) {
+            tracer.onJobCompleted("job" + i, 0, 0, 0, true);
+        }
+        assertTrue(tracer.getCount() < 100);
+    }
+
+    @Test
+    public void testChromeTrace() {
+        StartupTracer tracer = new StartupTracer();
+        long t = tracer.getStartNanos();
+        tracer.onJobCompleted("OFF >> ENGINE", t, t + MS, t + 3 * MS, true);
+        tracer.onJobCompleted("a \"quoted\" job", t, t + 3 * MS, t + 4 * MS, false);
+        tracer.finish();
+        String json = new StartupTrace(tracer).toChromeTrace();
+        assertTrue(json.startsWith("{\"traceEvents\":["));
+        assertTrue(json.endsWith("],\"displayTimeUnit\":\"ms\"}"));
+        assertTrue(json.contains("{\"name\":\"OFF >> ENGINE\",\"cat\":\"state\",\"ph\":\"X\","
+                + "\"pid\":1,\"tid\":1,\"ts\":1000,\"dur\":2000,\"args\":{\"successful\":true}}"));
+        assertTrue(json.contains("{\"name\":\"OFF >> ENGINE\",\"cat\":\"queue\",\"ph\":\"X\","
+                + "\"pid\":1,\"tid\":2,\"ts\":0,\"dur\":1000,\"args\":{\"successful\":true}}"));
+        assertTrue(json.contains("\"name\":\"a \\\"quoted\\\" job\",\"cat\":\"job\""));
+        // One event for the whole startup, plus two per job.
+        int events = json.split("\"ph\":\"X\"").length - 1;
+        assertEquals(5, events);
+    }
+}
@@ -0,0 +1,141 @@
+package com.otaliastudios.cameraview.audio;
+
+
+import org.junit.Test;
+
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AudioProcessorTest {
+
+    private final static int SAMPLE_RATE = 48000;
+
+    @Test
+    public void testGain() {
+        GainAudioProcessor processor = new GainAudioProcessor(2F);
+        assertEquals(2, processor.configure(SAMPLE_RATE, 2));
+        ShortBuffer buffer = ShortBuffer.wrap(new short[]{ 100, -100, 20000, -20000 });
+        processor.process(buffer);
+        assertEquals(200, buffer.get(0));
+        assertEquals(-200, buffer.get(1));
+        assertEquals(Short.MAX_VALUE, buffer.get(2));
+        assertEquals(Short.MIN_VALUE, buffer.get(3));
+    }
+
+    @Test
+    public void testGain_respectsPosition() {
+        GainAudioProcessor processor = new GainAudioProcessor(2F);
+        processor.configure(SAMPLE_RATE, 1);
+        ShortBuffer buffer = ShortBuffer.wrap(new short[]{ 1, 1, 1 });
+        buffer.position(1);
+        buffer.limit(2);
+        processor.process(buffer);
+        buffer.clear();
+        assertEquals(1, buffer.get(0));
+        assertEquals(2, buffer.get(1));
+        assertEquals(1, buffer.get(2));
+    }
+
+    @Test
+    public void testDownmix() {
+        DownmixAudioProcessor processor = new DownmixAudioProcessor();
+        assertEquals(1, processor.configure(SAMPLE_RATE, 2));
+        ShortBuffer buffer = ShortBuffer.wrap(new short[]{ 100, 300, -100, -300,
+                Short.MAX_VALUE, Short.MAX_VALUE });
+        processor.process(buffer);
+        assertEquals(0, buffer.position());
+        assertEquals(3, buffer.limit());
+        assertEquals(200, buffer.get(0));
+        assertEquals(-200, buffer.get(1));
+        assertEquals(Short.MAX_VALUE, buffer.get(2));
+    }
+
+    @Test
+    public void testDownmix_mono() {
+        DownmixAudioProcessor processor = new DownmixAudioProcessor();
+        assertEquals(1, processor.configure(SAMPLE_RATE, 1));
+        ShortBuffer buffer = ShortBuffer.wrap(new short[]{ 100, 300 });
+        processor.process(buffer);
+        assertEquals(2, buffer.limit());
+        assertEquals(100, buffer.get(0));
+        assertEquals(300, buffer.get(1));
+    }
+
+    @Test
+    public void testHighPass_removesOffset() {
+        HighPassAudioProcessor processor = new HighPassAudioProcessor(
+                HighPassAudioProcessor.DC_CUTOFF_FREQUENCY);
+        processor.configure(SAMPLE_RATE, 2);
+        short[] samples = new short[SAMPLE_RATE * 2];
+        for (int i = 0; i < samples.length; i += 2) {
+            samples[i] = 1000;
+            samples[i + 1] = -1000;
+        }
+        ShortBuffer buffer = ShortBuffer.wrap(samples);
+        processor.process(buffer);
+        // The first samples pass, then the constant offset decays to zero.
+        assertTrue(buffer.get(0) > 900);
+        assertTrue(buffer.get(1) < -900);
+        assertEquals(0, buffer.get(samples.length - 2));
+        assertEquals(0, buffer.get(samples.length - 1));
+    }
+
+    @Test
+    public void testHighPass_keepsHighFrequencies() {
+        HighPassAudioProcessor processor = new HighPassAudioProcessor(
+                HighPassAudioProcessor.DC_CUTOFF_FREQUENCY);
+        processor.configure(SAMPLE_RATE, 1);
+        // A 1kHz tone over a DC offset.
+        short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (2000 + 10000 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+        }
+        ShortBuffer buffer = ShortBuffer.wrap(samples);
+        processor.process(buffer);
+        long sum = 0;
+        int peak = 0;
+        for (int i = samples.length / 2; i < samples.length; i++) {
+            sum += buffer.get(i);
+            peak = Math.max(peak, Math.abs(buffer.get(i)));
+        }
+        assertEquals(0, sum / (samples.length / 2), 10);
+        assertEquals(10000, peak, 200);
+    }
+
+    @Test
+    public void testNoiseGate() {
+        NoiseGateAudioProcessor processor = new NoiseGateAudioProcessor(0.1F);
+        processor.configure(SAMPLE_RATE, 1);
+        // Some quiet noise followed by a loud signal.
+        short[] samples = new short[SAMPLE_RATE / 2];
+        for (int i = 0; i < samples.length; i++) {
+            short level = i < samples.length / 2 ? (short) 1000 : (short) 10000;
+            samples[i] = i % 2 == 0 ? level : (short) -level;
+        }
+        ShortBuffer buffer = ShortBuffer.wrap(samples);
+        processor.process(buffer);
+        for (int i = 0; i < samples.length / 2; i++) {
+            assertEquals(0, buffer.get(i));
+        }
+        // After the attack time, the signal passes untouched.
+        assertEquals(10000, Math.abs(buffer.get(samples.length - 1)), 1);
+    }
+
+    @Test
+    public void testNoiseGate_releasesSlowly() {
+        NoiseGateAudioProcessor processor = new NoiseGateAudioProcessor(0.1F);
+        processor.configure(SAMPLE_RATE, 2);
+        short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++) samples[i] = 10000;
+        ShortBuffer buffer = ShortBuffer.wrap(samples);
+        processor.process(buffer);
+        // Now the signal is gone, but the gate should not close immediately.
+        buffer.clear();
+        for (int i = 0; i < samples.length; i++) buffer.put(i, (short) 1000);
+        processor.process(buffer);
+        assertTrue(buffer.get(0) > 900);
+        assertTrue(buffer.get(samples.length - 1) < 100);
+    }
+}
@@ -0,0 +1,105 @@
+package com.otaliastudios.cameraview.engine;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestCommitSchedulerTest {
+
+    private final static long FRAME_NANOS = 33 * 1000 * 1000;
+    private final static long MILLI_NANOS = 1000 * 1000;
+
+    private long now;
+    private List<Long> delays;
+    private RequestCommitScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        now = 1000 * FRAME_NANOS;
+        delays = new ArrayList<>();
+        scheduler = new RequestCommitScheduler(new RequestCommitScheduler.Callback() {
+            @Override
+            public void commit() {
+                scheduler.onCommitted(now);
+            }
+
+            @Override
+            public void scheduleCommit(long delayMillis) {
+                delays.add(delayMillis);
+            }
+        });
+    }
+
+    private void change() {
+        scheduler.onChange(now, FRAME_NANOS);
+    }
+
+    @Test
+    public void testFirstChange_commitsImmediately() {
+        change();
+        assertEquals(1, scheduler.getCommitCount());
+        assertEquals(1, scheduler.getChangeCount());
+        assertEquals(0, delays.size());
+    }
+
+    @Test
+    public void testChangesWithinOneFrame_commitOnce() {
+        change();
+        // Like setZoom() called by a pinch gesture, several times within one frame.
+        now += 5 * MILLI_NANOS;
+        change();
+        now += 5 * MILLI_NANOS;
+        change();
+        now += 5 * MILLI_NANOS;
+        change();
+        assertEquals(1, scheduler.getCommitCount());
+        assertEquals(1, delays.size());
+        assertEquals(28L, (long) delays.get(0));
+        now += delays.get(0) * MILLI_NANOS;
+        scheduler.onScheduledCommit();
+        // The three changes after the first one were merged into a single commit.
+        assertEquals(2, scheduler.getCommitCount());
+        assertEquals(4, scheduler.getChangeCount());
+        assertEquals(1, delays.size());
+    }
+
+    @Test
+    public void testChangeAfterOneFrame_commitsImmediately() {
+        change();
+        now += FRAME_NANOS;
+        change();
+        assertEquals(2, scheduler.getCommitCount());
+        assertEquals(0, delays.size());
+    }
+
+    @Test
+    public void testScheduledCommit_skippedIfCommittedMeanwhile() {
+        change();
+        now += MILLI_NANOS;
+        change();
+        assertEquals(1, delays.size());
+        // For example, a template change applies the builder directly.
+        scheduler.onCommitted(now);
+        scheduler.onScheduledCommit();
+        assertEquals(2, scheduler.getCommitCount());
+    }
+
+    @Test
+    public void testScheduledCommit_skippedAfterReset() {
+        change();
+        now += MILLI_NANOS;
+        change();
+        scheduler.reset();
+        scheduler.onScheduledCommit();
+        assertEquals(1, scheduler.getCommitCount());
+        // The next change can schedule again.
+        now += MILLI_NANOS;
+        change();
+        assertEquals(2, delays.size());
+    }
+}
@@ -0,0 +1,206 @@
+package com.otaliastudios.cameraview.engine.action;
+
+
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
+import android.hardware.camera2.TotalCaptureResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+public class ActionDispatcherTest {
+
+    private ActionDispatcher dispatcher;
+    private ActionHolder holder;
+    private CaptureRequest request;
+    private CaptureResult.Key<Integer> first;
+    private CaptureResult.Key<Integer> second;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ActionDispatcher();
+        holder = mock(ActionHolder.class);
+        request = mock(CaptureRequest.class);
+        first = mock(CaptureResult.Key.class);
+        second = mock(CaptureResult.Key.class);
+    }
+
+    private Action action(final CaptureResult.Key<?>... keys) {
+        Action action = mock(Action.class);
+        when(action.getResultKeys()).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                // A new list for each call, which should not reset the filter.
+                return keys.length == 0 ? null : new ArrayList<>(Arrays.asList(keys));
+            }
+        });
+        return action;
+    }
+
+    private TotalCaptureResult total(Integer firstValue, Integer secondValue) {
+        TotalCaptureResult result = mock(TotalCaptureResult.class);
+        when(result.get(first)).thenReturn(firstValue);
+        when(result.get(second)).thenReturn(secondValue);
+        return result;
+    }
+
+    private CaptureResult partial(Integer firstValue, Integer secondValue) {
+        CaptureResult result = mock(CaptureResult.class);
+        when(result.get(first)).thenReturn(firstValue);
+        when(result.get(second)).thenReturn(secondValue);
+        return result;
+    }
+
+    @Test
+    public void testNoKeys_receivesAll() {
+        Action action = action();
+        dispatcher.add(action);
+        TotalCaptureResult result = total(1, 1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result);
+        dispatcher.dispatchCaptureCompleted(holder, request, result);
+        verify(action, times(2)).onCaptureCompleted(holder, request, result);
+    }
+
+    @Test
+    public void testKeys_filtersUnchanged() {
+        Action action = action(first, second);
+        dispatcher.add(action);
+        TotalCaptureResult result1 = total(1, 1);
+        TotalCaptureResult result2 = total(1, 1);
+        TotalCaptureResult result3 = total(1, 2);
+        dispatcher.dispatchCaptureCompleted(holder, request, result1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result2);
+        dispatcher.dispatchCaptureCompleted(holder, request, result3);
+        verify(action, times(1)).onCaptureCompleted(holder, request, result1);
+        verify(action, never()).onCaptureCompleted(holder, request, result2);
+        verify(action, times(1)).onCaptureCompleted(holder, request, result3);
+    }
+
+    @Test
+    public void testKeys_changedKeysResetValues() {
+        Action action = mock(Action.class);
+        List<CaptureResult.Key<?>> firstOnly = Collections.<CaptureResult.Key<?>>singletonList(first);
+        List<CaptureResult.Key<?>> secondOnly = Collections.<CaptureResult.Key<?>>singletonList(second);
+        when(action.getResultKeys()).thenReturn(firstOnly, firstOnly, secondOnly);
+        dispatcher.add(action);
+        TotalCaptureResult result1 = total(1, 1);
+        TotalCaptureResult result2 = total(1, 1);
+        TotalCaptureResult result3 = total(1, 1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result2);
+        dispatcher.dispatchCaptureCompleted(holder, request, result3);
+        verify(action, times(1)).onCaptureCompleted(holder, request, result1);
+        verify(action, never()).onCaptureCompleted(holder, request, result2);
+        // Same values, but the action is now reading a different key.
+        verify(action, times(1)).onCaptureCompleted(holder, request, result3);
+    }
+
+    @Test
+    public void testPartial_ignoresMissingKeys() {
+        Action action = action(first, second);
+        dispatcher.add(action);
+        CaptureResult partial1 = partial(1, null);
+        CaptureResult partial2 = partial(null, null);
+        CaptureResult partial3 = partial(1, null);
+        CaptureResult partial4 = partial(null, 2);
+        dispatcher.dispatchCaptureProgressed(holder, request, partial1);
+        dispatcher.dispatchCaptureProgressed(holder, request, partial2);
+        dispatcher.dispatchCaptureProgressed(holder, request, partial3);
+        dispatcher.dispatchCaptureProgressed(holder, request, partial4);
+        verify(action, times(1)).onCaptureProgressed(holder, request, partial1);
+        // Missing keys do not count as a change to null.
+        verify(action, never()).onCaptureProgressed(holder, request, partial2);
+        verify(action, never()).onCaptureProgressed(holder, request, partial3);
+        verify(action, times(1)).onCaptureProgressed(holder, request, partial4);
+        // The total result is compared with previous total results only, so the
+        // changes seen in partial results are still delivered here.
+        TotalCaptureResult total1 = total(1, 2);
+        TotalCaptureResult total2 = total(1, 2);
+        dispatcher.dispatchCaptureCompleted(holder, request, total1);
+        dispatcher.dispatchCaptureCompleted(holder, request, total2);
+        verify(action, times(1)).onCaptureCompleted(holder, request, total1);
+        verify(action, never()).onCaptureCompleted(holder, request, total2);
+    }
+
+    @Test
+    public void testRemoveDuringDispatch() {
+        final Action action1 = action();
+        final Action action2 = action();
+        final Action action3 = action();
+        final Action added = action();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                // Removes itself and the next action, and adds a new one.
+                dispatcher.remove(action1);
+                dispatcher.remove(action2);
+                dispatcher.add(added);
+                return null;
+            }
+        }).when(action1).onCaptureCompleted(any(ActionHolder.class),
+                any(CaptureRequest.class), any(TotalCaptureResult.class));
+        dispatcher.add(action1);
+        dispatcher.add(action2);
+        dispatcher.add(action3);
+        TotalCaptureResult result1 = total(1, 1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result1);
+        verify(action1, times(1)).onCaptureCompleted(holder, request, result1);
+        verify(action2, never()).onCaptureCompleted(holder, request, result1);
+        verify(action3, times(1)).onCaptureCompleted(holder, request, result1);
+        // Actions added during dispatch are not visited.
+        verify(added, never()).onCaptureCompleted(holder, request, result1);
+        // Removed actions are gone right away.
+        assertEquals(Arrays.asList(action3, added), dispatcher.getActions());
+
+        TotalCaptureResult result2 = total(1, 1);
+        dispatcher.dispatchCaptureCompleted(holder, request, result2);
+        verify(action1, never()).onCaptureCompleted(holder, request, result2);
+        verify(action3, times(1)).onCaptureCompleted(holder, request, result2);
+        verify(added, times(1)).onCaptureCompleted(holder, request, result2);
+        // Removed actions can be added again.
+        dispatcher.add(action1);
+        assertEquals(Arrays.asList(action3, added, action1), dispatcher.getActions());
+    }
+
+    @Test(timeout = 2000)
+    public void testDispatchOutsideLock() {
+        final Action action = action();
+        final List<Action> seen = new ArrayList<>();
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Exception {
+                // Would deadlock if the dispatcher held its lock while calling actions.
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        seen.addAll(dispatcher.getActions());
+                    }
+                });
+                thread.start();
+                thread.join();
+                return null;
+            }
+        }).when(action).onCaptureCompleted(any(ActionHolder.class),
+                any(CaptureRequest.class), any(TotalCaptureResult.class));
+        dispatcher.add(action);
+        dispatcher.dispatchCaptureCompleted(holder, request, total(1, 1));
+        assertEquals(Collections.singletonList(action), seen);
+    }
+}
@@ -0,0 +1,223 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import com.otaliastudios.cameraview.CameraOptions;
+import com.otaliastudios.cameraview.controls.Facing;
+import com.otaliastudios.cameraview.controls.Flash;
+import com.otaliastudios.cameraview.engine.options.CachedCameraOptions;
+import com.otaliastudios.cameraview.size.AspectRatio;
+import com.otaliastudios.cameraview.size.Size;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CameraOptionsCacheTest {
+
+    private final static String FINGERPRINT = "brand/product/device:10/ID/1:user/release-keys";
+    private final static String KEY = CameraOptionsCache.createKey("Camera2", "0", false, 256);
+    private final static String SIGNATURE = CameraOptionsCache.createSignature("0", 1, 90);
+
+    private List<Runnable> saves;
+    private Executor executor;
+
+    @Before
+    public void setUp() {
+        saves = new ArrayList<>();
+        executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                saves.add(command);
+            }
+        };
+    }
+
+    private CameraOptionsCache cache(String fingerprint) {
+        return new CameraOptionsCache(fingerprint, executor);
+    }
+
+    private void flush() {
+        List<Runnable> pending = new ArrayList<>(saves);
+        saves.clear();
+        for (Runnable save : pending) save.run();
+    }
+
+    private static CameraOptions options() {
+        CameraOptions options = CachedCameraOptions.decode("facing=BACK,FRONT;flash=OFF,TORCH;"
+                + "wb=AUTO;hdr=OFF;pictureFormats=JPEG;frameFormats=35;"
+                + "pictureSizes=4000x3000,1920x1080;videoSizes=1920x1080;"
+                + "pictureRatios=4:3,16:9;videoRatios=16:9;zoom=true;af=true;"
+                + "ev=true;evMin=-2.0;evMax=2.0;fpsMin=15.0;fpsMax=30.0;");
+        assertNotNull(options);
+        return options;
+    }
+
+    private static File file() throws Exception {
+        File file = File.createTempFile("options", null);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(KEY, CameraOptionsCache.createKey("Camera2", "0", false, 256));
+        assertNotEquals(KEY, CameraOptionsCache.createKey("Camera2", "1", false, 256));
+        assertNotEquals(KEY, CameraOptionsCache.createKey("Camera2", "0", true, 256));
+        assertNotEquals(KEY, CameraOptionsCache.createKey("Camera1", "0", false, 256));
+    }
+
+    @Test
+    public void testSignature() {
+        assertEquals(SIGNATURE, CameraOptionsCache.createSignature("0", 1, 90));
+        assertNotEquals(SIGNATURE, CameraOptionsCache.createSignature("0", 1, 270));
+    }
+
+    @Test
+    public void testEncoding() {
+        CameraOptions options = options();
+        CameraOptions decoded = CachedCameraOptions.decode(CachedCameraOptions.encode(options));
+        assertNotNull(decoded);
+        assertEquals(options.getSupportedFacing(), decoded.getSupportedFacing());
+        assertEquals(options.getSupportedFlash(), decoded.getSupportedFlash());
+        assertEquals(options.getSupportedPictureSizes(), decoded.getSupportedPictureSizes());
+        assertEquals(options.getSupportedPictureAspectRatios(),
+                decoded.getSupportedPictureAspectRatios());
+        assertEquals(options.getSupportedFrameProcessingFormats(),
+                decoded.getSupportedFrameProcessingFormats());
+        assertTrue(decoded.supports(Facing.FRONT));
+        assertTrue(decoded.supports(Flash.TORCH));
+        assertTrue(decoded.getSupportedPictureSizes().contains(new Size(4000, 3000)));
+        assertTrue(decoded.getSupportedVideoAspectRatios().contains(AspectRatio.of(16, 9)));
+        assertTrue(decoded.isZoomSupported());
+        assertEquals(-2F, decoded.getExposureCorrectionMinValue(), 0F);
+        assertEquals(30F, decoded.getPreviewFrameRateMaxValue(), 0F);
+    }
+
+    @Test
+    public void testEncoding_invalid() {
+        assertNull(CachedCameraOptions.decode(""));
+        assertNull(CachedCameraOptions.decode("facing=BACK;"));
+        String encoded = CachedCameraOptions.encode(options());
+        assertNull(CachedCameraOptions.decode(encoded.replace("BACK", "SIDE")));
+    }
+
+    @Test
+    public void testMemory() {
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        assertNull(cache.getOptions(KEY, SIGNATURE));
+        CameraOptions options = options();
+        cache.putOptions(KEY, SIGNATURE, options);
+        assertSame(options, cache.getOptions(KEY, SIGNATURE));
+
+        List<Size> sizes = Arrays.asList(new Size(1920, 1080), new Size(1280, 720));
+        assertNull(cache.getSizes(KEY, SIGNATURE));
+        cache.putSizes(KEY, SIGNATURE, sizes);
+        assertEquals(sizes, cache.getSizes(KEY, SIGNATURE));
+    }
+
+    @Test
+    public void testDifferentSignature() {
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        String other = CameraOptionsCache.createSignature("0", 1, 270);
+        cache.putOptions(KEY, SIGNATURE, options());
+        assertNull(cache.getOptions(KEY, other));
+        // The entry is discarded, even for the old signature.
+        assertNull(cache.getOptions(KEY, SIGNATURE));
+    }
+
+    @Test
+    public void testDiskStore() throws Exception {
+        File file = file();
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.putOptions(KEY, SIGNATURE, options());
+        cache.putSizes(KEY, SIGNATURE, Arrays.asList(new Size(1920, 1080), new Size(640, 480)));
+        flush();
+
+        CameraOptionsCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        CameraOptions options = other.getOptions(KEY, SIGNATURE);
+        assertNotNull(options);
+        assertEquals(options().getSupportedPictureSizes(), options.getSupportedPictureSizes());
+        assertEquals(options().getSupportedWhiteBalance(), options.getSupportedWhiteBalance());
+        assertEquals(Arrays.asList(new Size(1920, 1080), new Size(640, 480)),
+                other.getSizes(KEY, SIGNATURE));
+    }
+
+    @Test
+    public void testDiskStore_differentSignature() throws Exception {
+        File file = file();
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.putOptions(KEY, SIGNATURE, options());
+        assertNull(cache.getOptions(KEY, CameraOptionsCache.createSignature("1")));
+        flush();
+
+        CameraOptionsCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        assertNull(other.getOptions(KEY, SIGNATURE));
+    }
+
+    @Test
+    public void testDiskStore_differentFingerprint() throws Exception {
+        File file = file();
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.putOptions(KEY, SIGNATURE, options());
+        flush();
+
+        CameraOptionsCache other = cache(FINGERPRINT + "2");
+        other.setDiskStore(file);
+        assertNull(other.getOptions(KEY, SIGNATURE));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDiskStore_batchesWrites() throws Exception {
+        File file = file();
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.putOptions(KEY, SIGNATURE, options());
+        cache.putSizes(KEY + "/preview", SIGNATURE, Arrays.asList(new Size(1920, 1080)));
+        cache.putSizes(KEY + "/frames", SIGNATURE, Arrays.asList(new Size(640, 480)));
+        // Nothing is written until the executor runs, and then it is a single write.
+        assertFalse(file.exists());
+        assertEquals(1, saves.size());
+        flush();
+        assertTrue(file.exists());
+
+        CameraOptionsCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        assertNotNull(other.getOptions(KEY, SIGNATURE));
+        assertEquals(Arrays.asList(new Size(1920, 1080)),
+                other.getSizes(KEY + "/preview", SIGNATURE));
+        assertEquals(Arrays.asList(new Size(640, 480)),
+                other.getSizes(KEY + "/frames", SIGNATURE));
+
+        // Once written, the next change schedules a new write.
+        cache.putOptions(KEY, CameraOptionsCache.createSignature("1"), options());
+        assertEquals(1, saves.size());
+    }
+
+    @Test
+    public void testMemory_doesNotWrite() {
+        CameraOptionsCache cache = cache(FINGERPRINT);
+        cache.putOptions(KEY, SIGNATURE, options());
+        assertEquals(0, saves.size());
+    }
+}
@@ -0,0 +1,176 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import com.otaliastudios.cameraview.size.Size;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EncoderSelectionCacheTest {
+
+    private final static String FINGERPRINT = "brand/product/device:10/ID/1:user/release-keys";
+
+    private List<Runnable> saves;
+    private Executor executor;
+
+    @Before
+    public void setUp() {
+        saves = new ArrayList<>();
+        executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                saves.add(command);
+            }
+        };
+    }
+
+    private EncoderSelectionCache cache(String fingerprint) {
+        return new EncoderSelectionCache(fingerprint, executor);
+    }
+
+    private void flush() {
+        List<Runnable> pending = new ArrayList<>(saves);
+        saves.clear();
+        for (Runnable save : pending) save.run();
+    }
+
+    private static String key(Size size) {
+        return EncoderSelectionCache.createKey("Recorder", "video/avc", "audio/mp4a-latm",
+                size, 1000000, 30, 64000, 44100, 1);
+    }
+
+    private static EncoderSelectionCache.Selection selection() {
+        return new EncoderSelectionCache.Selection("OMX.video", null,
+                new Size(1280, 720), 1000000, 30, 64000, 5000, 2000000);
+    }
+
+    private static File file() throws Exception {
+        File file = File.createTempFile("encoders", null);
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals(key(new Size(1280, 720)), key(new Size(1280, 720)));
+        assertNotEquals(key(new Size(1280, 720)), key(new Size(720, 1280)));
+    }
+
+    @Test
+    public void testMemory() {
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        String key = key(new Size(1280, 720));
+        assertNull(cache.get(key));
+        EncoderSelectionCache.Selection selection = selection();
+        cache.put(key, selection);
+        assertEquals(selection, cache.get(key));
+        assertNull(cache.get(key(new Size(1920, 1080))));
+    }
+
+    @Test
+    public void testInvalidate() {
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        String key = key(new Size(1280, 720));
+        cache.put(key, selection());
+        cache.invalidate(key);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void testSupportedVideoBitRate() {
+        EncoderSelectionCache.Selection selection = selection();
+        assertEquals(5000, selection.getSupportedVideoBitRate(1000));
+        assertEquals(10000, selection.getSupportedVideoBitRate(10000));
+        assertEquals(2000000, selection.getSupportedVideoBitRate(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testDiskStore() throws Exception {
+        File file = file();
+        String key = key(new Size(1280, 720));
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.put(key, selection());
+        flush();
+
+        EncoderSelectionCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        EncoderSelectionCache.Selection selection = other.get(key);
+        assertNotNull(selection);
+        assertEquals("OMX.video", selection.videoEncoder);
+        assertNull(selection.audioEncoder);
+        assertEquals(new Size(1280, 720), selection.videoSize);
+        assertEquals(1000000, selection.videoBitRate);
+        assertEquals(30, selection.videoFrameRate);
+        assertEquals(64000, selection.audioBitRate);
+        assertEquals(5000, selection.getSupportedVideoBitRate(0));
+    }
+
+    @Test
+    public void testDiskStore_invalidate() throws Exception {
+        File file = file();
+        String key = key(new Size(1280, 720));
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.put(key, selection());
+        cache.invalidate(key);
+        flush();
+
+        EncoderSelectionCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        assertNull(other.get(key));
+    }
+
+    @Test
+    public void testDiskStore_differentFingerprint() throws Exception {
+        File file = file();
+        String key = key(new Size(1280, 720));
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.put(key, selection());
+        flush();
+
+        EncoderSelectionCache other = cache(FINGERPRINT + "2");
+        other.setDiskStore(file);
+        assertNull(other.get(key));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testDiskStore_batchesWrites() throws Exception {
+        File file = file();
+        String key = key(new Size(1280, 720));
+        EncoderSelectionCache cache = cache(FINGERPRINT);
+        cache.setDiskStore(file);
+        cache.put(key, selection());
+        cache.invalidate(key);
+        cache.put(key, selection());
+        // Nothing is written until the executor runs, and then it is a single write.
+        assertFalse(file.exists());
+        assertEquals(1, saves.size());
+        flush();
+        assertTrue(file.exists());
+
+        EncoderSelectionCache other = cache(FINGERPRINT);
+        other.setDiskStore(file);
+        assertNotNull(other.get(key));
+
+        // Once written, the next change schedules a new write.
+        cache.invalidate(key);
+        assertEquals(1, saves.size());
+    }
+}
@@ -0,0 +1,168 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExifOrientationTest {
+
+    private final static int ROTATE_90 = 6;
+    private final static int ROTATE_180 = 3;
+
+    // A real JPEG, with a JFIF segment and no EXIF.
+    private static byte[] jfif() throws Exception {
+        BufferedImage image = new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpg", stream));
+        return stream.toByteArray();
+    }
+
+    // SOI, an APP0 segment, an APP1 Exif segment with two IFD0 entries, then EOI.
+    private static byte[] exif(boolean littleEndian, boolean withOrientation, int orientation) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        int entries = withOrientation ? 2 : 1;
+        if (littleEndian) {
+            write(tiff, 'I', 'I', 42, 0, 8, 0, 0, 0);
+            write(tiff, entries, 0);
+            write(tiff, 0x0F, 0x01, 2, 0, 4, 0, 0, 0, 'A', 'B', 'C', 0); // Make
+            if (withOrientation) {
+                write(tiff, 0x12, 0x01, 3, 0, 1, 0, 0, 0, orientation, 0, 0, 0);
+            }
+        } else {
+            write(tiff, 'M', 'M', 0, 42, 0, 0, 0, 8);
+            write(tiff, 0, entries);
+            write(tiff, 0x01, 0x0F, 0, 2, 0, 0, 0, 4, 'A', 'B', 'C', 0); // Make
+            if (withOrientation) {
+                write(tiff, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, orientation, 0, 0);
+            }
+        }
+        write(tiff, 0, 0, 0, 0);
+        byte[] tiffBytes = tiff.toByteArray();
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        write(jpeg, 0xFF, 0xD8);
+        write(jpeg, 0xFF, 0xE0, 0, 4, 0, 0); // APP0
+        int length = 2 + 6 + tiffBytes.length;
+        write(jpeg, 0xFF, 0xE1, (length >> 8) & 0xFF, length & 0xFF);
+        write(jpeg, 'E', 'x', 'i', 'f', 0, 0);
+        jpeg.write(tiffBytes, 0, tiffBytes.length);
+        write(jpeg, 0xFF, 0xD9);
+        return jpeg.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream stream, int... bytes) {
+        for (int b : bytes) stream.write(b);
+    }
+
+    private static File file(byte[] data) throws Exception {
+        File file = File.createTempFile("exif", ".jpg");
+        file.deleteOnExit();
+        FileHelper.write(data, file, false);
+        return file;
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        assertEquals(ROTATE_90, ExifOrientation.read(exif(true, true, ROTATE_90)));
+        assertEquals(ROTATE_90, ExifOrientation.read(exif(false, true, ROTATE_90)));
+        assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(exif(true, false, 0)));
+        assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(jfif()));
+        assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(new byte[]{1, 2, 3}));
+        assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(new byte[0]));
+    }
+
+    @Test
+    public void testRead_truncated() {
+        byte[] jpeg = exif(false, true, ROTATE_90);
+        for (int length = 0; length < 40; length++) {
+            byte[] truncated = new byte[length];
+            System.arraycopy(jpeg, 0, truncated, 0, length);
+            assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(truncated));
+        }
+    }
+
+    @Test
+    public void testPatch_array() {
+        for (boolean littleEndian : new boolean[]{true, false}) {
+            byte[] jpeg = exif(littleEndian, true, ROTATE_90);
+            byte[] expected = exif(littleEndian, true, ROTATE_180);
+            assertTrue(ExifOrientation.patch(jpeg, ROTATE_180));
+            assertArrayEquals(expected, jpeg);
+            assertEquals(ROTATE_180, ExifOrientation.read(jpeg));
+        }
+    }
+
+    @Test
+    public void testPatch_missingTag() throws Exception {
+        byte[] jpeg = exif(true, false, 0);
+        byte[] copy = jpeg.clone();
+        assertFalse(ExifOrientation.patch(jpeg, ROTATE_90));
+        assertArrayEquals(copy, jpeg);
+        assertFalse(ExifOrientation.patch(jfif(), ROTATE_90));
+    }
+
+    @Test
+    public void testPatch_file() throws Exception {
+        File file = file(exif(false, true, ROTATE_90));
+        assertEquals(ROTATE_90, ExifOrientation.read(file));
+        assertTrue(ExifOrientation.patch(file, ROTATE_180));
+        assertEquals(ROTATE_180, ExifOrientation.read(file));
+        assertArrayEquals(exif(false, true, ROTATE_180), FileHelper.read(file));
+
+        File missing = file(jfif());
+        assertFalse(ExifOrientation.patch(missing, ROTATE_180));
+        assertEquals(ExifOrientation.UNDEFINED, ExifOrientation.read(missing));
+    }
+
+    @Test
+    public void testInsert() throws Exception {
+        byte[] jpeg = jfif();
+        byte[] result = ExifOrientation.insert(jpeg, ROTATE_90);
+        assertNotNull(result);
+        assertEquals(ROTATE_90, ExifOrientation.read(result));
+        assertEquals(jpeg.length + 36, result.length);
+        // JFIF APP0 comes first, then our APP1.
+        assertEquals(0xFF, jpeg[2] & 0xFF);
+        assertEquals(0xE0, jpeg[3] & 0xFF);
+        int app1 = 4 + (((jpeg[4] & 0xFF) << 8) | (jpeg[5] & 0xFF));
+        assertEquals(0xE0, result[3] & 0xFF);
+        assertEquals(0xFF, result[app1] & 0xFF);
+        assertEquals(0xE1, result[app1 + 1] & 0xFF);
+        // The image data is untouched, and can still be decoded.
+        assertEquals(16, ImageIO.read(new ByteArrayInputStream(result)).getWidth());
+        // Once inserted, the tag can be patched.
+        assertTrue(ExifOrientation.patch(result, ROTATE_180));
+        assertEquals(ROTATE_180, ExifOrientation.read(result));
+    }
+
+    @Test
+    public void testInsert_noApp0() {
+        // SOI, DQT-like segment, EOI. The APP1 goes right after SOI.
+        byte[] jpeg = new byte[]{(byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xDB, 0, 2,
+                (byte) 0xFF, (byte) 0xD9};
+        byte[] result = ExifOrientation.insert(jpeg, ROTATE_90);
+        assertNotNull(result);
+        assertEquals(0xE1, result[3] & 0xFF);
+        assertEquals(ROTATE_90, ExifOrientation.read(result));
+    }
+
+    @Test
+    public void testInsert_existingExif() {
+        assertNull(ExifOrientation.insert(exif(true, false, 0), ROTATE_90));
+        assertNull(ExifOrientation.insert(new byte[]{1, 2, 3}, ROTATE_90));
+    }
+}
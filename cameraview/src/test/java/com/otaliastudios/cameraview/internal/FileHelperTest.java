@@ -0,0 +1,118 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FileHelperTest {
+
+    private File source;
+    private File destination;
+
+    @Before
+    public void setUp() throws Exception {
+        source = File.createTempFile("source", null);
+        destination = File.createTempFile("destination", null);
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        source.delete();
+        //noinspection ResultOfMethodCallIgnored
+        destination.delete();
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    @Test
+    public void testWrite_array() throws Exception {
+        byte[] data = data(1000);
+        FileHelper.write(data, source, false);
+        assertArrayEquals(data, read(source));
+    }
+
+    @Test
+    public void testWrite_directBuffer() throws Exception {
+        byte[] data = data(5000);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        FileHelper.write(buffer, source, true);
+        assertFalse(buffer.hasRemaining());
+        assertArrayEquals(data, read(source));
+    }
+
+    @Test
+    public void testWrite_replaces() throws Exception {
+        FileHelper.write(data(1000), source, false);
+        FileHelper.write(data(10), source, false);
+        assertEquals(10, source.length());
+    }
+
+    @Test
+    public void testWrite_stream() throws Exception {
+        final byte[] data = data(200000);
+        FileHelper.write(new FileHelper.StreamWriter() {
+            @Override
+            public void write(@NonNull OutputStream stream) throws IOException {
+                // Write in small chunks, like DngCreator does.
+                for (int i = 0; i < data.length; i += 1000) {
+                    stream.write(data, i, Math.min(1000, data.length - i));
+                }
+            }
+        }, source, true);
+        assertArrayEquals(data, read(source));
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        byte[] data = data(3000);
+        FileHelper.write(data, source, false);
+        assertArrayEquals(data, FileHelper.read(source));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        byte[] data = data(100000);
+        FileHelper.write(data, source, false);
+        FileHelper.write(data(10), destination, false);
+        FileHelper.copy(source, destination, true);
+        assertArrayEquals(data, read(destination));
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = stream.read(data, read, data.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+            return data;
+        } finally {
+            stream.close();
+        }
+    }
+}
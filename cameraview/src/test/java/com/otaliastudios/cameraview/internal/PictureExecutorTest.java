@@ -0,0 +1,85 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PictureExecutorTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new PictureExecutor(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism_set() {
+        new PictureExecutor(1).setParallelism(0);
+    }
+
+    @Test
+    public void testSetParallelism() {
+        PictureExecutor executor = new PictureExecutor(2);
+        assertEquals(2, executor.getParallelism());
+        executor.setParallelism(4);
+        assertEquals(4, executor.getParallelism());
+        executor.setParallelism(1);
+        assertEquals(1, executor.getParallelism());
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        // Two tasks that wait for each other can only complete if they run in parallel.
+        PictureExecutor executor = new PictureExecutor(2);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch completed = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        if (started.await(1, TimeUnit.SECONDS)) completed.countDown();
+                    } catch (InterruptedException ignore) {}
+                }
+            });
+        }
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        PictureExecutor executor = new PictureExecutor(2);
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        // The first two tasks wait for each other, so the executor is saturated at least once.
+        final CountDownLatch saturated = new CountDownLatch(2);
+        final CountDownLatch completed = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    int max;
+                    do {
+                        max = maxRunning.get();
+                    } while (current > max && !maxRunning.compareAndSet(max, current));
+                    saturated.countDown();
+                    try {
+                        saturated.await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException ignore) {}
+                    running.decrementAndGet();
+                    completed.countDown();
+                }
+            });
+        }
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        // Assert on the observed concurrency rather than on timing.
+        assertEquals(2, maxRunning.get());
+    }
+}
@@ -0,0 +1,91 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SharpnessHelperTest {
+
+    private final static int WIDTH = 400;
+    private final static int HEIGHT = 300;
+
+    private interface Pattern {
+        int get(int x, int y);
+    }
+
+    private static ByteBuffer plane(int rowStride, int pixelStride, Pattern pattern) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                buffer.put(y * rowStride + x * pixelStride, (byte) pattern.get(x, y));
+            }
+        }
+        return buffer;
+    }
+
+    private static float estimate(Pattern pattern) {
+        return SharpnessHelper.estimate(plane(WIDTH, 1, pattern), WIDTH, HEIGHT, WIDTH, 1);
+    }
+
+    // Sharp edges every 8 pixels.
+    private final static Pattern SHARP = new Pattern() {
+        @Override
+        public int get(int x, int y) {
+            return ((x / 8) + (y / 8)) % 2 == 0 ? 30 : 220;
+        }
+    };
+
+    // Same edges, smoothed over 8 pixels.
+    private final static Pattern BLURRY = new Pattern() {
+        @Override
+        public int get(int x, int y) {
+            double phase = Math.sin(Math.PI * x / 8) * Math.sin(Math.PI * y / 8);
+            return (int) (125 + 95 * phase);
+        }
+    };
+
+    private final static Pattern FLAT = new Pattern() {
+        @Override
+        public int get(int x, int y) {
+            return 128;
+        }
+    };
+
+    @Test
+    public void testFlat() {
+        assertEquals(0F, estimate(FLAT), 0F);
+    }
+
+    @Test
+    public void testSharpness() {
+        float sharp = estimate(SHARP);
+        float blurry = estimate(BLURRY);
+        assertTrue(sharp > blurry);
+        assertTrue(blurry > estimate(FLAT));
+    }
+
+    @Test
+    public void testStrides() {
+        // Same content with padding and interleaved pixels gives the same result.
+        ByteBuffer padded = plane(WIDTH * 2 + 16, 2, SHARP);
+        float value = SharpnessHelper.estimate(padded, WIDTH, HEIGHT, WIDTH * 2 + 16, 2);
+        assertEquals(estimate(SHARP), value, 0.001F);
+    }
+
+    @Test
+    public void testPositionUnchanged() {
+        ByteBuffer buffer = plane(WIDTH, 1, SHARP);
+        SharpnessHelper.estimate(buffer, WIDTH, HEIGHT, WIDTH, 1);
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testTinyFrame() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        assertEquals(0F, SharpnessHelper.estimate(buffer, 2, 2, 2, 1), 0F);
+    }
+}
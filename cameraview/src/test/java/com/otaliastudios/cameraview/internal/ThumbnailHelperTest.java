@@ -0,0 +1,67 @@
+package com.otaliastudios.cameraview.internal;
+
+
+import com.otaliastudios.cameraview.size.Size;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailHelperTest {
+
+    @Test
+    public void testComputeTargetSize() {
+        Size size = new Size(4000, 3000);
+        assertEquals(new Size(400, 300), ThumbnailHelper.computeTargetSize(size, 400, 400, 0));
+        assertEquals(new Size(400, 300), ThumbnailHelper.computeTargetSize(size, 1000, 300, 0));
+    }
+
+    @Test
+    public void testComputeTargetSize_rotated() {
+        // Bounds are after rotation, the target is before rotation.
+        Size size = new Size(4000, 3000);
+        assertEquals(new Size(400, 300), ThumbnailHelper.computeTargetSize(size, 300, 1000, 90));
+        assertEquals(new Size(400, 300), ThumbnailHelper.computeTargetSize(size, 300, 1000, 270));
+        assertEquals(new Size(400, 300), ThumbnailHelper.computeTargetSize(size, 1000, 300, 180));
+    }
+
+    @Test
+    public void testComputeTargetSize_noUpscale() {
+        Size size = new Size(400, 300);
+        assertEquals(size, ThumbnailHelper.computeTargetSize(size, 4000, 4000, 0));
+        assertEquals(size, ThumbnailHelper.computeTargetSize(size, -1, -1, 0));
+        assertEquals(new Size(200, 150), ThumbnailHelper.computeTargetSize(size, 200, -1, 0));
+    }
+
+    @Test
+    public void testCovers() {
+        Size picture = new Size(4000, 3000);
+        Size thumbnail = new Size(320, 240);
+        assertTrue(ThumbnailHelper.covers(thumbnail, picture, new Size(320, 240)));
+        assertTrue(ThumbnailHelper.covers(thumbnail, picture, new Size(160, 120)));
+        assertFalse(ThumbnailHelper.covers(thumbnail, picture, new Size(400, 300)));
+    }
+
+    @Test
+    public void testCovers_aspectRatio() {
+        // A 4:3 thumbnail, typically letterboxed, can't be used for a 16:9 picture.
+        Size picture = new Size(1920, 1080);
+        assertFalse(ThumbnailHelper.covers(new Size(320, 240), picture, new Size(160, 90)));
+        assertTrue(ThumbnailHelper.covers(new Size(320, 180), picture, new Size(160, 90)));
+        // Small rounding differences are accepted.
+        assertTrue(ThumbnailHelper.covers(new Size(320, 181), picture, new Size(160, 90)));
+    }
+
+    @Test
+    public void testComputeSampleSize() {
+        Size size = new Size(4000, 3000);
+        assertEquals(1, ThumbnailHelper.computeSampleSize(size, size));
+        assertEquals(1, ThumbnailHelper.computeSampleSize(size, new Size(2001, 1501)));
+        assertEquals(2, ThumbnailHelper.computeSampleSize(size, new Size(2000, 1500)));
+        assertEquals(8, ThumbnailHelper.computeSampleSize(size, new Size(400, 300)));
+        // The result covers the target in both dimensions.
+        assertEquals(4, ThumbnailHelper.computeSampleSize(size, new Size(400, 600)));
+    }
+}
@@ -0,0 +1,251 @@
+package com.otaliastudios.cameraview.picture;
+
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BurstPipelineTest {
+
+    private File directory;
+    private ExecutorService executor;
+    private Map<Integer, File> saved;
+    private Map<Integer, byte[]> encoded;
+    private Map<Integer, Exception> failed;
+    private CountDownLatch completed;
+    private int completedCount;
+
+    private final BurstPipeline.Listener listener = new BurstPipeline.Listener() {
+        @Override
+        public void onBurstPictureSaved(int index, @Nullable byte[] data, @NonNull File file) {
+            saved.put(index, file);
+            if (data != null) encoded.put(index, data);
+        }
+
+        @Override
+        public void onBurstPictureFailed(int index, @NonNull Exception error) {
+            failed.put(index, error);
+        }
+
+        @Override
+        public void onBurstCompleted(int saved) {
+            completedCount = saved;
+            completed.countDown();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("burst", null);
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+        //noinspection ResultOfMethodCallIgnored
+        directory.mkdirs();
+        saved = new ConcurrentHashMap<>();
+        encoded = new ConcurrentHashMap<>();
+        failed = new ConcurrentHashMap<>();
+        completed = new CountDownLatch(1);
+        completedCount = -1;
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static BurstPipeline.Job job(final byte[] data) {
+        return new BurstPipeline.Job() {
+            @NonNull
+            @Override
+            public byte[] encode() {
+                return data;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBurst() {
+        new BurstPipeline(directory, "test", 0, executor, 1, listener);
+    }
+
+    @Test
+    public void testFiles() throws Exception {
+        BurstPipeline pipeline = new BurstPipeline(directory, "test", 3, executor, 2, listener);
+        assertEquals(3, pipeline.getCount());
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit(i, job(new byte[]{(byte) i, 1, 2}));
+        }
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(3, completedCount);
+        assertEquals(3, saved.size());
+        assertTrue(failed.isEmpty());
+        for (int i = 0; i < 3; i++) {
+            File file = saved.get(i);
+            assertEquals(pipeline.getFile(i), file);
+            assertArrayEquals(new byte[]{(byte) i, 1, 2}, read(file));
+            assertArrayEquals(new byte[]{(byte) i, 1, 2}, encoded.get(i));
+        }
+    }
+
+    @Test
+    public void testWriteJobs() throws Exception {
+        BurstPipeline pipeline = new BurstPipeline(directory, "test", "dng", 2, executor, 1,
+                listener);
+        assertTrue(pipeline.getFile(0).getName().endsWith(".dng"));
+        for (int i = 0; i < 2; i++) {
+            final byte index = (byte) i;
+            pipeline.submit(i, new BurstPipeline.WriteJob() {
+                @Override
+                public void write(@NonNull File file) throws Exception {
+                    FileOutputStream stream = new FileOutputStream(file);
+                    try {
+                        stream.write(new byte[]{index, 5});
+                    } finally {
+                        stream.close();
+                    }
+                }
+            });
+        }
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(2, completedCount);
+        // Written files are not held in memory.
+        assertTrue(encoded.isEmpty());
+        for (int i = 0; i < 2; i++) {
+            assertArrayEquals(new byte[]{(byte) i, 5}, read(saved.get(i)));
+        }
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        BurstPipeline pipeline = new BurstPipeline(directory, "test", 2, executor, 1, listener);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        assertTrue(pipeline.hasCapacity());
+        assertTrue(pipeline.trySubmit(0, new BurstPipeline.Job() {
+            @NonNull
+            @Override
+            public byte[] encode() throws Exception {
+                blocker.await();
+                return new byte[]{0};
+            }
+        }));
+        assertFalse(pipeline.hasCapacity());
+        assertFalse(pipeline.trySubmit(1, job(new byte[]{1})));
+        blocker.countDown();
+        pipeline.submit(1, job(new byte[]{1}));
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(2, completedCount);
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+        final BurstPipeline pipeline = new BurstPipeline(directory, "test", 3, executor, 1,
+                listener);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch reserved = new CountDownLatch(1);
+        assertTrue(pipeline.tryReserve());
+        assertFalse(pipeline.tryReserve());
+        // The second reservation waits, without blocking this thread.
+        pipeline.reserve(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.submitReserved(1, job(new byte[]{1}));
+                reserved.countDown();
+            }
+        });
+        assertEquals(1, reserved.getCount());
+        assertFalse(pipeline.hasCapacity());
+        pipeline.submitReserved(0, new BurstPipeline.Job() {
+            @NonNull
+            @Override
+            public byte[] encode() throws Exception {
+                blocker.await();
+                return new byte[]{0};
+            }
+        });
+        assertEquals(1, reserved.getCount());
+        blocker.countDown();
+        // The slot released by the first picture goes to the waiting reservation.
+        assertTrue(reserved.await(2, TimeUnit.SECONDS));
+        // A failed reservation releases its slot too.
+        final CountDownLatch afterFailure = new CountDownLatch(1);
+        pipeline.reserve(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.failReserved(2, new RuntimeException("capture"));
+                afterFailure.countDown();
+            }
+        });
+        assertTrue(afterFailure.await(2, TimeUnit.SECONDS));
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(2, completedCount);
+        assertTrue(failed.containsKey(2));
+        assertTrue(pipeline.hasCapacity());
+    }
+
+    @Test
+    public void testFailures() throws Exception {
+        BurstPipeline pipeline = new BurstPipeline(directory, "test", 3, executor, 3, listener);
+        pipeline.fail(0, new RuntimeException("capture"));
+        pipeline.submit(1, new BurstPipeline.Job() {
+            @NonNull
+            @Override
+            public byte[] encode() throws Exception {
+                throw new IOException("encode");
+            }
+        });
+        pipeline.submit(2, job(new byte[]{2}));
+        assertTrue(completed.await(2, TimeUnit.SECONDS));
+        assertEquals(1, completedCount);
+        assertEquals(2, failed.size());
+        assertTrue(failed.get(1) instanceof IOException);
+        assertTrue(saved.containsKey(2));
+        assertFalse(pipeline.getFile(1).exists());
+        // Failed jobs must release their slot.
+        assertTrue(pipeline.hasCapacity());
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream stream = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length) {
+                int count = stream.read(data, read, data.length - read);
+                if (count < 0) break;
+                read += count;
+            }
+            return data;
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.otaliastudios.cameraview.picture;
+
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiFrameMergerTest {
+
+    private final static int WIDTH = 320;
+    private final static int HEIGHT = 240;
+    // Pixels close to the edges are excluded from quality checks,
+    // since shifted frames have no data there.
+    private final static int BORDER = 24;
+
+    private ForkJoinPool pool;
+    private MultiFrameMerger merger;
+    private byte[] scene;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        merger = new MultiFrameMerger(WIDTH, HEIGHT);
+        scene = createScene(new Random(1));
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * A textured, non periodic scene: random values on a coarse grid,
+     * interpolated bilinearly. Chroma is a smooth gradient.
+     */
+    private static byte[] createScene(Random random) {
+        int step = 8;
+        int gridWidth = WIDTH / step + 2;
+        int gridHeight = HEIGHT / step + 2;
+        int[] grid = new int[gridWidth * gridHeight];
+        for (int i = 0; i < grid.length; i++) grid[i] = 40 + random.nextInt(176);
+        byte[] nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int gx = x / step, gy = y / step;
+                float fx = (x % step) / (float) step, fy = (y % step) / (float) step;
+                float top = grid[gy * gridWidth + gx] * (1 - fx)
+                        + grid[gy * gridWidth + gx + 1] * fx;
+                float bottom = grid[(gy + 1) * gridWidth + gx] * (1 - fx)
+                        + grid[(gy + 1) * gridWidth + gx + 1] * fx;
+                nv21[y * WIDTH + x] = (byte) Math.round(top * (1 - fy) + bottom * fy);
+            }
+        }
+        for (int i = WIDTH * HEIGHT; i < nv21.length; i += 2) {
+            int cx = (i - WIDTH * HEIGHT) % WIDTH / 2;
+            nv21[i] = (byte) (100 + cx * 50 / WIDTH);
+            nv21[i + 1] = (byte) (150 - cx * 50 / WIDTH);
+        }
+        return nv21;
+    }
+
+    /**
+     * Returns a frame such that frame(x + dx, y + dy) = scene(x, y), plus gaussian noise.
+     */
+    private static byte[] capture(byte[] scene, int dx, int dy, double noise, Random random) {
+        byte[] frame = new byte[scene.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sx = Math.min(WIDTH - 1, Math.max(0, x - dx));
+                int sy = Math.min(HEIGHT - 1, Math.max(0, y - dy));
+                double value = (scene[sy * WIDTH + sx] & 0xFF) + random.nextGaussian() * noise;
+                frame[y * WIDTH + x] = (byte) Math.min(255, Math.max(0, Math.round(value)));
+            }
+        }
+        System.arraycopy(scene, WIDTH * HEIGHT, frame, WIDTH * HEIGHT, WIDTH * HEIGHT / 2);
+        return frame;
+    }
+
+    private static double lumaError(byte[] frame, byte[] expected) {
+        double error = 0;
+        int count = 0;
+        for (int y = BORDER; y < HEIGHT - BORDER; y++) {
+            for (int x = BORDER; x < WIDTH - BORDER; x++) {
+                int diff = (frame[y * WIDTH + x] & 0xFF) - (expected[y * WIDTH + x] & 0xFF);
+                error += diff * diff;
+                count++;
+            }
+        }
+        return error / count;
+    }
+
+    private static int[] downscale(byte[] frame) {
+        int scale = 4;
+        int[] small = new int[(WIDTH / scale) * (HEIGHT / scale)];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                small[(y / scale) * (WIDTH / scale) + x / scale] += frame[y * WIDTH + x] & 0xFF;
+            }
+        }
+        for (int i = 0; i < small.length; i++) small[i] /= scale * scale;
+        return small;
+    }
+
+    @Test
+    public void testAlign() {
+        Random random = new Random(2);
+        int[][] shifts = {{0, 0}, {6, -3}, {-11, 7}, {15, 15}, {1, -1}};
+        for (int[] shift : shifts) {
+            byte[] frame = capture(scene, shift[0], shift[1], 2, random);
+            // Pick a tile in the middle.
+            int[] offset = merger.align(scene, downscale(scene), frame, downscale(frame), 4, 3);
+            assertEquals(shift[0], offset[0]);
+            assertEquals(shift[1], offset[1]);
+        }
+    }
+
+    @Test
+    public void testIdenticalFrames() {
+        byte[][] frames = { scene.clone(), scene.clone(), scene.clone() };
+        assertArrayEquals(scene, merger.merge(frames, pool));
+    }
+
+    @Test
+    public void testSingleFrame() {
+        byte[] merged = merger.merge(new byte[][]{ scene }, pool);
+        assertArrayEquals(scene, merged);
+        assertTrue(merged != scene);
+    }
+
+    @Test
+    public void testNoiseReduction() {
+        Random random = new Random(3);
+        int[][] shifts = {{0, 0}, {3, -2}, {-5, 4}, {7, 1}, {-2, -6}};
+        byte[][] frames = new byte[shifts.length][];
+        for (int i = 0; i < shifts.length; i++) {
+            frames[i] = capture(scene, shifts[i][0], shifts[i][1], 8, random);
+        }
+        byte[] merged = merger.merge(frames, pool);
+        // The merged frame is aligned to the reference frame, whichever it is.
+        int reference = merger.selectReference(frames);
+        byte[] expected = capture(scene, shifts[reference][0], shifts[reference][1], 0, random);
+        double single = lumaError(frames[reference], expected);
+        double result = lumaError(merged, expected);
+        // Five frames should cut the noise variance by more than half.
+        assertTrue("single: " + single + " merged: " + result, result < single / 2);
+    }
+
+    @Test
+    public void testNoGhosting() {
+        Random random = new Random(4);
+        byte[][] frames = new byte[4][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = capture(scene, 0, 0, 2, random);
+        }
+        // An object that is only present in some frames. Whichever the reference is,
+        // the other frames must not leak into it.
+        for (int i = 1; i < frames.length; i++) {
+            for (int y = 100; y < 140; y++) {
+                for (int x = 140; x < 180; x++) {
+                    frames[i][y * WIDTH + x] = (byte) 255;
+                }
+            }
+        }
+        int reference = merger.selectReference(frames);
+        byte[] merged = merger.merge(frames, pool);
+        for (int y = 100; y < 140; y++) {
+            for (int x = 140; x < 180; x++) {
+                int diff = (merged[y * WIDTH + x] & 0xFF)
+                        - (frames[reference][y * WIDTH + x] & 0xFF);
+                assertTrue("diff: " + diff, Math.abs(diff) <= 8);
+            }
+        }
+    }
+
+    @Test
+    public void testDeterministic() {
+        Random random = new Random(5);
+        byte[][] frames = new byte[3][];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = capture(scene, i * 2, -i, 6, random);
+        }
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            assertArrayEquals(merger.merge(frames, single), merger.merge(frames, pool));
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOddSize() {
+        new MultiFrameMerger(WIDTH + 1, HEIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSmallFrame() {
+        merger.merge(new byte[][]{ new byte[10] }, pool);
+    }
+}
@@ -0,0 +1,134 @@
+package com.otaliastudios.cameraview.picture;
+
+
+import android.media.Image;
+import android.media.ImageReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZslRingTest {
+
+    private final static int SIZE = 32;
+    private final static long FRAME_NANOS = 33 * 1000 * 1000;
+
+    private ImageReader reader;
+    private ZslRing ring;
+
+    @Before
+    public void setUp() {
+        reader = mock(ImageReader.class);
+        ring = new ZslRing(reader, 3);
+    }
+
+    private static Image image(long timestamp, boolean sharp) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE * SIZE);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int value = sharp && (x + y) % 2 == 0 ? 220 : 30;
+                buffer.put(y * SIZE + x, (byte) value);
+            }
+        }
+        Image.Plane plane = mock(Image.Plane.class);
+        when(plane.getBuffer()).thenReturn(buffer);
+        when(plane.getRowStride()).thenReturn(SIZE);
+        when(plane.getPixelStride()).thenReturn(1);
+        Image image = mock(Image.class);
+        when(image.getTimestamp()).thenReturn(timestamp);
+        when(image.getWidth()).thenReturn(SIZE);
+        when(image.getHeight()).thenReturn(SIZE);
+        when(image.getPlanes()).thenReturn(new Image.Plane[]{plane});
+        return image;
+    }
+
+    private void offer(Image image) {
+        when(reader.acquireNextImage()).thenReturn(image);
+        ring.onImageAvailable(reader);
+    }
+
+    @Test
+    public void testEviction() {
+        Image[] images = new Image[5];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = image(i * FRAME_NANOS, false);
+            offer(images[i]);
+        }
+        // Capacity is 3, so the two oldest were closed.
+        verify(images[0], times(1)).close();
+        verify(images[1], times(1)).close();
+        verify(images[2], never()).close();
+        verify(images[3], never()).close();
+        verify(images[4], never()).close();
+    }
+
+    @Test
+    public void testTake_sharpest() throws Exception {
+        offer(image(0, false));
+        Image sharp = image(FRAME_NANOS, true);
+        offer(sharp);
+        offer(image(2 * FRAME_NANOS, false));
+        ZslRing.Entry entry = ring.take(0);
+        assertNotNull(entry);
+        assertSame(sharp, entry.getImage());
+    }
+
+    @Test
+    public void testTake_ignoresOldFrames() throws Exception {
+        Image sharp = image(0, true);
+        offer(sharp);
+        // Way older than the most recent frame.
+        Image recent = image(1000 * FRAME_NANOS, false);
+        offer(recent);
+        ZslRing.Entry entry = ring.take(0);
+        assertNotNull(entry);
+        assertSame(recent, entry.getImage());
+    }
+
+    @Test
+    public void testTake_empty() throws Exception {
+        assertNull(ring.take(0));
+    }
+
+    @Test
+    public void testRelease() {
+        Image image = image(0, false);
+        offer(image);
+        ring.release();
+        verify(image, times(1)).close();
+        verify(reader, times(1)).close();
+        // Frames after release are closed immediately.
+        Image late = image(FRAME_NANOS, false);
+        offer(late);
+        verify(late, times(1)).close();
+    }
+
+    @Test
+    public void testRelease_waitsForTakenEntries() throws Exception {
+        Image image = image(0, false);
+        offer(image);
+        ZslRing.Entry entry = ring.take(0);
+        assertNotNull(entry);
+        ring.release();
+        // The taken image might still be encoding, so the reader stays open.
+        verify(image, never()).close();
+        verify(reader, never()).close();
+        entry.close();
+        verify(image, times(1)).close();
+        verify(reader, times(1)).close();
+        // Closing twice does nothing.
+        entry.close();
+        verify(image, times(1)).close();
+        verify(reader, times(1)).close();
+    }
+}
@@ -0,0 +1,58 @@
+package com.otaliastudios.cameraview.video;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeLapseDecimatorTest {
+
+    private final static long MS = 1000000L;
+    private final static long START = 5000 * MS;
+
+    @Test
+    public void testFirstFrame() {
+        TimeLapseDecimator decimator = new TimeLapseDecimator(1000, 30);
+        assertEquals(START, decimator.process(START));
+    }
+
+    @Test
+    public void testDecimation() {
+        TimeLapseDecimator decimator = new TimeLapseDecimator(100, 25);
+        int captured = 0;
+        // 30 fps preview for one second.
+        for (int i = 0; i < 30; i++) {
+            long result = decimator.process(START + i * 1000 * MS / 30);
+            if (result != TimeLapseDecimator.SKIP) captured++;
+        }
+        assertEquals(10, captured);
+    }
+
+    @Test
+    public void testTimestamps() {
+        TimeLapseDecimator decimator = new TimeLapseDecimator(1000, 25);
+        assertEquals(START, decimator.process(START));
+        assertEquals(TimeLapseDecimator.SKIP, decimator.process(START + 500 * MS));
+        assertEquals(START + 40 * MS, decimator.process(START + 1000 * MS));
+        assertEquals(START + 80 * MS, decimator.process(START + 2010 * MS));
+    }
+
+    @Test
+    public void testNoDrift() {
+        TimeLapseDecimator decimator = new TimeLapseDecimator(1000, 25);
+        decimator.process(START);
+        // Late frame: the next capture should still happen at START + 2000.
+        assertEquals(START + 40 * MS, decimator.process(START + 1900 * MS));
+        assertEquals(START + 80 * MS, decimator.process(START + 2000 * MS));
+    }
+
+    @Test
+    public void testPreviewStall() {
+        TimeLapseDecimator decimator = new TimeLapseDecimator(1000, 25);
+        decimator.process(START);
+        // No frames for a while: we should not record a burst of frames to catch up.
+        assertEquals(START + 40 * MS, decimator.process(START + 5500 * MS));
+        assertEquals(TimeLapseDecimator.SKIP, decimator.process(START + 5600 * MS));
+        assertEquals(START + 80 * MS, decimator.process(START + 6000 * MS));
+    }
+}
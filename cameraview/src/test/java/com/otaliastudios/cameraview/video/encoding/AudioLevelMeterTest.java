@@ -0,0 +1,66 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AudioLevelMeterTest {
+
+    private final static long INTERVAL = 50;
+
+    private static ByteBuffer buffer(short... samples) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) buffer.putShort(sample);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testSilence() {
+        AudioLevelMeter meter = new AudioLevelMeter(0);
+        assertTrue(meter.process(buffer((short) 0, (short) 0, (short) 0), 0));
+        assertEquals(0F, meter.getRms(), 0F);
+        assertEquals(0F, meter.getPeak(), 0F);
+    }
+
+    @Test
+    public void testLevels() {
+        AudioLevelMeter meter = new AudioLevelMeter(0);
+        assertTrue(meter.process(buffer((short) 16384, (short) -16384), 0));
+        assertEquals(0.5F, meter.getRms(), 0.0001F);
+        assertEquals(0.5F, meter.getPeak(), 0.0001F);
+        assertTrue(meter.process(buffer(Short.MIN_VALUE, (short) 0), 0));
+        assertEquals(Math.sqrt(0.5), meter.getRms(), 0.0001F);
+        assertEquals(1F, meter.getPeak(), 0.0001F);
+    }
+
+    @Test
+    public void testThrottling() {
+        AudioLevelMeter meter = new AudioLevelMeter(INTERVAL);
+        assertFalse(meter.process(buffer((short) 32767), 0));
+        assertFalse(meter.process(buffer((short) 0), INTERVAL - 1));
+        assertTrue(meter.process(buffer((short) 0), INTERVAL));
+        // The whole window should be considered.
+        assertEquals(32767 / 32768F, meter.getPeak(), 0.0001F);
+        assertEquals(Math.sqrt(32767D * 32767D / 3) / 32768D, meter.getRms(), 0.0001F);
+    }
+
+    @Test
+    public void testBufferUnchanged() {
+        AudioLevelMeter meter = new AudioLevelMeter(0);
+        ByteBuffer buffer = buffer((short) 1, (short) 2, (short) 3);
+        buffer.position(2);
+        meter.process(buffer, 0);
+        assertEquals(2, buffer.position());
+        assertEquals(6, buffer.limit());
+        // Only the samples after position should be considered.
+        assertEquals(3 / 32768F, meter.getPeak(), 0.00001F);
+    }
+}
@@ -0,0 +1,117 @@
+package com.otaliastudios.cameraview.video.encoding;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VideoBitRateControllerTest {
+
+    private final static int FRAME_RATE = 30;
+    private final static long FRAME_INTERVAL_US = 1000000L / FRAME_RATE;
+
+    private long time = 0;
+
+    private boolean nextWindow(VideoBitRateController controller) {
+        time += VideoBitRateController.WINDOW_MILLIS;
+        return controller.update(time);
+    }
+
+    private void renderFrames(VideoBitRateController controller, int count, int pending) {
+        for (int i = 0; i < count; i++) {
+            controller.onFrameRendered(pending);
+            controller.onOutputWritten(FRAME_INTERVAL_US / 10);
+        }
+    }
+
+    @Test
+    public void testInitialBitRate_clamped() {
+        assertEquals(2000, new VideoBitRateController(1000, 2000, 4000, FRAME_RATE).getBitRate());
+        assertEquals(4000, new VideoBitRateController(8000, 2000, 4000, FRAME_RATE).getBitRate());
+        assertEquals(3000, new VideoBitRateController(3000, 2000, 4000, FRAME_RATE).getBitRate());
+    }
+
+    @Test
+    public void testUpdate_waitsForWindow() {
+        VideoBitRateController controller = new VideoBitRateController(4000, 1000, 4000,
+                FRAME_RATE);
+        assertFalse(controller.update(time));
+        controller.onFrameDropped();
+        assertFalse(controller.update(time + VideoBitRateController.WINDOW_MILLIS - 1));
+        assertEquals(4000, controller.getBitRate());
+    }
+
+    @Test
+    public void testDecrease_droppedFrames() {
+        VideoBitRateController controller = new VideoBitRateController(4000, 1000, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        renderFrames(controller, 20, 0);
+        for (int i = 0; i < 10; i++) controller.onFrameDropped();
+        assertTrue(nextWindow(controller));
+        assertEquals((int) (4000 * VideoBitRateController.DECREASE_FACTOR),
+                controller.getBitRate());
+    }
+
+    @Test
+    public void testDecrease_pendingFrames() {
+        VideoBitRateController controller = new VideoBitRateController(4000, 1000, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        renderFrames(controller, 30, 2);
+        assertTrue(nextWindow(controller));
+        assertTrue(controller.getBitRate() < 4000);
+    }
+
+    @Test
+    public void testDecrease_slowMuxer() {
+        VideoBitRateController controller = new VideoBitRateController(4000, 1000, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        controller.onFrameRendered(0);
+        controller.onOutputWritten(FRAME_INTERVAL_US);
+        assertTrue(nextWindow(controller));
+        assertTrue(controller.getBitRate() < 4000);
+    }
+
+    @Test
+    public void testDecrease_respectsMin() {
+        VideoBitRateController controller = new VideoBitRateController(4000, 3500, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        for (int i = 0; i < 5; i++) {
+            controller.onFrameDropped();
+            nextWindow(controller);
+        }
+        assertEquals(3500, controller.getBitRate());
+    }
+
+    @Test
+    public void testIncrease() {
+        VideoBitRateController controller = new VideoBitRateController(1000, 1000, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        for (int i = 0; i < VideoBitRateController.INCREASE_WINDOWS - 1; i++) {
+            renderFrames(controller, 30, 0);
+            assertFalse(nextWindow(controller));
+        }
+        renderFrames(controller, 30, 0);
+        assertTrue(nextWindow(controller));
+        int step = (int) (4000 * VideoBitRateController.INCREASE_FACTOR);
+        assertEquals(1000 + step, controller.getBitRate());
+    }
+
+    @Test
+    public void testIncrease_respectsMax() {
+        VideoBitRateController controller = new VideoBitRateController(3990, 1000, 4000,
+                FRAME_RATE);
+        controller.update(time);
+        for (int i = 0; i < VideoBitRateController.INCREASE_WINDOWS * 3; i++) {
+            renderFrames(controller, 30, 0);
+            nextWindow(controller);
+        }
+        assertEquals(4000, controller.getBitRate());
+    }
+}